@@ -0,0 +1,93 @@
+package us.kbase.typedobj.core;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A token sequence provider that writes every token it provides to a JSON generator. This
+ * allows a consumer of a token sequence, for example the {@link MetadataExtractor}, to process
+ * a JSON document while the document is being written, rather than requiring a separate pass
+ * over the document.
+ *
+ * The text of number tokens is provided as written to the generator, rather than as present
+ * in the source, so that the consumer sees the same data it would see if it read the written
+ * document.
+ */
+class CopyingTokenSequenceProvider implements TokenSequenceProvider {
+
+	private final TokenSequenceProvider source;
+	private final JsonGenerator jgen;
+	private JsonToken current = null;
+	private boolean started = false;
+	private int depth = 0;
+
+	/** Create the provider.
+	 * @param source the source of the tokens.
+	 * @param jgen the generator into which the tokens will be written.
+	 */
+	CopyingTokenSequenceProvider(
+			final TokenSequenceProvider source,
+			final JsonGenerator jgen) {
+		if (source == null) {
+			throw new NullPointerException("source");
+		}
+		if (jgen == null) {
+			throw new NullPointerException("jgen");
+		}
+		this.source = source;
+		this.jgen = jgen;
+	}
+
+	@Override
+	public JsonToken nextToken() throws IOException, JsonParseException {
+		current = source.nextToken();
+		if (current != null) {
+			JsonTokenStreamWriter.writeToken(current, source, jgen);
+			started = true;
+			if (current == JsonToken.START_OBJECT || current == JsonToken.START_ARRAY) {
+				depth++;
+			} else if (current == JsonToken.END_OBJECT || current == JsonToken.END_ARRAY) {
+				depth--;
+			}
+		}
+		return current;
+	}
+
+	@Override
+	public String getText() throws IOException, JsonParseException {
+		if (current == JsonToken.VALUE_NUMBER_INT || current == JsonToken.VALUE_NUMBER_FLOAT) {
+			// matches the text written by the generator for the number types the source provides
+			return source.getNumberValue().toString();
+		}
+		return source.getText();
+	}
+
+	@Override
+	public Number getNumberValue() throws IOException, JsonParseException {
+		return source.getNumberValue();
+	}
+
+	@Override
+	public void close() throws IOException {
+		source.close();
+	}
+
+	@Override
+	public boolean isComplete() {
+		return false;
+	}
+
+	/** Write any tokens in the document that have not yet been provided to the generator.
+	 * @throws IOException if an IO error occurs or the document ends unexpectedly.
+	 */
+	void copyRemaining() throws IOException {
+		while (!started || depth > 0) {
+			if (nextToken() == null) {
+				throw new IOException("Unexpected end of JSON document");
+			}
+		}
+	}
+}
@@ -55,6 +55,16 @@ public class JsonTokenStreamWriter {
 		JsonToken t = src.nextToken();
 		if (src.isComplete() || jgen == null)
 			return t;
+		writeToken(t, src, jgen);
+		return t;
+	}
+	
+	/* Writes the current token from the token sequence provider to the generator. */
+	static void writeToken(
+			final JsonToken t,
+			final TokenSequenceProvider src,
+			final JsonGenerator jgen)
+			throws IOException {
 		if (t == JsonToken.START_ARRAY) {
 			jgen.writeStartArray();
 		} else if (t == JsonToken.START_OBJECT) {
@@ -101,6 +111,5 @@ public class JsonTokenStreamWriter {
 		} else {
 			throw new IOException("Unexpected token type: " + t);
 		}
-		return t;
 	}
 }
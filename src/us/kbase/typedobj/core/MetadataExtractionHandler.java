@@ -95,11 +95,7 @@ public class MetadataExtractionHandler {
 			currentByteSize += SZ_COMMA;
 		}
 		currentByteSize += getSize("\"" + name + "\":\"" + value + "\"");
-		if (currentByteSize > maxMetadataSize) {
-			throw new ExceededMaxMetadataSizeException(
-					"Extracted metadata from object exceeds limit of " +
-							maxMetadataSize + "B");
-		}
+		checkSize(currentByteSize, maxMetadataSize);
 		extracted.put(name, value);
 		// Code below tests that computed string byte size matches what would be
 		// generated by the Jackson object mapper of the
@@ -122,6 +118,29 @@ public class MetadataExtractionHandler {
 	Map<String, String> getSavedMetadata() {
 		return extracted;
 	}
+	
+	private static void checkSize(final long size, final long maxMetadataSize)
+			throws ExceededMaxMetadataSizeException {
+		if (size > maxMetadataSize) {
+			throw new ExceededMaxMetadataSizeException(
+					"Extracted metadata from object exceeds limit of " +
+							maxMetadataSize + "B");
+		}
+	}
+	
+	/* Check the saved metadata against a maximum size other than the one provided in the
+	 * constructor. Since the metadata size only increases as metadata is saved, this is
+	 * equivalent to extracting the metadata with the given maximum size.
+	 */
+	void checkSavedMetadataSize(final long maxMetadataSize)
+			throws ExceededMaxMetadataSizeException {
+		if (maxMetadataSize < 1) {
+			throw new IllegalArgumentException("maxMetadataSize must be > 0");
+		}
+		if (!extracted.isEmpty()) {
+			checkSize(currentByteSize, maxMetadataSize);
+		}
+	}
 
 	@Override
 	public String toString() {
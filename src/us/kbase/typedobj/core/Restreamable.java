@@ -1,7 +1,11 @@
 package us.kbase.typedobj.core;
 
+import java.io.IOException;
 import java.io.InputStream;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
 /** A source of input streams that can be streamed multiple times, as opposed to a general input
  * stream, which is exhausted when used. Each invocation of {@link #getInputStream()} produces
  * a new input stream, which has the same contents as any other input stream produced from the
@@ -16,6 +20,33 @@ public interface Restreamable {
 	 */
 	InputStream getInputStream();
 	
+	/** Generate an input stream containing a range of the source data. The default
+	 * implementation reads and discards the data preceding the range; implementations that can
+	 * read from an arbitrary position should override this method.
+	 * 
+	 * The caller of this method is responsible for closing the stream.
+	 * @param offset the position of the start of the range.
+	 * @param length the length of the range. The stream ends early if the range extends past
+	 * the end of the data.
+	 * @return the input stream.
+	 * @throws IOException if an IO error occurs, including if the offset is past the end of
+	 * the data.
+	 */
+	default InputStream getInputStream(final long offset, final long length)
+			throws IOException {
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("offset and length must be at least zero");
+		}
+		final InputStream is = getInputStream();
+		try {
+			IOUtils.skipFully(is, offset);
+		} catch (IOException | RuntimeException e) {
+			is.close();
+			throw e;
+		}
+		return new BoundedInputStream(is, length);
+	}
+	
 	
 	/** Get the size of the streamed data.
 	 * @return the data size.
@@ -0,0 +1,323 @@
+package us.kbase.typedobj.core;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A structural index for a serialized JSON object. The index records the byte offsets of the
+ * values of the object's top level fields and, for top level arrays with many elements, the
+ * byte offsets of a sample of the array elements. This allows extracting a subset of a large
+ * object by seeking to the required values rather than parsing the object from the start.
+ * See {@link SubdataExtractor#extract(SubsetSelection, StructuralIndex, RangeSource,
+ * com.fasterxml.jackson.core.JsonGenerator)}.
+ *
+ * The offsets are only valid for the exact bytes from which the index was built.
+ */
+public class StructuralIndex {
+
+	/** The maximum number of top level fields an object may have to be indexed. */
+	public static final int MAX_FIELDS = 10000;
+	/** The minimum number of elements a top level array must have for the element offsets
+	 * to be indexed.
+	 */
+	public static final int MIN_INDEXED_ARRAY_LENGTH = 100;
+	/** The maximum number of element offsets recorded per array. For larger arrays, the
+	 * offsets of every Nth element are recorded, where N is a power of 2.
+	 */
+	public static final int MAX_ARRAY_SAMPLES = 8192;
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	/** A source of ranges of the bytes from which an index was built. */
+	public interface RangeSource {
+
+		/** Open a range of the bytes. The caller is responsible for closing the stream.
+		 * @param offset the offset of the first byte in the range.
+		 * @param length the number of bytes in the range.
+		 * @return the bytes.
+		 * @throws IOException if an IO error occurs.
+		 */
+		InputStream open(long offset, long length) throws IOException;
+	}
+
+	/** The location of a top level field's value. */
+	public static class FieldLocation {
+
+		private final long start;
+		private final long end;
+		private final int arrayLength;
+		private final int stride;
+		private final long[] elementOffsets;
+
+		private FieldLocation(
+				final long start,
+				final long end,
+				final int arrayLength,
+				final int stride,
+				final long[] elementOffsets) {
+			this.start = start;
+			this.end = end;
+			this.arrayLength = arrayLength;
+			this.stride = stride;
+			this.elementOffsets = elementOffsets;
+		}
+
+		/** Get the offset of the first byte of the value.
+		 * @return the offset.
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/** Get the offset of the byte after the last byte of the value.
+		 * @return the offset.
+		 */
+		public long getEnd() {
+			return end;
+		}
+
+		/** Check if the offsets of the value's array elements are indexed.
+		 * @return true if the value is an array and the element offsets are indexed.
+		 */
+		public boolean hasElementIndex() {
+			return elementOffsets != null;
+		}
+
+		/** Get the number of elements in the array if the element offsets are indexed.
+		 * @return the array length, or -1 if the elements are not indexed.
+		 */
+		public int getArrayLength() {
+			return arrayLength;
+		}
+
+		/** Get the distance between the array elements for which offsets are recorded.
+		 * @return the stride, or -1 if the elements are not indexed.
+		 */
+		public int getStride() {
+			return stride;
+		}
+
+		/** Get the offset of the closest indexed array element at or before an element.
+		 * @param element the array element.
+		 * @return the offset of element (element / stride) * stride.
+		 */
+		public long getElementOffset(final int element) {
+			if (elementOffsets == null) {
+				throw new IllegalStateException("Array elements are not indexed");
+			}
+			if (element < 0 || element >= arrayLength) {
+				throw new IndexOutOfBoundsException("No such array element: " + element);
+			}
+			return elementOffsets[element / stride];
+		}
+	}
+
+	private final long size;
+	private final Map<String, FieldLocation> fields;
+
+	private StructuralIndex(final long size, final Map<String, FieldLocation> fields) {
+		this.size = size;
+		this.fields = Collections.unmodifiableMap(fields);
+	}
+
+	/** Get the size of the data from which the index was built.
+	 * @return the size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/** Get the names of the top level fields in the order they appear in the data.
+	 * @return the field names.
+	 */
+	public Set<String> getFieldNames() {
+		return fields.keySet();
+	}
+
+	/** Get the location of a top level field's value.
+	 * @param field the name of the field.
+	 * @return the location, or null if the field does not exist.
+	 */
+	public FieldLocation getField(final String field) {
+		return fields.get(field);
+	}
+
+	/** Build an index from a serialized JSON object.
+	 * @param data the data. The stream is read to the end but not closed.
+	 * @return the index, or null if the data is not a JSON object, the object has more than
+	 * {@link #MAX_FIELDS} fields, or the object has duplicate fields.
+	 * @throws IOException if an IO error occurs or the data is not valid JSON.
+	 */
+	public static StructuralIndex build(final InputStream data) throws IOException {
+		requireNonNull(data, "data");
+		final CountingInputStream cis = new CountingInputStream(data);
+		final Map<String, FieldLocation> fields = new LinkedHashMap<>();
+		final JsonParser jp = FACTORY.createParser(cis);
+		// the parser would close the underlying stream
+		jp.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+		try {
+			if (jp.nextToken() != JsonToken.START_OBJECT) {
+				return null;
+			}
+			JsonToken t;
+			while ((t = jp.nextToken()) == JsonToken.FIELD_NAME) {
+				final String name = jp.getCurrentName();
+				if (fields.containsKey(name) || fields.size() >= MAX_FIELDS) {
+					return null;
+				}
+				t = jp.nextToken();
+				fields.put(name, indexValue(jp, t));
+			}
+			if (t != JsonToken.END_OBJECT) {
+				throw new IOException("Unexpected token: " + t);
+			}
+		} finally {
+			jp.close();
+		}
+		// count any trailing whitespace
+		final byte[] buf = new byte[1000];
+		while (cis.read(buf) > -1) {}
+		return new StructuralIndex(cis.getByteCount(), fields);
+	}
+
+	private static FieldLocation indexValue(final JsonParser jp, final JsonToken t)
+			throws IOException {
+		final long start = jp.getTokenLocation().getByteOffset();
+		if (t == JsonToken.START_ARRAY) {
+			// keep the number of samples bounded by doubling the stride when full
+			long[] offsets = new long[MIN_INDEXED_ARRAY_LENGTH];
+			int samples = 0;
+			int stride = 1;
+			int length = 0;
+			JsonToken el;
+			while ((el = jp.nextToken()) != JsonToken.END_ARRAY) {
+				if (el == null) {
+					throw new IOException("Unexpected end of JSON document");
+				}
+				if (length % stride == 0) {
+					if (samples == MAX_ARRAY_SAMPLES) {
+						for (int i = 0; i < samples / 2; i++) {
+							offsets[i] = offsets[i * 2];
+						}
+						samples /= 2;
+						stride *= 2;
+					}
+					if (length % stride == 0) {
+						if (samples == offsets.length) {
+							offsets = Arrays.copyOf(offsets,
+									Math.min(offsets.length * 2, MAX_ARRAY_SAMPLES));
+						}
+						offsets[samples++] = jp.getTokenLocation().getByteOffset();
+					}
+				}
+				jp.skipChildren();
+				length++;
+			}
+			final long end = jp.getCurrentLocation().getByteOffset();
+			if (length < MIN_INDEXED_ARRAY_LENGTH) {
+				return new FieldLocation(start, end, -1, -1, null);
+			}
+			return new FieldLocation(start, end, length, stride, Arrays.copyOf(offsets, samples));
+		}
+		if (t == JsonToken.START_OBJECT) {
+			jp.skipChildren();
+		} else if (t == null) {
+			throw new IOException("Unexpected end of JSON document");
+		} else {
+			// strings may not be fully read yet, which affects the current location
+			jp.finishToken();
+		}
+		return new FieldLocation(start, jp.getCurrentLocation().getByteOffset(), -1, -1, null);
+	}
+
+	/** Serialize the index.
+	 * @return the serialized index.
+	 */
+	public byte[] toBytes() {
+		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (final DataOutputStream dos = new DataOutputStream(baos)) {
+			dos.writeInt(FORMAT_VERSION);
+			dos.writeLong(size);
+			dos.writeInt(fields.size());
+			for (final String name: fields.keySet()) {
+				final FieldLocation f = fields.get(name);
+				final byte[] b = name.getBytes(StandardCharsets.UTF_8);
+				dos.writeInt(b.length);
+				dos.write(b);
+				dos.writeLong(f.start);
+				dos.writeLong(f.end);
+				dos.writeInt(f.arrayLength);
+				dos.writeInt(f.stride);
+				if (f.elementOffsets == null) {
+					dos.writeInt(-1);
+				} else {
+					dos.writeInt(f.elementOffsets.length);
+					for (final long o: f.elementOffsets) {
+						dos.writeLong(o);
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("This should be impossible", e);
+		}
+		return baos.toByteArray();
+	}
+
+	/** Deserialize an index.
+	 * @param index the serialized index.
+	 * @return the index.
+	 * @throws IOException if the index is corrupt or was serialized by an incompatible version
+	 * of this class.
+	 */
+	public static StructuralIndex fromBytes(final byte[] index) throws IOException {
+		requireNonNull(index, "index");
+		try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(index))) {
+			final int ver = dis.readInt();
+			if (ver != FORMAT_VERSION) {
+				throw new IOException("Unsupported structural index version: " + ver);
+			}
+			final long size = dis.readLong();
+			final int count = dis.readInt();
+			final Map<String, FieldLocation> fields = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				final byte[] b = new byte[dis.readInt()];
+				dis.readFully(b);
+				final long start = dis.readLong();
+				final long end = dis.readLong();
+				final int length = dis.readInt();
+				final int stride = dis.readInt();
+				final int samples = dis.readInt();
+				long[] offsets = null;
+				if (samples > -1) {
+					offsets = new long[samples];
+					for (int j = 0; j < samples; j++) {
+						offsets[j] = dis.readLong();
+					}
+				}
+				fields.put(new String(b, StandardCharsets.UTF_8),
+						new FieldLocation(start, end, length, stride, offsets));
+			}
+			return new StructuralIndex(size, fields);
+		}
+	}
+}
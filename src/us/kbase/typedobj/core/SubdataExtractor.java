@@ -1,15 +1,21 @@
 package us.kbase.typedobj.core;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
@@ -39,9 +45,185 @@ public class SubdataExtractor {
 		extractFields(objpaths, createTokenSequenceProvider(jp), output);
 	}
 	
-	private static void extractFields(SubsetSelection objpaths, TokenSequenceProvider jts, JsonGenerator output) 
-	        throws IOException, TypedObjectExtractionException {
-		//if the selection is empty, we return without adding anything
+	/**
+	 * Extract the fields listed in the selection from a JSON object using a structural index
+	 * of the object, reading only the parts of the object required for the selection. The
+	 * output is identical to that of {@link #extract(SubsetSelection, JsonParser, JsonGenerator)}.
+	 * 
+	 * The index can only be used if the selection selects specific top level fields. If not,
+	 * this method returns false without writing any output and the caller should fall back to
+	 * extracting the fields from the entire object.
+	 * @param objpaths the selection.
+	 * @param index the index of the object.
+	 * @param source the source of the object's bytes.
+	 * @param output the generator to which the selected data will be written.
+	 * @return true if the data was extracted, false if the index cannot be used for the
+	 * selection.
+	 * @throws IOException if an IO error occurs.
+	 * @throws TypedObjectExtractionException if the selection is invalid for the data.
+	 */
+	public static boolean extract(
+			final SubsetSelection objpaths,
+			final StructuralIndex index,
+			final StructuralIndex.RangeSource source,
+			final JsonGenerator output)
+			throws IOException, TypedObjectExtractionException {
+		final SubdataExtractionNode root = buildSelectionTree(objpaths);
+		if (!root.hasChildren() || root.getChildren().containsKey("*")) {
+			return false;
+		}
+		final boolean strictMaps = objpaths.isStrictMaps();
+		final boolean strictArrays = objpaths.isStrictArrays();
+		final List<String> path = new ArrayList<String>();
+		output.writeStartObject();
+		// fields are written in the order they appear in the data, as for a streaming extraction
+		for (final String field: index.getFieldNames()) {
+			final SubdataExtractionNode child = root.getChildren().get(field);
+			if (child == null) {
+				continue;
+			}
+			output.writeFieldName(field);
+			path.add(field);
+			final StructuralIndex.FieldLocation loc = index.getField(field);
+			if (!loc.hasElementIndex() || !extractIndexedElements(
+					source, loc, child, output, path, strictMaps, strictArrays)) {
+				extractRange(source, loc.getStart(), loc.getEnd(), child, output, path,
+						strictMaps, strictArrays);
+			}
+			path.remove(path.size() - 1);
+		}
+		output.writeEndObject();
+		if (strictMaps) {
+			for (final String field: root.getChildren().keySet()) {
+				if (index.getField(field) == null) {
+					throw new TypedObjectExtractionException("Invalid selection: data does not " +
+							"contain a field or key named '" + field + "', at: " +
+							getPathText(path, field));
+				}
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Extract the selected elements of an array with indexed element offsets. Returns false
+	 * without writing anything if the selection can't be processed via the index.
+	 */
+	private static boolean extractIndexedElements(
+			final StructuralIndex.RangeSource source,
+			final StructuralIndex.FieldLocation loc,
+			final SubdataExtractionNode selection,
+			final JsonGenerator jgen,
+			final List<String> path,
+			final boolean strictMaps,
+			final boolean strictArrays)
+			throws IOException, TypedObjectExtractionException {
+		if (!selection.hasChildren() || selection.getChildren().containsKey("[*]")) {
+			return false;
+		}
+		// the streaming extraction only matches keys that are canonical integers
+		final TreeMap<Integer, SubdataExtractionNode> elements = new TreeMap<>();
+		for (final String item: selection.getChildren().keySet()) {
+			final int pos;
+			try {
+				pos = Integer.parseInt(item);
+			} catch (NumberFormatException ex) {
+				return false; // let the streaming extraction produce the error
+			}
+			if (pos >= 0 && pos < loc.getArrayLength() && item.equals("" + pos)) {
+				elements.put(pos, selection.getChildren().get(item));
+			}
+		}
+		jgen.writeStartArray();
+		final int stride = loc.getStride();
+		TokenSequenceProvider jts = null;
+		int next = -1; // the position of the next element to be read from jts
+		try {
+			for (final Entry<Integer, SubdataExtractionNode> e: elements.entrySet()) {
+				final int pos = e.getKey();
+				if (jts == null || pos - next >= stride) {
+					if (jts != null) {
+						jts.close();
+					}
+					jts = openRange(source, loc.getElementOffset(pos), loc.getEnd());
+					next = (pos / stride) * stride;
+				}
+				for (; next < pos; next++) {
+					skipChildren(jts, jts.nextToken());
+				}
+				path.add("" + pos);
+				extractFieldsWithOpenToken(jts, jts.nextToken(), e.getValue(), jgen, path,
+						strictMaps, strictArrays);
+				path.remove(path.size() - 1);
+				next++;
+			}
+		} finally {
+			if (jts != null) {
+				jts.close();
+			}
+		}
+		jgen.writeEndArray();
+		if (strictArrays) {
+			for (final String item: selection.getChildren().keySet()) {
+				final int pos = Integer.parseInt(item);
+				if (!elements.containsKey(pos) || !item.equals("" + pos)) {
+					throw new TypedObjectExtractionException("Invalid selection: no array " +
+							"element exists at position '" + item + "', at: " +
+							getPathText(path, item));
+				}
+			}
+		}
+		return true;
+	}
+	
+	private static void extractRange(
+			final StructuralIndex.RangeSource source,
+			final long start,
+			final long end,
+			final SubdataExtractionNode selection,
+			final JsonGenerator jgen,
+			final List<String> path,
+			final boolean strictMaps,
+			final boolean strictArrays)
+			throws IOException, TypedObjectExtractionException {
+		final TokenSequenceProvider jts = openRange(source, start, end);
+		try {
+			extractFieldsWithOpenToken(jts, jts.nextToken(), selection, jgen, path,
+					strictMaps, strictArrays);
+		} finally {
+			jts.close();
+		}
+	}
+	
+	/*
+	 * Opens a range of the data as the contents of an array, which allows parsing a range of
+	 * array elements and avoids the root level value checks of the parser. The returned
+	 * provider is positioned after the start of the synthetic array.
+	 */
+	private static TokenSequenceProvider openRange(
+			final StructuralIndex.RangeSource source,
+			final long start,
+			final long end)
+			throws IOException {
+		final InputStream in = new SequenceInputStream(
+				new ByteArrayInputStream(ARRAY_START), source.open(start, end - start));
+		final JsonParser jp = RANGE_FACTORY.createParser(in);
+		try {
+			if (jp.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("Structural index does not match the data");
+			}
+		} catch (IOException | RuntimeException e) {
+			jp.close();
+			throw e;
+		}
+		return createTokenSequenceProvider(jp);
+	}
+	
+	private static final byte[] ARRAY_START = {'['};
+	private static final JsonFactory RANGE_FACTORY = new JsonFactory();
+	
+	private static SubdataExtractionNode buildSelectionTree(final SubsetSelection objpaths)
+			throws TypedObjectExtractionException {
 		SubdataExtractionNode root = new SubdataExtractionNode();
 		for (int i = 0; i < objpaths.size(); i++) {
 		    try {
@@ -51,6 +233,13 @@ public class SubdataExtractor {
 		        throw new TypedObjectExtractionException(ex.getMessage(), ex);
 		    }
 		}
+		return root;
+	}
+	
+	private static void extractFields(SubsetSelection objpaths, TokenSequenceProvider jts, JsonGenerator output) 
+	        throws IOException, TypedObjectExtractionException {
+		//if the selection is empty, we return without adding anything
+		SubdataExtractionNode root = buildSelectionTree(objpaths);
 		JsonToken t = jts.nextToken();
 		extractFieldsWithOpenToken(jts, t, root, output, new ArrayList<String>(), 
 		        objpaths.isStrictMaps(), objpaths.isStrictArrays());
@@ -5,11 +5,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
@@ -68,12 +73,20 @@ public class TypedObjectValidator {
 	
 	private static final int maxErrorCount = 10;
 	
+	private static final int DEFAULT_SCHEMA_CACHE_SIZE = 100;
+	
 	/**
 	 * This object is used to fetch the typed object Json Schema documents and
 	 * JsonSchema objects which are used for validation
 	 */
 	protected TypeProvider typeProvider;
 	
+	/* Parsed schemas are immutable once parsed and may be shared between threads. The schema
+	 * for an absolute type ID never changes, so entries are only removed when the cache is
+	 * full or the type's module is released.
+	 */
+	private final LoadingCache<AbsoluteTypeDefId, JsonTokenValidationSchema> schemaCache;
+	
 	
 	/**
 	 * Get the type provider the validator validates typed object instances against.
@@ -88,7 +101,67 @@ public class TypedObjectValidator {
 	 * Construct a TypedObjectValidator set to the specified Typed Provider
 	 */
 	public TypedObjectValidator(TypeProvider typeProvider) {
+		this(typeProvider, DEFAULT_SCHEMA_CACHE_SIZE);
+	}
+	
+	/**
+	 * Construct a TypedObjectValidator set to the specified Typed Provider.
+	 * @param typeProvider the type provider.
+	 * @param schemaCacheSize the maximum number of parsed type schemas to cache.
+	 */
+	public TypedObjectValidator(final TypeProvider typeProvider, final int schemaCacheSize) {
+		if (schemaCacheSize < 1) {
+			throw new IllegalArgumentException("schemaCacheSize must be at least 1");
+		}
 		this.typeProvider = typeProvider;
+		schemaCache = CacheBuilder.newBuilder().maximumSize(schemaCacheSize).build(
+				new CacheLoader<AbsoluteTypeDefId, JsonTokenValidationSchema>() {
+					@Override
+					public JsonTokenValidationSchema load(final AbsoluteTypeDefId type)
+							throws NoSuchTypeException, NoSuchModuleException,
+							TypeStorageException, TypedObjectSchemaException {
+						return JsonTokenValidationSchema.parseJsonSchema(
+								TypedObjectValidator.this.typeProvider.getTypeJsonSchema(type));
+					}
+				});
+	}
+	
+	/** Remove any cached schemas for the types in a module. Should be called when a module is
+	 * released.
+	 * @param moduleName the name of the module.
+	 */
+	public void invalidateModule(final String moduleName) {
+		for (final AbsoluteTypeDefId type: schemaCache.asMap().keySet()) {
+			if (type.getType().getModule().equals(moduleName)) {
+				schemaCache.invalidate(type);
+			}
+		}
+	}
+	
+	private JsonTokenValidationSchema getSchema(final AbsoluteTypeDefId type)
+			throws NoSuchTypeException, NoSuchModuleException, TypeStorageException,
+			TypedObjectSchemaException {
+		try {
+			return schemaCache.get(type);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof NoSuchTypeException) {
+				throw (NoSuchTypeException) cause;
+			} else if (cause instanceof NoSuchModuleException) {
+				throw (NoSuchModuleException) cause;
+			} else if (cause instanceof TypeStorageException) {
+				throw (TypeStorageException) cause;
+			} else if (cause instanceof TypedObjectSchemaException) {
+				throw (TypedObjectSchemaException) cause;
+			} else {
+				throw new TypeStorageException(cause.getMessage(), cause);
+			}
+		} catch (UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
 	}
 	
 	
@@ -175,9 +248,7 @@ public class TypedObjectValidator {
 		
 		// Actually perform the validation and return the report
 		final List<String> errors = new ArrayList<String>();
-		String schemaText = typeProvider.getTypeJsonSchema(absoluteTypeDefId);
-		final JsonTokenValidationSchema schema =
-				JsonTokenValidationSchema.parseJsonSchema(schemaText);
+		final JsonTokenValidationSchema schema = getSchema(absoluteTypeDefId);
 		
 		// these must be arrays to get the inner class def override to work
 		final JsonNode [] metadataSelection = new JsonNode[] {null};
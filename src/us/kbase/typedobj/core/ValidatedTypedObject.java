@@ -3,6 +3,7 @@ package us.kbase.typedobj.core;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -10,6 +11,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -17,6 +20,10 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.ThresholdingOutputStream;
+
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
 import us.kbase.common.utils.CountingOutputStream;
@@ -89,6 +96,15 @@ public class ValidatedTypedObject implements Restreamable {
 	
 	private File fileCache = null;
 	
+	// the relabeled, possibly unsorted, object kept by relabel() for use by sort()
+	private byte[] relabeledByteCache = null;
+	private File relabeledFileCache = null;
+	// the MD5 of the relabeled object. Only the MD5 of the object if naturally sorted.
+	private MD5 relabeledMD5 = null;
+	// the metadata extracted by relabel(), if any.
+	private ExtractedMetadata relabeledMetadata = null;
+	private MetadataExtractionHandler relabeledMetadataHandler = null;
+	
 	private final JsonTokenValidationSchema schema;
 	
 	/**
@@ -175,16 +191,56 @@ public class ValidatedTypedObject implements Restreamable {
 		}
 	}
 	
+	/** Get an input stream containing a range of the relabeled, sorted object. sort() must
+	 * be called before calling this method. The range is read directly from its position in
+	 * the object, rather than by reading and discarding the preceding data.
+	 * 
+	 * The caller of this method is responsible for closing the stream.
+	 * @param offset the position of the start of the range.
+	 * @param length the length of the range. The stream ends early if the range extends past
+	 * the end of the object.
+	 * @return an input stream containing the range.
+	 * @throws IOException if an IO error occurs, including if the offset is past the end of
+	 * the object.
+	 */
+	@Override
+	public InputStream getInputStream(final long offset, final long length)
+			throws IOException {
+		if (byteCache == null && fileCache == null) {
+			throw new IllegalStateException(
+					"You must call sort() prior to accessing the object data.");
+		}
+		if (offset < 0 || length < 0) {
+			throw new IllegalArgumentException("offset and length must be at least zero");
+		}
+		if (byteCache != null) {
+			if (offset > byteCache.length) {
+				throw new EOFException("offset is past the end of the object");
+			}
+			return new ByteArrayInputStream(byteCache, (int) offset,
+					(int) Math.min(length, byteCache.length - offset));
+		}
+		final FileChannel channel = FileChannel.open(fileCache.toPath());
+		try {
+			if (offset > channel.size()) {
+				throw new EOFException("offset is past the end of the object");
+			}
+			channel.position(offset);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		return new BufferedInputStream(new BoundedInputStream(
+				Channels.newInputStream(channel), length));
+	}
+	
 	/** Calculate the size of the object, in bytes, when ids have been
 	 * remapped.
 	 * @return the size of the object after id remapping.
 	 * @throws IOException if an IO error occurs.
 	 */
 	public long calculateRelabeledSize() throws IOException {
-		if (!idHandler.wereIdsProcessed()) {
-			throw new IllegalStateException(
-					"Must process IDs in handler prior to relabling");
-		}
+		checkIdsProcessed();
 		if (size > -1) {
 			return size;
 		}
@@ -196,6 +252,127 @@ public class ValidatedTypedObject implements Restreamable {
 		return this.size;
 	}
 	
+	private void checkIdsProcessed() {
+		if (!idHandler.wereIdsProcessed()) {
+			throw new IllegalStateException(
+					"Must process IDs in handler prior to relabling");
+		}
+	}
+	
+	/** Relabel IDs, calculate the size of the relabeled object, determine whether the object
+	 * is naturally sorted, calculate the object's MD5 if so, and extract the object's metadata,
+	 * all in a single pass over the object.
+	 * 
+	 * The relabeled object is kept so that a subsequent call to
+	 * {@link #sort(UTF8JsonSorterFactory, TempFilesManager)} does not need to relabel the
+	 * object again. If the object is naturally sorted, the relabeled object is the sorted
+	 * object and sort() does no further work. Otherwise the relabeled object is the input to
+	 * the sorter.
+	 * 
+	 * The relabeled object is kept in memory if its size is no greater than maxMemory, and in
+	 * a temporary file otherwise. If tfm is null, an object too large to keep in memory is
+	 * not kept and sort() will relabel the object again.
+	 * @param maxMemory the maximum size of the relabeled object to keep in memory.
+	 * @param tfm the temporary file manager to use for objects too large to keep in memory.
+	 * @return the size of the object after id remapping.
+	 * @throws IOException if an IO error occurs.
+	 */
+	public long relabel(final long maxMemory, final TempFilesManager tfm) throws IOException {
+		checkIdsProcessed();
+		if (maxMemory < 0) {
+			throw new IllegalArgumentException("maxMemory must be at least 0");
+		}
+		destroyCachedResources();
+		final MessageDigest digest = getMD5Digest();
+		final RelabelCacheOutputStream cache = new RelabelCacheOutputStream(maxMemory, tfm);
+		final MetadataExtractionHandler metaHandler = isInstanceValid() ?
+				new MetadataExtractionHandler(wsMetadataSelection, Long.MAX_VALUE) : null;
+		ExtractedMetadata meta = null;
+		final IdRefTokenSequenceProvider idSubst = new IdRefTokenSequenceProvider(
+				tokenStreamProvider.getPlacedStream(), schema, idHandler);
+		try {
+			try (final JsonGenerator jgen = new JsonFactory().createGenerator(
+					new DigestOutputStream(cache, digest))) {
+				final CopyingTokenSequenceProvider copier =
+						new CopyingTokenSequenceProvider(idSubst, jgen);
+				if (metaHandler != null) {
+					meta = MetadataExtractor.extractFields(copier, metaHandler);
+				}
+				copier.copyRemaining();
+			}
+		} catch (ExceededMaxMetadataSizeException e) {
+			cache.destroy();
+			throw new RuntimeException("Metadata size is unlimited, this can't happen", e);
+		} catch (IOException | RuntimeException | Error e) {
+			cache.destroy();
+			throw e;
+		} finally {
+			idSubst.close();
+		}
+		size = cache.getByteCount();
+		naturallySorted = idSubst.isSorted();
+		relabeledMD5 = getMD5fromDigest(digest);
+		relabeledByteCache = cache.getData();
+		relabeledFileCache = cache.getFile();
+		relabeledMetadata = meta;
+		relabeledMetadataHandler = metaHandler;
+		return size;
+	}
+	
+	/* Keeps data in memory up to a threshold, and then switches to a temporary file if
+	 * available or discards the data otherwise.
+	 */
+	private static class RelabelCacheOutputStream extends ThresholdingOutputStream {
+		
+		private final TempFilesManager tfm;
+		private ByteArrayOutputStream mem = new ByteArrayOutputStream();
+		private OutputStream current = mem;
+		private File file = null;
+		
+		private RelabelCacheOutputStream(final long threshold, final TempFilesManager tfm) {
+			super((int) Math.min(threshold, Integer.MAX_VALUE));
+			this.tfm = tfm;
+		}
+
+		@Override
+		protected OutputStream getStream() {
+			return current;
+		}
+
+		@Override
+		protected void thresholdReached() throws IOException {
+			if (tfm == null) {
+				current = new NullOutputStream();
+			} else {
+				file = tfm.generateTempFile("relabelout", "json");
+				current = new FileOutputStream(file);
+				mem.writeTo(current);
+			}
+			mem = null;
+		}
+		
+		private byte[] getData() {
+			return mem == null ? null : mem.toByteArray();
+		}
+		
+		private File getFile() {
+			return file;
+		}
+		
+		private void destroy() {
+			try {
+				current.close();
+			} catch (IOException e) {
+				// nothing to be done
+			}
+			mem = null;
+			if (file != null) {
+				file.delete();
+				file = null;
+			}
+		}
+	}
+	
 	
 	/** Get the size of the object, in bytes, when ids have been remapped.
 	 * calculateRelabledSize() must have been called previously, either
@@ -278,6 +455,10 @@ public class ValidatedTypedObject implements Restreamable {
 		if (fac == null) {
 			throw new NullPointerException("Sorter factory cannot be null");
 		}
+		if (relabeledByteCache != null || relabeledFileCache != null) {
+			sortRelabeled(fac, tfm);
+			return;
+		}
 		if (size < 0) {
 			calculateRelabeledSize();
 		}
@@ -337,12 +518,63 @@ public class ValidatedTypedObject implements Restreamable {
 		md5 = getMD5fromDigest(digest);
 	}
 	
+	// sorts the object kept by relabel() and then discards it.
+	private void sortRelabeled(final UTF8JsonSorterFactory fac, final TempFilesManager tfm)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		destroySortedCache();
+		if (naturallySorted) {
+			// the relabeled object is the sorted object
+			byteCache = relabeledByteCache;
+			fileCache = relabeledFileCache;
+			relabeledByteCache = null;
+			relabeledFileCache = null;
+			md5 = relabeledMD5;
+			return;
+		}
+		final MessageDigest digest = getMD5Digest();
+		try {
+			if (tfm == null) {
+				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+				writeSortedRelabeledCache(fac, new DigestOutputStream(baos, digest));
+				byteCache = baos.toByteArray();
+			} else {
+				fileCache = tfm.generateTempFile("sortout", "json");
+				try (final OutputStream os = new FileOutputStream(fileCache)) {
+					writeSortedRelabeledCache(fac, new DigestOutputStream(os, digest));
+				} catch (IOException | KeyDuplicationException |
+						TooManyKeysException | RuntimeException | Error e) {
+					destroySortedCache();
+					throw e;
+				}
+			}
+		} finally {
+			destroyRelabeledCache();
+		}
+		md5 = getMD5fromDigest(digest);
+	}
+	
+	private void writeSortedRelabeledCache(
+			final UTF8JsonSorterFactory fac,
+			final OutputStream os)
+			throws IOException, KeyDuplicationException, TooManyKeysException {
+		if (relabeledByteCache != null) {
+			fac.getSorter(relabeledByteCache).writeIntoStream(os);
+		} else {
+			fac.getSorter(relabeledFileCache).writeIntoStream(os);
+		}
+	}
+	
 	/** Destroy any cached resources created by this class and allow garbage
 	 * collection of in-memory caches. This method must be called before
 	 * program exit or temporary files may be left on disk. The caches will be
 	 * recreated as necessary. 
 	 */
 	public void destroyCachedResources() {
+		destroySortedCache();
+		destroyRelabeledCache();
+	}
+	
+	private void destroySortedCache() {
 		this.byteCache = null;
 		if (this.fileCache != null) {
 			this.fileCache.delete();
@@ -350,6 +582,14 @@ public class ValidatedTypedObject implements Restreamable {
 		}
 	}
 	
+	private void destroyRelabeledCache() {
+		this.relabeledByteCache = null;
+		if (this.relabeledFileCache != null) {
+			this.relabeledFileCache.delete();
+			this.relabeledFileCache = null;
+		}
+	}
+	
 	private void relabelWsIdReferencesIntoWriter(final OutputStream os)
 			throws IOException {
 		relabelWsIdReferencesIntoGenerator(
@@ -464,6 +704,11 @@ public class ValidatedTypedObject implements Restreamable {
 		if (!isInstanceValid()) {
 			return new ExtractedMetadata(null);
 		}
+		if (relabeledMetadataHandler != null) {
+			// already extracted by relabel()
+			relabeledMetadataHandler.checkSavedMetadataSize(maxMetadataSize);
+			return relabeledMetadata;
+		}
 		final MetadataExtractionHandler handler =
 				new MetadataExtractionHandler(wsMetadataSelection,
 						maxMetadataSize);
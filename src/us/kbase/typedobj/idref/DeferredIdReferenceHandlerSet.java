@@ -0,0 +1,156 @@
+package us.kbase.typedobj.idref;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/** An ID handler set that allows the IDs in a typed object to be collected independently of,
+ * and concurrently with, the IDs in other typed objects that will eventually be processed as
+ * a batch in a shared handler set.
+ *
+ * IDs are added to a local handler set, which checks the IDs and enforces the maximum ID count
+ * for the object, and recorded. Once the object has been processed, call
+ * {@link #addIdsToTarget()} to add the recorded IDs to the shared target handler set. From
+ * that point on, all methods delegate to the target set, so a typed object that was validated
+ * against this set can be relabeled with the IDs remapped by the target set.
+ *
+ * This class is not thread safe, but instances may be used in different threads as long as
+ * {@link #addIdsToTarget()} is called serially for all the instances with the same target.
+ * @param <T> the type of the object to be associated with IDs.
+ */
+public class DeferredIdReferenceHandlerSet<T> extends IdReferenceHandlerSet<T> {
+
+	private final IdReferenceHandlerSet<T> local;
+	private final IdReferenceHandlerSet<T> target;
+	private final List<AssociatedId<T>> ids = new LinkedList<>();
+	private T associated = null;
+	private boolean added = false;
+
+	private static class AssociatedId<T> {
+
+		private final T associatedObject;
+		private final IdReference<String> id;
+
+		private AssociatedId(final T associatedObject, final IdReference<String> id) {
+			this.associatedObject = associatedObject;
+			this.id = id;
+		}
+	}
+
+	/** Create the handler set.
+	 * @param local the handler set to which IDs are added as they are found. This set must
+	 * not be shared with any other objects and is never processed.
+	 * @param target the shared handler set to which the IDs will be added by
+	 * {@link #addIdsToTarget()}.
+	 */
+	public DeferredIdReferenceHandlerSet(
+			final IdReferenceHandlerSet<T> local,
+			final IdReferenceHandlerSet<T> target) {
+		super(requireNonNull(local, "local").getMaximumIdCount(), Collections.emptyMap());
+		this.local = local;
+		this.target = requireNonNull(target, "target");
+	}
+
+	private IdReferenceHandlerSet<T> current() {
+		return added ? target : local;
+	}
+
+	@Override
+	public boolean hasHandler(final IdReferenceType idType) {
+		return current().hasHandler(idType);
+	}
+
+	@Override
+	public IdReferenceHandlerSet<T> associateObject(final T object) {
+		checkNotAdded();
+		local.associateObject(object);
+		associated = object;
+		return this;
+	}
+
+	@Override
+	public void addStringId(final IdReference<String> id)
+			throws TooManyIdsException, IdReferenceHandlerException {
+		checkNotAdded();
+		local.addStringId(id);
+		ids.add(new AssociatedId<>(associated, id));
+	}
+
+	private void checkNotAdded() {
+		if (added) {
+			throw new IllegalStateException(
+					"This ID handler set instance's IDs have been added to the target set");
+		}
+	}
+
+	/** Add the IDs collected by this set to the target set, in the order they were collected.
+	 * This method may only be called once.
+	 * @throws TooManyIdsException if adding the IDs causes the target set to exceed its
+	 * maximum ID count.
+	 * @throws IdReferenceHandlerException if the target set could not handle an ID.
+	 */
+	public void addIdsToTarget() throws TooManyIdsException, IdReferenceHandlerException {
+		checkNotAdded();
+		added = true;
+		for (final AssociatedId<T> id: ids) {
+			target.associateObject(id.associatedObject);
+			target.addStringId(id.id);
+		}
+		ids.clear();
+	}
+
+	/** Check if the IDs collected by this set have been added to the target set.
+	 * @return true if {@link #addIdsToTarget()} has been called.
+	 */
+	public boolean wereIdsAddedToTarget() {
+		return added;
+	}
+
+	@Override
+	public IdReferenceHandlerSet<T> processIDs() throws IdReferenceHandlerException {
+		if (!added) {
+			throw new IllegalStateException(
+					"IDs must be added to the target set before processing");
+		}
+		target.processIDs();
+		return this;
+	}
+
+	@Override
+	public boolean wereIdsProcessed() {
+		return added && target.wereIdsProcessed();
+	}
+
+	@Override
+	public Set<IdReferenceType> getIDTypes() {
+		return current().getIDTypes();
+	}
+
+	@Override
+	public RemappedId getRemappedId(final IdReferenceType idType, final String oldId) {
+		return current().getRemappedId(idType, oldId);
+	}
+
+	@Override
+	public Set<RemappedId> getRemappedIds(final IdReferenceType idType, final T associatedObject) {
+		return current().getRemappedIds(idType, associatedObject);
+	}
+
+	@Override
+	public int size() {
+		return current().size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return current().isEmpty();
+	}
+
+	@Override
+	public int getMaximumIdCount() {
+		return current().getMaximumIdCount();
+	}
+}
@@ -229,6 +229,27 @@ public class MetadataExtractionTest {
 		}
 		assertTrue("  -("+instance.resourceName+") does not validate, but should",
 				report.isInstanceValid());
+		checkMetadata(report, maxMetadataSizeLong, expectedMetadata, exception);
+		
+		// check the metadata extracted while relabeling is the same. Don't keep the relabeled
+		// data to check metadata is extracted regardless.
+		han = fac.createHandlers(String.class).associateObject("foo");
+		report = validator.validate(
+				instanceRootNode,
+				new TypeDefId(new TypeDefName(instance.moduleName,instance.typeName)),
+				han);
+		han.processIDs();
+		report.relabel(0, null);
+		checkMetadata(report, maxMetadataSizeLong, expectedMetadata, exception);
+		System.out.println("       PASS");
+	}
+
+	private void checkMetadata(
+			final ValidatedTypedObject report,
+			final long maxMetadataSizeLong,
+			final JsonNode expectedMetadata,
+			final JsonNode exception)
+			throws Exception {
 		try {
 			ExtractedMetadata extraction = report.extractMetadata(maxMetadataSizeLong);
 			Map<String, String> actualMetadata = extraction.getMetadata();
@@ -246,7 +267,6 @@ public class MetadataExtractionTest {
 						exceptionName, exception.asText());
 			}
 		}
-		System.out.println("       PASS");
 	}
 
 	public void compare(JsonNode expectedSubset, Map<String, String> actualMetadata, String resourceName) throws IOException {
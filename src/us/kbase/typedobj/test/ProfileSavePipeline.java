@@ -0,0 +1,175 @@
+package us.kbase.typedobj.test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import us.kbase.common.service.JsonTokenStream;
+import us.kbase.common.service.UObject;
+import us.kbase.common.utils.sortjson.UTF8JsonSorterFactory;
+import us.kbase.typedobj.core.LocalTypeProvider;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.db.FileTypeStorage;
+import us.kbase.typedobj.db.TypeDefinitionDB;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.typedobj.idref.IdReferenceType;
+
+/** Compares the CPU time and temporary file usage of preparing a large object for saving
+ * with separate relabel, sort and metadata extraction passes against the single relabel pass
+ * provided by {@link ValidatedTypedObject#relabel(long, TempFilesManager)}.
+ *
+ * Arguments are the approximate object size in MB (default 100), the number of runs
+ * (default 3), and whether the object's keys need sorting after relabeling (default false).
+ * The temporary files are always used, as the workspace does for large saves.
+ */
+public class ProfileSavePipeline {
+
+	private static final String MODULE = "SavePipeline";
+	private static final TypeDefId TYPE = new TypeDefId(MODULE + ".Genome");
+	private static final String USER = "someUser";
+	private static final int REFS = 1000;
+
+	private static final UTF8JsonSorterFactory SORT_FAC =
+			new UTF8JsonSorterFactory(100 * 1024 * 1024);
+
+	public static void main(final String[] args) throws Exception {
+		final int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		final boolean needsSort = args.length > 2 ? Boolean.parseBoolean(args[2]) : false;
+
+		final Path tempdir = Files.createTempDirectory("ProfileSavePipeline");
+		try {
+			final Path storagedir = tempdir.resolve("typestorage");
+			Files.createDirectories(storagedir);
+			final TypeDefinitionDB db = new TypeDefinitionDB(
+					new FileTypeStorage(storagedir.toFile().getAbsolutePath()));
+			final String spec =
+					"module " + MODULE + " {" +
+						"/* @id ws\n */" +
+						"typedef string ref;" +
+						"/* @metadata ws name\n" +
+						" * @metadata ws length(features) as features\n" +
+						" */" +
+						"typedef structure {" +
+							"string name;" +
+							"mapping<ref, string> refs;" +
+							"list<string> features;" +
+						"} Genome;" +
+					"};";
+			db.requestModuleRegistration(MODULE, USER);
+			db.approveModuleRegistrationRequest(USER, MODULE, true);
+			db.registerModule(spec, Arrays.asList("Genome"), USER);
+			db.releaseModule(MODULE, USER, false);
+			final TypedObjectValidator validator = new TypedObjectValidator(
+					new LocalTypeProvider(db));
+
+			final File data = tempdir.resolve("data.json").toFile();
+			final Map<String, String> refmap = writeData(data, sizeMB, needsSort);
+			System.out.println(String.format("Object size: %s bytes, needs sort: %s",
+					data.length(), needsSort));
+
+			final TempFilesManager tfm = new TempFilesManager(
+					tempdir.resolve("temp").toFile());
+			final List<File> tempFiles = new LinkedList<>();
+			tfm.addListener(f -> tempFiles.add(f));
+
+			for (int i = 0; i < runs; i++) {
+				for (final boolean fused: Arrays.asList(false, true)) {
+					tempFiles.clear();
+					final ValidatedTypedObject vto = validate(validator, data, refmap);
+					final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+					final long cpu = bean.getCurrentThreadCpuTime();
+					final long wall = System.nanoTime();
+					if (fused) {
+						vto.relabel(0, tfm);
+					} else {
+						vto.calculateRelabeledSize();
+					}
+					vto.sort(SORT_FAC, tfm);
+					final Map<String, String> meta = vto.extractMetadata(16000).getMetadata();
+					final long cpuMS = (bean.getCurrentThreadCpuTime() - cpu) / 1000000;
+					final long wallMS = (System.nanoTime() - wall) / 1000000;
+					vto.destroyCachedResources();
+					System.out.println(String.format(
+							"%s: cpu %s ms, wall %s ms, temp files written %s, metadata %s",
+							fused ? "single pass" : "separate passes",
+							cpuMS, wallMS, tempFiles.size(), meta));
+				}
+			}
+		} finally {
+			FileUtils.deleteDirectory(tempdir.toFile());
+		}
+	}
+
+	private static ValidatedTypedObject validate(
+			final TypedObjectValidator validator,
+			final File data,
+			final Map<String, String> refmap)
+			throws Exception {
+		final IdReferenceHandlerSetFactory fac = IdReferenceHandlerSetFactoryBuilder
+				.getBuilder(REFS * 2).build().getFactory(null);
+		fac.addFactory(new DummyIdHandlerFactory(new IdReferenceType("ws"), refmap));
+		final IdReferenceHandlerSet<String> handlers =
+				fac.createHandlers(String.class).associateObject("foo");
+		final ValidatedTypedObject vto = validator.validate(
+				new UObject(new JsonTokenStream(data)), TYPE, handlers);
+		if (!vto.isInstanceValid()) {
+			throw new IllegalStateException("Invalid data: " + vto.getErrorMessages());
+		}
+		handlers.processIDs();
+		return vto;
+	}
+
+	/* Writes the object and returns the ID mapping. If needsSort is true the references
+	 * are remapped in reverse order.
+	 */
+	private static Map<String, String> writeData(
+			final File data,
+			final int sizeMB,
+			final boolean needsSort)
+			throws Exception {
+		final Map<String, String> refmap = new HashMap<>();
+		final String feature = "feature " + new String(new char[200]).replace('\0', 'x');
+		final long features = sizeMB * 1024L * 1024L / (feature.length() + 10);
+		try (final JsonGenerator jgen = new JsonFactory().createGenerator(
+				data, JsonEncoding.UTF8)) {
+			jgen.writeStartObject();
+			jgen.writeFieldName("features");
+			jgen.writeStartArray();
+			for (long i = 0; i < features; i++) {
+				jgen.writeString(feature + i);
+			}
+			jgen.writeEndArray();
+			jgen.writeStringField("name", "big genome");
+			jgen.writeFieldName("refs");
+			jgen.writeStartObject();
+			for (int i = 0; i < REFS; i++) {
+				final String ref = String.format("1/%05d/1", i);
+				final String val = String.format("1/%05d/1", needsSort ? REFS - i : i);
+				refmap.put(ref, val);
+				jgen.writeStringField(ref, "value " + i);
+			}
+			jgen.writeEndObject();
+			jgen.writeEndObject();
+		}
+		return refmap;
+	}
+}
@@ -0,0 +1,221 @@
+package us.kbase.typedobj.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.common.service.JsonTokenStream;
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.StructuralIndex;
+import us.kbase.typedobj.core.StructuralIndex.FieldLocation;
+import us.kbase.typedobj.core.SubdataExtractor;
+import us.kbase.typedobj.core.SubsetSelection;
+
+public class StructuralIndexTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static byte[] largeObject() throws Exception {
+		final Map<String, Object> obj = new LinkedHashMap<>();
+		obj.put("a", "str é中 \"quoted\"");
+		final List<Object> features = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			final Map<String, Object> f = new LinkedHashMap<>();
+			f.put("id", "feature" + i);
+			f.put("loc", Arrays.asList(i, i * 1.5));
+			features.add(f);
+		}
+		obj.put("features", features);
+		obj.put("n", 42);
+		obj.put("small", Arrays.asList(1, 2, 3));
+		final Map<String, Object> map = new LinkedHashMap<>();
+		map.put("x", 1);
+		map.put("y", Arrays.asList(true, null));
+		obj.put("map", map);
+		obj.put("z", 1.25);
+		// whitespace between tokens must not affect the offsets
+		return (MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(obj) + "\n  ")
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String range(final byte[] data, final FieldLocation loc) {
+		return new String(data, (int) loc.getStart(), (int) (loc.getEnd() - loc.getStart()),
+				StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void build() throws Exception {
+		final byte[] data = largeObject();
+		final StructuralIndex idx = StructuralIndex.build(new ByteArrayInputStream(data));
+		checkIndex(idx, data);
+		checkIndex(StructuralIndex.fromBytes(idx.toBytes()), data);
+	}
+
+	private void checkIndex(final StructuralIndex idx, final byte[] data) throws Exception {
+		assertThat("incorrect size", idx.getSize(), is((long) data.length));
+		assertThat("incorrect fields", new ArrayList<>(idx.getFieldNames()),
+				is(Arrays.asList("a", "features", "n", "small", "map", "z")));
+		assertThat("incorrect a", range(data, idx.getField("a")),
+				is("\"str é中 \\\"quoted\\\"\""));
+		assertThat("incorrect n", range(data, idx.getField("n")), is("42"));
+		assertThat("incorrect z", range(data, idx.getField("z")), is("1.25"));
+		assertThat("incorrect map", MAPPER.readTree(range(data, idx.getField("map"))),
+				is(MAPPER.readTree("{\"x\": 1, \"y\": [true, null]}")));
+		assertThat("incorrect small idx", idx.getField("small").hasElementIndex(), is(false));
+		assertThat("incorrect small len", idx.getField("small").getArrayLength(), is(-1));
+		assertThat("incorrect missing", idx.getField("b"), nullValue());
+
+		final FieldLocation f = idx.getField("features");
+		assertThat("incorrect features idx", f.hasElementIndex(), is(true));
+		assertThat("incorrect features len", f.getArrayLength(), is(20000));
+		assertThat("incorrect features stride", f.getStride(), is(4));
+		final String features = range(data, f);
+		assertThat("incorrect features", features.startsWith("["), is(true));
+		assertThat("incorrect features", features.endsWith("]"), is(true));
+		for (final int el: Arrays.asList(0, 3, 4, 9999, 19999)) {
+			final String elstart = new String(data, (int) f.getElementOffset(el), 30,
+					StandardCharsets.UTF_8);
+			final int expected = (el / 4) * 4;
+			assertThat("incorrect element offset " + el, elstart.replaceAll("\\s", "")
+					.startsWith("{\"id\":\"feature" + expected + "\""), is(true));
+		}
+	}
+
+	@Test
+	public void buildNotIndexable() throws Exception {
+		for (final String json: Arrays.asList("[1, 2]", "\"foo\"", "{\"a\": 1, \"a\": 2}")) {
+			assertThat("incorrect index for " + json, StructuralIndex.build(
+					new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))),
+					nullValue());
+		}
+	}
+
+	@Test
+	public void buildFail() throws Exception {
+		for (final String json: Arrays.asList("{\"a\": [1, 2", "{\"a\": 1")) {
+			try {
+				StructuralIndex.build(new ByteArrayInputStream(
+						json.getBytes(StandardCharsets.UTF_8)));
+				fail("expected exception");
+			} catch (Exception got) {
+				assertThat("incorrect exception for " + json,
+						got instanceof IOException, is(true));
+			}
+		}
+	}
+
+	@Test
+	public void fromBytesFail() throws Exception {
+		try {
+			StructuralIndex.fromBytes(new byte[] {0, 0, 0, 2});
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IOException(
+					"Unsupported structural index version: 2"));
+		}
+	}
+
+	@Test
+	public void extractMatchesStreaming() throws Exception {
+		final byte[] data = largeObject();
+		final StructuralIndex idx = StructuralIndex.build(new ByteArrayInputStream(data));
+
+		checkExtract(data, idx, true, "/a");
+		checkExtract(data, idx, true, "/z", "/n", "/a");
+		checkExtract(data, idx, true, "/features/3015");
+		checkExtract(data, idx, true, "/features/19999/loc", "/features/0/id",
+				"/features/4/id", "/features/5", "/features/6", "/features/11");
+		checkExtract(data, idx, true, "/features/3/id", "/map/y");
+		checkExtract(data, idx, true, "/features/[*]/id");
+		checkExtract(data, idx, true, "/small/1", "/map/*");
+		checkExtract(data, idx, true, "/b", "/n");
+		// not handled by the index
+		checkExtract(data, idx, false, "/*");
+		checkExtract(data, idx, false, "/");
+	}
+
+	@Test
+	public void extractFailMatchesStreaming() throws Exception {
+		final byte[] data = largeObject();
+		final StructuralIndex idx = StructuralIndex.build(new ByteArrayInputStream(data));
+
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/n", "/b"), true, true));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/features/20000")));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/features/-1")));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/features/01")));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/features/foo")));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/features/2/id/x")));
+		checkExtractFail(data, idx, new SubsetSelection(Arrays.asList("/a/x")));
+	}
+
+	private void checkExtract(
+			final byte[] data,
+			final StructuralIndex idx,
+			final boolean expectIndexed,
+			final String... paths)
+			throws Exception {
+		final SubsetSelection sel = new SubsetSelection(Arrays.asList(paths));
+		final ByteArrayOutputStream indexed = new ByteArrayOutputStream();
+		try (final JsonGenerator jgen = MAPPER.getFactory().createGenerator(indexed)) {
+			assertThat("incorrect indexed for " + sel, SubdataExtractor.extract(
+					sel, idx, (o, l) -> new ByteArrayInputStream(data, (int) o, (int) l), jgen),
+					is(expectIndexed));
+		}
+		if (expectIndexed) {
+			assertThat("incorrect extraction for " + sel, indexed.toString("UTF-8"),
+					is(extractStreaming(data, sel)));
+		} else {
+			assertThat("incorrect output for " + sel, indexed.size(), is(0));
+		}
+	}
+
+	private String extractStreaming(final byte[] data, final SubsetSelection sel)
+			throws Exception {
+		final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		try (final JsonGenerator jgen = MAPPER.getFactory().createGenerator(streamed);
+				final JsonTokenStream jts = new JsonTokenStream(data)) {
+			SubdataExtractor.extract(sel, jts.setRoot(null), jgen);
+		}
+		return streamed.toString("UTF-8");
+	}
+
+	private void checkExtractFail(
+			final byte[] data,
+			final StructuralIndex idx,
+			final SubsetSelection sel)
+			throws Exception {
+		Exception expected = null;
+		try {
+			extractStreaming(data, sel);
+			fail("expected exception");
+		} catch (Exception e) {
+			expected = e;
+		}
+		try (final JsonGenerator jgen = MAPPER.getFactory().createGenerator(
+				new ByteArrayOutputStream())) {
+			if (!SubdataExtractor.extract(sel, idx,
+					(o, l) -> new ByteArrayInputStream(data, (int) o, (int) l), jgen)) {
+				fail("expected index extraction for " + sel);
+			}
+			fail("expected exception for " + sel);
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -4,8 +4,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -295,6 +297,53 @@ public class TypedObjectValidationReportTest {
 		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
 	}
 
+	@Test
+	public void getInputStreamRange() throws Exception {
+		final String json = "{\"m\": {\"c\": \"a\", \"z\": \"d\"}}";
+		final Map<String, String> refmap = new HashMap<String, String>();
+		refmap.put("z", "y");
+		refmap.put("d", "whoop");
+		refmap.put("c", "c");
+		refmap.put("a", "a");
+		
+		final IdReferenceHandlerSetFactory fac = getFac(100);
+		fac.addFactory(new DummyIdHandlerFactory(new IdReferenceType("ws"), refmap));
+		final TempFilesManager tfm = new TempFilesManager(new File(TestCommon.getTempDir()));
+		tfm.cleanup();
+		
+		// in memory, and then in a file
+		for (final TempFilesManager t: Arrays.asList(null, tfm)) {
+			final IdReferenceHandlerSet<String> handlers =
+					fac.createHandlers(String.class).associateObject("foo");
+			final ValidatedTypedObject tovr = validator.validate(json,
+					new TypeDefId("TestIDMap.IDMap"), handlers);
+			handlers.processIDs();
+			tovr.sort(SORT_FAC, t);
+			assertThat("Temp files manager is empty", tfm.isEmpty(), is(t == null));
+			
+			assertThat("incorrect range", getRange(tovr, 0, 5), is("{\"m\":"));
+			assertThat("incorrect range", getRange(tovr, 5, 10), is("{\"c\":\"a\",\"y"));
+			assertThat("incorrect range", getRange(tovr, 20, 100), is("hoop\"}}"));
+			assertThat("incorrect range", getRange(tovr, 27, 5), is(""));
+			try {
+				tovr.getInputStream(28, 1);
+				fail("expected exception");
+			} catch (IOException got) {
+				TestCommon.assertExceptionCorrect(got, new EOFException(
+						"offset is past the end of the object"));
+			}
+			tovr.destroyCachedResources();
+			assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		}
+	}
+	
+	private String getRange(final ValidatedTypedObject tovr, final long offset, final long length)
+			throws IOException {
+		try (final InputStream is = tovr.getInputStream(offset, length)) {
+			return IOUtils.toString(is, "UTF-8");
+		}
+	}
+
 	private void failGetMD5(ValidatedTypedObject tovr) {
 		try {
 			tovr.getMD5();
@@ -470,6 +519,125 @@ public class TypedObjectValidationReportTest {
 		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
 	}
 
+	private ValidatedTypedObject getProcessedObject(
+			final String json,
+			final Map<String, String> refmap)
+			throws Exception {
+		final IdReferenceHandlerSetFactory fac = getFac(100);
+		fac.addFactory(new DummyIdHandlerFactory(new IdReferenceType("ws"), refmap));
+		final IdReferenceHandlerSet<String> handlers =
+				fac.createHandlers(String.class).associateObject("foo");
+		final ValidatedTypedObject tovr = validator.validate(
+				json, new TypeDefId("TestIDMap.IDMap"), handlers);
+		handlers.processIDs();
+		return tovr;
+	}
+	
+	@Test
+	public void relabelThenSort() throws Exception {
+		final String natjson = "{\"m\": {\"c\": \"a\", \"z\": \"d\"}}";
+		final String natexpected = "{\"m\":{\"c\":\"a\",\"y\":\"whoop\"}}";
+		final MD5 natmd5 = new MD5("b5a128ad62a50790c65d66831eec6e66");
+		final String sortjson = "{\"m\": {\"z\": \"a\", \"b\": \"d\"}}";
+		final String sortexpected = "{\"m\":{\"b\":\"whoop\",\"y\":\"a\"}}";
+		final MD5 sortmd5 = new MD5("920d54af26c56df84e4c4df358952138");
+		final Map<String, String> refmap = new HashMap<String, String>();
+		refmap.put("z", "y");
+		refmap.put("d", "whoop");
+		refmap.put("a", "a");
+		refmap.put("b", "b");
+		refmap.put("c", "c");
+		
+		final TempFilesManager tfm = new TempFilesManager(
+				new File(TestCommon.getTempDir()));
+		tfm.cleanup();
+		
+		// naturally sorted, kept in memory
+		ValidatedTypedObject tovr = getProcessedObject(natjson, refmap);
+		assertThat("incorrect size", tovr.relabel(27, tfm), is(27L));
+		assertThat("incorrect size", tovr.getRelabeledSize(), is(27L));
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		failGetMD5(tovr);
+		tovr.sort(SORT_FAC, tfm);
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		checkSortedObject(tovr, natmd5, natexpected);
+		
+		// naturally sorted, kept in a file
+		tovr = getProcessedObject(natjson, refmap);
+		assertThat("incorrect size", tovr.relabel(26, tfm), is(27L));
+		assertThat("TFM has one file", tfm.getTempFileList().size(), is(1));
+		tovr.sort(SORT_FAC);
+		assertThat("TFM has one file", tfm.getTempFileList().size(), is(1));
+		checkSortedObject(tovr, natmd5, natexpected);
+		tovr.destroyCachedResources();
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		
+		// requires sort, kept in memory, sorted into a file
+		tovr = getProcessedObject(sortjson, refmap);
+		assertThat("incorrect size", tovr.relabel(100, tfm), is(27L));
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		tovr.sort(SORT_FAC, tfm);
+		assertThat("TFM has one file", tfm.getTempFileList().size(), is(1));
+		checkSortedObject(tovr, sortmd5, sortexpected);
+		tovr.destroyCachedResources();
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		
+		// requires sort, kept in a file, sorted into memory
+		tovr = getProcessedObject(sortjson, refmap);
+		assertThat("incorrect size", tovr.relabel(0, tfm), is(27L));
+		assertThat("TFM has one file", tfm.getTempFileList().size(), is(1));
+		tovr.sort(SORT_FAC);
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+		checkSortedObject(tovr, sortmd5, sortexpected);
+		
+		// not kept, relabeled again by sort
+		for (final String json: Arrays.asList(natjson, sortjson)) {
+			tovr = getProcessedObject(json, refmap);
+			assertThat("incorrect size", tovr.relabel(10, null), is(27L));
+			tovr.sort(SORT_FAC);
+			checkSortedObject(tovr, json == natjson ? natmd5 : sortmd5,
+					json == natjson ? natexpected : sortexpected);
+		}
+		assertThat("Temp files manager is empty", tfm.isEmpty(), is(true));
+	}
+	
+	private void checkSortedObject(
+			final ValidatedTypedObject tovr,
+			final MD5 md5,
+			final String json)
+			throws Exception {
+		assertThat("incorrect md5", tovr.getMD5(), is(md5));
+		assertThat("incorrect json", IOUtils.toString(tovr.getInputStream(), "UTF-8"), is(json));
+	}
+	
+	@Test
+	public void relabelFail() throws Exception {
+		final IdReferenceHandlerSetFactory fac = getFac(100);
+		fac.addFactory(new DummyIdHandlerFactory(new IdReferenceType("ws"),
+				new HashMap<String, String>()));
+		final IdReferenceHandlerSet<String> handlers =
+				fac.createHandlers(String.class).associateObject("foo");
+		final ValidatedTypedObject tovr = validator.validate(
+				"{\"m\": {}}", new TypeDefId("TestIDMap.IDMap"), handlers);
+		
+		failRelabel(tovr, 10, new IllegalStateException(
+				"Must process IDs in handler prior to relabling"));
+		handlers.processIDs();
+		failRelabel(tovr, -1, new IllegalArgumentException("maxMemory must be at least 0"));
+	}
+	
+	private void failRelabel(
+			final ValidatedTypedObject tovr,
+			final long maxMemory,
+			final Exception expected) {
+		try {
+			tovr.relabel(maxMemory, null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
 	private void failGetRelabeledSize(ValidatedTypedObject tovr) {
 		try {
 			tovr.getRelabeledSize();
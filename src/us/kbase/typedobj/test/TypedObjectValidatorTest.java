@@ -0,0 +1,147 @@
+package us.kbase.typedobj.test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.AbsoluteTypeDefId;
+import us.kbase.typedobj.core.TypeDefId;
+import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypeProvider;
+import us.kbase.typedobj.core.TypedObjectValidator;
+import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.typedobj.exceptions.NoSuchTypeException;
+import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+
+public class TypedObjectValidatorTest {
+
+	private static final TypeDefId TYPE = new TypeDefId("Mod.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE = new AbsoluteTypeDefId(
+			new TypeDefName("Mod.Type"), 1, 0);
+	private static final TypeDefId TYPE2 = new TypeDefId("Mod2.Type");
+	private static final AbsoluteTypeDefId ABS_TYPE2 = new AbsoluteTypeDefId(
+			new TypeDefName("Mod2.Type"), 2, 1);
+
+	private static IdReferenceHandlerSet<String> handlers() {
+		return IdReferenceHandlerSetFactoryBuilder.getBuilder(6).build().getFactory(null)
+				.createHandlers(String.class);
+	}
+
+	private static ValidatedTypedObject validate(
+			final TypedObjectValidator tov,
+			final TypeDefId type)
+			throws Exception {
+		return tov.validate("{}", type, handlers());
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		try {
+			new TypedObjectValidator(mock(TypeProvider.class), 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"schemaCacheSize must be at least 1"));
+		}
+	}
+
+	@Test
+	public void schemaIsCached() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		final TypedObjectValidator tov = new TypedObjectValidator(tp);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+
+		for (int i = 0; i < 3; i++) {
+			final ValidatedTypedObject vto = validate(tov, TYPE);
+			assertThat("incorrect valid", vto.isInstanceValid(), is(true));
+			assertThat("incorrect type", vto.getValidationTypeDefId(), is(ABS_TYPE));
+		}
+
+		verify(tp, times(3)).resolveTypeDef(TYPE);
+		verify(tp, times(1)).getTypeJsonSchema(ABS_TYPE);
+	}
+
+	@Test
+	public void invalidateModule() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		final TypedObjectValidator tov = new TypedObjectValidator(tp);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.resolveTypeDef(TYPE2)).thenReturn(ABS_TYPE2);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+		when(tp.getTypeJsonSchema(ABS_TYPE2)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+
+		validate(tov, TYPE);
+		validate(tov, TYPE2);
+		tov.invalidateModule("Mod");
+		validate(tov, TYPE);
+		validate(tov, TYPE2);
+
+		verify(tp, times(2)).getTypeJsonSchema(ABS_TYPE);
+		verify(tp, times(1)).getTypeJsonSchema(ABS_TYPE2);
+	}
+
+	@Test
+	public void schemaCacheEviction() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		final TypedObjectValidator tov = new TypedObjectValidator(tp, 1);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.resolveTypeDef(TYPE2)).thenReturn(ABS_TYPE2);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+		when(tp.getTypeJsonSchema(ABS_TYPE2)).thenReturn(JsonSchemas.EMPTY_STRUCT);
+
+		validate(tov, TYPE);
+		validate(tov, TYPE2);
+		validate(tov, TYPE);
+
+		verify(tp, times(2)).getTypeJsonSchema(ABS_TYPE);
+		verify(tp, times(1)).getTypeJsonSchema(ABS_TYPE2);
+	}
+
+	@Test
+	public void failNoSuchType() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		final TypedObjectValidator tov = new TypedObjectValidator(tp);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenThrow(new NoSuchTypeException("no type"))
+				.thenReturn(JsonSchemas.EMPTY_STRUCT);
+
+		failValidate(tov, new NoSuchTypeException("no type"));
+		// failures are not cached
+		assertThat("incorrect valid", validate(tov, TYPE).isInstanceValid(), is(true));
+	}
+
+	@Test
+	public void failBadSchema() throws Exception {
+		final TypeProvider tp = mock(TypeProvider.class);
+		final TypedObjectValidator tov = new TypedObjectValidator(tp);
+		when(tp.resolveTypeDef(TYPE)).thenReturn(ABS_TYPE);
+		when(tp.getTypeJsonSchema(ABS_TYPE)).thenReturn("{");
+
+		try {
+			validate(tov, TYPE);
+			fail("expected exception");
+		} catch (TypedObjectSchemaException got) {
+			assertThat("incorrect message", got.getMessage().startsWith(
+					"Could not parse type schema document: "), is(true));
+		}
+	}
+
+	private void failValidate(final TypedObjectValidator tov, final Exception expected) {
+		try {
+			validate(tov, TYPE);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
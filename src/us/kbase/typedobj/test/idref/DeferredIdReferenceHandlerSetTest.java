@@ -0,0 +1,169 @@
+package us.kbase.typedobj.test.idref;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static us.kbase.common.test.TestCommon.set;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.idref.DeferredIdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReference;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet;
+import us.kbase.typedobj.idref.IdReferenceHandlerSet.TooManyIdsException;
+import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
+import us.kbase.typedobj.idref.IdReferenceType;
+import us.kbase.typedobj.idref.RemappedId;
+import us.kbase.typedobj.idref.SimpleRemappedId;
+import us.kbase.workspace.test.workspace.TestIDReferenceHandlerFactory;
+
+public class DeferredIdReferenceHandlerSetTest {
+
+	private static final IdReferenceType TYPE = new IdReferenceType("test");
+
+	private static IdReferenceHandlerSet<String> handlers(final int maxIds) {
+		return IdReferenceHandlerSetFactoryBuilder.getBuilder(maxIds)
+				.withFactory(new TestIDReferenceHandlerFactory(TYPE))
+				.build().getFactory(null).createHandlers(String.class);
+	}
+
+	private static IdReference<String> id(final String id) {
+		return new IdReference<>(TYPE, id, null);
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(null, handlers(1), new NullPointerException("local"));
+		failConstruct(handlers(1), null, new NullPointerException("target"));
+	}
+
+	private void failConstruct(
+			final IdReferenceHandlerSet<String> local,
+			final IdReferenceHandlerSet<String> target,
+			final Exception expected) {
+		try {
+			new DeferredIdReferenceHandlerSet<>(local, target);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void addAndProcess() throws Exception {
+		final IdReferenceHandlerSet<String> target = handlers(10);
+		final DeferredIdReferenceHandlerSet<String> h1 =
+				new DeferredIdReferenceHandlerSet<>(handlers(3), target);
+		final DeferredIdReferenceHandlerSet<String> h2 =
+				new DeferredIdReferenceHandlerSet<>(handlers(3), target);
+
+		h1.associateObject("o1");
+		h1.addStringId(id("a"));
+		h1.addStringId(id("b"));
+		h2.associateObject("o2");
+		h2.addStringId(id("c"));
+
+		assertThat("incorrect size", h1.size(), is(2));
+		assertThat("incorrect max", h1.getMaximumIdCount(), is(3));
+		assertThat("incorrect added", h1.wereIdsAddedToTarget(), is(false));
+		assertThat("incorrect target size", target.size(), is(0));
+
+		h2.addIdsToTarget();
+		h1.addIdsToTarget();
+
+		assertThat("incorrect added", h1.wereIdsAddedToTarget(), is(true));
+		assertThat("incorrect size", h1.size(), is(3));
+		assertThat("incorrect max", h1.getMaximumIdCount(), is(10));
+		assertThat("incorrect processed", h1.wereIdsProcessed(), is(false));
+
+		h1.processIDs();
+
+		assertThat("incorrect processed", h1.wereIdsProcessed(), is(true));
+		assertThat("incorrect processed", h2.wereIdsProcessed(), is(true));
+		assertThat("incorrect types", h1.getIDTypes(), is(set(TYPE)));
+		assertThat("incorrect remapped", h2.getRemappedId(TYPE, "a"),
+				is((RemappedId) new SimpleRemappedId("a")));
+		assertThat("incorrect remapped", h1.getRemappedIds(TYPE, "o1"),
+				is(set((RemappedId) new SimpleRemappedId("a"), new SimpleRemappedId("b"))));
+		assertThat("incorrect remapped", target.getRemappedIds(TYPE, "o2"),
+				is(set((RemappedId) new SimpleRemappedId("c"))));
+	}
+
+	@Test
+	public void localTooManyIds() throws Exception {
+		final IdReferenceHandlerSet<String> target = handlers(10);
+		final DeferredIdReferenceHandlerSet<String> h =
+				new DeferredIdReferenceHandlerSet<>(handlers(1), target);
+		h.associateObject("o1");
+		h.addStringId(id("a"));
+		try {
+			h.addStringId(id("b"));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new TooManyIdsException(
+					"Maximum ID count of 1 exceeded"));
+		}
+		assertThat("incorrect target size", target.size(), is(0));
+	}
+
+	@Test
+	public void targetTooManyIds() throws Exception {
+		final IdReferenceHandlerSet<String> target = handlers(2);
+		final DeferredIdReferenceHandlerSet<String> h1 =
+				new DeferredIdReferenceHandlerSet<>(handlers(2), target);
+		final DeferredIdReferenceHandlerSet<String> h2 =
+				new DeferredIdReferenceHandlerSet<>(handlers(2), target);
+		h1.associateObject("o1");
+		h1.addStringId(id("a"));
+		h1.addStringId(id("b"));
+		h2.associateObject("o2");
+		h2.addStringId(id("c"));
+
+		h1.addIdsToTarget();
+		try {
+			h2.addIdsToTarget();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new TooManyIdsException(
+					"Maximum ID count of 2 exceeded"));
+		}
+	}
+
+	@Test
+	public void illegalState() throws Exception {
+		final DeferredIdReferenceHandlerSet<String> h =
+				new DeferredIdReferenceHandlerSet<>(handlers(2), handlers(2));
+		h.associateObject("o1");
+		h.addStringId(id("a"));
+
+		try {
+			h.processIDs();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(
+					"IDs must be added to the target set before processing"));
+		}
+
+		h.addIdsToTarget();
+		final String err = "This ID handler set instance's IDs have been added to the target set";
+		try {
+			h.associateObject("o2");
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(err));
+		}
+		try {
+			h.addStringId(id("b"));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(err));
+		}
+		try {
+			h.addIdsToTarget();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(err));
+		}
+	}
+}
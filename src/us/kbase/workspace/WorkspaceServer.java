@@ -145,6 +145,9 @@ public class WorkspaceServer extends JsonServerServlet {
 
 	@Override
 	protected void onRpcMethodDone() {
+		if (wsmeth != null) {
+			wsmeth.destroyStreamedData();
+		}
 		if (resourcesToDelete.get() != null &&
 				!resourcesToDelete.get().isEmpty()) {
 			for (final WorkspaceObjectData o : resourcesToDelete.get())
@@ -155,6 +158,14 @@ public class WorkspaceServer extends JsonServerServlet {
 		}
 	}
 	
+	@Override
+	public void destroy() {
+		if (ws != null) {
+			ws.closeListeners();
+		}
+		super.destroy();
+	}
+	
 	public ResourceUsageConfiguration getWorkspaceResourceUsageConfig() {
 		return ws.getResourceConfig();
 	}
@@ -1,14 +1,24 @@
 package us.kbase.workspace.database;
 
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang.NotImplementedException;
 
 import com.fasterxml.jackson.core.JsonGenerator;
@@ -17,6 +27,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import us.kbase.common.service.JsonTokenStream;
 import us.kbase.common.service.UObject;
+import us.kbase.typedobj.core.StructuralIndex;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.SubdataExtractor;
 import us.kbase.typedobj.core.TempFilesManager;
@@ -28,22 +39,53 @@ public class ByteArrayFileCacheManager {
 	
 	//TODO TEST unit tests
 	
+	/** Writes data into a file channel. */
+	public interface ChannelWriter {
+		
+		/** Write data into the channel. Only positional writes, e.g.
+		 * {@link FileChannel#write(java.nio.ByteBuffer, long)}, should be used, and the
+		 * writes may be made concurrently from multiple threads.
+		 * @param channel the channel.
+		 * @throws IOException if an IO error occurs.
+		 */
+		void write(FileChannel channel) throws IOException;
+	}
+	
 	private int sizeInMem = 0;
 	private final int maxSizeInMem;
 	private long sizeOnDisk = 0;
 	private final long maxSizeOnDisk;
 	private final TempFilesManager tfm;
+	// null if there are no limits across managers
+	private final ReturnedDataGovernor governor;
 	
 	public ByteArrayFileCacheManager(
 			final int maxSizeInMem,
 			final long maxSizeOnDisk,
 			final TempFilesManager tfm) {
+		this(maxSizeInMem, maxSizeOnDisk, tfm, null);
+	}
+	
+	/** Create a manager that, in addition to enforcing its own limits, leases memory and disk
+	 * space from a governor shared with other managers. The leases are returned when
+	 * each {@link ByteArrayFileCache} is destroyed, so the caches must always be destroyed.
+	 * @param maxSizeInMem the maximum amount of data this manager may store in memory.
+	 * @param maxSizeOnDisk the maximum amount of data this manager may store on disk.
+	 * @param tfm the temporary files manager used to create files for data stored on disk.
+	 * @param governor the governor, or null to only enforce this manager's limits.
+	 */
+	public ByteArrayFileCacheManager(
+			final int maxSizeInMem,
+			final long maxSizeOnDisk,
+			final TempFilesManager tfm,
+			final ReturnedDataGovernor governor) {
 		this.maxSizeInMem = maxSizeInMem;
 		this.maxSizeOnDisk = maxSizeOnDisk;
 		this.tfm = tfm;
+		this.governor = governor;
 	}
 	
-	public int getSizeInMem() {
+	public synchronized int getSizeInMem() {
 		return sizeInMem;
 	}
 
@@ -51,89 +93,233 @@ public class ByteArrayFileCacheManager {
 		return maxSizeInMem;
 	}
 
-	public long getSizeOnDisk() {
+	public synchronized long getSizeOnDisk() {
 		return sizeOnDisk;
 	}
 
 	public long getMaxSizeOnDisk() {
 		return maxSizeOnDisk;
 	}
+	
+	/* Space is reserved as data is read rather than after the fact so that concurrent calls
+	 * to createBAFC can't exceed the limits.
+	 * The governor is never called while holding this manager's lock, since reserving disk
+	 * space from the governor may wait.
+	 */
+	private boolean reserveMemory(final long size) {
+		synchronized (this) {
+			if (sizeInMem + size > maxSizeInMem) {
+				return false;
+			}
+			sizeInMem += (int) size;
+		}
+		if (governor != null && !governor.reserveMemory(size)) {
+			synchronized (this) {
+				sizeInMem -= (int) size;
+			}
+			return false;
+		}
+		return true;
+	}
+	
+	private void releaseMemory(final long size) {
+		synchronized (this) {
+			sizeInMem -= (int) size;
+		}
+		if (governor != null) {
+			governor.releaseMemory(size);
+		}
+	}
+	
+	private void reserveDisk(final long size) throws FileCacheLimitExceededException {
+		synchronized (this) {
+			if (sizeOnDisk + size > maxSizeOnDisk) {
+				throw diskLimitExceeded();
+			}
+			sizeOnDisk += size;
+		}
+		if (governor != null) {
+			try {
+				governor.reserveDisk(size);
+			} catch (FileCacheLimitExceededException e) {
+				synchronized (this) {
+					sizeOnDisk -= size;
+				}
+				throw e;
+			}
+		}
+	}
+	
+	private void releaseDisk(final long size) {
+		synchronized (this) {
+			sizeOnDisk -= size;
+		}
+		if (governor != null) {
+			governor.releaseDisk(size);
+		}
+	}
+	
+	/* The manager's own limits apply to all the data cached over the lifetime of the manager,
+	 * so only the governor's leases are returned when a cache is destroyed.
+	 */
+	private void releaseLease(final boolean onDisk, final long size) {
+		if (governor != null) {
+			if (onDisk) {
+				governor.releaseDisk(size);
+			} else {
+				governor.releaseMemory(size);
+			}
+		}
+	}
+	
+	private FileCacheLimitExceededException diskLimitExceeded() {
+		return new FileCacheLimitExceededException(
+				"Disk limit exceeded for file cache: " + maxSizeOnDisk);
+	}
 
-	@SuppressWarnings("resource")
+	/** Create a new cache from an input stream. This method may be called concurrently from
+	 * multiple threads.
+	 * @param input the data to cache.
+	 * @param trustedJson true if the data is known to be valid JSON.
+	 * @param sorted true if the data is known to be sorted.
+	 * @return the cache.
+	 * @throws FileCacheIOException if an IO error occurs.
+	 * @throws FileCacheLimitExceededException if the data would exceed the disk limit.
+	 */
 	public ByteArrayFileCache createBAFC(
 			final InputStream input,
 			final boolean trustedJson,
 			final boolean sorted)
 			throws FileCacheIOException, FileCacheLimitExceededException {
-		byte[] buf = new byte[100000];
-		ByteArrayOutputStream bufOs = new ByteArrayOutputStream();
-		int maxInMemorySize = maxSizeInMem - sizeInMem;
+		final byte[] buf = new byte[100000];
+		final ByteArrayOutputStream bufOs = new ByteArrayOutputStream();
 		long size = 0;
-		while (size < maxInMemorySize + 1) {
-			int count;
-			try {
-				count = input.read(buf, 0, Math.min(
-						buf.length, maxInMemorySize + 1 - (int)size));
-			} catch (IOException ioe) {
-				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
+		int count;
+		try {
+			while ((count = read(input, buf)) >= 0) {
+				if (!reserveMemory(count)) {
+					break;
+				}
+				bufOs.write(buf, 0, count);
+				size += count;
 			}
-			if (count < 0)
-				break;
-			bufOs.write(buf, 0, count);
-			size += count;
+		} catch (FileCacheIOException | RuntimeException e) {
+			// otherwise the memory is never returned to the governor
+			releaseMemory(size);
+			throw e;
 		}
+		if (count >= 0) { // out of memory, so switch to disk
+			releaseMemory(size);
+			return createFileBAFC(input, bufOs, buf, count, trustedJson, sorted);
+		}
+		final byte[] data = bufOs.toByteArray();
 		try {
-			bufOs.close();
+			return new ByteArrayFileCache(null, null, data,
+					new JsonTokenStream(data)
+						.setTrustedWholeJson(trustedJson), sorted, size);
+		} catch (IOException ioe) {
+			releaseMemory(size);
+			throw new FileCacheIOException(
+					ioe.getLocalizedMessage(), ioe);
+		}
+	}
+	
+	private int read(final InputStream input, final byte[] buf) throws FileCacheIOException {
+		try {
+			return input.read(buf, 0, buf.length);
 		} catch (IOException ioe) {
 			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
 		}
-		if (size > maxInMemorySize) {
-			File tempFile = null;
-			OutputStream os = null;
+	}
+
+	@SuppressWarnings("resource")
+	private ByteArrayFileCache createFileBAFC(
+			final InputStream input,
+			final ByteArrayOutputStream head,
+			final byte[] buf,
+			final int count,
+			final boolean trustedJson,
+			final boolean sorted)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		long size = head.size() + count;
+		reserveDisk(size);
+		File tempFile = null;
+		OutputStream os = null;
+		try {
+			tempFile = tfm.generateTempFile("resp", "json");
+			os = new BufferedOutputStream(new FileOutputStream(tempFile));
 			try {
-				tempFile = tfm.generateTempFile("resp", "json");
-				os = new BufferedOutputStream(
-						new FileOutputStream(tempFile));
-				try {
-					os.write(bufOs.toByteArray());
-					bufOs = null;
-					while (true) {
-						if (sizeOnDisk + size > maxSizeOnDisk) {
-							cleanUp(tempFile, os);
-							throw new FileCacheLimitExceededException(
-									"Disk limit exceeded for file cache: " +
-											maxSizeOnDisk);
-						}
-						int count = input.read(buf, 0, buf.length);
-						if (count < 0)
-							break;
-						os.write(buf, 0, count);
-						size += count;
-					}
-				} finally {
-					try { os.close(); } catch (Exception ignore) {}
+				head.writeTo(os);
+				os.write(buf, 0, count);
+				int c;
+				while ((c = input.read(buf, 0, buf.length)) >= 0) {
+					reserveDisk(c);
+					size += c;
+					os.write(buf, 0, c);
 				}
-				sizeOnDisk += size;
-				return new ByteArrayFileCache(null, tempFile,
-						new JsonTokenStream(tempFile)
-							.setTrustedWholeJson(trustedJson), sorted, size);
-			} catch (IOException ioe) {
-				cleanUp(tempFile, os);
-				throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
-			} catch (RuntimeException re) {
-				cleanUp(tempFile, os);
-				throw re;
+			} finally {
+				try { os.close(); } catch (Exception ignore) {}
 			}
-		} else {
-			sizeInMem += (int)size;
-			try {
-				return new ByteArrayFileCache(null, null,
-						new JsonTokenStream(bufOs.toByteArray())
-							.setTrustedWholeJson(trustedJson), sorted, size);
-			} catch (IOException ioe) {
-				throw new FileCacheIOException(
-						ioe.getLocalizedMessage(), ioe);
+			return new ByteArrayFileCache(null, tempFile, null,
+					new JsonTokenStream(tempFile)
+						.setTrustedWholeJson(trustedJson), sorted, size);
+		} catch (IOException ioe) {
+			releaseDisk(size);
+			cleanUp(tempFile, os);
+			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
+		} catch (FileCacheLimitExceededException | RuntimeException e) {
+			releaseDisk(size);
+			cleanUp(tempFile, os);
+			throw e;
+		}
+	}
+
+	/** Create a new cache of a known size from a writer that writes directly into a file
+	 * channel. The data is always stored on disk. This method may be called concurrently
+	 * from multiple threads.
+	 * @param size the size of the data.
+	 * @param writer the writer that will write the data into the cache file.
+	 * @param trustedJson true if the data is known to be valid JSON.
+	 * @param sorted true if the data is known to be sorted.
+	 * @return the cache.
+	 * @throws FileCacheIOException if an IO error occurs or the writer writes an amount of
+	 * data that doesn't match the size.
+	 * @throws FileCacheLimitExceededException if the data would exceed the disk limit.
+	 */
+	public ByteArrayFileCache createBAFC(
+			final long size,
+			final ChannelWriter writer,
+			final boolean trustedJson,
+			final boolean sorted)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		if (size < 0) {
+			throw new IllegalArgumentException("size must be at least 0");
+		}
+		requireNonNull(writer, "writer");
+		reserveDisk(size);
+		File tempFile = null;
+		try {
+			tempFile = tfm.generateTempFile("resp", "json");
+			try (final FileChannel fc = FileChannel.open(
+					tempFile.toPath(), StandardOpenOption.WRITE)) {
+				writer.write(fc);
+				if (fc.size() != size) {
+					throw new IOException(String.format(
+							"Expected %s bytes to be written to the file cache, got %s",
+							size, fc.size()));
+				}
 			}
+			return new ByteArrayFileCache(null, tempFile, null,
+					new JsonTokenStream(tempFile)
+						.setTrustedWholeJson(trustedJson), sorted, size);
+		} catch (IOException ioe) {
+			releaseDisk(size);
+			cleanUp(tempFile, null);
+			throw new FileCacheIOException(ioe.getLocalizedMessage(), ioe);
+		} catch (RuntimeException e) {
+			releaseDisk(size);
+			cleanUp(tempFile, null);
+			throw e;
 		}
 	}
 
@@ -146,14 +332,37 @@ public class ByteArrayFileCacheManager {
 			tempFile.delete();
 	}
 
-	@SuppressWarnings("resource")
 	public ByteArrayFileCache getSubdataExtraction(
 			final ByteArrayFileCache parent, final SubsetSelection paths)
 			throws TypedObjectExtractionException,
 			FileCacheLimitExceededException, FileCacheIOException {
+		return getSubdataExtraction(parent, paths, null);
+	}
+	
+	/** Extract a subset of the data in a cache into a new cache.
+	 * @param parent the cache containing the data.
+	 * @param paths the subset to extract.
+	 * @param index a structural index of the data in the parent cache, or null if no index is
+	 * available. If the index applies to the data, it is used to read only the parts of the
+	 * data required for the subset, rather than the entire data. The index is ignored if the
+	 * parent cache is itself a subset or the size of the data does not match the index.
+	 * @return the new cache.
+	 * @throws TypedObjectExtractionException if the subset is invalid for the data.
+	 * @throws FileCacheLimitExceededException if the subset would exceed the cache limits.
+	 * @throws FileCacheIOException if an IO error occurs.
+	 */
+	@SuppressWarnings("resource")
+	public ByteArrayFileCache getSubdataExtraction(
+			final ByteArrayFileCache parent,
+			final SubsetSelection paths,
+			final StructuralIndex index)
+			throws TypedObjectExtractionException,
+			FileCacheLimitExceededException, FileCacheIOException {
 		final OutputStream[] origin = {new ByteArrayOutputStream()};
 		final File[] tempFile = {null};
 		final long[] size = {0L};
+		final long[] memReserved = {0L};
+		final long[] diskReserved = {0L};
 		OutputStream os = new OutputStream() {
 			@Override
 			public void write(int b) throws IOException {
@@ -162,10 +371,14 @@ public class ByteArrayFileCacheManager {
 			}
 			@Override
 			public void write(byte[] b, int off, int len) throws IOException {
-				origin[0].write(b, off, len);
-				size[0] += len;
 				if (tempFile[0] == null) {
-					if (sizeInMem + size[0] > maxSizeInMem) {
+					if (reserveMemory(len)) {
+						memReserved[0] += len;
+					} else {
+						releaseMemory(memReserved[0]);
+						memReserved[0] = 0;
+						reserveDiskForStream(size[0] + len);
+						diskReserved[0] = size[0] + len;
 						origin[0].close();
 						byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
 						tempFile[0] = tfm.generateTempFile("resp", "json");
@@ -173,12 +386,18 @@ public class ByteArrayFileCacheManager {
 						origin[0].write(arr);
 					}
 				} else {
-					if (sizeOnDisk + size[0] > maxSizeOnDisk) {
-						final String err = "Disk limit exceeded for file cache: " +
-								maxSizeOnDisk;
-						throw new IOException(err,
-								new FileCacheLimitExceededException(err));
-					}
+					reserveDiskForStream(len);
+					diskReserved[0] += len;
+				}
+				origin[0].write(b, off, len);
+				size[0] += len;
+			}
+			
+			private void reserveDiskForStream(final long size) throws IOException {
+				try {
+					reserveDisk(size);
+				} catch (FileCacheLimitExceededException e) {
+					throw new IOException(e.getMessage(), e);
 				}
 			}
 			@Override
@@ -187,17 +406,15 @@ public class ByteArrayFileCacheManager {
 			}
 		};
 		try {
-			parent.getSubdataExtractionAsStream(paths, os);
+			parent.getSubdataExtractionAsStream(paths, index, os);
 			if (tempFile[0] != null) {
-				sizeOnDisk += size[0];
-				return new ByteArrayFileCache(parent, tempFile[0],
+				return new ByteArrayFileCache(parent, tempFile[0], null,
 						new JsonTokenStream(tempFile[0])
 						.setTrustedWholeJson(parent.containsTrustedJson()),
 						parent.isSorted(), size[0]); 
 			} else {
-				sizeInMem += (int)size[0];
 				byte[] arr = ((ByteArrayOutputStream)origin[0]).toByteArray();
-				return new ByteArrayFileCache(parent, null,
+				return new ByteArrayFileCache(parent, null, arr,
 						new JsonTokenStream(arr)
 						.setTrustedWholeJson(parent.containsTrustedJson()),
 						parent.isSorted(), size[0]);
@@ -209,6 +426,8 @@ public class ByteArrayFileCacheManager {
 			if (tempFile[0] != null) {
 				tempFile[0].delete();
 			}
+			releaseMemory(memReserved[0]);
+			releaseDisk(diskReserved[0]);
 			if (e instanceof TypedObjectExtractionException) {
 				throw (TypedObjectExtractionException)e;
 			}
@@ -227,14 +446,16 @@ public class ByteArrayFileCacheManager {
 	}
 	
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		return "ByteArrayFileCacheManager [sizeInMem=" + sizeInMem
 				+ ", maxSizeInMem=" + maxSizeInMem + ", sizeOnDisk="
-				+ sizeOnDisk + ", maxSizeOnDisk=" + maxSizeOnDisk + "]";
+				+ sizeOnDisk + ", maxSizeOnDisk=" + maxSizeOnDisk + ", governor="
+				+ governor + "]";
 	}
 	
 	public class ByteArrayFileCache {
 		private File tempFile = null;
+		private byte[] data = null;
 		private JsonTokenStream jts;
 		private ByteArrayFileCache parent = null;
 		private boolean destroyed = false;
@@ -245,11 +466,13 @@ public class ByteArrayFileCacheManager {
 		private ByteArrayFileCache(
 				final ByteArrayFileCache parent,
 				final File tempFile,
+				final byte[] data,
 				final JsonTokenStream jts,
 				final boolean sorted,
 				final long size) {
 			this.parent = parent;
 			this.tempFile = tempFile;
+			this.data = data;
 			this.jts = jts;
 			if (parent != null) {
 				this.sorted = parent.isSorted();
@@ -284,6 +507,55 @@ public class ByteArrayFileCacheManager {
 			return jts.createDataReader();
 		}
 		
+		/** Get the raw serialized data stored in this cache. The caller is responsible for
+		 * closing the stream.
+		 * @return the data.
+		 * @throws IOException if the data could not be opened.
+		 */
+		public InputStream getInputStream() throws IOException {
+			checkIfDestroyed();
+			if (tempFile != null) {
+				return new FileInputStream(tempFile);
+			}
+			return new ByteArrayInputStream(data);
+		}
+		
+		/** Write the raw serialized data stored in this cache to a channel without parsing it.
+		 * If the data is stored in a file, it is sent with
+		 * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which allows the
+		 * operating system to copy the data directly from the file to the target without
+		 * passing through the JVM heap if the target is a file or socket channel.
+		 * @param target the channel to which the data will be written. The caller is
+		 * responsible for closing the channel.
+		 * @throws IOException if an IO error occurs.
+		 */
+		public void transferTo(final WritableByteChannel target) throws IOException {
+			checkIfDestroyed();
+			requireNonNull(target, "target");
+			if (tempFile != null) {
+				try (final FileChannel fc = FileChannel.open(
+						tempFile.toPath(), StandardOpenOption.READ)) {
+					final long fileSize = fc.size();
+					long pos = 0;
+					while (pos < fileSize) {
+						final long count = fc.transferTo(pos, fileSize - pos, target);
+						if (count < 1) {
+							// the target is blocking, so this means the file was truncated
+							throw new IOException(String.format(
+									"Expected %s bytes in the file cache, got %s",
+									fileSize, pos));
+						}
+						pos += count;
+					}
+				}
+			} else {
+				final ByteBuffer bb = ByteBuffer.wrap(data);
+				while (bb.hasRemaining()) {
+					target.write(bb);
+				}
+			}
+		}
+		
 		/** True if this BAFC was marked as containing known good JSON.
 		 * @return true if the this BAFC was marked as containing known good
 		 * JSON, false otherwise.
@@ -301,6 +573,7 @@ public class ByteArrayFileCacheManager {
 		}
 		
 		private void getSubdataExtractionAsStream(final SubsetSelection paths, 
+				final StructuralIndex index,
 				final OutputStream os)
 				throws TypedObjectExtractionException {
 			checkIfDestroyed();
@@ -308,7 +581,10 @@ public class ByteArrayFileCacheManager {
 				JsonGenerator jgen = UObject.getMapper().getFactory()
 						.createGenerator(os);
 				try {
-					SubdataExtractor.extract(paths, jts.setRoot(null), jgen);
+					if (index == null || parent != null || index.getSize() != size ||
+							!SubdataExtractor.extract(paths, index, this::openRange, jgen)) {
+						SubdataExtractor.extract(paths, jts.setRoot(null), jgen);
+					}
 				} finally {
 					jts.close();
 					jgen.close();
@@ -320,14 +596,31 @@ public class ByteArrayFileCacheManager {
 			}
 		}
 		
+		private InputStream openRange(final long offset, final long length)
+				throws IOException {
+			if (tempFile != null) {
+				final FileInputStream fis = new FileInputStream(tempFile);
+				try {
+					fis.getChannel().position(offset);
+				} catch (IOException e) {
+					fis.close();
+					throw e;
+				}
+				return new BoundedInputStream(new BufferedInputStream(fis), length);
+			}
+			return new ByteArrayInputStream(data, (int) offset, (int) length);
+		}
+		
 		/** Destroys any data associated with this cache and calls destroy()
 		 * on this cache's parent. Only subdata objects have a parent, but
-		 * multiple subdata objects can share the same parent.
+		 * multiple subdata objects can share the same parent. Any memory or disk space leased
+		 * from the manager's {@link ReturnedDataGovernor} for this cache is returned.
 		 */
-		public void destroy() {
+		public synchronized void destroy() {
 			if (destroyed) {
 				return;
 			}
+			releaseLease(tempFile != null, size);
 			try {
 				jts.close();
 			} catch (IOException ioe) {
@@ -342,6 +635,7 @@ public class ByteArrayFileCacheManager {
 			parent = null;
 			jts = null;
 			tempFile = null;
+			data = null;
 			destroyed = true;
 		}
 	}
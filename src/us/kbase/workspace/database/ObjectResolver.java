@@ -13,7 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
 
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.InaccessibleObjectException;
@@ -40,12 +40,16 @@ public class ObjectResolver {
 	
 	public final static int MAX_OBJECT_SEARCH_COUNT_DEFAULT = 10000;
 	
+	// large enough that typical searches are not chunked
+	private final static int REFERENCE_SEARCH_QUERY_CHUNK_SIZE = 1000;
+	
 	private final WorkspaceDatabase db;
 	private final WorkspaceUser user;
 	private final PermissionsCheckerFactory permissionsFactory;
 	private final boolean nullIfInaccessible;
 	private final boolean asAdmin;
 	private final int maximumObjectSearchCount;
+	private final ExecutorService searchExecutor;
 	
 	/* only the below are accessible via the api. The variables above are only needed during the
 	 * object resolution process. 
@@ -65,7 +69,8 @@ public class ObjectResolver {
 			final List<ObjectIdentifier> objects,
 			final boolean nullIfInaccessible,
 			final boolean asAdmin,
-			final int maxSearch)
+			final int maxSearch,
+			final ExecutorService searchExecutor)
 			throws WorkspaceCommunicationException, InaccessibleObjectException,
 				CorruptWorkspaceDBException, NoSuchReferenceException,
 				ReferenceSearchMaximumSizeExceededException {
@@ -76,6 +81,7 @@ public class ObjectResolver {
 		this.nullIfInaccessible = nullIfInaccessible;
 		this.asAdmin = asAdmin;
 		this.maximumObjectSearchCount = maxSearch;
+		this.searchExecutor = searchExecutor;
 		resolve();
 	}
 	
@@ -231,12 +237,7 @@ public class ObjectResolver {
 
 	private Set<Long> getReadableWorkspaces()
 			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
-		//could make a method to just get IDs of workspace with specific permission to save mem
-		final PermissionSet pset = db.getPermissions(user, Permission.READ, false);
-		return pset.getWorkspaces().stream()
-				.filter(ws -> !ws.isDeleted())
-				.map(ws -> ws.getID())
-				.collect(Collectors.toSet());
+		return db.getReadableWorkspaceIDs(user);
 	}
 	
 	private class TopoProvider implements ReferenceGraphTopologyProvider {
@@ -248,39 +249,52 @@ public class ObjectResolver {
 		}
 
 		@Override
-		public Map<Reference, Map<Reference, Boolean>> getAssociatedReferences(
+		public Map<Reference, Set<Reference>> getAssociatedReferences(
 				final Set<Reference> sourceRefs)
 				throws ReferenceProviderException {
 			try {
 				final Map<Reference, ObjectReferenceSet> refs =
 						db.getObjectIncomingReferences(sourceRefs);
-				final Set<Reference> readable = new HashSet<>();
-				for (final ObjectReferenceSet refset: refs.values()) {
-					for (final Reference r: refset.getReferenceSet()) {
-						if (asAdmin || readableWorkspaceIDs.contains(r.getWorkspaceID())) {
-							readable.add(r);
-						}
-					}
-				}
-				final Map<Reference, Boolean> exists = readable.isEmpty() ?
-						Collections.emptyMap() : db.getObjectExistsRef(readable);
-				final Map<Reference, Map<Reference, Boolean>> refToRefs = new HashMap<>();
+				final Map<Reference, Set<Reference>> refToRefs = new HashMap<>();
 				for (final Reference r: refs.keySet()) {
-					final Map<Reference, Boolean> termCritera = new HashMap<>();
-					refToRefs.put(r, termCritera);
-					for (final Reference inc: refs.get(r).getReferenceSet()) {
-						termCritera.put(inc, exists.containsKey(inc) && exists.get(inc));
-					}
-					
+					refToRefs.put(r, refs.get(r).getReferenceSet());
 				}
 				return refToRefs;
 			} catch (WorkspaceCommunicationException e) {
-				throw new ReferenceProviderException("foo", e);
+				throw new ReferenceProviderException(
+						"Failed to retrieve incoming object references: " + e.getMessage(), e);
+			}
+		}
+
+		@Override
+		public Set<Reference> getTerminalReferences(final Set<Reference> refs)
+				throws ReferenceProviderException {
+			final Set<Reference> readable = new HashSet<>();
+			for (final Reference r: refs) {
+				if (asAdmin || readableWorkspaceIDs.contains(r.getWorkspaceID())) {
+					readable.add(r);
+				}
+			}
+			if (readable.isEmpty()) {
+				return Collections.emptySet();
+			}
+			try {
+				final Map<Reference, Boolean> exists = db.getObjectExistsRef(readable);
+				final Set<Reference> terminal = new HashSet<>();
+				for (final Reference r: readable) {
+					if (exists.containsKey(r) && exists.get(r)) {
+						terminal.add(r);
+					}
+				}
+				return terminal;
+			} catch (WorkspaceCommunicationException e) {
+				throw new ReferenceProviderException(
+						"Failed to check whether referencing objects exist: " + e.getMessage(), e);
 			}
 		}
 	}
 
-	//TODO REF LOOKUP positive and negative caches (?)
+	// incoming references may be cached by the database layer, but existence is not cached
 	private void searchObjectDAG(final Set<ObjectIdentifier> lookup)
 			throws WorkspaceCommunicationException, ReferenceSearchMaximumSizeExceededException,
 				InaccessibleObjectException, CorruptWorkspaceDBException {
@@ -310,7 +324,8 @@ public class ObjectResolver {
 			}
 			final ReferenceGraphSearch search = new ReferenceGraphSearch(
 					startingRefs, new TopoProvider(readableWorkspaceIDs),
-					maximumObjectSearchCount, !nullIfInaccessible);
+					maximumObjectSearchCount, !nullIfInaccessible, searchExecutor,
+					REFERENCE_SEARCH_QUERY_CHUNK_SIZE);
 			searchObjectDAGBuildResolvedObjectPaths(resobjs, objrefs, search);
 		} catch (final ReferenceSearchFailedException |
 				ObjectDAGSearchFromObjectIDFailedException e) {
@@ -566,6 +581,7 @@ public class ObjectResolver {
 		private boolean nullIfInaccessible = false;
 		private boolean asAdmin = false;
 		private int maxSearch = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
+		private ExecutorService searchExecutor = null;
 		
 		private Builder(final WorkspaceDatabase db, final WorkspaceUser user) {
 			nonNull(db, "db");
@@ -590,7 +606,8 @@ public class ObjectResolver {
 			if (objects.isEmpty()) {
 				throw new IllegalArgumentException("No object identifiers provided");
 			}
-			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch);
+			return new ObjectResolver(db, user, objects, nullIfInaccessible, asAdmin, maxSearch,
+					searchExecutor);
 		}
 		
 		/** Build an empty ObjectResolver containing no objects. Ignores any objects added to the
@@ -601,7 +618,7 @@ public class ObjectResolver {
 
 			try {
 				return new ObjectResolver(db, user, Collections.emptyList(), nullIfInaccessible,
-						asAdmin, maxSearch);
+						asAdmin, maxSearch, searchExecutor);
 			} catch (WorkspaceCommunicationException | InaccessibleObjectException |
 					CorruptWorkspaceDBException | NoSuchReferenceException |
 					ReferenceSearchMaximumSizeExceededException e) {
@@ -633,6 +650,17 @@ public class ObjectResolver {
 			return this;
 		}
 		
+		/** Set the executor with which to run reference search queries concurrently. The
+		 * executor is not shut down by the resolver.
+		 * @param executor the executor, or null to run queries serially in the calling thread,
+		 * the default.
+		 * @return this builder.
+		 */
+		public Builder withReferenceSearchExecutor(final ExecutorService executor) {
+			this.searchExecutor = executor;
+			return this;
+		}
+		
 		/** Run the resolution as an admin - e.g. all workspaces are accessible.
 		 * @param asAdmin
 		 * @return
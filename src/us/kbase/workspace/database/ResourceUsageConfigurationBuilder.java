@@ -14,12 +14,40 @@ public class ResourceUsageConfigurationBuilder {
 			200000000; // must be at least 1x max data
 	final public static int DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE = 300000000;
 	final public static long DEFAULT_MAX_RETURNED_DATA_SIZE = 1000000000L;
+	final public static int DEFAULT_MAX_CONCURRENT_BLOB_FETCHES_PER_CALL = 10;
+	final public static int DEFAULT_MAX_CONCURRENT_BLOB_FETCHES = 50;
+	final public static int DEFAULT_MAX_CONCURRENT_BLOB_UPLOADS_PER_CALL = 10;
+	final public static int DEFAULT_MAX_CONCURRENT_BLOB_UPLOADS = 50;
+	final public static int DEFAULT_MAX_CONCURRENT_OBJECT_VALIDATIONS = 1;
+	final public static long DEFAULT_MIN_STRUCTURAL_INDEX_SIZE = 0; // disabled
+	final public static int DEFAULT_MAX_INCOMING_REFERENCE_CACHE_SIZE = 0; // disabled
+	final public static int DEFAULT_MAX_CONCURRENT_REFERENCE_SEARCH_QUERIES = 1;
+	final public static int DEFAULT_MAX_READABLE_WORKSPACE_CACHE_SIZE = 0; // disabled
+	final public static long DEFAULT_MAX_GLOBAL_RETURNED_DATA_MEMORY_USAGE = 0; // unlimited
+	final public static long DEFAULT_MAX_GLOBAL_RETURNED_DATA_DISK_USAGE = 0; // unlimited
+	final public static int DEFAULT_MAX_RESOLVED_WORKSPACE_CACHE_SIZE = 0; // disabled
+	final public static int DEFAULT_MAX_OBJECT_VERSION_CACHE_SIZE = 0; // disabled
+	final public static int DEFAULT_MAX_PROVENANCE_CACHE_SIZE = 0; // disabled
 	
 	private int maxObjectSize;
 	private int maxIncomingDataMemoryUsage;
 	private int maxRelabelAndSortMemoryUsage;
 	private int maxReturnedDataMemoryUsage;
 	private long maxReturnedDataSize;
+	private int maxConcurrentBlobFetchesPerCall;
+	private int maxConcurrentBlobFetches;
+	private int maxConcurrentBlobUploadsPerCall;
+	private int maxConcurrentBlobUploads;
+	private int maxConcurrentObjectValidations;
+	private long minStructuralIndexSize;
+	private int maxIncomingReferenceCacheSize;
+	private int maxConcurrentReferenceSearchQueries;
+	private int maxReadableWorkspaceCacheSize;
+	private long maxGlobalReturnedDataMemoryUsage;
+	private long maxGlobalReturnedDataDiskUsage;
+	private int maxResolvedWorkspaceCacheSize;
+	private int maxObjectVersionCacheSize;
+	private int maxProvenanceCacheSize;
 	
 	public ResourceUsageConfigurationBuilder() {
 		maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
@@ -27,6 +55,20 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = DEFAULT_MAX_RELABEL_AND_SORT_MEMORY_USAGE;
 		maxReturnedDataMemoryUsage = DEFAULT_MAX_RETURNED_DATA_MEMORY_USAGE;
 		maxReturnedDataSize = DEFAULT_MAX_RETURNED_DATA_SIZE;
+		maxConcurrentBlobFetchesPerCall = DEFAULT_MAX_CONCURRENT_BLOB_FETCHES_PER_CALL;
+		maxConcurrentBlobFetches = DEFAULT_MAX_CONCURRENT_BLOB_FETCHES;
+		maxConcurrentBlobUploadsPerCall = DEFAULT_MAX_CONCURRENT_BLOB_UPLOADS_PER_CALL;
+		maxConcurrentBlobUploads = DEFAULT_MAX_CONCURRENT_BLOB_UPLOADS;
+		maxConcurrentObjectValidations = DEFAULT_MAX_CONCURRENT_OBJECT_VALIDATIONS;
+		minStructuralIndexSize = DEFAULT_MIN_STRUCTURAL_INDEX_SIZE;
+		maxIncomingReferenceCacheSize = DEFAULT_MAX_INCOMING_REFERENCE_CACHE_SIZE;
+		maxConcurrentReferenceSearchQueries = DEFAULT_MAX_CONCURRENT_REFERENCE_SEARCH_QUERIES;
+		maxReadableWorkspaceCacheSize = DEFAULT_MAX_READABLE_WORKSPACE_CACHE_SIZE;
+		maxGlobalReturnedDataMemoryUsage = DEFAULT_MAX_GLOBAL_RETURNED_DATA_MEMORY_USAGE;
+		maxGlobalReturnedDataDiskUsage = DEFAULT_MAX_GLOBAL_RETURNED_DATA_DISK_USAGE;
+		maxResolvedWorkspaceCacheSize = DEFAULT_MAX_RESOLVED_WORKSPACE_CACHE_SIZE;
+		maxObjectVersionCacheSize = DEFAULT_MAX_OBJECT_VERSION_CACHE_SIZE;
+		maxProvenanceCacheSize = DEFAULT_MAX_PROVENANCE_CACHE_SIZE;
 	}
 	
 	public ResourceUsageConfigurationBuilder(ResourceUsageConfiguration cfg) {
@@ -35,6 +77,20 @@ public class ResourceUsageConfigurationBuilder {
 		maxRelabelAndSortMemoryUsage = cfg.getMaxRelabelAndSortMemoryUsage();
 		maxReturnedDataMemoryUsage = cfg.getMaxReturnedDataMemoryUsage();
 		maxReturnedDataSize = cfg.getMaxReturnedDataSize();
+		maxConcurrentBlobFetchesPerCall = cfg.getMaxConcurrentBlobFetchesPerCall();
+		maxConcurrentBlobFetches = cfg.getMaxConcurrentBlobFetches();
+		maxConcurrentBlobUploadsPerCall = cfg.getMaxConcurrentBlobUploadsPerCall();
+		maxConcurrentBlobUploads = cfg.getMaxConcurrentBlobUploads();
+		maxConcurrentObjectValidations = cfg.getMaxConcurrentObjectValidations();
+		minStructuralIndexSize = cfg.getMinStructuralIndexSize();
+		maxIncomingReferenceCacheSize = cfg.getMaxIncomingReferenceCacheSize();
+		maxConcurrentReferenceSearchQueries = cfg.getMaxConcurrentReferenceSearchQueries();
+		maxReadableWorkspaceCacheSize = cfg.getMaxReadableWorkspaceCacheSize();
+		maxGlobalReturnedDataMemoryUsage = cfg.getMaxGlobalReturnedDataMemoryUsage();
+		maxGlobalReturnedDataDiskUsage = cfg.getMaxGlobalReturnedDataDiskUsage();
+		maxResolvedWorkspaceCacheSize = cfg.getMaxResolvedWorkspaceCacheSize();
+		maxObjectVersionCacheSize = cfg.getMaxObjectVersionCacheSize();
+		maxProvenanceCacheSize = cfg.getMaxProvenanceCacheSize();
 	}
 	
 	public ResourceUsageConfigurationBuilder withMaxObjectSize(int maxObjectSize) {
@@ -66,10 +122,101 @@ public class ResourceUsageConfigurationBuilder {
 		return this;
 	}
 
+	public ResourceUsageConfigurationBuilder withMaxConcurrentBlobFetchesPerCall(
+			int maxConcurrentBlobFetchesPerCall) {
+		this.maxConcurrentBlobFetchesPerCall = maxConcurrentBlobFetchesPerCall;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxConcurrentBlobFetches(
+			int maxConcurrentBlobFetches) {
+		this.maxConcurrentBlobFetches = maxConcurrentBlobFetches;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxConcurrentBlobUploadsPerCall(
+			int maxConcurrentBlobUploadsPerCall) {
+		this.maxConcurrentBlobUploadsPerCall = maxConcurrentBlobUploadsPerCall;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxConcurrentBlobUploads(
+			int maxConcurrentBlobUploads) {
+		this.maxConcurrentBlobUploads = maxConcurrentBlobUploads;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxConcurrentObjectValidations(
+			int maxConcurrentObjectValidations) {
+		this.maxConcurrentObjectValidations = maxConcurrentObjectValidations;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMinStructuralIndexSize(
+			long minStructuralIndexSize) {
+		this.minStructuralIndexSize = minStructuralIndexSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxIncomingReferenceCacheSize(
+			int maxIncomingReferenceCacheSize) {
+		this.maxIncomingReferenceCacheSize = maxIncomingReferenceCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxConcurrentReferenceSearchQueries(
+			int maxConcurrentReferenceSearchQueries) {
+		this.maxConcurrentReferenceSearchQueries = maxConcurrentReferenceSearchQueries;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxReadableWorkspaceCacheSize(
+			int maxReadableWorkspaceCacheSize) {
+		this.maxReadableWorkspaceCacheSize = maxReadableWorkspaceCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxGlobalReturnedDataMemoryUsage(
+			long maxGlobalReturnedDataMemoryUsage) {
+		this.maxGlobalReturnedDataMemoryUsage = maxGlobalReturnedDataMemoryUsage;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxGlobalReturnedDataDiskUsage(
+			long maxGlobalReturnedDataDiskUsage) {
+		this.maxGlobalReturnedDataDiskUsage = maxGlobalReturnedDataDiskUsage;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxResolvedWorkspaceCacheSize(
+			int maxResolvedWorkspaceCacheSize) {
+		this.maxResolvedWorkspaceCacheSize = maxResolvedWorkspaceCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxObjectVersionCacheSize(
+			int maxObjectVersionCacheSize) {
+		this.maxObjectVersionCacheSize = maxObjectVersionCacheSize;
+		return this;
+	}
+
+	public ResourceUsageConfigurationBuilder withMaxProvenanceCacheSize(
+			int maxProvenanceCacheSize) {
+		this.maxProvenanceCacheSize = maxProvenanceCacheSize;
+		return this;
+	}
+
 	public ResourceUsageConfiguration build() {
 		return new ResourceUsageConfiguration(maxObjectSize, 
 				maxIncomingDataMemoryUsage, maxRelabelAndSortMemoryUsage,
-				maxReturnedDataMemoryUsage, maxReturnedDataSize);
+				maxReturnedDataMemoryUsage, maxReturnedDataSize,
+				maxConcurrentBlobFetchesPerCall, maxConcurrentBlobFetches,
+				maxConcurrentBlobUploadsPerCall, maxConcurrentBlobUploads,
+				maxConcurrentObjectValidations, minStructuralIndexSize,
+				maxIncomingReferenceCacheSize, maxConcurrentReferenceSearchQueries,
+				maxReadableWorkspaceCacheSize, maxGlobalReturnedDataMemoryUsage,
+				maxGlobalReturnedDataDiskUsage, maxResolvedWorkspaceCacheSize,
+				maxObjectVersionCacheSize, maxProvenanceCacheSize);
 	}
 
 	public class ResourceUsageConfiguration {
@@ -79,17 +226,84 @@ public class ResourceUsageConfigurationBuilder {
 		final private int maxRelabelAndSortMemoryUsage;
 		final private int maxReturnedDataMemoryUsage;
 		final private long maxReturnedDataSize;
+		final private int maxConcurrentBlobFetchesPerCall;
+		final private int maxConcurrentBlobFetches;
+		final private int maxConcurrentBlobUploadsPerCall;
+		final private int maxConcurrentBlobUploads;
+		final private int maxConcurrentObjectValidations;
+		final private long minStructuralIndexSize;
+		final private int maxIncomingReferenceCacheSize;
+		final private int maxConcurrentReferenceSearchQueries;
+		final private int maxReadableWorkspaceCacheSize;
+		final private long maxGlobalReturnedDataMemoryUsage;
+		final private long maxGlobalReturnedDataDiskUsage;
+		final private int maxResolvedWorkspaceCacheSize;
+		final private int maxObjectVersionCacheSize;
+		final private int maxProvenanceCacheSize;
 
 		private ResourceUsageConfiguration(final int maxObjectSize,
 				final int maxIncomingDataMemoryUsage,
 				final int maxRelabelAndSortMemoryUsage,
 				final int maxReturnedDataMemoryUsage,
-				final long maxReturnedDataSize) {
+				final long maxReturnedDataSize,
+				final int maxConcurrentBlobFetchesPerCall,
+				final int maxConcurrentBlobFetches,
+				final int maxConcurrentBlobUploadsPerCall,
+				final int maxConcurrentBlobUploads,
+				final int maxConcurrentObjectValidations,
+				final long minStructuralIndexSize,
+				final int maxIncomingReferenceCacheSize,
+				final int maxConcurrentReferenceSearchQueries,
+				final int maxReadableWorkspaceCacheSize,
+				final long maxGlobalReturnedDataMemoryUsage,
+				final long maxGlobalReturnedDataDiskUsage,
+				final int maxResolvedWorkspaceCacheSize,
+				final int maxObjectVersionCacheSize,
+				final int maxProvenanceCacheSize) {
 			checkGTZero(maxObjectSize, "Maximum object size");
 			checkGTZero(maxIncomingDataMemoryUsage, "Maximum incoming data memory usage ");
 			checkGTZero(maxRelabelAndSortMemoryUsage, "Relabel and sort memory usage");
 			checkGTZero(maxReturnedDataMemoryUsage, "Returned data memory usage");
 			checkGTZero(maxReturnedDataSize, "Returned data size");
+			checkGTZero(maxConcurrentBlobFetchesPerCall, "Concurrent blob fetches per call");
+			checkGTZero(maxConcurrentBlobFetches, "Concurrent blob fetches");
+			checkGTZero(maxConcurrentBlobUploadsPerCall, "Concurrent blob uploads per call");
+			checkGTZero(maxConcurrentBlobUploads, "Concurrent blob uploads");
+			checkGTZero(maxConcurrentObjectValidations, "Concurrent object validations");
+			checkGTZero(maxConcurrentReferenceSearchQueries,
+					"Concurrent reference search queries");
+			if (minStructuralIndexSize < 0) {
+				throw new IllegalArgumentException(
+						"Minimum structural index size must be at least zero");
+			}
+			if (maxIncomingReferenceCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Incoming reference cache size must be at least zero");
+			}
+			if (maxReadableWorkspaceCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Readable workspace cache size must be at least zero");
+			}
+			if (maxGlobalReturnedDataMemoryUsage < 0) {
+				throw new IllegalArgumentException(
+						"Global returned data memory usage must be at least zero");
+			}
+			if (maxGlobalReturnedDataDiskUsage < 0) {
+				throw new IllegalArgumentException(
+						"Global returned data disk usage must be at least zero");
+			}
+			if (maxResolvedWorkspaceCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Resolved workspace cache size must be at least zero");
+			}
+			if (maxObjectVersionCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Object version cache size must be at least zero");
+			}
+			if (maxProvenanceCacheSize < 0) {
+				throw new IllegalArgumentException(
+						"Provenance cache size must be at least zero");
+			}
 			
 			this.maxObjectSize = maxObjectSize;
 			this.maxIncomingDataMemoryUsage = maxIncomingDataMemoryUsage;
@@ -104,6 +318,20 @@ public class ResourceUsageConfigurationBuilder {
 						"Max returned data size must be greater than the max object size");
 			}
 			this.maxReturnedDataSize = maxReturnedDataSize;
+			this.maxConcurrentBlobFetchesPerCall = maxConcurrentBlobFetchesPerCall;
+			this.maxConcurrentBlobFetches = maxConcurrentBlobFetches;
+			this.maxConcurrentBlobUploadsPerCall = maxConcurrentBlobUploadsPerCall;
+			this.maxConcurrentBlobUploads = maxConcurrentBlobUploads;
+			this.maxConcurrentObjectValidations = maxConcurrentObjectValidations;
+			this.minStructuralIndexSize = minStructuralIndexSize;
+			this.maxIncomingReferenceCacheSize = maxIncomingReferenceCacheSize;
+			this.maxConcurrentReferenceSearchQueries = maxConcurrentReferenceSearchQueries;
+			this.maxReadableWorkspaceCacheSize = maxReadableWorkspaceCacheSize;
+			this.maxGlobalReturnedDataMemoryUsage = maxGlobalReturnedDataMemoryUsage;
+			this.maxGlobalReturnedDataDiskUsage = maxGlobalReturnedDataDiskUsage;
+			this.maxResolvedWorkspaceCacheSize = maxResolvedWorkspaceCacheSize;
+			this.maxObjectVersionCacheSize = maxObjectVersionCacheSize;
+			this.maxProvenanceCacheSize = maxProvenanceCacheSize;
 		}
 
 		private void checkGTZero(long maxReturnedDataDiskUsage, String name) {
@@ -164,6 +392,131 @@ public class ResourceUsageConfigurationBuilder {
 		public long getMaxReturnedDataSize() {
 			return maxReturnedDataSize;
 		}
+		
+		/** The maximum number of blobs to fetch concurrently from the blob store per method
+		 * call when returning data.
+		 * @return the maximum number of concurrent blob fetches per call.
+		 */
+		public int getMaxConcurrentBlobFetchesPerCall() {
+			return maxConcurrentBlobFetchesPerCall;
+		}
+		
+		/** The maximum number of blobs to fetch concurrently from the blob store across all
+		 * method calls when returning data.
+		 * @return the maximum number of concurrent blob fetches.
+		 */
+		public int getMaxConcurrentBlobFetches() {
+			return maxConcurrentBlobFetches;
+		}
+		
+		/** The maximum number of blobs to upload concurrently to the blob store per method
+		 * call when saving data.
+		 * @return the maximum number of concurrent blob uploads per call.
+		 */
+		public int getMaxConcurrentBlobUploadsPerCall() {
+			return maxConcurrentBlobUploadsPerCall;
+		}
+		
+		/** The maximum number of blobs to upload concurrently to the blob store across all
+		 * method calls when saving data.
+		 * @return the maximum number of concurrent blob uploads.
+		 */
+		public int getMaxConcurrentBlobUploads() {
+			return maxConcurrentBlobUploads;
+		}
+		
+		/** The maximum number of objects to validate, relabel and sort concurrently when
+		 * saving data, across all method calls. Note that up to this many objects may be
+		 * relabeled and sorted at once, each using up to
+		 * {@link #getMaxRelabelAndSortMemoryUsage()} memory.
+		 * @return the maximum number of concurrent object validations.
+		 */
+		public int getMaxConcurrentObjectValidations() {
+			return maxConcurrentObjectValidations;
+		}
+		
+		/** The minimum size of an object for a structural index of the object to be built
+		 * when the object is saved. The index allows subsets of the object to be extracted
+		 * without parsing the entire object. 0 means no indexes are built.
+		 * @return the minimum object size for building a structural index.
+		 */
+		public long getMinStructuralIndexSize() {
+			return minStructuralIndexSize;
+		}
+		
+		/** The maximum number of object versions for which the incoming references will be
+		 * cached to speed up reference path searches. 0 means no incoming references are
+		 * cached.
+		 * @return the maximum size of the incoming reference cache.
+		 */
+		public int getMaxIncomingReferenceCacheSize() {
+			return maxIncomingReferenceCacheSize;
+		}
+		
+		/** The maximum number of database queries to run concurrently when searching the
+		 * reference graph for paths to objects, across all method calls. 1 means searches
+		 * are run serially in the calling thread.
+		 * @return the maximum number of concurrent reference search queries.
+		 */
+		public int getMaxConcurrentReferenceSearchQueries() {
+			return maxConcurrentReferenceSearchQueries;
+		}
+		
+		/** The maximum number of users for which the IDs of the workspaces the user can read
+		 * will be cached to speed up reference path searches. 0 means no workspace IDs are
+		 * cached.
+		 * @return the maximum size of the readable workspace cache.
+		 */
+		public int getMaxReadableWorkspaceCacheSize() {
+			return maxReadableWorkspaceCacheSize;
+		}
+		
+		/** The maximum memory to use for typed objects when returning data across all method
+		 * calls. Once this limit is reached, returned data will be stored on disk regardless of
+		 * the per call limit, {@link #getMaxReturnedDataMemoryUsage()}. 0 means there is no
+		 * limit across method calls.
+		 * @return the maximum memory allowed for outgoing typed objects across all calls.
+		 */
+		public long getMaxGlobalReturnedDataMemoryUsage() {
+			return maxGlobalReturnedDataMemoryUsage;
+		}
+		
+		/** The maximum disk space to use for typed objects when returning data across all
+		 * method calls. Once this limit is reached, method calls will wait for disk space to
+		 * become available and fail if it does not become available in a reasonable time. 0
+		 * means there is no limit across method calls.
+		 * @return the maximum disk space allowed for outgoing typed objects across all calls.
+		 */
+		public long getMaxGlobalReturnedDataDiskUsage() {
+			return maxGlobalReturnedDataDiskUsage;
+		}
+		
+		/** The maximum number of workspaces for which the workspace ID, name, and locked and
+		 * deleted states will be cached to avoid querying the database when resolving
+		 * workspace identifiers. 0 means no workspaces are cached.
+		 * @return the maximum size of the resolved workspace cache.
+		 */
+		public int getMaxResolvedWorkspaceCacheSize() {
+			return maxResolvedWorkspaceCacheSize;
+		}
+		
+		/** The maximum number of object versions for which the version document will be
+		 * cached to avoid querying the database when getting object information or data.
+		 * 0 means no versions are cached.
+		 * @return the maximum size of the object version cache.
+		 */
+		public int getMaxObjectVersionCacheSize() {
+			return maxObjectVersionCacheSize;
+		}
+		
+		/** The maximum number of provenance documents that will be cached, after decoding, to
+		 * avoid querying the database when getting object provenance. 0 means no provenance is
+		 * cached.
+		 * @return the maximum size of the provenance cache.
+		 */
+		public int getMaxProvenanceCacheSize() {
+			return maxProvenanceCacheSize;
+		}
 
 		@Override
 		public int hashCode() {
@@ -175,6 +528,23 @@ public class ResourceUsageConfigurationBuilder {
 			result = prime * result + maxRelabelAndSortMemoryUsage;
 			result = prime * result + maxReturnedDataMemoryUsage;
 			result = prime * result + (int) (maxReturnedDataSize ^ (maxReturnedDataSize >>> 32));
+			result = prime * result + maxConcurrentBlobFetchesPerCall;
+			result = prime * result + maxConcurrentBlobFetches;
+			result = prime * result + maxConcurrentBlobUploadsPerCall;
+			result = prime * result + maxConcurrentBlobUploads;
+			result = prime * result + maxConcurrentObjectValidations;
+			result = prime * result +
+					(int) (minStructuralIndexSize ^ (minStructuralIndexSize >>> 32));
+			result = prime * result + maxIncomingReferenceCacheSize;
+			result = prime * result + maxConcurrentReferenceSearchQueries;
+			result = prime * result + maxReadableWorkspaceCacheSize;
+			result = prime * result + (int) (maxGlobalReturnedDataMemoryUsage ^
+					(maxGlobalReturnedDataMemoryUsage >>> 32));
+			result = prime * result + (int) (maxGlobalReturnedDataDiskUsage ^
+					(maxGlobalReturnedDataDiskUsage >>> 32));
+			result = prime * result + maxResolvedWorkspaceCacheSize;
+			result = prime * result + maxObjectVersionCacheSize;
+			result = prime * result + maxProvenanceCacheSize;
 			return result;
 		}
 
@@ -208,6 +578,49 @@ public class ResourceUsageConfigurationBuilder {
 			if (maxReturnedDataSize != other.maxReturnedDataSize) {
 				return false;
 			}
+			if (maxConcurrentBlobFetchesPerCall != other.maxConcurrentBlobFetchesPerCall) {
+				return false;
+			}
+			if (maxConcurrentBlobFetches != other.maxConcurrentBlobFetches) {
+				return false;
+			}
+			if (maxConcurrentBlobUploadsPerCall != other.maxConcurrentBlobUploadsPerCall) {
+				return false;
+			}
+			if (maxConcurrentBlobUploads != other.maxConcurrentBlobUploads) {
+				return false;
+			}
+			if (maxConcurrentObjectValidations != other.maxConcurrentObjectValidations) {
+				return false;
+			}
+			if (minStructuralIndexSize != other.minStructuralIndexSize) {
+				return false;
+			}
+			if (maxIncomingReferenceCacheSize != other.maxIncomingReferenceCacheSize) {
+				return false;
+			}
+			if (maxConcurrentReferenceSearchQueries !=
+					other.maxConcurrentReferenceSearchQueries) {
+				return false;
+			}
+			if (maxReadableWorkspaceCacheSize != other.maxReadableWorkspaceCacheSize) {
+				return false;
+			}
+			if (maxGlobalReturnedDataMemoryUsage != other.maxGlobalReturnedDataMemoryUsage) {
+				return false;
+			}
+			if (maxGlobalReturnedDataDiskUsage != other.maxGlobalReturnedDataDiskUsage) {
+				return false;
+			}
+			if (maxResolvedWorkspaceCacheSize != other.maxResolvedWorkspaceCacheSize) {
+				return false;
+			}
+			if (maxObjectVersionCacheSize != other.maxObjectVersionCacheSize) {
+				return false;
+			}
+			if (maxProvenanceCacheSize != other.maxProvenanceCacheSize) {
+				return false;
+			}
 			return true;
 		}
 
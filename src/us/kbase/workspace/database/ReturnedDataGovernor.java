@@ -0,0 +1,176 @@
+package us.kbase.workspace.database;
+
+import java.util.concurrent.TimeUnit;
+
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+/** Limits the total memory and disk space used for returned data across all method calls.
+ * A single governor is shared between all the {@link ByteArrayFileCacheManager}s created for
+ * individual method calls, each of which leases memory and disk space from the governor as it
+ * caches data and returns the leases when the data is destroyed.
+ *
+ * When the memory budget is exhausted, managers store further data on disk rather than in
+ * memory. When the disk budget is exhausted, requests for disk space wait until space is
+ * returned to the governor or a timeout expires, at which point an exception is thrown.
+ *
+ * This class is thread safe.
+ */
+public class ReturnedDataGovernor {
+
+	private final long maxWaitTimeInNanos;
+	// all fields below are guarded by this
+	private long maxMemory;
+	private long maxDisk;
+	private long memoryUsage = 0;
+	private long diskUsage = 0;
+	private int waiting = 0;
+
+	/** Create the governor.
+	 * @param maxMemory the maximum memory, in bytes, to use for returned data.
+	 * @param maxDisk the maximum disk space, in bytes, to use for returned data.
+	 * @param maxWaitTimeInMS the maximum time, in milliseconds, to wait for disk space to
+	 * become available before failing a request.
+	 */
+	public ReturnedDataGovernor(
+			final long maxMemory,
+			final long maxDisk,
+			final long maxWaitTimeInMS) {
+		checkLimits(maxMemory, maxDisk);
+		if (maxWaitTimeInMS < 0) {
+			throw new IllegalArgumentException("maxWaitTimeInMS must be at least 0");
+		}
+		this.maxMemory = maxMemory;
+		this.maxDisk = maxDisk;
+		this.maxWaitTimeInNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitTimeInMS);
+	}
+
+	private static void checkLimits(final long maxMemory, final long maxDisk) {
+		if (maxMemory < 0) {
+			throw new IllegalArgumentException("maxMemory must be at least 0");
+		}
+		if (maxDisk < 0) {
+			throw new IllegalArgumentException("maxDisk must be at least 0");
+		}
+	}
+
+	/** Change the limits of the governor. Outstanding leases are unaffected, but if they
+	 * exceed the new limits, no further leases will be granted until enough space is returned.
+	 * @param maxMemory the maximum memory, in bytes, to use for returned data.
+	 * @param maxDisk the maximum disk space, in bytes, to use for returned data.
+	 */
+	public synchronized void setLimits(final long maxMemory, final long maxDisk) {
+		checkLimits(maxMemory, maxDisk);
+		this.maxMemory = maxMemory;
+		this.maxDisk = maxDisk;
+		notifyAll();
+	}
+
+	/** Lease memory from the governor if available. This method never waits.
+	 * @param size the amount of memory in bytes.
+	 * @return true if the memory was leased, false if insufficient memory is available.
+	 */
+	public synchronized boolean reserveMemory(final long size) {
+		checkSize(size);
+		if (memoryUsage + size > maxMemory) {
+			return false;
+		}
+		memoryUsage += size;
+		return true;
+	}
+
+	/** Return leased memory to the governor.
+	 * @param size the amount of memory in bytes.
+	 */
+	public synchronized void releaseMemory(final long size) {
+		checkSize(size);
+		memoryUsage -= size;
+	}
+
+	/** Lease disk space from the governor, waiting for space to become available if
+	 * necessary.
+	 * @param size the amount of disk space in bytes.
+	 * @throws FileCacheLimitExceededException if the space is larger than the disk limit, the
+	 * space did not become available before the timeout expired, or the thread was interrupted
+	 * while waiting.
+	 */
+	public synchronized void reserveDisk(final long size)
+			throws FileCacheLimitExceededException {
+		checkSize(size);
+		final long deadline = System.nanoTime() + maxWaitTimeInNanos;
+		while (diskUsage + size > maxDisk) {
+			final long remaining = deadline - System.nanoTime();
+			if (size > maxDisk || remaining <= 0) {
+				throw new FileCacheLimitExceededException(
+						"Global disk limit exceeded for returned data: " + maxDisk);
+			}
+			waiting++;
+			try {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new FileCacheLimitExceededException(
+						"Interrupted while waiting for disk space for returned data", e);
+			} finally {
+				waiting--;
+			}
+		}
+		diskUsage += size;
+	}
+
+	/** Return leased disk space to the governor.
+	 * @param size the amount of disk space in bytes.
+	 */
+	public synchronized void releaseDisk(final long size) {
+		checkSize(size);
+		diskUsage -= size;
+		notifyAll();
+	}
+
+	private void checkSize(final long size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("size must be at least 0");
+		}
+	}
+
+	/** Get the memory currently leased from the governor.
+	 * @return the memory usage in bytes.
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/** Get the disk space currently leased from the governor.
+	 * @return the disk usage in bytes.
+	 */
+	public synchronized long getDiskUsage() {
+		return diskUsage;
+	}
+
+	/** Get the maximum memory that may be leased from the governor.
+	 * @return the maximum memory in bytes.
+	 */
+	public synchronized long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/** Get the maximum disk space that may be leased from the governor.
+	 * @return the maximum disk space in bytes.
+	 */
+	public synchronized long getMaxDisk() {
+		return maxDisk;
+	}
+
+	/** Get the number of threads currently waiting for disk space.
+	 * @return the number of waiting threads.
+	 */
+	public synchronized int getWaitingCount() {
+		return waiting;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ReturnedDataGovernor [maxMemory=" + maxMemory + ", maxDisk=" + maxDisk
+				+ ", memoryUsage=" + memoryUsage + ", diskUsage=" + diskUsage
+				+ ", waiting=" + waiting + "]";
+	}
+}
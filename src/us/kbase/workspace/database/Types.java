@@ -12,6 +12,7 @@ import java.util.TreeMap;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypeDefName;
+import us.kbase.typedobj.core.TypedObjectValidator;
 import us.kbase.typedobj.db.FuncDetailedInfo;
 import us.kbase.typedobj.db.FuncInfo;
 import us.kbase.typedobj.db.ModuleDefId;
@@ -29,12 +30,24 @@ import us.kbase.typedobj.exceptions.TypeStorageException;
 public class Types {
 	
 	private final TypeDefinitionDB typedb;
+	private final TypedObjectValidator validator;
 	
 	public Types(final TypeDefinitionDB typeDB) {
+		this(typeDB, null);
+	}
+	
+	/** Create the types handler.
+	 * @param typeDB the type database.
+	 * @param validator the validator that validates objects against the types in the type
+	 * database. Cached type schemas are removed from the validator when a module is released.
+	 * May be null.
+	 */
+	public Types(final TypeDefinitionDB typeDB, final TypedObjectValidator validator) {
 		if (typeDB == null) {
 			throw new NullPointerException("typeDB cannot be null");
 		}
 		this.typedb = typeDB;
+		this.validator = validator;
 	}
 	
 	private String getUser(WorkspaceUser user) {
@@ -107,7 +120,11 @@ public class Types {
 			final String module)
 			throws NoSuchModuleException, TypeStorageException,
 			NoSuchPrivilegeException {
-		return typedb.releaseModule(module, user.getUser(), false);
+		final List<AbsoluteTypeDefId> ret = typedb.releaseModule(module, user.getUser(), false);
+		if (validator != null) {
+			validator.invalidateModule(module);
+		}
+		return ret;
 	}
 	
 	public String getJsonSchema(final TypeDefId type, WorkspaceUser user) throws
@@ -18,11 +18,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.LoggerFactory;
 
 import us.kbase.auth.AuthToken;
 import us.kbase.common.utils.sortjson.KeyDuplicationException;
@@ -41,6 +53,7 @@ import us.kbase.typedobj.exceptions.TypeStorageException;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
 import us.kbase.typedobj.exceptions.TypedObjectSchemaException;
 import us.kbase.typedobj.exceptions.TypedObjectValidationException;
+import us.kbase.typedobj.idref.DeferredIdReferenceHandlerSet;
 import us.kbase.typedobj.idref.IdReference;
 import us.kbase.typedobj.idref.IdReferenceHandlerSet;
 import us.kbase.typedobj.idref.IdReferenceHandlerSet.IdParseException;
@@ -54,6 +67,7 @@ import us.kbase.typedobj.idref.IdReferenceHandlerSetFactory.IdReferenceHandlerFa
 import us.kbase.typedobj.idref.IdReferencePermissionHandlerSet.IdReferencePermissionHandler;
 import us.kbase.typedobj.idref.IdReferenceType;
 import us.kbase.typedobj.idref.RemappedId;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
 import us.kbase.workspace.database.ObjectResolver.ObjectResolution;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
 import us.kbase.workspace.database.refsearch.ReferenceSearchMaximumSizeExceededException;
@@ -90,11 +104,22 @@ public class Workspace {
 	
 	private final static IdReferenceType WS_ID_TYPE = new IdReferenceType("ws");
 	
+	/* How long a method call will wait for disk space for returned data when the global disk
+	 * limit is reached.
+	 */
+	private final static long RETURNED_DATA_DISK_WAIT_MS = 60 * 1000;
+	
 	private final WorkspaceDatabase db;
 	private ResourceUsageConfiguration rescfg;
 	private final TypedObjectValidator validator;
 	private final List<WorkspaceEventListener> listeners;
 	private int maximumObjectSearchCount;
+	// null if objects are to be validated serially
+	private volatile ForkJoinPool objectPool;
+	// resized rather than replaced so that running reference searches are unaffected
+	private final ThreadPoolExecutor refSearchPool;
+	// resized rather than replaced so that leases from running calls are returned correctly
+	private final ReturnedDataGovernor dataGovernor;
 	
 	public Workspace(
 			final WorkspaceDatabase db,
@@ -123,6 +148,12 @@ public class Workspace {
 		//TODO DBCONSIST check that a few object types exist to make sure the type provider is ok.
 		this.validator = validator;
 		rescfg = cfg;
+		objectPool = createObjectPool(rescfg);
+		refSearchPool = createReferenceSearchPool(rescfg);
+		dataGovernor = new ReturnedDataGovernor(
+				getGlobalLimit(rescfg.getMaxGlobalReturnedDataMemoryUsage()),
+				getGlobalLimit(rescfg.getMaxGlobalReturnedDataDiskUsage()),
+				RETURNED_DATA_DISK_WAIT_MS);
 		this.listeners = Collections.unmodifiableList(listeners);
 		db.setResourceUsageConfiguration(rescfg);
 		this.maximumObjectSearchCount = MAX_OBJECT_SEARCH_COUNT_DEFAULT;
@@ -144,18 +175,91 @@ public class Workspace {
 		return rescfg;
 	}
 	
-	public void setResourceConfig(final ResourceUsageConfiguration rescfg) {
+	public synchronized void setResourceConfig(final ResourceUsageConfiguration rescfg) {
 		if (rescfg == null) {
 			throw new NullPointerException("rescfg cannot be null");
 		}
+		if (rescfg.getMaxConcurrentObjectValidations() !=
+				this.rescfg.getMaxConcurrentObjectValidations()) {
+			final ForkJoinPool old = objectPool;
+			objectPool = createObjectPool(rescfg);
+			if (old != null) {
+				// any running validations will complete
+				old.shutdown();
+			}
+		}
+		resizeReferenceSearchPool(rescfg.getMaxConcurrentReferenceSearchQueries());
+		dataGovernor.setLimits(
+				getGlobalLimit(rescfg.getMaxGlobalReturnedDataMemoryUsage()),
+				getGlobalLimit(rescfg.getMaxGlobalReturnedDataDiskUsage()));
 		this.rescfg = rescfg;
 		db.setResourceUsageConfiguration(rescfg);
 	}
 	
+	// 0 means no limit
+	private static long getGlobalLimit(final long limit) {
+		return limit < 1 ? Long.MAX_VALUE : limit;
+	}
+	
+	/** Get the governor that limits the memory and disk space used for returned data across
+	 * all method calls. The governor provides the current memory and disk usage.
+	 * @return the returned data governor.
+	 */
+	public ReturnedDataGovernor getReturnedDataGovernor() {
+		return dataGovernor;
+	}
+	
+	private static ForkJoinPool createObjectPool(final ResourceUsageConfiguration rescfg) {
+		final int parallelism = rescfg.getMaxConcurrentObjectValidations();
+		return parallelism < 2 ? null : new ForkJoinPool(parallelism);
+	}
+	
+	private static ThreadPoolExecutor createReferenceSearchPool(
+			final ResourceUsageConfiguration rescfg) {
+		final int size = rescfg.getMaxConcurrentReferenceSearchQueries();
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("refsearch-%d").build());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+	
+	private void resizeReferenceSearchPool(final int size) {
+		// the core size may never be larger than the max size
+		if (size > refSearchPool.getMaximumPoolSize()) {
+			refSearchPool.setMaximumPoolSize(size);
+			refSearchPool.setCorePoolSize(size);
+		} else {
+			refSearchPool.setCorePoolSize(size);
+			refSearchPool.setMaximumPoolSize(size);
+		}
+	}
+	
+	// null if reference searches are to be run serially
+	private ExecutorService getReferenceSearchExecutor() {
+		return rescfg.getMaxConcurrentReferenceSearchQueries() < 2 ? null : refSearchPool;
+	}
+	
 	public TempFilesManager getTempFilesManager() {
 		return db.getTempFilesManager();
 	}
 	
+	/** Close the event listeners, releasing any connections and threads they hold. Called when
+	 * the workspace server shuts down. A listener that fails to close is logged and does not
+	 * prevent the remaining listeners from closing.
+	 */
+	public void closeListeners() {
+		for (final WorkspaceEventListener l: listeners) {
+			try {
+				l.close();
+			} catch (RuntimeException e) {
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Failed to close event listener %s: %s",
+						l.getClass().getName(), e.getMessage()), e);
+			}
+		}
+	}
+	
 	public List<DependencyStatus> status() {
 		return db.status();
 	}
@@ -694,59 +798,70 @@ public class Workspace {
 				idHandlerFac.createHandlers(IDAssociation.class);
 		
 		final Map<WorkspaceSaveObject, ValidatedTypedObject> reports = 
-				validateObjectsAndExtractReferences(objects, idhandler);
+				validateObjectsAndExtractReferences(objects, idHandlerFac, idhandler);
 		
 		processIds(objects, idhandler, reports);
 		
 		//handle references and calculate size with new references
 		final List<ResolvedSaveObject> saveobjs = new ArrayList<ResolvedSaveObject>();
 		long ttlObjSize = 0;
+		// the memory used by relabeled objects kept in memory for sorting
+		long relabeledMem = 0;
 		int objcount = 1;
-		for (WorkspaceSaveObject wo: objects) {
-			//maintain ordering
-			wo.getProvenance().setWorkspaceID(new Long(rwsi.getID()));
-			final List<Reference> provrefs = new LinkedList<Reference>();
-			for (final Provenance.ProvenanceAction action: wo.getProvenance().getActions()) {
-				for (final String ref: action.getWorkspaceObjects()) {
-					provrefs.add((Reference) idhandler.getRemappedId(WS_ID_TYPE, ref));
+		try {
+			for (WorkspaceSaveObject wo: objects) {
+				//maintain ordering
+				wo.getProvenance().setWorkspaceID(new Long(rwsi.getID()));
+				final List<Reference> provrefs = new LinkedList<Reference>();
+				for (final Provenance.ProvenanceAction action: wo.getProvenance().getActions()) {
+					for (final String ref: action.getWorkspaceObjects()) {
+						provrefs.add((Reference) idhandler.getRemappedId(WS_ID_TYPE, ref));
+					}
 				}
-			}
-			final Map<IdReferenceType, Set<RemappedId>> extractedIDs =
-					new HashMap<IdReferenceType, Set<RemappedId>>();
-			for (final IdReferenceType irt: idhandler.getIDTypes()) {
-				if (!WS_ID_TYPE.equals(irt)) {
-					final Set<RemappedId> ids = idhandler.getRemappedIds(
-							irt, new IDAssociation(objcount, false));
-					if (!ids.isEmpty()) {
-						extractedIDs.put(irt, ids);
+				final Map<IdReferenceType, Set<RemappedId>> extractedIDs =
+						new HashMap<IdReferenceType, Set<RemappedId>>();
+				for (final IdReferenceType irt: idhandler.getIDTypes()) {
+					if (!WS_ID_TYPE.equals(irt)) {
+						final Set<RemappedId> ids = idhandler.getRemappedIds(
+								irt, new IDAssociation(objcount, false));
+						if (!ids.isEmpty()) {
+							extractedIDs.put(irt, ids);
+						}
 					}
 				}
-			}
-			final Set<RemappedId> refids = idhandler.getRemappedIds(
-					WS_ID_TYPE, new IDAssociation(objcount, false));
-			final Set<Reference> refs = new HashSet<Reference>();
-			for (final RemappedId id: refids) {
-				refs.add((Reference) id);
-			}
+				final Set<RemappedId> refids = idhandler.getRemappedIds(
+						WS_ID_TYPE, new IDAssociation(objcount, false));
+				final Set<Reference> refs = new HashSet<Reference>();
+				for (final RemappedId id: refids) {
+					refs.add((Reference) id);
+				}
 			
-			final ValidatedTypedObject rep = reports.get(wo);
-			saveobjs.add(wo.resolve(rep, refs, provrefs, extractedIDs));
-			ttlObjSize += rep.calculateRelabeledSize();
-			if (rep.getRelabeledSize() > rescfg.getMaxObjectSize()) {
-				throw new IllegalArgumentException(String.format(
-						"Object %s data size %s exceeds limit of %s",
-						getObjectErrorId(wo.getObjectIdentifier(), objcount),
-						rep.getRelabeledSize(),
-						rescfg.getMaxObjectSize()));
+				final ValidatedTypedObject rep = reports.get(wo);
+				saveobjs.add(wo.resolve(rep, refs, provrefs, extractedIDs));
+				/* relabel, size, and extract metadata in one pass, keeping the relabeled object
+				 * in memory while the total stays within the incoming data memory limit.
+				 */
+				final long relabelMemLimit = Math.max(
+						0, rescfg.getMaxIncomingDataMemoryUsage() - relabeledMem);
+				final long size = rep.relabel(relabelMemLimit, getTempFilesManager());
+				if (size <= relabelMemLimit) {
+					relabeledMem += size;
+				}
+				ttlObjSize += size;
+				if (rep.getRelabeledSize() > rescfg.getMaxObjectSize()) {
+					throw new IllegalArgumentException(String.format(
+							"Object %s data size %s exceeds limit of %s",
+							getObjectErrorId(wo.getObjectIdentifier(), objcount),
+							rep.getRelabeledSize(),
+							rescfg.getMaxObjectSize()));
+				}
+				objcount++;
 			}
-			objcount++;
-		}
-		objects = null;
-		reports.clear();
-		
-		final WorkspaceInformation wsinfo = db.getWorkspaceInformation(user, rwsi);
-		
-		try {
+			objects = null;
+			reports.clear();
+			
+			final WorkspaceInformation wsinfo = db.getWorkspaceInformation(user, rwsi);
+			
 			sortObjects(saveobjs, ttlObjSize);
 			final List<ObjectInformation> ret = db.saveObjects(user, rwsi, saveobjs);
 			for (final WorkspaceEventListener l: listeners) {
@@ -770,7 +885,6 @@ public class Workspace {
 			final List<ResolvedSaveObject> saveobjs,
 			final long ttlObjSize)
 			throws IOException, TypedObjectValidationException {
-		int objcount = 1;
 		final TempFilesManager tempTFM;
 		if (ttlObjSize > rescfg.getMaxIncomingDataMemoryUsage()) {
 			tempTFM = getTempFilesManager();
@@ -779,7 +893,8 @@ public class Workspace {
 		}
 		final UTF8JsonSorterFactory fac = new UTF8JsonSorterFactory(
 				rescfg.getMaxRelabelAndSortMemoryUsage());
-		for (final ResolvedSaveObject ro: saveobjs) {
+		final List<ObjectResult<Void>> results = runOnObjects(saveobjs.size(), i -> {
+			final ResolvedSaveObject ro = saveobjs.get(i);
 			try {
 				//modifies object in place
 				ro.getRep().sort(fac, tempTFM);
@@ -789,31 +904,165 @@ public class Workspace {
 				 */
 				throw new TypedObjectValidationException(String.format(
 						"Object %s: Two references in a single hash are identical when resolved, resulting in a loss of data: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
+						getObjectErrorId(ro.getObjectIdentifier(), i + 1))
 						+ kde.getLocalizedMessage(), kde);
 			} catch (TooManyKeysException tmke) {
 				throw new TypedObjectValidationException(String.format(
 						"Object %s: ",
-						getObjectErrorId(ro.getObjectIdentifier(), objcount))
+						getObjectErrorId(ro.getObjectIdentifier(), i + 1))
 						+ tmke.getLocalizedMessage(), tmke);
 			}
-			objcount++;
+			return null;
+		});
+		for (final ObjectResult<Void> res: results) {
+			final Exception e = res.getError();
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			} else if (e instanceof TypedObjectValidationException) {
+				throw (TypedObjectValidationException) e;
+			}
+			res.checkUnchecked();
+		}
+	}
+	
+	private interface ObjectOperation<T> {
+		
+		T run(int index) throws Exception;
+	}
+	
+	/* The result of an operation on one object in a list. If the operation was skipped because
+	 * the operation on an earlier object failed, both the result and error are null.
+	 */
+	private static class ObjectResult<T> {
+		
+		private final T result;
+		private final Exception error;
+		
+		private ObjectResult(final T result, final Exception error) {
+			this.result = result;
+			this.error = error;
+		}
+		
+		private T getResult() {
+			return result;
 		}
+		
+		private Exception getError() {
+			return error;
+		}
+		
+		/* throws the error if it's unchecked, or wrapped if it's a checked exception the caller
+		 * didn't expect.
+		 */
+		private void checkUnchecked() {
+			if (error instanceof RuntimeException) {
+				throw (RuntimeException) error;
+			} else if (error != null) {
+				throw new RuntimeException("Unexpected exception processing object: " +
+						error.getMessage(), error);
+			}
+		}
+	}
+	
+	/* Runs an operation on each object in a list of the given size, concurrently if the
+	 * workspace is configured to do so, and returns the results in order. Once an operation
+	 * fails, operations on later objects in the list are not started, so the caller must check
+	 * the results in order and throw the first error found to report errors as if the
+	 * operations were run serially.
+	 */
+	private <T> List<ObjectResult<T>> runOnObjects(
+			final int count,
+			final ObjectOperation<T> op) {
+		final AtomicInteger firstFailure = new AtomicInteger(count);
+		final List<Callable<ObjectResult<T>>> tasks = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			tasks.add(() -> {
+				if (index > firstFailure.get()) {
+					return new ObjectResult<>(null, null);
+				}
+				try {
+					return new ObjectResult<>(op.run(index), null);
+				} catch (Exception e) {
+					firstFailure.accumulateAndGet(index, Math::min);
+					return new ObjectResult<>(null, e);
+				}
+			});
+		}
+		final List<ObjectResult<T>> ret = new ArrayList<>(count);
+		final ForkJoinPool pool = objectPool;
+		if (pool == null || count < 2) {
+			for (final Callable<ObjectResult<T>> t: tasks) {
+				try {
+					ret.add(t.call());
+				} catch (Exception e) {
+					throw new RuntimeException("Can't happen, the task catches exceptions", e);
+				}
+			}
+		} else {
+			for (final Future<ObjectResult<T>> f: pool.invokeAll(tasks)) {
+				try {
+					ret.add(Uninterruptibles.getUninterruptibly(f));
+				} catch (ExecutionException e) {
+					// only Errors are not caught by the task
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+				}
+			}
+		}
+		return ret;
 	}
 
 	private Map<WorkspaceSaveObject, ValidatedTypedObject>
 			validateObjectsAndExtractReferences(
 			final List<WorkspaceSaveObject> objects,
+			final IdReferenceHandlerSetFactory idHandlerFac,
 			final IdReferenceHandlerSet<IDAssociation> idhandler)
 			throws TypeStorageException, TypedObjectSchemaException,
 			TypedObjectValidationException {
+		/* Each object is validated, possibly concurrently, against its own ID handler set.
+		 * The IDs are then added to the shared ID handler set serially and in order, so that
+		 * errors are reported as if the objects were validated serially.
+		 */
+		final List<DeferredIdReferenceHandlerSet<IDAssociation>> objhandlers =
+				new ArrayList<>(objects.size());
+		for (int i = 0; i < objects.size(); i++) {
+			objhandlers.add(new DeferredIdReferenceHandlerSet<>(
+					idHandlerFac.createHandlers(IDAssociation.class), idhandler));
+		}
+		final List<ObjectResult<ValidatedTypedObject>> results = runOnObjects(
+				objects.size(), i -> {
+					final DeferredIdReferenceHandlerSet<IDAssociation> h = objhandlers.get(i);
+					h.associateObject(new IDAssociation(i + 1, false));
+					return validate(objects.get(i), h, i + 1);
+				});
 		final Map<WorkspaceSaveObject, ValidatedTypedObject> reports = 
 				new HashMap<WorkspaceSaveObject, ValidatedTypedObject>();
 		int objcount = 1;
 		for (final WorkspaceSaveObject wo: objects) {
-			idhandler.associateObject(new IDAssociation(objcount, false));
-			final ValidatedTypedObject rep = validate(wo, idhandler, objcount);
-			reports.put(wo, rep);
+			final ObjectResult<ValidatedTypedObject> res = results.get(objcount - 1);
+			final Exception e = res.getError();
+			if (e instanceof TypeStorageException) {
+				throw (TypeStorageException) e;
+			} else if (e instanceof TypedObjectSchemaException) {
+				throw (TypedObjectSchemaException) e;
+			} else if (e instanceof TypedObjectValidationException) {
+				throw (TypedObjectValidationException) e;
+			}
+			res.checkUnchecked();
+			reports.put(wo, res.getResult());
+			try {
+				objhandlers.get(objcount - 1).addIdsToTarget();
+			} catch (TooManyIdsException tmie) {
+				throw wrapTooManyIDsException(objcount, idhandler, tmie);
+			} catch (IdReferenceHandlerException ihre) {
+				// the same IDs were accepted by the object's own handlers, so this is unexpected
+				throw new TypedObjectValidationException(String.format(
+						"Object %s has an invalid ID: ",
+						getObjectErrorId(wo, objcount)) + ihre.getMessage(), ihre);
+			}
 			idhandler.associateObject(new IDAssociation(objcount, true));
 			try {
 				for (final Provenance.ProvenanceAction action: wo.getProvenance().getActions()) {
@@ -1066,7 +1315,8 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferenceSearchExecutor(getReferenceSearchExecutor());
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1135,6 +1385,129 @@ public class Workspace {
 		}
 	}
 
+	/** Get objects without their data, deferring retrieval of the data until
+	 * {@link #getObjectData(WorkspaceObjectData, SubsetSelection, ByteArrayFileCacheManager)}
+	 * is called. This allows callers to process the data for one object at a time rather than
+	 * holding the data for all the objects at once.
+	 * 
+	 * The total size of the objects' data is checked against the maximum returned data size
+	 * as for {@link #getObjects(WorkspaceUser, List, boolean, boolean, boolean)}.
+	 * @param user the user getting the objects.
+	 * @param loi the objects to get.
+	 * @param nullIfInaccessible return null rather than throwing an exception if an object is
+	 * inaccessible.
+	 * @param asAdmin run the method as an administrator.
+	 * @return the objects, without data.
+	 * @throws CorruptWorkspaceDBException if corrupt data is found in the storage system.
+	 * @throws WorkspaceCommunicationException if a communication error with the storage system
+	 * occurs.
+	 * @throws InaccessibleObjectException if an object is inaccessible.
+	 * @throws NoSuchReferenceException if a reference in a reference path does not exist.
+	 * @throws TypedObjectExtractionException if an error occurred extracting data from a typed
+	 * object.
+	 * @throws ReferenceSearchMaximumSizeExceededException if a search for an object traverses
+	 * too many other objects.
+	 * @throws NoSuchObjectException if an object does not exist.
+	 */
+	public List<WorkspaceObjectData> getObjectsWithDeferredData(
+			final WorkspaceUser user,
+			final List<ObjectIdentifier> loi,
+			final boolean nullIfInaccessible,
+			final boolean asAdmin)
+			throws CorruptWorkspaceDBException,
+				WorkspaceCommunicationException, InaccessibleObjectException,
+				NoSuchReferenceException, TypedObjectExtractionException,
+				ReferenceSearchMaximumSizeExceededException, NoSuchObjectException {
+		final List<WorkspaceObjectData> ret = getObjects(
+				user, loi, true, nullIfInaccessible, asAdmin);
+		// as for getObjects, an object requested more than once only counts once
+		final Set<String> counted = new HashSet<>();
+		long size = 0;
+		for (final WorkspaceObjectData o: ret) {
+			if (o != null) {
+				final ObjectInformation info = o.getObjectInfo();
+				if (counted.add(info.getWorkspaceId() + "/" + info.getObjectId() + "/" +
+						info.getVersion())) {
+					size += info.getSize();
+				}
+			}
+		}
+		if (size > rescfg.getMaxReturnedDataSize()) {
+			throw new IllegalArgumentException(String.format(
+					"Too much data requested from the workspace at once; " +
+					"data requested including potential subsets is %sB " + 
+					"which exceeds maximum of %s.", size, rescfg.getMaxReturnedDataSize()));
+		}
+		return ret;
+	}
+	
+	/** Get the data for an object retrieved by
+	 * {@link #getObjectsWithDeferredData(WorkspaceUser, List, boolean, boolean)}.
+	 * @param object the object.
+	 * @param subset the subset of the data to return.
+	 * @param dataManager the data manager for the request, created by
+	 * {@link #createDataManager()}.
+	 * @return the data. The caller is responsible for destroying the data when it is no longer
+	 * needed.
+	 * @throws CorruptWorkspaceDBException if corrupt data is found in the storage system.
+	 * @throws WorkspaceCommunicationException if a communication error with the storage system
+	 * occurs.
+	 * @throws TypedObjectExtractionException if an error occurred extracting data from a typed
+	 * object.
+	 */
+	public ByteArrayFileCache getObjectData(
+			final WorkspaceObjectData object,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager dataManager)
+			throws CorruptWorkspaceDBException, WorkspaceCommunicationException,
+				TypedObjectExtractionException {
+		requireNonNull(object, "object");
+		requireNonNull(subset, "subset");
+		requireNonNull(dataManager, "dataManager");
+		return db.getObjectData(object.getObjectInfo(), subset, dataManager);
+	}
+	
+	/** Start getting the data for an object retrieved by
+	 * {@link #getObjectsWithDeferredData(WorkspaceUser, List, boolean, boolean)} without
+	 * waiting for the data to be retrieved. The retrieval counts against the limit on the
+	 * number of concurrent blob fetches across all calls.
+	 * @param object the object.
+	 * @param subset the subset of the data to return.
+	 * @param dataManager the data manager for the request, created by
+	 * {@link #createDataManager()}.
+	 * @return the data. The caller is responsible for destroying the data when it is no longer
+	 * needed. If the retrieval fails, getting the data throws an {@link ExecutionException}
+	 * with the exception that
+	 * {@link #getObjectData(WorkspaceObjectData, SubsetSelection, ByteArrayFileCacheManager)}
+	 * would throw as the cause.
+	 */
+	public Future<ByteArrayFileCache> getObjectDataAsync(
+			final WorkspaceObjectData object,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager dataManager) {
+		requireNonNull(object, "object");
+		requireNonNull(subset, "subset");
+		requireNonNull(dataManager, "dataManager");
+		return db.getObjectDataAsync(object.getObjectInfo(), subset, dataManager);
+	}
+	
+	/** Create a data manager that enforces the memory and disk limits on the returned data for
+	 * a single request, as well as the limits across all requests.
+	 * @return a new data manager.
+	 */
+	public ByteArrayFileCacheManager createDataManager() {
+		return new ByteArrayFileCacheManager(
+				rescfg.getMaxReturnedDataMemoryUsage(),
+				/* maximum possible disk usage is when subsetting objects
+				 * summing to 1G, since we have to pull the 1G objects and
+				 * then subset which could take up to another 1G. The 1G
+				 * originals will then be discarded
+				 */
+				rescfg.getMaxReturnedDataSize() * 2L,
+				db.getTempFilesManager(),
+				dataGovernor);
+	}
+
 	private void destroyGetObjectsResources(
 			final Map<ObjectIDResolvedWS, Map<SubsetSelection,
 					WorkspaceObjectData>> data) {
@@ -1173,15 +1546,7 @@ public class Workspace {
 		if (noData) {
 			return null;
 		} else {
-			return new ByteArrayFileCacheManager(
-					rescfg.getMaxReturnedDataMemoryUsage(),
-					/* maximum possible disk usage is when subsetting objects
-					 * summing to 1G, since we have to pull the 1G objects and
-					 * then subset which could take up to another 1G. The 1G
-					 * originals will then be discarded
-					 */
-					rescfg.getMaxReturnedDataSize() * 2L,
-					db.getTempFilesManager());
+			return createDataManager();
 		}
 	}
 
@@ -1379,7 +1744,8 @@ public class Workspace {
 		final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
 				.withIgnoreInaccessible(nullIfInaccessible)
 				.withAsAdmin(asAdmin)
-				.withMaximumObjectsSearched(maximumObjectSearchCount);
+				.withMaximumObjectsSearched(maximumObjectSearchCount)
+				.withReferenceSearchExecutor(getReferenceSearchExecutor());
 		for (final ObjectIdentifier oi: loi) {
 			orb.withObject(oi);
 		}
@@ -1919,7 +2285,8 @@ public class Workspace {
 				final Set<ObjectIdentifier> idset)
 				throws IdReferenceHandlerException {
 			final ObjectResolver.Builder orb = ObjectResolver.getBuilder(db, user)
-					.withMaximumObjectsSearched(maximumObjectSearchCount);
+					.withMaximumObjectsSearched(maximumObjectSearchCount)
+					.withReferenceSearchExecutor(getReferenceSearchExecutor());
 			if (!idset.isEmpty()) {
 				try {
 					for (final ObjectIdentifier oi: idset) {
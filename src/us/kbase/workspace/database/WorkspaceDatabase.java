@@ -5,12 +5,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Optional;
 
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.NoSuchObjectException;
@@ -295,6 +297,17 @@ public interface WorkspaceDatabase {
 			Set<ResolvedWorkspaceID> rwsi)
 			throws WorkspaceCommunicationException, CorruptWorkspaceDBException;
 
+	/** Get the IDs of the non-deleted workspaces a user can read, including globally readable
+	 * workspaces. Returns much less data than the equivalent
+	 * {@link #getPermissions(WorkspaceUser, Permission, boolean)} call.
+	 * @param user the user, or null for an anonymous user.
+	 * @return the IDs of the readable workspaces.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 * @throws CorruptWorkspaceDBException if the workspace database is corrupt.
+	 */
+	public Set<Long> getReadableWorkspaceIDs(WorkspaceUser user)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException;
+
 	/** Get information about a workspace.
 	 * @param user the user that is requesting the information.
 	 * @param rwsi the workspace.
@@ -371,6 +384,44 @@ public interface WorkspaceDatabase {
 			throws NoSuchObjectException,WorkspaceCommunicationException,
 			CorruptWorkspaceDBException, TypedObjectExtractionException;
 	
+	/** Get the data for a single object. No checks are made as to whether the object exists
+	 * or whether the data is within the returned data limits - the object information must
+	 * have been retrieved from the database previously.
+	 * @param info the object information.
+	 * @param subset the subset of the object data to return.
+	 * @param dataManager the data manager.
+	 * @return the object data.
+	 * @throws WorkspaceCommunicationException if a communication error with
+	 * the backend occurs.
+	 * @throws CorruptWorkspaceDBException if database corruption is detected.
+	 * @throws TypedObjectExtractionException if the subdata could not be
+	 * extracted.
+	 */
+	public ByteArrayFileCache getObjectData(
+			ObjectInformation info,
+			SubsetSelection subset,
+			ByteArrayFileCacheManager dataManager)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException,
+			TypedObjectExtractionException;
+	
+	/** Start getting the data for a single object without waiting for the data to be retrieved.
+	 * The retrieval counts against the limit on the number of concurrent blob fetches across
+	 * all calls. As for {@link #getObjectData(ObjectInformation, SubsetSelection,
+	 * ByteArrayFileCacheManager)}, the object information must have been retrieved from the
+	 * database previously.
+	 * @param info the object information.
+	 * @param subset the subset of the object data to return.
+	 * @param dataManager the data manager.
+	 * @return the object data. If the retrieval fails, getting the data throws an
+	 * {@link java.util.concurrent.ExecutionException} with the exception that
+	 * {@link #getObjectData(ObjectInformation, SubsetSelection, ByteArrayFileCacheManager)}
+	 * would throw as the cause.
+	 */
+	public Future<ByteArrayFileCache> getObjectDataAsync(
+			ObjectInformation info,
+			SubsetSelection subset,
+			ByteArrayFileCacheManager dataManager);
+	
 	/** Resolve a set of objects to absolute references. If the object cannot be found, it is not
 	 * included in the returned map. Includes deleted objects.
 	 * @param objects the objects to resolve.
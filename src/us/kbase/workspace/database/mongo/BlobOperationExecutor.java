@@ -0,0 +1,175 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/** Runs blob store operations concurrently, limiting the number of operations running at once
+ * both per call and across all calls to the executor.
+ *
+ * Operations are started in the order of the provided keys, and errors are reported as they
+ * would be if the operations were run serially - e.g. the error from the first key, in order,
+ * whose operation failed is thrown. Once an operation fails no more operations are started,
+ * but all operations already running are allowed to complete so their results may be
+ * cleaned up.
+ */
+public class BlobOperationExecutor {
+
+	/** An operation on a blob.
+	 *
+	 * @param <K> the type of the key that identifies the blob.
+	 * @param <V> the type of the operation result.
+	 */
+	public interface BlobOperation<K, V> {
+
+		/** Run the operation.
+		 * @param key the key of the blob on which to operate.
+		 * @return the result of the operation.
+		 * @throws Exception if the operation failed.
+		 */
+		V run(K key) throws Exception;
+	}
+
+	private final ThreadPoolExecutor executor;
+
+	/** Create the executor.
+	 * @param name the name of the executor, used to name the executor threads.
+	 * @param maxConcurrentOperations the maximum number of operations that may run at once
+	 * across all calls to the executor.
+	 */
+	public BlobOperationExecutor(final String name, final int maxConcurrentOperations) {
+		requireNonNull(name, "name");
+		checkConcurrency(maxConcurrentOperations, "maxConcurrentOperations");
+		executor = new ThreadPoolExecutor(
+				maxConcurrentOperations,
+				maxConcurrentOperations,
+				60L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static void checkConcurrency(final int concurrency, final String name) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(name + " must be at least 1");
+		}
+	}
+
+	/** Get the maximum number of operations that may run at once across all calls to the
+	 * executor.
+	 * @return the maximum number of concurrent operations.
+	 */
+	public int getMaxConcurrentOperations() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/** Set the maximum number of operations that may run at once across all calls to the
+	 * executor. Operations already queued or running are not affected.
+	 * @param maxConcurrentOperations the maximum number of concurrent operations.
+	 */
+	public synchronized void setMaxConcurrentOperations(final int maxConcurrentOperations) {
+		checkConcurrency(maxConcurrentOperations, "maxConcurrentOperations");
+		// the core size may never be larger than the max size
+		if (maxConcurrentOperations > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(maxConcurrentOperations);
+			executor.setCorePoolSize(maxConcurrentOperations);
+		} else {
+			executor.setCorePoolSize(maxConcurrentOperations);
+			executor.setMaximumPoolSize(maxConcurrentOperations);
+		}
+	}
+
+	/** Start an operation without waiting for it to complete. The operation counts against the
+	 * limit on the number of operations running at once across all calls to the executor.
+	 * @param key the key of the blob on which to operate.
+	 * @param operation the operation to run.
+	 * @return the result of the operation. If the operation fails, getting the result throws
+	 * an {@link ExecutionException} with the exception thrown by the operation as the cause.
+	 */
+	public <K, V> Future<V> submit(final K key, final BlobOperation<K, V> operation) {
+		requireNonNull(key, "key");
+		requireNonNull(operation, "operation");
+		return executor.submit(() -> operation.run(key));
+	}
+
+	/** Run an operation for each of a set of keys. If the number of keys or the concurrency
+	 * limit is less than 2, the operations are run serially in the calling thread.
+	 * @param keys the keys on which to operate.
+	 * @param maxConcurrentOperations the maximum number of operations to run at once for
+	 * this call.
+	 * @param operation the operation to run.
+	 * @param results a map into which the results of the successful operations will be
+	 * placed. The results of successful operations are added even if another operation fails.
+	 * The map is only modified in the calling thread.
+	 * @throws ExecutionException if an operation failed. The cause is the exception thrown by
+	 * the operation.
+	 */
+	public <K, V> void run(
+			final Collection<K> keys,
+			final int maxConcurrentOperations,
+			final BlobOperation<K, V> operation,
+			final Map<K, V> results)
+			throws ExecutionException {
+		requireNonNull(keys, "keys");
+		checkConcurrency(maxConcurrentOperations, "maxConcurrentOperations");
+		requireNonNull(operation, "operation");
+		requireNonNull(results, "results");
+		if (keys.size() < 2 || maxConcurrentOperations < 2) {
+			for (final K key: keys) {
+				try {
+					results.put(key, operation.run(key));
+				} catch (Exception e) {
+					throw new ExecutionException(e);
+				}
+			}
+			return;
+		}
+		final Semaphore permits = new Semaphore(maxConcurrentOperations);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		final Map<K, Future<V>> futures = new LinkedHashMap<>();
+		for (final K key: keys) {
+			permits.acquireUninterruptibly();
+			if (failed.get()) {
+				permits.release();
+				break;
+			}
+			futures.put(key, executor.submit(() -> {
+				try {
+					return operation.run(key);
+				} catch (Exception | Error e) {
+					failed.set(true);
+					throw e;
+				} finally {
+					permits.release();
+				}
+			}));
+		}
+		ExecutionException error = null;
+		for (final Entry<K, Future<V>> f: futures.entrySet()) {
+			try {
+				results.put(f.getKey(), Uninterruptibles.getUninterruptibly(f.getValue()));
+			} catch (ExecutionException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
+import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+/** A blob store that caches the blobs retrieved from another blob store in memory and,
+ * optionally, on local disk. The cache is intended to be shared between requests.
+ *
+ * Blobs are keyed by the MD5 of their contents and are never altered, so a cached blob only
+ * needs to be discarded when it is removed from the wrapped blob store.
+ *
+ * See {@link TieredDataCache} for how the blobs are stored and how the per request memory and
+ * disk limits apply to cached blobs.
+ */
+public class CachingBlobStore implements BlobStore {
+
+	private final BlobStore store;
+	private final TieredDataCache<MD5> cache;
+
+	/** Create the caching blob store.
+	 * @param store the blob store to wrap.
+	 * @param maxMemoryUsage the maximum amount of blob data, in bytes, to cache in memory. 0
+	 * disables the memory cache.
+	 * @param maxDiskUsage the maximum amount of blob data, in bytes, to cache on disk. 0
+	 * disables the disk cache.
+	 * @param cacheDir the directory in which to store cached files. Any files already in the
+	 * directory will be deleted. May be null if the disk cache is disabled.
+	 */
+	public CachingBlobStore(
+			final BlobStore store,
+			final long maxMemoryUsage,
+			final long maxDiskUsage,
+			final File cacheDir) {
+		this.store = requireNonNull(store, "store");
+		cache = new TieredDataCache<>("blob", maxMemoryUsage, maxDiskUsage, cacheDir);
+	}
+
+	@Override
+	public void saveBlob(final MD5 md5, final Restreamable data, final boolean sorted)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		store.saveBlob(md5, data, sorted);
+	}
+
+	@Override
+	public ByteArrayFileCache getBlob(final MD5 md5, final ByteArrayFileCacheManager bafcMan)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException,
+				NoSuchBlobException, FileCacheLimitExceededException, FileCacheIOException {
+		requireNonNull(md5, "md5");
+		requireNonNull(bafcMan, "bafcMan");
+		final ByteArrayFileCache cached = cache.get(md5, bafcMan);
+		if (cached != null) {
+			return cached;
+		}
+		// not cached, or evicted between the lookup and opening the file, so fetch
+		final ByteArrayFileCache data = store.getBlob(md5, bafcMan);
+		try {
+			cache.put(md5, data);
+		} catch (IOException | RuntimeException e) {
+			// failing to cache the data shouldn't fail the request
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Failed to cache blob %s: %s", md5.getMD5(), e.getMessage()), e);
+		}
+		return data;
+	}
+
+	/** Removes the blob from the cache and the wrapped blob store.
+	 *
+	 * Note that if a blob is retrieved by another thread while this method is running, the
+	 * blob may be recached. Since the blob data cannot change for a given MD5, this is only
+	 * a problem if the blob is intended to be inaccessible, but the same caveats apply to
+	 * {@link BlobStore#removeBlob(MD5)} in any case.
+	 */
+	@Override
+	public void removeBlob(final MD5 md5)
+			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
+		cache.invalidate(requireNonNull(md5, "md5"));
+		store.removeBlob(md5);
+	}
+
+	@Override
+	public List<DependencyStatus> status() {
+		return store.status();
+	}
+
+	/** Get the amount of blob data cached in memory.
+	 * @return the size of the memory cache in bytes.
+	 */
+	public long getMemoryCacheSize() {
+		return cache.getMemoryCacheSize();
+	}
+
+	/** Get the amount of blob data cached on disk.
+	 * @return the size of the disk cache in bytes.
+	 */
+	public long getDiskCacheSize() {
+		return cache.getDiskCacheSize();
+	}
+}
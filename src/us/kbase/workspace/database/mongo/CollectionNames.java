@@ -10,4 +10,5 @@ public class CollectionNames {
 	public static final String COL_WORKSPACE_VERS = "workspaceObjVersions";
 	public static final String COL_PROVENANCE = "provenance";
 	public static final String COL_CONFIG = "config";
+	public static final String COL_STRUCT_INDEXES = "structuralIndexes";
 }
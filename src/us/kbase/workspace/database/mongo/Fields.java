@@ -61,6 +61,8 @@ public class Fields {
 	public static final String VER_COPIED = "copied";
 	//in 0.3.0, if missing assume no external IDs
 	public static final String VER_EXT_IDS = "extids";
+	//if missing, the date is in the provenance document
+	public static final String VER_PROV_DATE = "provdate";
 	
 	// meta document key & value
 	public static final String META_KEY = "k";
@@ -71,6 +73,9 @@ public class Fields {
 	public static final String PROV_WS_ID = "wsid";
 	public static final String PROV_DATE = "date";
 	public static final String PROV_ACTIONS = "actions";
+	//missing for provenance saved before provenance was shared between versions
+	public static final String PROV_HASH = "hash";
+	public static final String PROV_REFCOUNT = "refcnt";
 	//provenance action fields
 	public static final String PROV_ACTION_TIME = "time";
 	public static final String PROV_ACTION_CALLER = "caller";
@@ -121,6 +126,10 @@ public class Fields {
 	// may have older data ported in that isn't sorted
 	public static final String S3_SORTED = "sorted";
 	
+	// structural index fields
+	public static final String STRUCT_IDX_CHKSUM = "chksum";
+	public static final String STRUCT_IDX_DATA = "idx";
+	
 	// admin fields
 	public static final String ADMIN_NAME = "user";
 	
@@ -0,0 +1,170 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A cache of the incoming references to object versions, e.g. the versions that refer to a
+ * version via a standard or provenance reference. Used to avoid querying the database for
+ * the same portions of the reference graph repeatedly when searching for reference paths.
+ *
+ * The references from a version are immutable, so the incoming references to a version only
+ * change when a new version that refers to it is saved. The cache must be notified of such
+ * saves via {@link #invalidate(Set)}. Since versions may be saved by other workspace
+ * instances sharing the same database, cache entries also expire after a fixed time.
+ *
+ * Versions with no incoming references are cached separately with a, typically much shorter,
+ * expiry time, since those versions are the most likely to gain references.
+ */
+public class IncomingReferenceCache {
+
+	/** Provides the incoming references for a set of versions. */
+	public interface IncomingReferenceProvider {
+
+		/** Get the incoming references for a set of versions.
+		 * @param refs the versions.
+		 * @return a mapping of each version to the versions that refer to it.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 */
+		Map<Reference, Set<Reference>> getIncomingReferences(Set<Reference> refs)
+				throws WorkspaceCommunicationException;
+	}
+
+	private final Cache<Reference, Set<Reference>> cache;
+	private final Cache<Reference, Boolean> negativeCache;
+	// incremented on every invalidation so loads racing with a save can't cache stale data
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Create the cache.
+	 * @param maxCacheSize the maximum number of versions with incoming references to cache.
+	 * The same number of versions without incoming references may also be cached.
+	 * @param cacheTimeInMS the maximum time the incoming references for a version will be
+	 * cached in milliseconds.
+	 * @param negativeCacheTimeInMS the maximum time a version without incoming references
+	 * will be cached in milliseconds.
+	 */
+	public IncomingReferenceCache(
+			final int maxCacheSize,
+			final int cacheTimeInMS,
+			final int negativeCacheTimeInMS) {
+		this(maxCacheSize, cacheTimeInMS, negativeCacheTimeInMS, Ticker.systemTicker());
+	}
+
+	/** This constructor should only be used for tests. */
+	public IncomingReferenceCache(
+			final int maxCacheSize,
+			final int cacheTimeInMS,
+			final int negativeCacheTimeInMS,
+			final Ticker ticker) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		if (cacheTimeInMS < 1) {
+			throw new IllegalArgumentException("cacheTimeInMS must be at least 1");
+		}
+		if (negativeCacheTimeInMS < 1) {
+			throw new IllegalArgumentException("negativeCacheTimeInMS must be at least 1");
+		}
+		requireNonNull(ticker, "ticker");
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(cacheTimeInMS, TimeUnit.MILLISECONDS)
+				.ticker(ticker)
+				.build();
+		negativeCache = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(negativeCacheTimeInMS, TimeUnit.MILLISECONDS)
+				.ticker(ticker)
+				.build();
+	}
+
+	/** Get the incoming references for a set of versions. Versions that are not cached are
+	 * retrieved from the provider in a single call and cached.
+	 * @param refs the versions.
+	 * @param provider the provider for any versions not in the cache.
+	 * @return a mapping of each version to the versions that refer to it.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 */
+	public Map<Reference, Set<Reference>> getIncomingReferences(
+			final Set<Reference> refs,
+			final IncomingReferenceProvider provider)
+			throws WorkspaceCommunicationException {
+		requireNonNull(refs, "refs");
+		requireNonNull(provider, "provider");
+		final Map<Reference, Set<Reference>> ret = new HashMap<>();
+		final Set<Reference> missing = new HashSet<>();
+		for (final Reference r: refs) {
+			final Set<Reference> incoming = cache.getIfPresent(r);
+			if (incoming != null) {
+				ret.put(r, incoming);
+			} else if (negativeCache.getIfPresent(r) != null) {
+				ret.put(r, Collections.emptySet());
+			} else {
+				missing.add(r);
+			}
+		}
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		final long gen = generation.get();
+		final Map<Reference, Set<Reference>> loaded = provider.getIncomingReferences(missing);
+		for (final Reference r: missing) {
+			final Set<Reference> incoming = loaded.get(r);
+			if (incoming == null || incoming.isEmpty()) {
+				negativeCache.put(r, true);
+				ret.put(r, Collections.emptySet());
+			} else {
+				final Set<Reference> copy = Collections.unmodifiableSet(new HashSet<>(incoming));
+				cache.put(r, copy);
+				ret.put(r, copy);
+			}
+		}
+		/* if a save invalidated the cache while loading, the loaded data may be stale. The
+		 * save increments the generation before invalidating, so either the save's
+		 * invalidation runs after the puts above, or the change is detected here.
+		 */
+		if (generation.get() != gen) {
+			cache.invalidateAll(missing);
+			negativeCache.invalidateAll(missing);
+		}
+		return ret;
+	}
+
+	/** Remove versions from the cache. Call this method after saving versions that refer to
+	 * other versions, passing the referenced versions.
+	 * @param refs the versions that have new incoming references.
+	 */
+	public void invalidate(final Set<Reference> refs) {
+		requireNonNull(refs, "refs");
+		generation.incrementAndGet();
+		cache.invalidateAll(refs);
+		negativeCache.invalidateAll(refs);
+	}
+
+	/** Get the number of versions with incoming references in the cache.
+	 * @return the number of versions.
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/** Get the number of versions without incoming references in the cache.
+	 * @return the number of versions.
+	 */
+	public long negativeSize() {
+		return negativeCache.size();
+	}
+}
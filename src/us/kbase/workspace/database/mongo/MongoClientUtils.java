@@ -0,0 +1,44 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
+import com.mongodb.ServerAddress;
+
+/** Utilities for connecting to MongoDB.
+ */
+public class MongoClientUtils {
+
+	private MongoClientUtils() {}
+
+	/** Create a MongoDB client. The caller is responsible for closing the client when it is no
+	 * longer needed.
+	 * @param host the MongoDB host.
+	 * @param dbName the database against which the user will be authenticated.
+	 * @param user the MongoDB user, or null to connect without authentication.
+	 * @param password the user's password. Ignored if the user is null.
+	 * @return the client.
+	 * @throws MongoException if the client could not be created.
+	 */
+	public static MongoClient buildClient(
+			final String host,
+			final String dbName,
+			final String user,
+			final String password) {
+		requireNonNull(host, "host");
+		//TODO ZLATER MONGO handle shards & replica sets
+		if (user != null) {
+			final MongoCredential creds = MongoCredential.createCredential(
+					user, requireNonNull(dbName, "dbName"),
+					requireNonNull(password, "password").toCharArray());
+			// unclear if and when it's safe to clear the password
+			return new MongoClient(new ServerAddress(host), creds,
+					MongoClientOptions.builder().build());
+		} else {
+			return new MongoClient(new ServerAddress(host));
+		}
+	}
+}
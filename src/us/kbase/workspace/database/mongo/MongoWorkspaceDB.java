@@ -1,9 +1,11 @@
 package us.kbase.workspace.database.mongo;
 
+import static java.util.Objects.requireNonNull;
 import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaMongoArrayToHash;
 import static us.kbase.workspace.database.mongo.ObjectInfoUtils.metaHashToMongoArray;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -13,10 +15,13 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.Set;
@@ -29,6 +34,8 @@ import us.kbase.common.utils.CountingOutputStream;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.ExtractedMetadata;
 import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.typedobj.core.StructuralIndex;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.exceptions.ExceededMaxMetadataSizeException;
@@ -81,14 +88,25 @@ import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.exceptions.PreExistingWorkspaceException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 import us.kbase.workspace.database.exceptions.WorkspaceDBInitializationException;
+import us.kbase.workspace.database.mongo.ObjectVersionCache.ObjectVersionProvider;
+import us.kbase.workspace.database.mongo.ProvenanceCache.ProvenanceProvider;
+import us.kbase.workspace.database.mongo.ReadableWorkspaceCache.ReadableWorkspaceProvider;
+import us.kbase.workspace.database.mongo.ResolvedWorkspaceCache.ResolvedWorkspaceProvider;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreAuthorizationException;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
 import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
 
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.google.common.base.Optional;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
@@ -123,18 +141,44 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	public static final String COL_WORKSPACE_VERS = CollectionNames.COL_WORKSPACE_VERS;
 	public static final String COL_PROVENANCE = CollectionNames.COL_PROVENANCE;
 	public static final String COL_CONFIG = CollectionNames.COL_CONFIG;
+	public static final String COL_STRUCT_INDEXES = CollectionNames.COL_STRUCT_INDEXES;
 	public static final AllUsers ALL_USERS = Workspace.ALL_USERS;
 	
 
 	//TODO CONFIG this should really be configurable
 	private static final long MAX_PROV_SIZE = 1000000;
+	// leaves room for the rest of the index document under the 16MB MongoDB document limit
+	private static final int MAX_STRUCT_IDX_SIZE = 15 * 1024 * 1024;
 	private static final int SCHEMA_VERSION = 1;
 	
 	private static final ObjectMapper MAPPER = new ObjectMapper();
+	// provides a canonical serialization of provenance documents for hashing
+	private static final ObjectMapper SORTED_MAPPER = new ObjectMapper()
+			.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+	
+	// bounds how long a reference saved by another workspace instance may be missed
+	private static final int INCOMING_REF_CACHE_TIME_MS = 10 * 60 * 1000;
+	private static final int INCOMING_REF_NEGATIVE_CACHE_TIME_MS = 30 * 1000;
+	// bounds how long a permission change made by another workspace instance may be missed
+	private static final int READABLE_WS_CACHE_TIME_MS = 60 * 1000;
+	// bounds how long a rename, lock, or deletion by another workspace instance may be missed
+	private static final int RESOLVED_WS_CACHE_TIME_MS = 60 * 1000;
 	
 	private ResourceUsageConfiguration rescfg;
+	private volatile IncomingReferenceCache incomingRefCache = null;
+	private volatile ReadableWorkspaceCache readableWSCache = null;
+	private final ReadableWorkspaceProvider readableWSProvider = new ReadableWorkspaceQuery();
+	private volatile ResolvedWorkspaceCache resolvedWSCache = null;
+	private final ResolvedWorkspaceProvider resolvedWSProvider = new ResolvedWorkspaceQuery();
+	private volatile ObjectVersionCache versionCache = null;
+	private final ObjectVersionProvider versionProvider = new ObjectVersionQuery();
+	private volatile ProvenanceCache provCache = null;
+	private final ProvenanceProvider provProvider = new ProvenanceQuery();
 	private final DB wsmongo;
 	private final BlobStore blob;
+	private final SubsetCache subsetCache;
+	private final BlobOperationExecutor blobFetcher;
+	private final BlobOperationExecutor blobUploader;
 	private final QueryMethods query;
 	private final ObjectInfoUtils objutils;
 	
@@ -204,7 +248,17 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		wsVer.add(idxSpec(Fields.VER_META, 1, IDX_SPARSE));
 		indexes.put(COL_WORKSPACE_VERS, wsVer);
 		
-		//no indexes needed for provenance since all lookups are by _id
+		//provenance indexes
+		final LinkedList<IndexSpecification> prov = new LinkedList<>();
+		//find shared provenance by content. Older provenance documents have no hash
+		prov.add(idxSpec(Fields.PROV_HASH, 1, IDX_UNIQ, IDX_SPARSE));
+		indexes.put(COL_PROVENANCE, prov);
+		
+		//structural indexes
+		final LinkedList<IndexSpecification> structIdx = new LinkedList<>();
+		//find the index for a data object
+		structIdx.add(idxSpec(Fields.STRUCT_IDX_CHKSUM, 1, IDX_UNIQ));
+		indexes.put(COL_STRUCT_INDEXES, structIdx);
 		
 		//admin indexes
 		final LinkedList<IndexSpecification> admin = new LinkedList<>();
@@ -225,16 +279,41 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final TempFilesManager tfm)
 			throws WorkspaceCommunicationException,
 			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
+		this(workspaceDB, blobStore, tfm, null);
+	}
+	
+	/** Create the workspace database.
+	 * @param workspaceDB the Mongo database.
+	 * @param blobStore the store for the object data.
+	 * @param tfm the temporary files manager.
+	 * @param subsetCache a cache of object data subsets shared between requests, or null to
+	 * extract subsets from the object data for every request.
+	 * @throws WorkspaceCommunicationException if the database could not be contacted.
+	 * @throws WorkspaceDBInitializationException if the database could not be initialized.
+	 * @throws CorruptWorkspaceDBException if the database is corrupt.
+	 */
+	public MongoWorkspaceDB(
+			final DB workspaceDB,
+			final BlobStore blobStore,
+			final TempFilesManager tfm,
+			final SubsetCache subsetCache)
+			throws WorkspaceCommunicationException,
+			WorkspaceDBInitializationException, CorruptWorkspaceDBException {
 		if (workspaceDB == null || blobStore == null || tfm == null) {
 			throw new NullPointerException("No arguments can be null");
 		}
 		rescfg = new ResourceUsageConfigurationBuilder().build();
 		this.tfm = tfm;
+		this.subsetCache = subsetCache;
 		wsmongo = workspaceDB;
 		query = new QueryMethods(wsmongo, (AllUsers) ALL_USERS, COL_WORKSPACES,
 				COL_WORKSPACE_OBJS, COL_WORKSPACE_VERS, COL_WS_ACLS);
 		objutils = new ObjectInfoUtils(query);
 		blob = blobStore;
+		blobFetcher = new BlobOperationExecutor(
+				"blob-fetch", rescfg.getMaxConcurrentBlobFetches());
+		blobUploader = new BlobOperationExecutor(
+				"blob-upload", rescfg.getMaxConcurrentBlobUploads());
 		//TODO DBCONSIST check a few random types and make sure they exist
 		ensureIndexes();
 		checkConfig();
@@ -313,7 +392,38 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	@Override
 	public void setResourceUsageConfiguration(
 			final ResourceUsageConfiguration rescfg) {
+		final int oldRefCacheSize = this.rescfg.getMaxIncomingReferenceCacheSize();
+		final int oldWSCacheSize = this.rescfg.getMaxReadableWorkspaceCacheSize();
+		final int oldResolvedCacheSize = this.rescfg.getMaxResolvedWorkspaceCacheSize();
+		final int oldVersionCacheSize = this.rescfg.getMaxObjectVersionCacheSize();
+		final int oldProvCacheSize = this.rescfg.getMaxProvenanceCacheSize();
 		this.rescfg = rescfg;
+		blobFetcher.setMaxConcurrentOperations(rescfg.getMaxConcurrentBlobFetches());
+		blobUploader.setMaxConcurrentOperations(rescfg.getMaxConcurrentBlobUploads());
+		final int refCacheSize = rescfg.getMaxIncomingReferenceCacheSize();
+		if (refCacheSize != oldRefCacheSize) {
+			incomingRefCache = refCacheSize < 1 ? null : new IncomingReferenceCache(
+					refCacheSize, INCOMING_REF_CACHE_TIME_MS,
+					INCOMING_REF_NEGATIVE_CACHE_TIME_MS);
+		}
+		final int wsCacheSize = rescfg.getMaxReadableWorkspaceCacheSize();
+		if (wsCacheSize != oldWSCacheSize) {
+			readableWSCache = wsCacheSize < 1 ? null : new ReadableWorkspaceCache(
+					wsCacheSize, READABLE_WS_CACHE_TIME_MS);
+		}
+		final int resolvedCacheSize = rescfg.getMaxResolvedWorkspaceCacheSize();
+		if (resolvedCacheSize != oldResolvedCacheSize) {
+			resolvedWSCache = resolvedCacheSize < 1 ? null : new ResolvedWorkspaceCache(
+					resolvedCacheSize, RESOLVED_WS_CACHE_TIME_MS);
+		}
+		final int versionCacheSize = rescfg.getMaxObjectVersionCacheSize();
+		if (versionCacheSize != oldVersionCacheSize) {
+			versionCache = versionCacheSize < 1 ? null : new ObjectVersionCache(versionCacheSize);
+		}
+		final int provCacheSize = rescfg.getMaxProvenanceCacheSize();
+		if (provCacheSize != oldProvCacheSize) {
+			provCache = provCacheSize < 1 ? null : new ProvenanceCache(provCacheSize);
+		}
 	}
 	
 	@Override
@@ -624,6 +734,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return time;
 	}
 	
+	private static final int CLONE_PAGE_SIZE = 1000;
+	
 	private static final Set<String> FLDS_CLONE_WS =
 			newHashSet(Fields.OBJ_ID, Fields.OBJ_NAME, Fields.OBJ_DEL, Fields.OBJ_HIDE);
 	
@@ -660,43 +772,31 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		final DBObject hint = new BasicDBObject(Fields.OBJ_WS_ID, 1);
 		hint.put(Fields.OBJ_ID, 1);
 		long maxid = 0;
+		long cloned = 0;
 		try {
 			final DBCursor wsobjects = query.queryCollectionCursor(
 					COL_WORKSPACE_OBJS, q, FLDS_CLONE_WS, hint, -1);
-			for (final DBObject o: wsobjects) {
+			final List<ResolvedObjectIDNoVer> page = new ArrayList<>(CLONE_PAGE_SIZE);
+			final Map<ResolvedObjectIDNoVer, Boolean> hidden = new HashMap<>();
+			final Iterator<DBObject> iter = wsobjects.iterator();
+			while (iter.hasNext()) {
+				final DBObject o = iter.next();
 				final long objid = (Long) o.get(Fields.OBJ_ID);
-				final String name = (String) o.get(Fields.OBJ_NAME);
-				final boolean hidden = (Boolean) o.get(Fields.OBJ_HIDE);
-				final boolean deleted = (Boolean) o.get(Fields.OBJ_DEL);
+				final ResolvedObjectIDNoVer roi = new ResolvedObjectIDNoVer(fromWS, objid,
+						(String) o.get(Fields.OBJ_NAME), (Boolean) o.get(Fields.OBJ_DEL));
 				maxid = Math.max(maxid, objid);
-				final ResolvedObjectIDNoVer roi =
-						new ResolvedObjectIDNoVer(fromWS, objid, name, deleted);
-				final List<Map<String, Object>> versions;
-				try {
-					versions = queryAllVersions(
-							new HashSet<ResolvedObjectIDNoVer>(Arrays.asList(roi)),
-							FLDS_VER_COPYOBJ).get(roi);
-				} catch (NoSuchObjectException nsoe) {
-					/* The object was saved to the objects collections and the
-					 * version was incremented at least once. However, no
-					 * versions exist in the version collection. So either a
-					 * race condition or the system died before versions could
-					 * be saved, so skip it. Really need to move to a backend
-					 * with transactions or simplify the schema so it's
-					 * relationless.
-					 */
-					continue;
-				}
-				for (final Map<String, Object> v: versions) {
-					final int ver = (Integer) v.get(Fields.VER_VER);
-					v.remove(Fields.MONGO_ID);
-					v.put(Fields.VER_SAVEDBY, user.getUser());
-					v.put(Fields.VER_RVRT, null);
-					v.put(Fields.VER_COPIED, new Reference(fromWS.getID(), objid, ver).toString());
+				page.add(roi);
+				hidden.put(roi, (Boolean) o.get(Fields.OBJ_HIDE));
+				if (page.size() >= CLONE_PAGE_SIZE || !iter.hasNext()) {
+					cloned += cloneObjects(user, toWS, page, hidden);
+					page.clear();
+					hidden.clear();
+					if (cloned >= CLONE_PAGE_SIZE) {
+						LoggerFactory.getLogger(getClass()).info(String.format(
+								"Cloned %s objects from workspace %s to workspace %s",
+								cloned, fromWS.getID(), toWS.getID()));
+					}
 				}
-				updateReferenceCountsForVersions(versions);
-				saveWorkspaceObject(toWS, objid, name);
-				saveObjectVersions(user, toWS, objid, versions, hidden);
 			}
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
@@ -720,6 +820,72 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				.build();
 	}
 
+	/* Copies a page of objects and all their versions into a workspace that is being cloned.
+	 * Versions for the entire page are fetched in one pass, the reference counts are
+	 * incremented for the page as a whole, and the objects and versions are written with
+	 * bulk inserts. No other process can write to the target workspace while it is in the
+	 * cloning state, so there are no name collisions to handle.
+	 * Returns the number of objects cloned.
+	 */
+	private int cloneObjects(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID toWS,
+			final List<ResolvedObjectIDNoVer> objects,
+			final Map<ResolvedObjectIDNoVer, Boolean> hidden)
+			throws WorkspaceCommunicationException {
+		final Map<ResolvedObjectIDNoVer, List<Map<String, Object>>> versions =
+				query.queryAllVersions(new HashSet<>(objects), FLDS_VER_COPYOBJ);
+		final List<Map<String, Object>> allVersions = new LinkedList<>();
+		final Date saved = new Date();
+		final BulkWriteOperation objBulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		final List<DBObject> verDocs = new LinkedList<>();
+		int count = 0;
+		for (final ResolvedObjectIDNoVer roi: objects) {
+			final List<Map<String, Object>> vers = versions.get(roi);
+			if (vers.isEmpty()) {
+				/* The object was saved to the objects collections and the
+				 * version was incremented at least once. However, no
+				 * versions exist in the version collection. So either a
+				 * race condition or the system died before versions could
+				 * be saved, so skip it. Really need to move to a backend
+				 * with transactions or simplify the schema so it's
+				 * relationless.
+				 */
+				continue;
+			}
+			count++;
+			final DBObject obj = toObjectDocument(
+					toWS, roi.getId(), roi.getName(), vers.size(), hidden.get(roi));
+			obj.put(Fields.OBJ_MODDATE, saved);
+			objBulk.insert(obj);
+			int newver = 1;
+			for (final Map<String, Object> v: vers) {
+				final int ver = (Integer) v.get(Fields.VER_VER);
+				v.remove(Fields.MONGO_ID);
+				v.put(Fields.VER_SAVEDBY, user.getUser());
+				v.put(Fields.VER_RVRT, null);
+				v.put(Fields.VER_COPIED, new Reference(
+						roi.getWorkspaceIdentifier().getID(), roi.getId(), ver).toString());
+				allVersions.add(v);
+				verDocs.add(toVersionDocument(v, toWS, roi.getId(), newver++, saved));
+			}
+		}
+		if (count == 0) {
+			return 0;
+		}
+		updateReferenceCountsForVersions(allVersions);
+		incrementProvenanceReferenceCountsForVersions(allVersions);
+		try {
+			objBulk.execute();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		insertVersions(verDocs);
+		return count;
+	}
+
 	// this method expects that the id exists. If it does not it'll throw an
 	// IllegalState exception.
 	private Instant updateClonedWorkspaceInformation(
@@ -784,6 +950,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateResolvedWorkspace(rwsi);
 		}
 		// ws mod date isn't changed, maybe it should be?
 		return Instant.now();
@@ -793,7 +961,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER,
 			Fields.VER_TYPE, Fields.VER_CHKSUM, Fields.VER_SIZE,
 			Fields.VER_PROV, Fields.VER_REF, Fields.VER_PROVREF,
-			Fields.VER_COPIED, Fields.VER_META, Fields.VER_EXT_IDS);
+			Fields.VER_COPIED, Fields.VER_META, Fields.VER_EXT_IDS,
+			Fields.VER_PROV_DATE);
 	
 	@Override
 	public CopyResult copyObject(
@@ -861,6 +1030,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			}
 		}
 		updateReferenceCountsForVersions(versions);
+		incrementProvenanceReferenceCountsForVersions(versions);
 		final ResolvedWorkspaceID toWS = to.getWorkspaceIdentifier();
 		final long objid;
 		if (rto == null) { //need to make a new object
@@ -896,6 +1066,8 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateResolvedWorkspace(rwsi);
 		}
 		return now;
 	}
@@ -1021,8 +1193,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (wsis.isEmpty()) {
 			return ret;
 		}
-		final Map<WorkspaceIdentifier, Map<String, Object>> res =
-				query.queryWorkspacesByIdentifier(wsis, FLDS_WS_ID_NAME_DEL);
+		final ResolvedWorkspaceCache cache = resolvedWSCache;
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> res = cache == null ?
+				resolvedWSProvider.resolveWorkspaces(wsis) :
+				cache.resolveWorkspaces(wsis, resolvedWSProvider);
 		for (final WorkspaceIdentifier wsi: wsis) {
 			if (!res.containsKey(wsi)) {
 				if (!allowMissing) {
@@ -1031,21 +1205,43 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 							wsi);
 				}
 			} else {
-				if (!allowDeleted && (Boolean) res.get(wsi).get(Fields.WS_DEL)) {
+				if (!allowDeleted && res.get(wsi).isDeleted()) {
 					throw new NoSuchWorkspaceException("Workspace " +
 							wsi.getIdentifierString() + " is deleted", wsi);
 				}
-				final ResolvedWorkspaceID r = new ResolvedWorkspaceID(
-						(Long) res.get(wsi).get(Fields.WS_ID),
-						(String) res.get(wsi).get(Fields.WS_NAME),
-						(Boolean) res.get(wsi).get(Fields.WS_LOCKED), 
-						(Boolean) res.get(wsi).get(Fields.WS_DEL));
-				ret.put(wsi, r);
+				ret.put(wsi, res.get(wsi));
 			}
 		}
 		return ret;
 	}
 	
+	private class ResolvedWorkspaceQuery implements ResolvedWorkspaceProvider {
+		
+		@Override
+		public Map<WorkspaceIdentifier, ResolvedWorkspaceID> resolveWorkspaces(
+				final Set<WorkspaceIdentifier> wsis)
+				throws WorkspaceCommunicationException {
+			final Map<WorkspaceIdentifier, Map<String, Object>> res =
+					query.queryWorkspacesByIdentifier(wsis, FLDS_WS_ID_NAME_DEL);
+			final Map<WorkspaceIdentifier, ResolvedWorkspaceID> ret = new HashMap<>();
+			for (final Entry<WorkspaceIdentifier, Map<String, Object>> e: res.entrySet()) {
+				ret.put(e.getKey(), new ResolvedWorkspaceID(
+						(Long) e.getValue().get(Fields.WS_ID),
+						(String) e.getValue().get(Fields.WS_NAME),
+						(Boolean) e.getValue().get(Fields.WS_LOCKED),
+						(Boolean) e.getValue().get(Fields.WS_DEL)));
+			}
+			return ret;
+		}
+	}
+	
+	private void invalidateResolvedWorkspace(final ResolvedWorkspaceID rwsi) {
+		final ResolvedWorkspaceCache cache = resolvedWSCache;
+		if (cache != null) {
+			cache.invalidate(rwsi.getID());
+		}
+	}
+	
 	@Override
 	public Map<ResolvedWorkspaceID, Map<User, Permission>> getAllPermissions(
 			final Set<ResolvedWorkspaceID> rwsis)
@@ -1062,6 +1258,40 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
+	@Override
+	public Set<Long> getReadableWorkspaceIDs(final WorkspaceUser user)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final ReadableWorkspaceCache cache = readableWSCache;
+		if (cache != null) {
+			return cache.getReadableWorkspaces(user, readableWSProvider);
+		}
+		// fetch the globally readable workspaces and the user's workspaces in one query
+		return user == null ? queryReadableWorkspaceIDs(ALL_USERS) :
+				queryReadableWorkspaceIDs(ALL_USERS, user);
+	}
+	
+	private Set<Long> queryReadableWorkspaceIDs(final User... users)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		return query.queryPermissions(null, new HashSet<>(Arrays.asList(users)),
+				Permission.READ, true)
+				.keySet().stream().map(ws -> ws.getID()).collect(Collectors.toSet());
+	}
+	
+	private class ReadableWorkspaceQuery implements ReadableWorkspaceProvider {
+
+		@Override
+		public Set<Long> getReadableWorkspaces(final WorkspaceUser user)
+				throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+			return queryReadableWorkspaceIDs(user);
+		}
+
+		@Override
+		public Set<Long> getGloballyReadableWorkspaces()
+				throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+			return queryReadableWorkspaceIDs(ALL_USERS);
+		}
+	}
+	
 	@Override
 	public Permission getPermission(final WorkspaceUser user, final ResolvedWorkspaceID wsi)
 			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
@@ -1194,6 +1424,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			if (newname.isPresent()) {
+				invalidateResolvedWorkspace(rwsi);
+			}
 		}
 		final ResolvedWorkspaceID newRwsi = new ResolvedWorkspaceID(
 				rwsi.getID(),
@@ -1251,32 +1485,68 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		} else {
 			owner = null;
 		}
+		final List<User> changed = new LinkedList<>();
 		for (final User user: users) {
-			if (owner != null && owner.getUser().equals(user.getUser())) {
-				continue; // can't change owner permissions
+			// can't change owner permissions
+			if (owner == null || !owner.getUser().equals(user.getUser())) {
+				changed.add(user);
 			}
-			final BasicDBObject query = new BasicDBObject(Fields.ACL_WSID, wsid.getID())
-					.append(Fields.ACL_USER, user.getUser());
-			try {
-				if (perm.equals(Permission.NONE)) {
-					wsmongo.getCollection(COL_WS_ACLS).remove(query);
-				} else {
-					wsmongo.getCollection(COL_WS_ACLS).update(
-							query,
-							new BasicDBObject("$set",
-									new BasicDBObject(Fields.ACL_PERM, perm.getPermission())),
-							true,
-							false);
+		}
+		boolean success = false;
+		try {
+			for (final User user: changed) {
+				final BasicDBObject query = new BasicDBObject(Fields.ACL_WSID, wsid.getID())
+						.append(Fields.ACL_USER, user.getUser());
+				try {
+					if (perm.equals(Permission.NONE)) {
+						wsmongo.getCollection(COL_WS_ACLS).remove(query);
+					} else {
+						wsmongo.getCollection(COL_WS_ACLS).update(
+								query,
+								new BasicDBObject("$set",
+										new BasicDBObject(Fields.ACL_PERM, perm.getPermission())),
+								true,
+								false);
+					}
+				} catch (MongoException me) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", me);
 				}
-			} catch (MongoException me) {
-				throw new WorkspaceCommunicationException(
-						"There was a problem communicating with the database", me);
 			}
+			success = true;
+		} finally {
+			updateReadableWorkspaceCache(wsid, changed, perm, success);
 		}
 		// hmm. should the workspace mod date be changed when setting perms? Currently not
 		return Instant.now();
 	}
 	
+	private void updateReadableWorkspaceCache(
+			final ResolvedWorkspaceID wsid,
+			final List<User> users,
+			final Permission perm,
+			final boolean success) {
+		final ReadableWorkspaceCache cache = readableWSCache;
+		if (cache == null) {
+			return;
+		}
+		if (!success) {
+			// some of the permissions may have been changed
+			cache.invalidateAll();
+			return;
+		}
+		final boolean readable = perm.compareTo(Permission.READ) >= 0 && !wsid.isDeleted();
+		final List<WorkspaceUser> wsusers = new LinkedList<>();
+		for (final User user: users) {
+			if (user instanceof WorkspaceUser) {
+				wsusers.add((WorkspaceUser) user);
+			} else {
+				cache.setGloballyReadable(wsid.getID(), readable);
+			}
+		}
+		cache.setPermission(wsid.getID(), wsusers, readable);
+	}
+	
 	private static final Set<String> FLDS_WS_NO_DESC = 
 			newHashSet(Fields.WS_ID, Fields.WS_NAME, Fields.WS_OWNER,
 					Fields.WS_MODDATE, Fields.WS_NUMOBJ, Fields.WS_DEL,
@@ -1438,11 +1708,11 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
-	// save object in preexisting object container
-	private ObjectInformation saveObjectVersion(final WorkspaceUser user,
-			final ResolvedWorkspaceID wsid, final long objectid,
-			final ObjectSavePackage pkg)
-			throws WorkspaceCommunicationException {
+	// builds a version document for a saved object, minus the fields set when the version is
+	// inserted
+	private Map<String, Object> buildVersion(
+			final WorkspaceUser user,
+			final ObjectSavePackage pkg) {
 		final Map<String, Object> version = new HashMap<String, Object>();
 		version.put(Fields.VER_SAVEDBY, user.getUser());
 		version.put(Fields.VER_CHKSUM, pkg.wo.getRep().getMD5().getMD5());
@@ -1451,6 +1721,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_REF, pkg.refs);
 		version.put(Fields.VER_PROVREF, pkg.provrefs);
 		version.put(Fields.VER_PROV, pkg.provid);
+		version.put(Fields.VER_PROV_DATE, pkg.wo.getProvenance().getDate());
 		version.put(Fields.VER_TYPE, pkg.wo.getRep().getValidationTypeDefId()
 				.getTypeString());
 		version.put(Fields.VER_SIZE, pkg.wo.getRep().getRelabeledSize());
@@ -1458,12 +1729,16 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		version.put(Fields.VER_COPIED, null);
 		version.put(Fields.VER_EXT_IDS, extractedIDsToStrings(
 				pkg.wo.getExtractedIDs()));
-		
-		saveObjectVersions(user, wsid, objectid, Arrays.asList(version),
-				pkg.wo.isHidden());
-		
+		return version;
+	}
+	
+	private ObjectInformation toObjectInfo(
+			final WorkspaceUser user,
+			final ResolvedWorkspaceID wsid,
+			final ObjectSavePackage pkg,
+			final Map<String, Object> version) {
 		return new ObjectInformation(
-				objectid,
+				(Long) version.get(Fields.VER_ID),
 				pkg.name,
 				pkg.wo.getRep().getValidationTypeDefId().getTypeString(),
 				(Date) version.get(Fields.VER_SAVEDATE),
@@ -1504,20 +1779,31 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		 * None of the above addresses the object w/ 0 versions failure. Not sure what to do about that.
 		 * 
 		*/
-		int ver;
-		final List<Integer> zeros = new LinkedList<Integer>();
-		for (int i = 0; i < versions.size(); i++) {
-			zeros.add(0);
-		}
 		final Date saved = new Date();
+		int ver = incrementVersionCounter(wsid, objectid, versions.size(), hidden, saved);
+		final List<DBObject> dbo = new LinkedList<DBObject>();
+		for (final Map<String, Object> v: versions) {
+			dbo.add(toVersionDocument(v, wsid, objectid, ver++, saved));
+		}
+		insertVersions(dbo);
+	}
+	
+	// returns the first of the new version numbers
+	private int incrementVersionCounter(
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int versions,
+			final Boolean hidden,
+			final Date saved)
+			throws WorkspaceCommunicationException {
 		final BasicDBObject set = new BasicDBObject(Fields.OBJ_DEL, false)
 				.append(Fields.OBJ_MODDATE, saved)
 				.append(Fields.OBJ_LATEST, null);
 		final DBObject update = new BasicDBObject(
-				"$inc", new BasicDBObject(Fields.OBJ_VCNT, versions.size()))
+				"$inc", new BasicDBObject(Fields.OBJ_VCNT, versions))
 				.append("$set", set)
 				.append("$push", new BasicDBObject(Fields.OBJ_REFCOUNTS,
-						new BasicDBObject("$each", zeros)));
+						new BasicDBObject("$each", zeros(versions))));
 		if (hidden != null) {
 			set.append(Fields.OBJ_HIDE, hidden);
 		}
@@ -1531,31 +1817,82 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					update,
 					true,
 					false);
-			
-			ver = (Integer) res.get(Fields.OBJ_VCNT) - versions.size() + 1;
+			return (Integer) res.get(Fields.OBJ_VCNT) - versions + 1;
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
+	}
+	
+	private static List<Integer> zeros(final int count) {
+		final List<Integer> zeros = new LinkedList<Integer>();
+		for (int i = 0; i < count; i++) {
+			zeros.add(0);
+		}
+		return zeros;
+	}
+	
+	// has a side effect of adding the insert fields to the version map
+	private DBObject toVersionDocument(
+			final Map<String, Object> version,
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final int ver,
+			final Date saved) {
+		version.put(Fields.VER_SAVEDATE, saved);
+		version.put(Fields.VER_WS_ID, wsid.getID());
+		version.put(Fields.VER_ID, objectid);
+		version.put(Fields.VER_VER, ver);
 		//TODO look into why saving array of maps via List.ToArray() makes Lazy?Objects return, which screw up everything
-		final List<DBObject> dbo = new LinkedList<DBObject>();
-		for (final Map<String, Object> v: versions) {
-			v.put(Fields.VER_SAVEDATE, saved);
-			v.put(Fields.VER_WS_ID, wsid.getID());
-			v.put(Fields.VER_ID, objectid);
-			v.put(Fields.VER_VER, ver++);
-			final DBObject d = new BasicDBObject();
-			for (final Entry<String, Object> e: v.entrySet()) {
-				d.put(e.getKey(), e.getValue());
-			}
-			dbo.add(d);
+		final DBObject d = new BasicDBObject();
+		for (final Entry<String, Object> e: version.entrySet()) {
+			d.put(e.getKey(), e.getValue());
+		}
+		return d;
+	}
+	
+	private void insertVersions(final List<DBObject> versions)
+			throws WorkspaceCommunicationException {
+		if (versions.isEmpty()) {
+			return;
+		}
+		// no version should ever collide with another, so unordered is safe and lets the
+		// server apply the inserts in parallel
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_VERS)
+				.initializeUnorderedBulkOperation();
+		for (final DBObject v: versions) {
+			bulk.insert(v);
 		}
-
 		try {
-			wsmongo.getCollection(COL_WORKSPACE_VERS).insert(dbo);
+			bulk.execute();
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			// some versions may have been written even on failure
+			invalidateIncomingReferences(versions);
+		}
+	}
+	
+	private void invalidateIncomingReferences(final List<DBObject> versions) {
+		final IncomingReferenceCache cache = incomingRefCache;
+		if (cache == null) {
+			return;
+		}
+		final Set<Reference> targets = new HashSet<>();
+		for (final DBObject v: versions) {
+			for (final String field: Arrays.asList(Fields.VER_REF, Fields.VER_PROVREF)) {
+				@SuppressWarnings("unchecked")
+				final List<String> refs = (List<String>) v.get(field);
+				if (refs != null) {
+					for (final String r: refs) {
+						targets.add(new Reference(r));
+					}
+				}
+			}
+		}
+		if (!targets.isEmpty()) {
+			cache.invalidate(targets);
 		}
 	}
 	
@@ -1567,18 +1904,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final long objectid,
 			final String name)
 			throws WorkspaceCommunicationException {
-		if (name == null) {
-			throw new NullPointerException("name");
-		}
-		final DBObject dbo = new BasicDBObject();
-		dbo.put(Fields.OBJ_WS_ID, wsid.getID());
-		dbo.put(Fields.OBJ_ID, objectid);
-		dbo.put(Fields.OBJ_VCNT, 0); //Integer
-		dbo.put(Fields.OBJ_REFCOUNTS, new LinkedList<Integer>());
-		dbo.put(Fields.OBJ_NAME, name);
-		dbo.put(Fields.OBJ_LATEST, null); //TODO DBUPDATE remove this field. Deleting versions is out, just delete the entire object.
-		dbo.put(Fields.OBJ_DEL, false);
-		dbo.put(Fields.OBJ_HIDE, false);
+		final DBObject dbo = toObjectDocument(wsid, objectid, name, 0, false);
 		try {
 			//maybe could speed things up with batch inserts but dealing with
 			//errors would really suck
@@ -1606,6 +1932,81 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return new IDName(objectid, name);
 	}
 	
+	private DBObject toObjectDocument(
+			final ResolvedWorkspaceID wsid,
+			final long objectid,
+			final String name,
+			final int versions,
+			final boolean hidden) {
+		if (name == null) {
+			throw new NullPointerException("name");
+		}
+		final DBObject dbo = new BasicDBObject();
+		dbo.put(Fields.OBJ_WS_ID, wsid.getID());
+		dbo.put(Fields.OBJ_ID, objectid);
+		dbo.put(Fields.OBJ_VCNT, versions); //Integer
+		dbo.put(Fields.OBJ_REFCOUNTS, zeros(versions));
+		dbo.put(Fields.OBJ_NAME, name);
+		dbo.put(Fields.OBJ_LATEST, null); //TODO DBUPDATE remove this field. Deleting versions is out, just delete the entire object.
+		dbo.put(Fields.OBJ_DEL, false);
+		dbo.put(Fields.OBJ_HIDE, hidden);
+		return dbo;
+	}
+	
+	/* Save brand new objects with their version counters already incremented to the number
+	 * of versions to be saved for each object, in one unordered bulk write.
+	 * Returns the new objects that could not be saved because another object with the same name
+	 * was created after the names were resolved. These objects need to be saved via
+	 * saveWorkspaceObject and their versions counted via incrementVersionCounter.
+	 * The object ids *must not exist* in the workspace and the workspace must exist.
+	 */
+	private Set<String> saveWorkspaceObjects(
+			final ResolvedWorkspaceID wsid,
+			final Map<String, IDName> names,
+			final Map<Long, List<ObjectSavePackage>> versions,
+			final Date saved)
+			throws WorkspaceCommunicationException {
+		if (names.isEmpty()) {
+			return Collections.emptySet();
+		}
+		final List<String> order = new ArrayList<>(names.keySet());
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_WORKSPACE_OBJS)
+				.initializeUnorderedBulkOperation();
+		for (final String name: order) {
+			final List<ObjectSavePackage> pkgs = versions.get(names.get(name).id);
+			final DBObject dbo = toObjectDocument(wsid, names.get(name).id, name, pkgs.size(),
+					pkgs.get(pkgs.size() - 1).wo.isHidden());
+			dbo.put(Fields.OBJ_MODDATE, saved);
+			bulk.insert(dbo);
+		}
+		final Set<String> collisions = new HashSet<>();
+		try {
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (!isDuplicateKeyCode(err.getCode())) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+				//someone just this second added the name to an object. This should be rare.
+				collisions.add(order.get(err.getIndex()));
+			}
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return collisions;
+	}
+	
+	private static boolean isDuplicateKeyCode(final int code) {
+		// 11001 and 12582 are duplicate key codes returned by older versions of mongo
+		return code == 11000 || code == 11001 || code == 12582;
+	}
+	
 	private static String getObjectErrorId(final ObjectIDNoWSNoVer oi, final int objcount) {
 		return "#" + objcount + ", " + oi.getIdentifierString();
 	}
@@ -1765,39 +2166,70 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		saveProvenance(packages);
 		updateReferenceCounts(packages);
 		long newid = incrementWorkspaceCounter(rwsi, newobjects);
-		/*  alternate impl: 1) make all save objects 2) increment all version
-		 *  counters 3) batch save versions
-		 *  This probably won't help much. Firstly, saving the same object
-		 *  multiple times (e.g. save over the same object in the same
-		 *  saveObjects call) is going to be a rare op - who wants to do that?
-		 *  Hence batching up the version increments is probably not going to
-		 *  help much.
-		 *  Secondly, the write lock is on a per document basis, so batching
-		 *  writes has no effect on write locking.
-		 *  That means that the gain from batching writes is removal of the 
-		 *  flight time to/from the server between each object. This may
-		 *  be significant for many small objects, but is probably
-		 *  insignificant for a few objects, or many large objects.
-		 *  Summary: probably not worth the trouble and increase in code
-		 *  complexity.
+		/* Assign an object id to each package, grouping the packages by id in the order each
+		 * object is first seen. Brand new objects are then created with their version counters
+		 * preset in one bulk write, existing objects have their counters incremented once per
+		 * object rather than once per version, and all the versions are saved in one bulk
+		 * write. This saves several round trips to the server per object, which dominates
+		 * the save time for many small objects.
 		 */
-		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
-		final Map<String, Long> seenNames = new HashMap<String, Long>();
+		final Map<Long, List<ObjectSavePackage>> idToVersions = new LinkedHashMap<>();
+		final Map<String, IDName> newNames = new LinkedHashMap<>();
 		for (final ObjectSavePackage p: packages) {
 			final ObjectIDNoWSNoVer oi = p.wo.getObjectIdentifier();
+			final long id;
 			if (oi.getId().isPresent()) { //confirmed ok id
-				ret.add(saveObjectVersion(user, rwsi, oi.getId().get(), p));
+				id = oi.getId().get();
 			} else if (objIDs.get(oi) != null) {//given name translated to id
-				ret.add(saveObjectVersion(user, rwsi, objIDs.get(oi).getId(), p));
-			} else if (seenNames.containsKey(oi.getName().get())) {
-				//we've already generated an id for this name
-				ret.add(saveObjectVersion(user, rwsi, seenNames.get(oi.getName().get()), p));
-			} else {//new name, need to generate new id
-				final IDName obj = saveWorkspaceObject(rwsi, newid++, oi.getName().get());
-				p.name = obj.name;
-				seenNames.put(obj.name, obj.id);
-				ret.add(saveObjectVersion(user, rwsi, obj.id, p));
+				id = objIDs.get(oi).getId();
+			} else {//new name, need to generate new id unless we've already done so
+				final String name = oi.getName().get();
+				if (!newNames.containsKey(name)) {
+					newNames.put(name, new IDName(newid++, name));
+				}
+				id = newNames.get(name).id;
+			}
+			if (!idToVersions.containsKey(id)) {
+				idToVersions.put(id, new LinkedList<>());
 			}
+			idToVersions.get(id).add(p);
+		}
+		final Date saved = new Date();
+		final Set<String> collisions = saveWorkspaceObjects(rwsi, newNames, idToVersions, saved);
+		final Map<Long, String> created = new HashMap<>();
+		for (final IDName obj: newNames.values()) {
+			created.put(obj.id, obj.name);
+		}
+		final List<DBObject> versions = new LinkedList<>();
+		final Map<ObjectSavePackage, Map<String, Object>> pkgToVersion = new HashMap<>();
+		for (final Entry<Long, List<ObjectSavePackage>> e: idToVersions.entrySet()) {
+			long objid = e.getKey();
+			final List<ObjectSavePackage> pkgs = e.getValue();
+			final int ver;
+			if (created.containsKey(objid) && !collisions.contains(created.get(objid))) {
+				ver = 1; // counter was set when the object was created
+			} else {
+				if (created.containsKey(objid)) {
+					// lost the race for the name, fall back to the per object path
+					final IDName obj = saveWorkspaceObject(rwsi, objid, created.get(objid));
+					objid = obj.id;
+					for (final ObjectSavePackage p: pkgs) {
+						p.name = obj.name;
+					}
+				}
+				ver = incrementVersionCounter(rwsi, objid, pkgs.size(),
+						pkgs.get(pkgs.size() - 1).wo.isHidden(), saved);
+			}
+			for (int i = 0; i < pkgs.size(); i++) {
+				final Map<String, Object> v = buildVersion(user, pkgs.get(i));
+				versions.add(toVersionDocument(v, rwsi, objid, ver + i, saved));
+				pkgToVersion.put(pkgs.get(i), v);
+			}
+		}
+		insertVersions(versions);
+		final List<ObjectInformation> ret = new ArrayList<ObjectInformation>();
+		for (final ObjectSavePackage p: packages) {
+			ret.add(toObjectInfo(user, rwsi, p, pkgToVersion.get(p)));
 		}
 		updateWorkspaceModifiedDate(rwsi);
 		return ret;
@@ -1830,20 +2262,159 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 	// has a side effect of setting the provid field on each package
 	private void saveProvenance(final List<ObjectSavePackage> packages)
 			throws WorkspaceCommunicationException {
-		final Map<ObjectSavePackage, DBObject> provmap = new HashMap<>();
+		/* Identical provenance is stored once, keyed by a hash of its contents, and shared by
+		 * all the versions that use it. A batch save typically attaches the same provenance
+		 * to every object, and the same provenance recurs across saves.
+		 */
+		final Map<String, Map<String, Object>> docs = new HashMap<>();
+		final Map<String, List<ObjectSavePackage>> hashToPkgs = new HashMap<>();
 		for (final ObjectSavePackage p: packages) {
-			provmap.put(p, new BasicDBObject(toDocument(p.wo.getProvenance())));
+			final Map<String, Object> doc = toDocument(p.wo.getProvenance());
+			// the date differs for every save, so it's stored in the version instead
+			doc.remove(Fields.PROV_DATE);
+			final String hash = getProvenanceHash(doc);
+			if (!docs.containsKey(hash)) {
+				docs.put(hash, doc);
+				hashToPkgs.put(hash, new LinkedList<>());
+			}
+			hashToPkgs.get(hash).add(p);
+		}
+		final Map<String, ObjectId> ids = new HashMap<>();
+		Set<String> remaining = new HashSet<>(docs.keySet());
+		// a concurrent save may insert the same provenance between the find and the insert,
+		// in which case the provenance will be found on the second pass
+		for (int i = 0; i < 2 && !remaining.isEmpty(); i++) {
+			ids.putAll(incrementProvenanceReferenceCounts(hashToPkgs, remaining));
+			remaining.removeAll(ids.keySet());
+			final Map<String, ObjectId> inserted = insertProvenance(
+					docs, hashToPkgs, remaining);
+			ids.putAll(inserted);
+			remaining.removeAll(inserted.keySet());
+		}
+		if (!remaining.isEmpty()) {
+			// should be impossible since provenance is never deleted
+			throw new WorkspaceCommunicationException(
+					"Unable to save provenance, please retry the save");
+		}
+		for (final Entry<String, List<ObjectSavePackage>> e: hashToPkgs.entrySet()) {
+			for (final ObjectSavePackage p: e.getValue()) {
+				p.provid = ids.get(e.getKey()); // ew, side effect
+			}
 		}
+	}
+	
+	private String getProvenanceHash(final Map<String, Object> provdoc) {
 		try {
-			wsmongo.getCollection(COL_PROVENANCE).insert(new LinkedList<>(provmap.values()));
+			return DigestUtils.sha256Hex(SORTED_MAPPER.writeValueAsBytes(provdoc));
+		} catch (JsonProcessingException e) {
+			throw new RuntimeException("something's broken", e);
+		}
+	}
+	
+	// returns the IDs of the provenance documents that already exist
+	private Map<String, ObjectId> incrementProvenanceReferenceCounts(
+			final Map<String, List<ObjectSavePackage>> hashToPkgs,
+			final Set<String> hashes)
+			throws WorkspaceCommunicationException {
+		final Map<String, ObjectId> ret = new HashMap<>();
+		if (hashes.isEmpty()) {
+			return ret;
+		}
+		final Map<ObjectId, Integer> counts = new HashMap<>();
+		try {
+			final DBCursor cur = wsmongo.getCollection(COL_PROVENANCE).find(
+					new BasicDBObject(Fields.PROV_HASH, new BasicDBObject("$in", hashes)),
+					new BasicDBObject(Fields.PROV_HASH, 1));
+			for (final DBObject dbo: cur) {
+				final String hash = (String) dbo.get(Fields.PROV_HASH);
+				final ObjectId id = (ObjectId) dbo.get(Fields.MONGO_ID);
+				ret.put(hash, id);
+				counts.put(id, hashToPkgs.get(hash).size());
+			}
 		} catch (MongoException me) {
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
 		}
-		for (final ObjectSavePackage p: packages) {
-			p.provid = (ObjectId) provmap.get(p).get(Fields.MONGO_ID); // ew, side effect
+		incrementProvenanceReferenceCounts(counts);
+		return ret;
+	}
+	
+	private void incrementProvenanceReferenceCounts(final Map<ObjectId, Integer> counts)
+			throws WorkspaceCommunicationException {
+		if (counts.isEmpty()) {
+			return;
+		}
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_PROVENANCE)
+				.initializeUnorderedBulkOperation();
+		for (final Entry<ObjectId, Integer> e: counts.entrySet()) {
+			// older, unshared provenance documents aren't reference counted
+			bulk.find(new BasicDBObject(Fields.MONGO_ID, e.getKey())
+					.append(Fields.PROV_HASH, new BasicDBObject("$exists", true)))
+					.updateOne(new BasicDBObject("$inc",
+							new BasicDBObject(Fields.PROV_REFCOUNT, e.getValue())));
+		}
+		try {
+			bulk.execute();
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
 		}
 	}
+	
+	// returns the IDs of the inserted provenance documents, omitting any that were inserted
+	// concurrently by another save
+	private Map<String, ObjectId> insertProvenance(
+			final Map<String, Map<String, Object>> docs,
+			final Map<String, List<ObjectSavePackage>> hashToPkgs,
+			final Set<String> hashes)
+			throws WorkspaceCommunicationException {
+		final Map<String, ObjectId> ret = new HashMap<>();
+		if (hashes.isEmpty()) {
+			return ret;
+		}
+		final List<String> order = new ArrayList<>(hashes);
+		final BulkWriteOperation bulk = wsmongo.getCollection(COL_PROVENANCE)
+				.initializeUnorderedBulkOperation();
+		for (final String hash: order) {
+			final ObjectId id = new ObjectId();
+			ret.put(hash, id);
+			bulk.insert(new BasicDBObject(docs.get(hash))
+					.append(Fields.MONGO_ID, id)
+					.append(Fields.PROV_HASH, hash)
+					.append(Fields.PROV_REFCOUNT, hashToPkgs.get(hash).size()));
+		}
+		try {
+			bulk.execute();
+		} catch (BulkWriteException bwe) {
+			for (final BulkWriteError err: bwe.getWriteErrors()) {
+				if (!isDuplicateKeyCode(err.getCode())) {
+					throw new WorkspaceCommunicationException(
+							"There was a problem communicating with the database", bwe);
+				}
+				ret.remove(order.get(err.getIndex()));
+			}
+			if (bwe.getWriteConcernError() != null) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", bwe);
+			}
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		return ret;
+	}
+	
+	// copied versions share the provenance document of the source version
+	private void incrementProvenanceReferenceCountsForVersions(
+			final List<Map<String, Object>> versions)
+			throws WorkspaceCommunicationException {
+		final Map<ObjectId, Integer> counts = new HashMap<>();
+		for (final Map<String, Object> v: versions) {
+			final ObjectId id = (ObjectId) v.get(Fields.VER_PROV);
+			counts.put(id, counts.containsKey(id) ? counts.get(id) + 1 : 1);
+		}
+		incrementProvenanceReferenceCounts(counts);
+	}
 
 	private Map<String, Object> toDocument(final Provenance p) {
 		final Map<String, Object> ret = new HashMap<>();
@@ -2073,24 +2644,34 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 	}
 
+	/* Uploads the data for each distinct MD5 concurrently. Returns only when all the uploads
+	 * are complete, so the versions are never written before the data is stored.
+	 */
 	private void saveData(
 			final ResolvedWorkspaceID workspaceid,
 			final List<ObjectSavePackage> data)
 			throws WorkspaceCommunicationException {
 		try {
-			for (ObjectSavePackage p: data) {
-				final String md5 = p.wo.getRep().getMD5().getMD5();
-				try {
-					blob.saveBlob(new MD5(md5), p.wo.getRep(), true); //always sorted in 0.2.0+
-				} catch (BlobStoreCommunicationException e) {
-					throw new WorkspaceCommunicationException(
-							e.getLocalizedMessage(), e);
-				} catch (BlobStoreAuthorizationException e) {
-					throw new WorkspaceCommunicationException(
-							"Authorization error communicating with the backend storage system",
-							e);
+			final Map<MD5, ObjectSavePackage> md5ToPkg = new LinkedHashMap<>();
+			for (final ObjectSavePackage p: data) {
+				final MD5 md5 = new MD5(p.wo.getRep().getMD5().getMD5());
+				if (!md5ToPkg.containsKey(md5)) {
+					md5ToPkg.put(md5, p);
 				}
 			}
+			blobUploader.run(md5ToPkg.keySet(), rescfg.getMaxConcurrentBlobUploadsPerCall(),
+					md5 -> saveBlob(md5, md5ToPkg.get(md5)), new HashMap<MD5, Void>());
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof WorkspaceCommunicationException) {
+				throw (WorkspaceCommunicationException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException("Unexpected error saving data: " + cause.getMessage(),
+					cause);
 		} finally {
 			for (final ObjectSavePackage o: data) {
 				try {
@@ -2102,13 +2683,98 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			}
 		}
 	}
+	
+	private Void saveBlob(final MD5 md5, final ObjectSavePackage p)
+			throws WorkspaceCommunicationException {
+		try {
+			blob.saveBlob(md5, p.wo.getRep(), true); //always sorted in 0.2.0+
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		}
+		final long minIndexSize = rescfg.getMinStructuralIndexSize();
+		if (minIndexSize > 0 && p.wo.getRep().getSize() >= minIndexSize) {
+			saveStructuralIndex(md5, p.wo.getRep());
+		}
+		return null;
+	}
+	
+	/* The index is an optimization, so failing to build or store it for any reason is logged
+	 * rather than failing the save. Since the index is keyed by the data MD5, it is only built
+	 * once per distinct data.
+	 */
+	private void saveStructuralIndex(final MD5 md5, final Restreamable data) {
+		try {
+			final DBObject q = new BasicDBObject(Fields.STRUCT_IDX_CHKSUM, md5.getMD5());
+			if (wsmongo.getCollection(COL_STRUCT_INDEXES).findOne(
+					q, new BasicDBObject(Fields.MONGO_ID, 1)) != null) {
+				return;
+			}
+			final StructuralIndex index;
+			try (final InputStream is = data.getInputStream()) {
+				index = StructuralIndex.build(is);
+			}
+			if (index == null) {
+				return; // the data can't be indexed
+			}
+			final byte[] idxbytes = index.toBytes();
+			if (idxbytes.length > MAX_STRUCT_IDX_SIZE) {
+				LoggerFactory.getLogger(getClass()).info(String.format(
+						"Structural index for data %s is %s bytes, more than the maximum of " +
+						"%s bytes, and was not saved", md5.getMD5(), idxbytes.length,
+						MAX_STRUCT_IDX_SIZE));
+				return;
+			}
+			wsmongo.getCollection(COL_STRUCT_INDEXES).insert(
+					q.append(Fields.STRUCT_IDX_DATA, idxbytes));
+		} catch (DuplicateKeyException dk) {
+			// another save indexed the same data concurrently, nothing to do
+		} catch (IOException | RuntimeException e) {
+			// includes MongoExceptions and BSON errors, which are not MongoExceptions
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Failed to build or save structural index for data %s: %s",
+					md5.getMD5(), e.getMessage()), e);
+		}
+	}
+	
+	/* Returns null if there is no usable index for the data. */
+	private StructuralIndex getStructuralIndex(final String chksum, final long size)
+			throws WorkspaceCommunicationException {
+		final long minIndexSize = rescfg.getMinStructuralIndexSize();
+		if (minIndexSize < 1 || size < minIndexSize) {
+			return null;
+		}
+		final DBObject idx;
+		try {
+			idx = wsmongo.getCollection(COL_STRUCT_INDEXES).findOne(
+					new BasicDBObject(Fields.STRUCT_IDX_CHKSUM, chksum),
+					new BasicDBObject(Fields.STRUCT_IDX_DATA, 1));
+		} catch (MongoException me) {
+			throw new WorkspaceCommunicationException(
+					"There was a problem communicating with the database", me);
+		}
+		if (idx == null) {
+			return null;
+		}
+		try {
+			return StructuralIndex.fromBytes((byte[]) idx.get(Fields.STRUCT_IDX_DATA));
+		} catch (IOException e) {
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Unreadable structural index for data %s", chksum), e);
+			return null;
+		}
+	}
 
 	private static final Set<String> FLDS_VER_GET_OBJECT = newHashSet(
 			Fields.VER_VER, Fields.VER_META, Fields.VER_TYPE,
 			Fields.VER_SAVEDATE, Fields.VER_SAVEDBY,
 			Fields.VER_CHKSUM, Fields.VER_SIZE, Fields.VER_PROV,
 			Fields.VER_PROVREF, Fields.VER_REF, Fields.VER_EXT_IDS,
-			Fields.VER_COPIED);
+			Fields.VER_COPIED, Fields.VER_PROV_DATE);
 	
 	@Override
 	public Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>>
@@ -2131,17 +2797,28 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (dataMan != null) {
 			checkTotalFileSize(usedDataAllocation, objs, resobjs, vers);
 		}
-		final Map<ObjectId, Provenance> provs = getProvenance(vers);
+		final Map<ResolvedObjectID, Provenance> provs = getProvenance(vers);
 		final Map<String, ByteArrayFileCache> chksumToData =
 				new HashMap<String, ByteArrayFileCache>();
 		final Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> ret =
 				new HashMap<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>>();
+		if (dataMan != null) {
+			try {
+				fetchBlobs(objs, resobjs, vers, chksumToData, dataMan);
+			} catch (WorkspaceCommunicationException |
+					CorruptWorkspaceDBException |
+					RuntimeException |
+					Error e) {
+				cleanUpTempObjectFiles(chksumToData, ret);
+				throw e;
+			}
+		}
 		for (final ObjectIDResolvedWS o: objs.keySet()) {
 			final ResolvedObjectID roi = resobjs.get(o);
 			if (!vers.containsKey(roi)) {
 				continue; // works if roi is null or vers doesn't have the key
 			}
-			final Provenance prov = provs.get((ObjectId) vers.get(roi).get(Fields.VER_PROV));
+			final Provenance prov = provs.get(roi);
 			final String copyref =
 					(String) vers.get(roi).get(Fields.VER_COPIED);
 			final Reference copied = copyref == null ? null : new Reference(copyref);
@@ -2192,6 +2869,42 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 				k -> extIDs.get(k)));
 	}
 
+	@Override
+	public ByteArrayFileCache getObjectData(
+			final ObjectInformation info,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager dataManager)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException,
+				TypedObjectExtractionException {
+		requireNonNull(info, "info");
+		requireNonNull(subset, "subset");
+		requireNonNull(dataManager, "dataManager");
+		final ByteArrayFileCache cached = getCachedSubset(info, subset, dataManager);
+		if (cached != null) {
+			return cached;
+		}
+		final ByteArrayFileCache data = getBlob(info, dataManager);
+		try {
+			// destroying a subset destroys its parent
+			return getDataSubSet(info, data, subset, dataManager);
+		} catch (TypedObjectExtractionException | WorkspaceCommunicationException |
+				RuntimeException | Error e) {
+			data.destroy();
+			throw e;
+		}
+	}
+
+	@Override
+	public Future<ByteArrayFileCache> getObjectDataAsync(
+			final ObjectInformation info,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager dataManager) {
+		requireNonNull(info, "info");
+		requireNonNull(subset, "subset");
+		requireNonNull(dataManager, "dataManager");
+		return blobFetcher.submit(info, i -> getObjectData(i, subset, dataManager));
+	}
+
 	private void checkTotalFileSize(
 			final long usedDataAllocation,
 			final Map<ObjectIDResolvedWS, Set<SubsetSelection>> paths,
@@ -2262,53 +2975,151 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		}
 		if (chksumToData.containsKey(info.getCheckSum())) {
 			/* might be subsetting the same object the same way multiple
-			 * times, but probably unlikely. If it becomes a problem
-			 * memoize the subset
+			 * times, but probably unlikely. The subset cache isn't checked here, since
+			 * the fetched data is only cleaned up when a subset made from it is destroyed.
 			 */
 			ret.get(o).put(op, new WorkspaceObjectData(getDataSubSet(
-					chksumToData.get(info.getCheckSum()), op, bafcMan),
+					info, chksumToData.get(info.getCheckSum()), op, bafcMan),
 					info, prov, refs, copied, toExternalIDs(extIDs)));
 		} else {
-			final ByteArrayFileCache data;
-			try {
-				data = blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
-			} catch (FileCacheIOException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (FileCacheLimitExceededException e) {
-				throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
-						"Too much data requested from the workspace at once; " +
-						"data requested including subsets exceeds maximum of "
-						+ bafcMan.getMaxSizeOnDisk());
-			} catch (BlobStoreCommunicationException e) {
-				throw new WorkspaceCommunicationException(
-						e.getLocalizedMessage(), e);
-			} catch (BlobStoreAuthorizationException e) {
-				throw new WorkspaceCommunicationException(
-						"Authorization error communicating with the backend storage system",
-						e);
-			} catch (NoSuchBlobException e) {
-				throw new CorruptWorkspaceDBException(String.format(
-						"No data present for valid object %s.%s.%s",
-						info.getWorkspaceId(), info.getObjectId(),
-						info.getVersion()), e);
+			final ByteArrayFileCache cached = getCachedSubset(info, op, bafcMan);
+			if (cached != null) {
+				ret.get(o).put(op, new WorkspaceObjectData(
+						cached, info, prov, refs, copied, toExternalIDs(extIDs)));
+				return;
 			}
+			final ByteArrayFileCache data = getBlob(info, bafcMan);
 			chksumToData.put(info.getCheckSum(), data);
 			ret.get(o).put(op, new WorkspaceObjectData(
-					getDataSubSet(data, op, bafcMan),
+					getDataSubSet(info, data, op, bafcMan),
 					info, prov, refs, copied, toExternalIDs(extIDs)));
 		}
 	}
 	
-	private ByteArrayFileCache getDataSubSet(final ByteArrayFileCache data,
-			final SubsetSelection paths, final ByteArrayFileCacheManager bafcMan)
+	/* Fetches the data for each distinct checksum concurrently. The checksums are fetched in
+	 * the order the objects are provided so that errors are the same as if the data were
+	 * fetched serially. Data is not fetched if all the subsets required from it are cached.
+	 */
+	private void fetchBlobs(
+			final Map<ObjectIDResolvedWS, Set<SubsetSelection>> objs,
+			final Map<ObjectIDResolvedWS, ResolvedObjectID> resobjs,
+			final Map<ResolvedObjectID, Map<String, Object>> vers,
+			final Map<String, ByteArrayFileCache> chksumToData,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final Map<String, ObjectInformation> chksumToInfo = new LinkedHashMap<>();
+		for (final ObjectIDResolvedWS o: objs.keySet()) {
+			final ResolvedObjectID roi = resobjs.get(o);
+			if (vers.containsKey(roi)) { // works if roi is null
+				final String chksum = (String) vers.get(roi).get(Fields.VER_CHKSUM);
+				if (!chksumToInfo.containsKey(chksum) && !isCached(chksum, objs.get(o))) {
+					chksumToInfo.put(chksum, ObjectInfoUtils.generateObjectInfo(
+							roi, vers.get(roi)));
+				}
+			}
+		}
+		try {
+			blobFetcher.run(chksumToInfo.keySet(), rescfg.getMaxConcurrentBlobFetchesPerCall(),
+					chksum -> getBlob(chksumToInfo.get(chksum), bafcMan), chksumToData);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof WorkspaceCommunicationException) {
+				throw (WorkspaceCommunicationException) cause;
+			} else if (cause instanceof CorruptWorkspaceDBException) {
+				throw (CorruptWorkspaceDBException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException("Unexpected error fetching data: " + cause.getMessage(),
+					cause);
+		}
+	}
+	
+	private boolean isCached(final String chksum, final Set<SubsetSelection> subsets) {
+		if (subsetCache == null || subsets.isEmpty()) {
+			return false;
+		}
+		final MD5 md5 = new MD5(chksum);
+		for (final SubsetSelection s: subsets) {
+			if (s.isEmpty() || !subsetCache.contains(md5, s)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/* Returns null if there is no subset cache, the subset is empty, or the subset is not
+	 * cached.
+	 */
+	private ByteArrayFileCache getCachedSubset(
+			final ObjectInformation info,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException {
+		if (subsetCache == null || subset.isEmpty()) {
+			return null;
+		}
+		try {
+			return subsetCache.get(new MD5(info.getCheckSum()), subset, bafcMan);
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		}
+	}
+	
+	private ByteArrayFileCache getBlob(
+			final ObjectInformation info,
+			final ByteArrayFileCacheManager bafcMan)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		try {
+			return blob.getBlob(new MD5(info.getCheckSum()), bafcMan);
+		} catch (FileCacheIOException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (FileCacheLimitExceededException e) {
+			throw new IllegalArgumentException( //shouldn't happen if size was checked correctly beforehand
+					"Too much data requested from the workspace at once; " +
+					"data requested including subsets exceeds maximum of "
+					+ bafcMan.getMaxSizeOnDisk());
+		} catch (BlobStoreCommunicationException e) {
+			throw new WorkspaceCommunicationException(
+					e.getLocalizedMessage(), e);
+		} catch (BlobStoreAuthorizationException e) {
+			throw new WorkspaceCommunicationException(
+					"Authorization error communicating with the backend storage system",
+					e);
+		} catch (NoSuchBlobException e) {
+			throw new CorruptWorkspaceDBException(String.format(
+					"No data present for valid object %s.%s.%s",
+					info.getWorkspaceId(), info.getObjectId(),
+					info.getVersion()), e);
+		}
+	}
+	
+	private ByteArrayFileCache getDataSubSet(
+			final ObjectInformation info,
+			final ByteArrayFileCache data,
+			final SubsetSelection paths,
+			final ByteArrayFileCacheManager bafcMan)
 			throws TypedObjectExtractionException,
 			WorkspaceCommunicationException {
 		if (paths.isEmpty()) {
 			return data;
 		}
+		final StructuralIndex index = getStructuralIndex(info.getCheckSum(), data.getSize());
 		try {
-			return bafcMan.getSubdataExtraction(data, paths);
+			final ByteArrayFileCache subset = bafcMan.getSubdataExtraction(data, paths, index);
+			if (subsetCache != null) {
+				subsetCache.put(new MD5(info.getCheckSum()), paths, subset);
+			}
+			return subset;
 		} catch (FileCacheIOException e) {
 			throw new WorkspaceCommunicationException(
 					e.getLocalizedMessage(), e);
@@ -2401,6 +3212,19 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		if (refs.isEmpty()) {
 			return new HashMap<>();
 		}
+		final IncomingReferenceCache cache = incomingRefCache;
+		final Map<Reference, Set<Reference>> incoming = cache == null ?
+				queryIncomingReferences(refs) :
+				cache.getIncomingReferences(refs, r -> queryIncomingReferences(r));
+		final Map<Reference, ObjectReferenceSet> ret = new HashMap<>();
+		for (final Reference r: incoming.keySet()) {
+			ret.put(r, new ObjectReferenceSet(r, incoming.get(r), true));
+		}
+		return ret;
+	}
+	
+	private Map<Reference, Set<Reference>> queryIncomingReferences(final Set<Reference> refs)
+			throws WorkspaceCommunicationException {
 		//TODO MEM add limit for number of refs returned (probably 50K, but make a method param) & throw exception if more than that returned
 		final List<String> refStrings = new LinkedList<>();
 		for (final Reference r: refs) {
@@ -2415,7 +3239,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return buildReferenceToReferencesMap(refs, vers);
 	}
 	
-	private Map<Reference, ObjectReferenceSet> buildReferenceToReferencesMap(
+	private Map<Reference, Set<Reference>> buildReferenceToReferencesMap(
 			final Set<Reference> refs,
 			final List<Map<String, Object>> vers) {
 		final Map<Reference, Set<Reference>> refToRefs = new HashMap<Reference, Set<Reference>>();
@@ -2445,11 +3269,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			}
 			
 		}
-		final Map<Reference, ObjectReferenceSet> ret = new HashMap<>();
-		for (final Reference r: refToRefs.keySet()) {
-			ret.put(r, new ObjectReferenceSet(r, refToRefs.get(r), true));
-		}
-		return ret;
+		return refToRefs;
 	}
 
 	private static final Set<String> FLDS_GETREFOBJ = newHashSet(
@@ -2554,41 +3374,85 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return ret;
 	}
 	
-	private Map<ObjectId, Provenance> getProvenance(
+	private Map<ResolvedObjectID, Provenance> getProvenance(
 			final Map<ResolvedObjectID, Map<String, Object>> vers)
 			throws WorkspaceCommunicationException {
-		final Map<ObjectId, Map<String, Object>> provIDs = new HashMap<>();
-		for (final ResolvedObjectID id: vers.keySet()) {
-			provIDs.put((ObjectId) vers.get(id).get(Fields.VER_PROV), vers.get(id));
-		}
-		final Map<ObjectId, Provenance> ret = new HashMap<>();
-		try {
-			final DBCursor provs = wsmongo.getCollection(COL_PROVENANCE).find(
-					new BasicDBObject(Fields.MONGO_ID,
-							new BasicDBObject("$in", provIDs.keySet())));
-			for (final DBObject dbo: provs) {
-				final ObjectId oid = (ObjectId) dbo.get(Fields.MONGO_ID);
+		// versions may share provenance, so each provenance document is only fetched once
+		final Set<ObjectId> provIDs = new HashSet<>();
+		for (final Map<String, Object> v: vers.values()) {
+			provIDs.add((ObjectId) v.get(Fields.VER_PROV));
+		}
+		final ProvenanceCache cache = provCache;
+		final Map<ObjectId, Provenance> provs = cache == null ?
+				provProvider.getProvenance(provIDs) :
+				cache.getProvenance(provIDs, provProvider);
+		final Map<ResolvedObjectID, Provenance> ret = new HashMap<>();
+		for (final Entry<ResolvedObjectID, Map<String, Object>> e: vers.entrySet()) {
+			final Provenance prov = provs.get((ObjectId) e.getValue().get(Fields.VER_PROV));
+			if (prov != null) {
 				// this list is expected to be ordered in the same order as in the incoming
 				// provenance actions
 				@SuppressWarnings("unchecked")
-				final List<String> resolvedRefs = (List<String>) provIDs.get(oid)
+				final List<String> resolvedRefs = (List<String>) e.getValue()
 						.get(Fields.VER_PROVREF);
-				ret.put(oid, toProvenance(dbo, resolvedRefs));
+				ret.put(e.getKey(), toVersionProvenance(prov, resolvedRefs,
+						(Date) e.getValue().get(Fields.VER_PROV_DATE)));
 			}
-		} catch (MongoException me) {
-			throw new WorkspaceCommunicationException(
-					"There was a problem communicating with the database", me);
 		}
 		return ret;
 	}
 	
-	private Provenance toProvenance(
-			final DBObject p,
+	private class ProvenanceQuery implements ProvenanceProvider {
+		
+		@Override
+		public Map<ObjectId, Provenance> getProvenance(final Set<ObjectId> provenanceIDs)
+				throws WorkspaceCommunicationException {
+			final Map<ObjectId, Provenance> ret = new HashMap<>();
+			try {
+				final DBCursor cur = wsmongo.getCollection(COL_PROVENANCE).find(
+						new BasicDBObject(Fields.MONGO_ID,
+								new BasicDBObject("$in", provenanceIDs)),
+						// not needed, and the reference count changes as versions are saved
+						new BasicDBObject(Fields.PROV_HASH, 0).append(Fields.PROV_REFCOUNT, 0));
+				for (final DBObject dbo: cur) {
+					ret.put((ObjectId) dbo.get(Fields.MONGO_ID), toProvenance(dbo));
+				}
+			} catch (MongoException me) {
+				throw new WorkspaceCommunicationException(
+						"There was a problem communicating with the database", me);
+			}
+			return ret;
+		}
+	}
+	
+	/* Adds the parts of the provenance specific to an object version to the provenance decoded
+	 * from a possibly shared, and possibly cached, provenance document. The copy is shallow,
+	 * which is safe as long as provenance returned from this class is not modified.
+	 */
+	private Provenance toVersionProvenance(
+			final Provenance p,
 			// this list is expected to be ordered in the same order as in the incoming
 			// provenance actions
-			final List<String> resolvedRefs) {
+			final List<String> resolvedRefs,
+			// null for versions saved before provenance was shared between versions
+			final Date date) {
 		// also turns a lazybsonlist into a regularlist
 		final List<String> rrcopy = new LinkedList<>(resolvedRefs);
+		final Provenance ret = new Provenance(p.getUser(), date == null ? p.getDate() : date);
+		ret.setWorkspaceID(p.getWorkspaceID());
+		for (final ProvenanceAction pa: p.getActions()) {
+			// adds the correct references to each prov action based on the ordering of the 
+			// incoming reference list
+			final int refcnt = pa.getWorkspaceObjects().size();
+			final List<String> actionRefs = new LinkedList<String>(rrcopy.subList(0, refcnt));
+			rrcopy.subList(0, refcnt).clear();
+			ret.addAction(new ProvenanceAction(pa).withResolvedObjects(actionRefs));
+		}
+		return ret;
+	}
+	
+	// returns provenance without any resolved references
+	private Provenance toProvenance(final DBObject p) {
 		final Provenance ret = new Provenance(
 				new WorkspaceUser((String) p.get(Fields.PROV_USER)),
 				(Date) p.get(Fields.PROV_DATE));
@@ -2611,13 +3475,6 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			// for some reason mongo maps are not equal  to regular maps
 			final Map<String, String> custom = precustom == null ? null : new HashMap<>(precustom);
 			
-			// adds the correct references to each prov action based on the ordering of the 
-			// incoming reference list
-			final List<String> wsobjs = toList(pa, Fields.PROV_ACTION_WS_OBJS);
-			final int refcnt = wsobjs == null ? 0 : wsobjs.size();
-			final List<String> actionRefs = new LinkedList<String>(rrcopy.subList(0, refcnt));
-			rrcopy.subList(0, refcnt).clear();
-			
 			ret.addAction(new ProvenanceAction()
 					.withExternalData(toExternalData(extdata))
 					.withSubActions(toSubAction(subdata))
@@ -2634,8 +3491,7 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 					.withServiceName((String) pa.get(Fields.PROV_ACTION_SERVICE))
 					.withServiceVersion((String) pa.get(Fields.PROV_ACTION_SERVICE_VER))
 					.withTime((Date) pa.get(Fields.PROV_ACTION_TIME))
-					.withWorkspaceObjects(wsobjs)
-					.withResolvedObjects(actionRefs)
+					.withWorkspaceObjects(toList(pa, Fields.PROV_ACTION_WS_OBJS))
 					);
 		}
 		return ret;
@@ -2943,8 +3799,10 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			final Set<String> fields,
 			boolean ignoreMissing)
 			throws WorkspaceCommunicationException, NoSuchObjectException {
-		final Map<ResolvedObjectID, Map<String, Object>> vers = 
-				query.queryVersions(objectIds, fields);
+		final ObjectVersionCache cache = versionCache;
+		final Map<ResolvedObjectID, Map<String, Object>> vers = cache == null ?
+				query.queryVersions(objectIds, fields) :
+				cache.getVersions(objectIds, fields, versionProvider);
 		if (ignoreMissing) {
 			return vers;
 		}
@@ -2966,6 +3824,24 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 		return vers;
 	}
 	
+	// all the fields of a version document, which are cached in their entirety
+	private static final Set<String> FLDS_VER_CACHE = newHashSet(
+			Fields.VER_WS_ID, Fields.VER_ID, Fields.VER_VER, Fields.VER_SAVEDBY,
+			Fields.VER_CHKSUM, Fields.VER_SAVEDATE, Fields.VER_PROV, Fields.VER_REF,
+			Fields.VER_PROVREF, Fields.VER_TYPE, Fields.VER_SIZE, Fields.VER_RVRT,
+			Fields.VER_META, Fields.VER_COPIED, Fields.VER_EXT_IDS, Fields.VER_PROV_DATE);
+	
+	private class ObjectVersionQuery implements ObjectVersionProvider {
+		
+		@Override
+		public Map<ResolvedObjectID, Map<String, Object>> getVersions(
+				final Set<ResolvedObjectID> objectIDs)
+				throws WorkspaceCommunicationException {
+			// the query method adds fields to the set
+			return query.queryVersions(objectIDs, new HashSet<>(FLDS_VER_CACHE));
+		}
+	}
+	
 	//In rare race conditions an object may exist with a ver count of 1 but
 	//no versions. Really need to move this code to a backend DB with
 	//transactions if we want autoincrementing counters.
@@ -3187,14 +4063,23 @@ public class MongoWorkspaceDB implements WorkspaceDatabase {
 			setObjectsDeleted(rwsi, new ArrayList<Long>(), delete);
 		}
 		final Instant now = Instant.now();
+		final ReadableWorkspaceCache cache = readableWSCache;
 		try {
 			wsmongo.getCollection(COL_WORKSPACES).update(
 					new BasicDBObject(Fields.WS_ID, rwsi.getID()),
 					new BasicDBObject("$set", new BasicDBObject(Fields.WS_DEL, delete)
 							.append(Fields.WS_MODDATE, Date.from(now))));
 		} catch (MongoException me) {
+			if (cache != null) {
+				cache.invalidateAll(); // the update may have been applied
+			}
 			throw new WorkspaceCommunicationException(
 					"There was a problem communicating with the database", me);
+		} finally {
+			invalidateResolvedWorkspace(rwsi);
+		}
+		if (cache != null) {
+			cache.setDeleted(rwsi.getID(), delete);
 		}
 		if (!delete) {
 			//undelete object last so we yadda yadda
@@ -0,0 +1,124 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ResolvedObjectID;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A cache of object version documents, keyed by the workspace ID, object ID, and version.
+ * Used to avoid querying the database for the same versions repeatedly when getting object
+ * information or data.
+ *
+ * Version documents are never altered once saved - the mutable state of an object, e.g. the
+ * name and deleted and hidden state, is stored in the object document. Hence the cache
+ * never needs to be invalidated or expired, and cached versions must always be combined with
+ * the current object state, e.g. as found by resolving the object ID, rather than being used
+ * alone to determine whether an object is accessible.
+ *
+ * Versions are loaded with all their fields and the requested fields are copied from the
+ * cached document for each request.
+ */
+public class ObjectVersionCache {
+
+	/** Provides object version documents. */
+	public interface ObjectVersionProvider {
+
+		/** Get the complete version documents for a set of object versions.
+		 * @param objectIDs the object versions.
+		 * @return the version documents. Versions that do not exist are omitted.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 */
+		Map<ResolvedObjectID, Map<String, Object>> getVersions(Set<ResolvedObjectID> objectIDs)
+				throws WorkspaceCommunicationException;
+	}
+
+	private final Cache<Reference, Map<String, Object>> cache;
+
+	/** Create the cache.
+	 * @param maxCacheSize the maximum number of versions that will be cached.
+	 */
+	public ObjectVersionCache(final int maxCacheSize) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		cache = CacheBuilder.newBuilder().maximumSize(maxCacheSize).build();
+	}
+
+	/** Get version documents. Any versions that are not cached are loaded from the provider
+	 * and the results cached.
+	 * @param objectIDs the object versions.
+	 * @param fields the fields to include in the returned documents. The version ID and
+	 * version fields are always included.
+	 * @param provider the provider for any versions not in the cache.
+	 * @return the version documents. Versions that do not exist are omitted. The documents
+	 * may be modified, but any values within the documents must not be.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 */
+	public Map<ResolvedObjectID, Map<String, Object>> getVersions(
+			final Set<ResolvedObjectID> objectIDs,
+			final Set<String> fields,
+			final ObjectVersionProvider provider)
+			throws WorkspaceCommunicationException {
+		requireNonNull(objectIDs, "objectIDs");
+		requireNonNull(fields, "fields");
+		requireNonNull(provider, "provider");
+		final Map<ResolvedObjectID, Map<String, Object>> ret = new HashMap<>();
+		final Set<ResolvedObjectID> missing = new HashSet<>();
+		for (final ResolvedObjectID roi: objectIDs) {
+			final Map<String, Object> ver = cache.getIfPresent(
+					toReference(requireNonNull(roi, "null item in objectIDs")));
+			if (ver == null) {
+				missing.add(roi);
+			} else {
+				ret.put(roi, project(ver, fields));
+			}
+		}
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		// versions that don't exist yet are not cached, since they may be saved later
+		for (final Entry<ResolvedObjectID, Map<String, Object>> e:
+				provider.getVersions(missing).entrySet()) {
+			final Map<String, Object> ver = Collections.unmodifiableMap(
+					new HashMap<>(e.getValue()));
+			cache.put(toReference(e.getKey()), ver);
+			ret.put(e.getKey(), project(ver, fields));
+		}
+		return ret;
+	}
+
+	private Reference toReference(final ResolvedObjectID roi) {
+		return new Reference(roi.getWorkspaceIdentifier().getID(), roi.getId(),
+				roi.getVersion());
+	}
+
+	private Map<String, Object> project(final Map<String, Object> ver, final Set<String> fields) {
+		final Map<String, Object> ret = new HashMap<>();
+		ret.put(Fields.VER_ID, ver.get(Fields.VER_ID));
+		ret.put(Fields.VER_VER, ver.get(Fields.VER_VER));
+		for (final String f: fields) {
+			if (ver.containsKey(f)) {
+				ret.put(f, ver.get(f));
+			}
+		}
+		return ret;
+	}
+
+	/** Get the number of versions in the cache.
+	 * @return the number of versions.
+	 */
+	public long size() {
+		return cache.size();
+	}
+}
@@ -0,0 +1,97 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A cache of decoded provenance documents, keyed by the provenance document ID. Used to avoid
+ * querying the database for, and decoding, the same provenance repeatedly when getting
+ * objects.
+ *
+ * The content of a provenance document is never altered once saved, and so the cache never
+ * needs to be invalidated or expired. Since provenance documents may be shared between object
+ * versions, the cached provenance does not contain the parts of the provenance that are
+ * specific to a version, e.g. the resolved references.
+ *
+ * The cached provenance is shared between callers and must not be modified.
+ */
+public class ProvenanceCache {
+
+	/** Provides decoded provenance. */
+	public interface ProvenanceProvider {
+
+		/** Get provenance.
+		 * @param provenanceIDs the IDs of the provenance documents.
+		 * @return the provenance. IDs for which no provenance exists are omitted.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 */
+		Map<ObjectId, Provenance> getProvenance(Set<ObjectId> provenanceIDs)
+				throws WorkspaceCommunicationException;
+	}
+
+	private final Cache<ObjectId, Provenance> cache;
+
+	/** Create the cache.
+	 * @param maxCacheSize the maximum number of provenance documents that will be cached.
+	 */
+	public ProvenanceCache(final int maxCacheSize) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		cache = CacheBuilder.newBuilder().maximumSize(maxCacheSize).build();
+	}
+
+	/** Get provenance. Any provenance that is not cached is loaded from the provider and the
+	 * results cached.
+	 * @param provenanceIDs the IDs of the provenance documents.
+	 * @param provider the provider for any provenance not in the cache.
+	 * @return the provenance. IDs for which no provenance exists are omitted. The provenance
+	 * must not be modified.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 */
+	public Map<ObjectId, Provenance> getProvenance(
+			final Set<ObjectId> provenanceIDs,
+			final ProvenanceProvider provider)
+			throws WorkspaceCommunicationException {
+		requireNonNull(provenanceIDs, "provenanceIDs");
+		requireNonNull(provider, "provider");
+		final Map<ObjectId, Provenance> ret = new HashMap<>();
+		final Set<ObjectId> missing = new HashSet<>();
+		for (final ObjectId id: provenanceIDs) {
+			final Provenance p = cache.getIfPresent(
+					requireNonNull(id, "null item in provenanceIDs"));
+			if (p == null) {
+				missing.add(id);
+			} else {
+				ret.put(id, p);
+			}
+		}
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		for (final Entry<ObjectId, Provenance> e: provider.getProvenance(missing).entrySet()) {
+			cache.put(e.getKey(), e.getValue());
+			ret.put(e.getKey(), e.getValue());
+		}
+		return ret;
+	}
+
+	/** Get the number of provenance documents in the cache.
+	 * @return the number of provenance documents.
+	 */
+	public long size() {
+		return cache.size();
+	}
+}
@@ -8,7 +8,9 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 
 import us.kbase.workspace.database.AllUsers;
 import us.kbase.workspace.database.Permission;
@@ -21,6 +23,7 @@ import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
 import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
 
+import com.google.common.collect.Lists;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCursor;
@@ -32,6 +35,9 @@ public class QueryMethods {
 	//TODO TEST unit tests
 	//TODO JAVADOC
 	
+	// the maximum number of object IDs in a single version query
+	private static final int VERSION_QUERY_BATCH_SIZE = 1000;
+	
 	private final DB wsmongo;
 	private final AllUsers allUsers;
 	private final String workspaceCollection;
@@ -389,36 +395,47 @@ public class QueryMethods {
 			final Set<String> fields) throws WorkspaceCommunicationException {
 		fields.add(Fields.VER_ID);
 		fields.add(Fields.VER_VER);
-		//disgusting. need to do better.
-		//nested or queries are slow per the mongo docs so just query one
-		//workspace at a time. If profiling shows this is slow investigate
-		//further
-		//actually, $or queries just suck it seems. Way faster to do single queries
+		/* $or queries were found to be much slower than single object queries, so instead
+		 * objects in the same workspace for which the same versions are requested are
+		 * queried together with $in on the object ID, which uses the (ws, id, ver) index. This
+		 * typically reduces a query per object to a query per distinct version per workspace.
+		 */
 		final Map<ResolvedWorkspaceID, Map<Long, Map<Integer, Map<String, Object>>>>
 			ret = new HashMap<ResolvedWorkspaceID, Map<Long,Map<Integer,Map<String,Object>>>>();
 		for (final ResolvedWorkspaceID rwsi: ids.keySet()) {
-			ret.put(rwsi, new HashMap<Long, Map<Integer, Map<String,Object>>>());
-			for (final Long objectID: ids.get(rwsi).keySet()) {
-				ret.get(rwsi).put(objectID,
-						new HashMap<Integer, Map<String, Object>>());
-				final DBObject q;
-				if (ids.get(rwsi).get(objectID).size() == 0) {
-					q = new BasicDBObject();
-				} else if (ids.get(rwsi).get(objectID).size() == 1) {
-					q = new BasicDBObject(Fields.VER_VER,
-							ids.get(rwsi).get(objectID).get(0));
-				} else {
-					q = new BasicDBObject(Fields.VER_VER,
-						new BasicDBObject("$in", ids.get(rwsi).get(objectID)));
+			final Map<Long, Map<Integer, Map<String, Object>>> wsret = new HashMap<>();
+			ret.put(rwsi, wsret);
+			final Map<List<Integer>, List<Long>> objectsByVersions = new HashMap<>();
+			for (final Entry<Long, List<Integer>> e: ids.get(rwsi).entrySet()) {
+				wsret.put(e.getKey(), new HashMap<Integer, Map<String, Object>>());
+				final List<Integer> vers = new ArrayList<>(new TreeSet<>(e.getValue()));
+				if (!objectsByVersions.containsKey(vers)) {
+					objectsByVersions.put(vers, new ArrayList<Long>());
 				}
-				q.put(Fields.VER_ID, objectID);
-				q.put(Fields.VER_WS_ID, rwsi.getID());
-				final List<Map<String, Object>> res = queryCollection(
-						versionCollection, q, fields);
-				for (final Map<String, Object> r: res) {
-					final Long id = (Long) r.get(Fields.VER_ID);
-					final Integer ver = (Integer) r.get(Fields.VER_VER);
-					ret.get(rwsi).get(id).put(ver, r);
+				objectsByVersions.get(vers).add(e.getKey());
+			}
+			for (final Entry<List<Integer>, List<Long>> e: objectsByVersions.entrySet()) {
+				final List<Integer> vers = e.getKey();
+				for (final List<Long> batch:
+						Lists.partition(e.getValue(), VERSION_QUERY_BATCH_SIZE)) {
+					final DBObject q = new BasicDBObject(Fields.VER_WS_ID, rwsi.getID());
+					if (batch.size() == 1) {
+						q.put(Fields.VER_ID, batch.get(0));
+					} else {
+						q.put(Fields.VER_ID, new BasicDBObject("$in", batch));
+					}
+					if (vers.size() == 1) {
+						q.put(Fields.VER_VER, vers.get(0));
+					} else if (vers.size() > 1) {
+						q.put(Fields.VER_VER, new BasicDBObject("$in", vers));
+					} // otherwise all versions
+					final List<Map<String, Object>> res = queryCollection(
+							versionCollection, q, fields);
+					for (final Map<String, Object> r: res) {
+						final Long id = (Long) r.get(Fields.VER_ID);
+						final Integer ver = (Integer) r.get(Fields.VER_VER);
+						wsret.get(id).put(ver, r);
+					}
 				}
 			}
 		}
@@ -0,0 +1,341 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A cache of the IDs of the workspaces that users can read. Used to avoid querying and
+ * materializing the permissions for every workspace a user can read, including every globally
+ * readable workspace, each time a reference path search is performed.
+ *
+ * The IDs of the workspaces a user can read by virtue of their own permissions are stored per
+ * user as a sorted array. The IDs of the globally readable workspaces are stored once and
+ * shared between all users. Deleted workspaces are never included.
+ *
+ * The cache is updated incrementally when permissions change or workspaces are deleted via
+ * {@link #setPermission(long, Collection, boolean)},
+ * {@link #setGloballyReadable(long, boolean)}, and {@link #setDeleted(long, boolean)}. Since
+ * permissions may be changed by other workspace instances sharing the same database, cache
+ * entries also expire a fixed time after they were loaded, regardless of any updates.
+ */
+public class ReadableWorkspaceCache {
+
+	/** Provides the IDs of readable workspaces. */
+	public interface ReadableWorkspaceProvider {
+
+		/** Get the IDs of the non-deleted workspaces that a user can read by virtue of the
+		 * user's own permissions. Globally readable workspaces are not included unless the
+		 * user has permissions to them.
+		 * @param user the user.
+		 * @return the workspace IDs.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 * @throws CorruptWorkspaceDBException if the workspace database is corrupt.
+		 */
+		Set<Long> getReadableWorkspaces(WorkspaceUser user)
+				throws WorkspaceCommunicationException, CorruptWorkspaceDBException;
+
+		/** Get the IDs of the non-deleted, globally readable workspaces.
+		 * @return the workspace IDs.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 * @throws CorruptWorkspaceDBException if the workspace database is corrupt.
+		 */
+		Set<Long> getGloballyReadableWorkspaces()
+				throws WorkspaceCommunicationException, CorruptWorkspaceDBException;
+	}
+
+	private static final long[] EMPTY = new long[0];
+
+	private static class IDs {
+
+		private final long[] ids;
+		private final long loadTime;
+
+		private IDs(final long[] ids, final long loadTime) {
+			this.ids = ids;
+			this.loadTime = loadTime;
+		}
+	}
+
+	private final Cache<WorkspaceUser, IDs> cache;
+	private final Ticker ticker;
+	private final long cacheTimeInNanos;
+	// the remaining fields are guarded by this
+	private IDs global = null;
+	// incremented on every update so loads racing with an update can't cache stale data
+	private long generation = 0;
+
+	/** Create the cache.
+	 * @param maxCacheSize the maximum number of users for which readable workspaces will be
+	 * cached.
+	 * @param cacheTimeInMS the maximum time readable workspaces will be cached in milliseconds.
+	 */
+	public ReadableWorkspaceCache(final int maxCacheSize, final int cacheTimeInMS) {
+		this(maxCacheSize, cacheTimeInMS, Ticker.systemTicker());
+	}
+
+	/** This constructor should only be used for tests. */
+	public ReadableWorkspaceCache(
+			final int maxCacheSize,
+			final int cacheTimeInMS,
+			final Ticker ticker) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		if (cacheTimeInMS < 1) {
+			throw new IllegalArgumentException("cacheTimeInMS must be at least 1");
+		}
+		requireNonNull(ticker, "ticker");
+		this.ticker = ticker;
+		cacheTimeInNanos = TimeUnit.MILLISECONDS.toNanos(cacheTimeInMS);
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(cacheTimeInMS, TimeUnit.MILLISECONDS)
+				.ticker(ticker)
+				.build();
+	}
+
+	/** Get the IDs of the non-deleted workspaces a user can read, including globally readable
+	 * workspaces. Any IDs that are not cached are retrieved from the provider and cached.
+	 * @param user the user, or null for an anonymous user, in which case only globally
+	 * readable workspaces are returned.
+	 * @param provider the provider for any IDs not in the cache.
+	 * @return an immutable set of workspace IDs.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 * @throws CorruptWorkspaceDBException if the workspace database is corrupt.
+	 */
+	public Set<Long> getReadableWorkspaces(
+			final WorkspaceUser user,
+			final ReadableWorkspaceProvider provider)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		requireNonNull(provider, "provider");
+		final long[] userIDs = user == null ? EMPTY : getUserIDs(user, provider);
+		return new WorkspaceIDSet(userIDs, getGlobalIDs(provider));
+	}
+
+	private long[] getUserIDs(
+			final WorkspaceUser user,
+			final ReadableWorkspaceProvider provider)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final IDs cached = cache.getIfPresent(user);
+		if (isValid(cached)) {
+			return cached.ids;
+		}
+		final long gen = getGeneration();
+		final long loadTime = ticker.read();
+		final long[] ids = toSortedArray(provider.getReadableWorkspaces(user));
+		synchronized (this) {
+			if (generation == gen) {
+				cache.put(user, new IDs(ids, loadTime));
+			}
+		}
+		return ids;
+	}
+
+	private long[] getGlobalIDs(final ReadableWorkspaceProvider provider)
+			throws WorkspaceCommunicationException, CorruptWorkspaceDBException {
+		final long gen;
+		synchronized (this) {
+			if (isValid(global)) {
+				return global.ids;
+			}
+			gen = generation;
+		}
+		final long loadTime = ticker.read();
+		final long[] ids = toSortedArray(provider.getGloballyReadableWorkspaces());
+		synchronized (this) {
+			if (generation == gen) {
+				global = new IDs(ids, loadTime);
+			}
+		}
+		return ids;
+	}
+
+	private synchronized long getGeneration() {
+		return generation;
+	}
+
+	// updates don't reset the load time, so changes made by other instances are picked up
+	private boolean isValid(final IDs ids) {
+		return ids != null && ticker.read() - ids.loadTime < cacheTimeInNanos;
+	}
+
+	/** Update the cache when users' permissions to a workspace change.
+	 * @param wsid the ID of the workspace.
+	 * @param users the users whose permissions changed.
+	 * @param readable true if the users can now read the workspace, false otherwise. Pass false
+	 * if the workspace is deleted.
+	 */
+	public synchronized void setPermission(
+			final long wsid,
+			final Collection<WorkspaceUser> users,
+			final boolean readable) {
+		requireNonNull(users, "users");
+		generation++;
+		for (final WorkspaceUser user: users) {
+			final IDs ids = cache.getIfPresent(requireNonNull(user, "user"));
+			if (ids != null) {
+				cache.put(user, update(ids, wsid, readable));
+			}
+		}
+	}
+
+	/** Update the cache when a workspace's global permission changes.
+	 * @param wsid the ID of the workspace.
+	 * @param readable true if the workspace is now globally readable, false otherwise. Pass
+	 * false if the workspace is deleted.
+	 */
+	public synchronized void setGloballyReadable(final long wsid, final boolean readable) {
+		generation++;
+		if (global != null) {
+			global = update(global, wsid, readable);
+		}
+	}
+
+	/** Update the cache when a workspace is deleted or undeleted. Deleting a workspace removes
+	 * it from the cache, while undeleting a workspace empties the cache, since which users
+	 * can read the workspace is not known.
+	 * @param wsid the ID of the workspace.
+	 * @param deleted true if the workspace was deleted, false if it was undeleted.
+	 */
+	public synchronized void setDeleted(final long wsid, final boolean deleted) {
+		generation++;
+		if (deleted) {
+			setGloballyReadable(wsid, false);
+			for (final Entry<WorkspaceUser, IDs> e: cache.asMap().entrySet()) {
+				cache.asMap().replace(e.getKey(), e.getValue(), update(e.getValue(), wsid, false));
+			}
+		} else {
+			invalidateAll();
+		}
+	}
+
+	/** Empty the cache. Call this method if the effect of a change on the readable workspaces is
+	 * unknown, for example if a database update failed and may or may not have been applied.
+	 */
+	public synchronized void invalidateAll() {
+		generation++;
+		global = null;
+		cache.invalidateAll();
+	}
+
+	private static IDs update(final IDs ids, final long wsid, final boolean add) {
+		final int pos = Arrays.binarySearch(ids.ids, wsid);
+		if (add == pos >= 0) {
+			return ids;
+		}
+		final long[] newIDs;
+		if (add) {
+			final int insert = -(pos + 1);
+			newIDs = new long[ids.ids.length + 1];
+			System.arraycopy(ids.ids, 0, newIDs, 0, insert);
+			newIDs[insert] = wsid;
+			System.arraycopy(ids.ids, insert, newIDs, insert + 1, ids.ids.length - insert);
+		} else {
+			newIDs = new long[ids.ids.length - 1];
+			System.arraycopy(ids.ids, 0, newIDs, 0, pos);
+			System.arraycopy(ids.ids, pos + 1, newIDs, pos, ids.ids.length - pos - 1);
+		}
+		return new IDs(newIDs, ids.loadTime);
+	}
+
+	private static long[] toSortedArray(final Set<Long> ids) {
+		final long[] ret = new long[ids.size()];
+		int i = 0;
+		for (final Long id: ids) {
+			ret[i++] = id;
+		}
+		Arrays.sort(ret);
+		return ret;
+	}
+
+	/** Get the number of users in the cache.
+	 * @return the number of users.
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/* An immutable union of two sorted arrays of IDs. The arrays must never be modified. */
+	private static class WorkspaceIDSet extends AbstractSet<Long> {
+
+		private final long[] ids1;
+		private final long[] ids2;
+		private int size = -1;
+
+		private WorkspaceIDSet(final long[] ids1, final long[] ids2) {
+			this.ids1 = ids1;
+			this.ids2 = ids2;
+		}
+
+		@Override
+		public boolean contains(final Object o) {
+			if (!(o instanceof Long)) {
+				return false;
+			}
+			final long id = (Long) o;
+			return Arrays.binarySearch(ids1, id) >= 0 || Arrays.binarySearch(ids2, id) >= 0;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return ids1.length == 0 && ids2.length == 0;
+		}
+
+		@Override
+		public int size() {
+			if (size < 0) {
+				int s = ids2.length;
+				for (final long id: ids1) {
+					if (Arrays.binarySearch(ids2, id) < 0) {
+						s++;
+					}
+				}
+				size = s;
+			}
+			return size;
+		}
+
+		@Override
+		public Iterator<Long> iterator() {
+			return new Iterator<Long>() {
+
+				private int i1 = 0;
+				private int i2 = 0;
+
+				@Override
+				public boolean hasNext() {
+					return i1 < ids1.length || i2 < ids2.length;
+				}
+
+				@Override
+				public Long next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					if (i2 >= ids2.length || (i1 < ids1.length && ids1[i1] < ids2[i2])) {
+						return ids1[i1++];
+					}
+					if (i1 < ids1.length && ids1[i1] == ids2[i2]) {
+						i1++;
+					}
+					return ids2[i2++];
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** A cache of resolved workspace IDs, keyed by both workspace ID and name. Used to avoid
+ * querying the workspaces collection to resolve workspace identifiers on every request.
+ *
+ * Names are cached as a mapping from the name to the workspace ID, and a name lookup is
+ * only successful if the cached workspace for that ID still has the same name. Thus removing a
+ * workspace from the cache by ID also removes it by name, regardless of how many times the
+ * workspace has been renamed.
+ *
+ * The cache must be updated via {@link #invalidate(long)} when a workspace is renamed, locked,
+ * deleted, or undeleted. Since workspaces may be changed by other workspace instances sharing
+ * the same database, cache entries also expire a fixed time after they were loaded.
+ */
+public class ResolvedWorkspaceCache {
+
+	/** Provides resolved workspace IDs. */
+	public interface ResolvedWorkspaceProvider {
+
+		/** Resolve workspace identifiers.
+		 * @param wsis the workspace identifiers to resolve.
+		 * @return the resolved workspace IDs, including deleted workspaces. Identifiers for
+		 * which no workspace exists are omitted.
+		 * @throws WorkspaceCommunicationException if a communication error occurs.
+		 */
+		Map<WorkspaceIdentifier, ResolvedWorkspaceID> resolveWorkspaces(
+				Set<WorkspaceIdentifier> wsis)
+				throws WorkspaceCommunicationException;
+	}
+
+	private final Cache<Long, ResolvedWorkspaceID> byID;
+	private final Cache<String, Long> byName;
+	// guarded by this. Incremented on every invalidation so loads racing with an
+	// invalidation can't cache stale data
+	private long generation = 0;
+
+	/** Create the cache.
+	 * @param maxCacheSize the maximum number of workspaces that will be cached.
+	 * @param cacheTimeInMS the maximum time a workspace will be cached in milliseconds.
+	 */
+	public ResolvedWorkspaceCache(final int maxCacheSize, final int cacheTimeInMS) {
+		this(maxCacheSize, cacheTimeInMS, Ticker.systemTicker());
+	}
+
+	/** This constructor should only be used for tests. */
+	public ResolvedWorkspaceCache(
+			final int maxCacheSize,
+			final int cacheTimeInMS,
+			final Ticker ticker) {
+		if (maxCacheSize < 1) {
+			throw new IllegalArgumentException("maxCacheSize must be at least 1");
+		}
+		if (cacheTimeInMS < 1) {
+			throw new IllegalArgumentException("cacheTimeInMS must be at least 1");
+		}
+		requireNonNull(ticker, "ticker");
+		byID = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(cacheTimeInMS, TimeUnit.MILLISECONDS)
+				.ticker(ticker)
+				.build();
+		byName = CacheBuilder.newBuilder()
+				.maximumSize(maxCacheSize)
+				.expireAfterWrite(cacheTimeInMS, TimeUnit.MILLISECONDS)
+				.ticker(ticker)
+				.build();
+	}
+
+	/** Resolve workspace identifiers. Any identifiers that are not cached are resolved by the
+	 * provider and the results cached.
+	 * @param wsis the workspace identifiers to resolve.
+	 * @param provider the provider for any identifiers not in the cache.
+	 * @return the resolved workspace IDs, including deleted workspaces. Identifiers for
+	 * which no workspace exists are omitted.
+	 * @throws WorkspaceCommunicationException if a communication error occurs.
+	 */
+	public Map<WorkspaceIdentifier, ResolvedWorkspaceID> resolveWorkspaces(
+			final Set<WorkspaceIdentifier> wsis,
+			final ResolvedWorkspaceProvider provider)
+			throws WorkspaceCommunicationException {
+		requireNonNull(wsis, "wsis");
+		requireNonNull(provider, "provider");
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> ret = new HashMap<>();
+		final Set<WorkspaceIdentifier> missing = new HashSet<>();
+		for (final WorkspaceIdentifier wsi: wsis) {
+			final ResolvedWorkspaceID rwsi = get(requireNonNull(wsi, "null item in wsis"));
+			if (rwsi == null) {
+				missing.add(wsi);
+			} else {
+				ret.put(wsi, rwsi);
+			}
+		}
+		if (missing.isEmpty()) {
+			return ret;
+		}
+		final long gen = getGeneration();
+		final Map<WorkspaceIdentifier, ResolvedWorkspaceID> loaded =
+				provider.resolveWorkspaces(missing);
+		synchronized (this) {
+			if (generation == gen) {
+				for (final ResolvedWorkspaceID rwsi: loaded.values()) {
+					byID.put(rwsi.getID(), rwsi);
+					byName.put(rwsi.getName(), rwsi.getID());
+				}
+			}
+		}
+		for (final Entry<WorkspaceIdentifier, ResolvedWorkspaceID> e: loaded.entrySet()) {
+			ret.put(e.getKey(), e.getValue());
+		}
+		return ret;
+	}
+
+	private ResolvedWorkspaceID get(final WorkspaceIdentifier wsi) {
+		if (wsi.getId() != null) {
+			return byID.getIfPresent(wsi.getId());
+		}
+		final Long id = byName.getIfPresent(wsi.getName());
+		if (id == null) {
+			return null;
+		}
+		final ResolvedWorkspaceID rwsi = byID.getIfPresent(id);
+		// the workspace may have been renamed since the name was cached
+		return rwsi != null && rwsi.getName().equals(wsi.getName()) ? rwsi : null;
+	}
+
+	private synchronized long getGeneration() {
+		return generation;
+	}
+
+	/** Remove a workspace from the cache. Call this method when the workspace's name, locked
+	 * state, or deleted state changes, or may have changed.
+	 * @param wsid the ID of the workspace.
+	 */
+	public synchronized void invalidate(final long wsid) {
+		generation++;
+		byID.invalidate(wsid);
+	}
+
+	/** Empty the cache. */
+	public synchronized void invalidateAll() {
+		generation++;
+		byID.invalidateAll();
+		byName.invalidateAll();
+	}
+
+	/** Get the number of workspaces in the cache.
+	 * @return the number of workspaces.
+	 */
+	public long size() {
+		return byID.size();
+	}
+}
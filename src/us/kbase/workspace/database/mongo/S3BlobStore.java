@@ -4,9 +4,15 @@ import static java.util.Objects.requireNonNull;
 import static us.kbase.workspace.database.Util.checkString;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
 
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +68,8 @@ public class S3BlobStore implements BlobStore {
 	private final S3ClientWithPresign s3;
 	private final String bucket;
 	private final UUIDGen uuidGen;
+	// created on first use, guarded by this
+	private BlobOperationExecutor rangeFetcher = null;
 	
 	/** Create the blob store.
 	 * @param mongoCollection the MongoDB collection in which the blob store will store records.
@@ -146,10 +154,18 @@ public class S3BlobStore implements BlobStore {
 			//go ahead, need to save
 		}
 		final String key = toS3Key(uuidGen.randomUUID());
+		final String expectedETag;
 		try {
-			s3.presignAndPutObject(
-					PutObjectRequest.builder().bucket(bucket).key(key).build(),
-					data);
+			if (s3.isMultipartUpload(data.getSize())) {
+				// the S3 client checks the MD5 of each part as it's uploaded. The ETag of a
+				// multipart upload is derived from the part MD5s, not the MD5 of the object
+				expectedETag = s3.presignAndPutObjectMultipart(bucket, key, data);
+			} else {
+				s3.presignAndPutObject(
+						PutObjectRequest.builder().bucket(bucket).key(key).build(),
+						data);
+				expectedETag = md5.getMD5();
+			}
 		} catch (IOException e) {
 			throw new BlobStoreCommunicationException("S3 error: " + e.getMessage(), e);
 		}
@@ -158,7 +174,7 @@ public class S3BlobStore implements BlobStore {
 					.bucket(bucket)
 					.key(key)
 					.build());
-			if (!obj.eTag().replace("\"", "").trim().equals(md5.getMD5())) {
+			if (!obj.eTag().replace("\"", "").trim().equals(expectedETag)) {
 				// add retry here if necessary
 				throw new BlobStoreCommunicationException("S3 upload corrupted, MD5s don't match");
 			}
@@ -212,6 +228,16 @@ public class S3BlobStore implements BlobStore {
 					.key(key)
 					.build())
 			) {
+			final Long size = obj.response().contentLength();
+			if (size != null && s3.isMultipartDownload(size)) {
+				try {
+					return bafcMan.createBAFC(
+							size, fc -> getRanges(key, obj, size, fc), true, sorted);
+				} finally {
+					// don't read the rest of the stream when closing it
+					obj.abort();
+				}
+			}
 			return bafcMan.createBAFC(obj, true, sorted);
 		} catch (NoSuchKeyException e) {
 			throw new BlobStoreCommunicationException(
@@ -230,6 +256,83 @@ public class S3BlobStore implements BlobStore {
 		}
 	}
 
+	/* Fetches the object in byte ranges concurrently and writes the ranges into the channel.
+	 * The first range is read from the stream that was opened for the entire object, so no
+	 * extra round trip is needed for objects that end up under the range threshold.
+	 */
+	private void getRanges(
+			final String key,
+			final InputStream first,
+			final long size,
+			final FileChannel channel)
+			throws IOException {
+		final long rangeSize = s3.getPartSize();
+		final List<Long> starts = new ArrayList<>();
+		for (long start = 0; start < size; start += rangeSize) {
+			starts.add(start);
+		}
+		try {
+			getRangeFetcher().run(starts, s3.getMaxConcurrentPartsPerObject(), start -> {
+				final long length = Math.min(rangeSize, size - start);
+				if (start == 0) {
+					copy(first, channel, start, length);
+				} else {
+					try (final InputStream is = s3.getClient().getObject(
+							GetObjectRequest.builder()
+								.bucket(bucket)
+								.key(key)
+								.range(String.format("bytes=%s-%s", start, start + length - 1))
+								.build())) {
+						copy(is, channel, start, length);
+					}
+				}
+				return null;
+			}, new HashMap<Long, Void>());
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				// includes SdkExceptions, which are handled by the caller
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		}
+	}
+	
+	private synchronized BlobOperationExecutor getRangeFetcher() {
+		if (rangeFetcher == null) {
+			// ranges are fetched with the same concurrency limits as parts are uploaded
+			rangeFetcher = new BlobOperationExecutor(
+					"s3-range-fetch", s3.getMaxConcurrentParts());
+		}
+		return rangeFetcher;
+	}
+	
+	private void copy(
+			final InputStream is,
+			final FileChannel channel,
+			long position,
+			final long length)
+			throws IOException {
+		final byte[] buf = new byte[100000];
+		long remaining = length;
+		while (remaining > 0) {
+			final int count = is.read(buf, 0, (int) Math.min(buf.length, remaining));
+			if (count < 0) {
+				throw new IOException(String.format(
+						"S3 object data ended %s bytes early", remaining));
+			}
+			final ByteBuffer bb = ByteBuffer.wrap(buf, 0, count);
+			while (bb.hasRemaining()) {
+				position += channel.write(bb, position);
+			}
+			remaining -= count;
+		}
+	}
+
 	@Override
 	public void removeBlob(final MD5 md5)
 			throws BlobStoreAuthorizationException, BlobStoreCommunicationException {
@@ -8,33 +8,54 @@ import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.Header;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.LoggerFactory;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
 import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.UploadPartPresignRequest;
 import us.kbase.typedobj.core.Restreamable;
 
-/** An S3 client that wraps the standard Amazon supplied S3 client and provides a method to
- * upload files using a presigned URL and standard http streaming.
+/** An S3 client that wraps the standard Amazon supplied S3 client and provides methods to
+ * upload files using presigned URLs and standard http streaming, either in a single request
+ * or as a multipart upload.
  * 
  * See https://github.com/aws/aws-sdk-java-v2/issues/849
  * @author gaprice@lbl.gov
@@ -45,11 +66,42 @@ public class S3ClientWithPresign {
 	// this isolates code that can't easily be mocked from the rest of the S3 blobstore.
 	// all tests are in the S3BlobStore integration tests.
 	
+	/** The default size above which objects are uploaded with a multipart upload. */
+	public static final long DEFAULT_MULTIPART_THRESHOLD = 100 * 1024 * 1024;
+	/** The default size of the parts of a multipart upload. */
+	public static final long DEFAULT_PART_SIZE = 16 * 1024 * 1024;
+	/** The default maximum number of parts of a single object that are transferred
+	 * concurrently.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_PARTS_PER_OBJECT = 4;
+	/** The default maximum number of parts that are transferred concurrently across all
+	 * objects.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENT_PARTS = 40;
+	
+	// S3 limits, see https://docs.aws.amazon.com/AmazonS3/latest/dev/qfacts.html
+	private static final long MIN_PART_SIZE = 5 * 1024 * 1024;
+	private static final int MAX_PARTS = 10000;
+	
+	private static final int MAX_PART_ATTEMPTS = 3;
+	
+	/* The connection pool doesn't limit the number of concurrent requests - that's done by the
+	 * blob upload limits in the resource usage configuration and the part limits here, all of
+	 * which are configurable. The pool is just sized so that it never becomes the bottleneck
+	 * for any reasonable setting of those limits.
+	 */
+	private static final int MAX_CONNECTIONS = 1000;
+	
 	private final S3Client client;
 	private final S3Presigner presigner;
 	private final CloseableHttpClient httpClient;
+	private final long multipartThreshold;
+	private final long partSize;
+	private final int maxConcurrentPartsPerObject;
+	private final int maxConcurrentParts;
+	private final BlobOperationExecutor partUploader;
 	
-	/** Construct the client.
+	/** Construct the client with the default multipart upload threshold and part size.
 	 * @param host the host the client will interact with. Schema must be http or https.
 	 * @param s3key the S3 access key.
 	 * @param s3secret the S3 access secret.
@@ -62,6 +114,74 @@ public class S3ClientWithPresign {
 			final String s3secret,
 			final Region region)
 			throws URISyntaxException {
+		this(host, s3key, s3secret, region, DEFAULT_MULTIPART_THRESHOLD, DEFAULT_PART_SIZE);
+	}
+	
+	/** Construct the client with the default part concurrency limits.
+	 * @param host the host the client will interact with. Schema must be http or https.
+	 * @param s3key the S3 access key.
+	 * @param s3secret the S3 access secret.
+	 * @param region the S3 region the client will contact.
+	 * @param multipartThreshold objects larger than this size, in bytes, should be uploaded
+	 * with a multipart upload. See {@link #isMultipartUpload(long)}.
+	 * @param partSize the size of the parts of a multipart upload. Must be at least 5MB. The
+	 * part size is increased if necessary to keep the number of parts under the S3 limit.
+	 * @throws URISyntaxException if the URL is not a valid URI.
+	 */
+	public S3ClientWithPresign(
+			final URL host,
+			final String s3key,
+			final String s3secret,
+			final Region region,
+			final long multipartThreshold,
+			final long partSize)
+			throws URISyntaxException {
+		this(host, s3key, s3secret, region, multipartThreshold, partSize,
+				DEFAULT_MAX_CONCURRENT_PARTS_PER_OBJECT, DEFAULT_MAX_CONCURRENT_PARTS);
+	}
+	
+	/** Construct the client.
+	 * @param host the host the client will interact with. Schema must be http or https.
+	 * @param s3key the S3 access key.
+	 * @param s3secret the S3 access secret.
+	 * @param region the S3 region the client will contact.
+	 * @param multipartThreshold objects larger than this size, in bytes, should be uploaded
+	 * with a multipart upload. See {@link #isMultipartUpload(long)}.
+	 * @param partSize the size of the parts of a multipart upload. Must be at least 5MB. The
+	 * part size is increased if necessary to keep the number of parts under the S3 limit.
+	 * @param maxConcurrentPartsPerObject the maximum number of parts of a single object that
+	 * are uploaded concurrently.
+	 * @param maxConcurrentParts the maximum number of parts that are uploaded concurrently
+	 * across all objects.
+	 * @throws URISyntaxException if the URL is not a valid URI.
+	 */
+	public S3ClientWithPresign(
+			final URL host,
+			final String s3key,
+			final String s3secret,
+			final Region region,
+			final long multipartThreshold,
+			final long partSize,
+			final int maxConcurrentPartsPerObject,
+			final int maxConcurrentParts)
+			throws URISyntaxException {
+		if (maxConcurrentPartsPerObject < 1) {
+			throw new IllegalArgumentException("maxConcurrentPartsPerObject must be at least 1");
+		}
+		if (maxConcurrentParts < 1) {
+			throw new IllegalArgumentException("maxConcurrentParts must be at least 1");
+		}
+		this.maxConcurrentPartsPerObject = maxConcurrentPartsPerObject;
+		this.maxConcurrentParts = maxConcurrentParts;
+		if (multipartThreshold < MIN_PART_SIZE) {
+			throw new IllegalArgumentException(
+					"multipartThreshold must be at least " + MIN_PART_SIZE);
+		}
+		if (partSize < MIN_PART_SIZE) {
+			throw new IllegalArgumentException("partSize must be at least " + MIN_PART_SIZE);
+		}
+		this.multipartThreshold = multipartThreshold;
+		this.partSize = partSize;
 		final AwsCredentials creds = AwsBasicCredentials.create(
 				checkString(s3key, "s3key"), checkString(s3secret, "s3secret"));
 		this.presigner = S3Presigner.builder()
@@ -84,10 +204,11 @@ public class S3ClientWithPresign {
 				.build();
 		
 		final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
-		cm.setMaxTotal(1000); //perhaps these should be configurable
-		cm.setDefaultMaxPerRoute(1000);
+		cm.setMaxTotal(MAX_CONNECTIONS);
+		cm.setDefaultMaxPerRoute(MAX_CONNECTIONS);
 		// TODO set timeouts for the client for 1/2m for conn req timeout and std timeout
 		httpClient = HttpClients.custom().setConnectionManager(cm).build();
+		partUploader = new BlobOperationExecutor("s3-part-upload", maxConcurrentParts);
 	}
 	
 	/** Get the standard S3 client.
@@ -97,6 +218,54 @@ public class S3ClientWithPresign {
 		return client;
 	}
 	
+	/** Get the size above which objects should be uploaded with a multipart upload.
+	 * @return the multipart upload threshold in bytes.
+	 */
+	public long getMultipartThreshold() {
+		return multipartThreshold;
+	}
+	
+	/** Check whether an object should be uploaded with
+	 * {@link #presignAndPutObjectMultipart(String, String, Restreamable)} rather than
+	 * {@link #presignAndPutObject(PutObjectRequest, Restreamable)}.
+	 * @param size the size of the object.
+	 * @return true if the object is larger than the multipart threshold.
+	 */
+	public boolean isMultipartUpload(final long size) {
+		return size > multipartThreshold;
+	}
+	
+	/** Check whether an object should be downloaded in concurrently fetched byte ranges of
+	 * size {@link #getPartSize()} rather than as a single stream.
+	 * @param size the size of the object.
+	 * @return true if the object is larger than the multipart threshold.
+	 */
+	public boolean isMultipartDownload(final long size) {
+		return size > multipartThreshold;
+	}
+	
+	/** Get the size of the parts of a multipart upload or download. Multipart uploads may use
+	 * larger parts for very large objects to keep the number of parts under the S3 limit.
+	 * @return the part size in bytes.
+	 */
+	public long getPartSize() {
+		return partSize;
+	}
+	
+	/** Get the maximum number of parts of a single object that are transferred concurrently.
+	 * @return the maximum number of concurrent parts per object.
+	 */
+	public int getMaxConcurrentPartsPerObject() {
+		return maxConcurrentPartsPerObject;
+	}
+	
+	/** Get the maximum number of parts that are transferred concurrently across all objects.
+	 * @return the maximum number of concurrent parts.
+	 */
+	public int getMaxConcurrentParts() {
+		return maxConcurrentParts;
+	}
+	
 	/** Load an object to S3 via a presigned url and standard HTTP streaming.
 	 * The bucket and key are not checked for correctness prior to the upload attempt.
 	 * @param bucket the bucket that will contain the object.
@@ -122,17 +291,7 @@ public class S3ClientWithPresign {
 		final URL target = presignedPut.url();
 		
 		try (final InputStream is = object.getInputStream()) {
-			final HttpPut htp;
-			try {
-				htp = new HttpPut(target.toURI());
-			} catch (URISyntaxException e) {
-				// this means the S3 SDK is generating urls that are invalid URIs, which is
-				// pretty bizarre.
-				// not sure how to test this.
-				// since the URI contains credentials, we deliberately do not include the 
-				// source error or URI
-				throw new RuntimeException("S3 presigned request builder generated invalid URI");
-			}
+			final HttpPut htp = new HttpPut(toURI(target));
 			final BasicHttpEntity ent = new BasicHttpEntity();
 			ent.setContent(new BufferedInputStream(is));
 			ent.setContentLength(object.getSize());
@@ -141,23 +300,196 @@ public class S3ClientWithPresign {
 			// other S3 instances) the connection dies. If the stream is pretty small,
 			// you can get an error back.
 			try (final CloseableHttpResponse res = httpClient.execute(htp)) {
-				// see https://docs.aws.amazon.com/AmazonS3/latest/API/API_PutObject.html#API_PutObject_ResponseSyntax
-				// only 200 is success, so don't count 3XX or any other 2XX as successful.
-				// Maybe a bit conservative, but missing a fail or redirect here = corrupt WS data
-				if (res.getStatusLine().getStatusCode() != 200) {
-					final byte[] buffer = new byte[1000];
-					try (final InputStream in = res.getEntity().getContent()) {
-						new DataInputStream(in).readFully(buffer);
-					} catch (EOFException e) {
-						// do nothing
-					}
-					throw new IOException(String.format(
-							"Error saving file to S3 (%s), truncated response follows:\n%s",
-							res.getStatusLine().getStatusCode(),
-							new String(buffer, StandardCharsets.UTF_8).trim()));
+				checkResponse(res);
+			}
+		}
+	}
+	
+	private URI toURI(final URL target) {
+		try {
+			return target.toURI();
+		} catch (URISyntaxException e) {
+			// this means the S3 SDK is generating urls that are invalid URIs, which is
+			// pretty bizarre.
+			// not sure how to test this.
+			// since the URI contains credentials, we deliberately do not include the 
+			// source error or URI
+			throw new RuntimeException("S3 presigned request builder generated invalid URI");
+		}
+	}
+	
+	private void checkResponse(final CloseableHttpResponse res) throws IOException {
+		// see https://docs.aws.amazon.com/AmazonS3/latest/API/API_PutObject.html#API_PutObject_ResponseSyntax
+		// only 200 is success, so don't count 3XX or any other 2XX as successful.
+		// Maybe a bit conservative, but missing a fail or redirect here = corrupt WS data
+		if (res.getStatusLine().getStatusCode() != 200) {
+			final byte[] buffer = new byte[1000];
+			try (final InputStream in = res.getEntity().getContent()) {
+				new DataInputStream(in).readFully(buffer);
+			} catch (EOFException e) {
+				// do nothing
+			}
+			throw new IOException(String.format(
+					"Error saving file to S3 (%s), truncated response follows:\n%s",
+					res.getStatusLine().getStatusCode(),
+					new String(buffer, StandardCharsets.UTF_8).trim()));
+		}
+	}
+	
+	/** Load an object to S3 with a multipart upload via presigned urls and standard HTTP
+	 * streaming. The parts are uploaded concurrently, and each part is retried on failure.
+	 * The MD5 of each part is checked against the ETag returned by S3 for that part. If the
+	 * upload fails it is aborted.
+	 * The bucket and key are not checked for correctness prior to the upload attempt.
+	 * @param bucket the bucket that will contain the object.
+	 * @param key the object key.
+	 * @param object the object data.
+	 * @return the ETag S3 is expected to report for the completed object - the MD5 of the
+	 * concatenated binary part MD5s, followed by a dash and the number of parts.
+	 * @throws IOException if an error occurs.
+	 */
+	public String presignAndPutObjectMultipart(
+			final String bucket,
+			final String key,
+			final Restreamable object)
+			throws IOException {
+		checkString(bucket, "bucket");
+		checkString(key, "key");
+		requireNonNull(object, "object");
+		final long size = object.getSize();
+		// parts must be at least 5MB, except the last part
+		final long psize = Math.max(partSize, (size + MAX_PARTS - 1) / MAX_PARTS);
+		final List<Integer> parts = new ArrayList<>();
+		for (int i = 1; (i - 1) * psize < size; i++) {
+			parts.add(i);
+		}
+		final String uploadID;
+		try {
+			uploadID = client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+					.bucket(bucket).key(key).build()).uploadId();
+		} catch (SdkException e) {
+			throw new IOException("Error starting multipart upload: " + e.getMessage(), e);
+		}
+		try {
+			final Map<Integer, byte[]> md5s = new HashMap<>();
+			partUploader.run(parts, maxConcurrentPartsPerObject, part -> uploadPart(
+					bucket, key, uploadID, part, (part - 1) * psize,
+					Math.min(psize, size - (part - 1) * psize), object),
+					md5s);
+			final List<CompletedPart> completed = new ArrayList<>();
+			final MessageDigest digest = getMD5Digest();
+			for (final Integer part: parts) {
+				completed.add(CompletedPart.builder().partNumber(part)
+						.eTag(Hex.encodeHexString(md5s.get(part))).build());
+				digest.update(md5s.get(part));
+			}
+			client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+					.bucket(bucket).key(key).uploadId(uploadID)
+					.multipartUpload(CompletedMultipartUpload.builder().parts(completed).build())
+					.build());
+			return Hex.encodeHexString(digest.digest()) + "-" + parts.size();
+		} catch (ExecutionException | SdkException | RuntimeException | Error e) {
+			abort(bucket, key, uploadID);
+			if (e instanceof ExecutionException) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IOException(cause.getMessage(), cause);
+			} else if (e instanceof SdkException) {
+				throw new IOException("Error completing multipart upload: " + e.getMessage(), e);
+			}
+			throw e;
+		}
+	}
+	
+	private void abort(final String bucket, final String key, final String uploadID) {
+		try {
+			client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+					.bucket(bucket).key(key).uploadId(uploadID).build());
+		} catch (SdkException e) {
+			// S3 will clean up the parts eventually if a lifecycle rule is set, nothing else
+			// to be done
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Failed to abort multipart upload %s for %s/%s: %s",
+					uploadID, bucket, key, e.getMessage()), e);
+		}
+	}
+	
+	// returns the MD5 of the part
+	private byte[] uploadPart(
+			final String bucket,
+			final String key,
+			final String uploadID,
+			final int part,
+			final long offset,
+			final long length,
+			final Restreamable object)
+			throws IOException {
+		final UploadPartPresignRequest req = UploadPartPresignRequest.builder()
+				// see notes on the timeout in the single part upload method
+				.signatureDuration(Duration.ofHours(2))
+				.uploadPartRequest(UploadPartRequest.builder()
+						.bucket(bucket)
+						.key(key)
+						.uploadId(uploadID)
+						.partNumber(part)
+						.build())
+				.build();
+		final URI target = toURI(presigner.presignUploadPart(req).url());
+		IOException error = null;
+		for (int attempt = 1; attempt <= MAX_PART_ATTEMPTS; attempt++) {
+			try {
+				return uploadPart(target, offset, length, object);
+			} catch (IOException e) {
+				error = e;
+				LoggerFactory.getLogger(getClass()).warn(String.format(
+						"Attempt %s to upload part %s of multipart upload %s failed: %s",
+						attempt, part, uploadID, e.getMessage()));
+			}
+		}
+		throw new IOException(String.format("Failed to upload part %s after %s attempts: %s",
+				part, MAX_PART_ATTEMPTS, error.getMessage()), error);
+	}
+
+	private byte[] uploadPart(
+			final URI target,
+			final long offset,
+			final long length,
+			final Restreamable object)
+			throws IOException {
+		final MessageDigest digest = getMD5Digest();
+		// read the part from its position rather than skipping the preceding parts, which
+		// would make the total amount read grow with the square of the number of parts
+		try (final InputStream is = object.getInputStream(offset, length)) {
+			final HttpPut htp = new HttpPut(target);
+			final BasicHttpEntity ent = new BasicHttpEntity();
+			ent.setContent(new DigestInputStream(new BufferedInputStream(is), digest));
+			ent.setContentLength(length);
+			htp.setEntity(ent);
+			try (final CloseableHttpResponse res = httpClient.execute(htp)) {
+				checkResponse(res);
+				final byte[] md5 = digest.digest();
+				final Header etag = res.getFirstHeader("ETag");
+				if (etag == null || !etag.getValue().replace("\"", "").trim()
+						.equals(Hex.encodeHexString(md5))) {
+					throw new IOException("S3 part upload corrupted, MD5s don't match");
 				}
+				return md5;
 			}
 		}
 	}
+	
+	private static MessageDigest getMD5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("MD5 digests are not supported", e);
+		}
+	}
 
 }
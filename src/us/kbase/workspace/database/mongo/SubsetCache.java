@@ -0,0 +1,162 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.slf4j.LoggerFactory;
+
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+/** A cache of the results of extracting subsets of object data, keyed by the MD5 of the
+ * object data and the subset selection. The cache is intended to be shared between requests
+ * so that repeated requests for the same subset of the same data need neither fetch nor
+ * parse the full data.
+ *
+ * Since the data for an MD5 never changes, neither does the result of extracting a given
+ * subset from it, so entries never need to be invalidated. The order of the paths in the
+ * selection and any duplicate paths do not affect the extracted data, and so are ignored for
+ * the purposes of matching selections.
+ *
+ * See {@link TieredDataCache} for how the subsets are stored and how the per request memory
+ * and disk limits apply to cached subsets.
+ */
+public class SubsetCache {
+
+	private final TieredDataCache<SubsetKey> cache;
+
+	private static class SubsetKey {
+
+		private final MD5 md5;
+		private final SortedSet<String> paths;
+		private final boolean strictMaps;
+		private final boolean strictArrays;
+
+		private SubsetKey(final MD5 md5, final SubsetSelection subset) {
+			this.md5 = md5;
+			final SortedSet<String> p = new TreeSet<>();
+			for (final String path: subset) {
+				p.add(path);
+			}
+			this.paths = Collections.unmodifiableSortedSet(p);
+			this.strictMaps = subset.isStrictMaps();
+			this.strictArrays = subset.isStrictArrays();
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + md5.hashCode();
+			result = prime * result + paths.hashCode();
+			result = prime * result + (strictArrays ? 1231 : 1237);
+			result = prime * result + (strictMaps ? 1231 : 1237);
+			return result;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null || getClass() != obj.getClass()) {
+				return false;
+			}
+			final SubsetKey other = (SubsetKey) obj;
+			return md5.equals(other.md5) && paths.equals(other.paths) &&
+					strictArrays == other.strictArrays && strictMaps == other.strictMaps;
+		}
+	}
+
+	/** Create the cache.
+	 * @param maxMemoryUsage the maximum amount of subset data, in bytes, to cache in memory. 0
+	 * disables the memory cache.
+	 * @param maxDiskUsage the maximum amount of subset data, in bytes, to cache on disk. 0
+	 * disables the disk cache.
+	 * @param cacheDir the directory in which to store cached files. Any files already in the
+	 * directory will be deleted. May be null if the disk cache is disabled.
+	 */
+	public SubsetCache(
+			final long maxMemoryUsage,
+			final long maxDiskUsage,
+			final File cacheDir) {
+		cache = new TieredDataCache<>("subset", maxMemoryUsage, maxDiskUsage, cacheDir);
+	}
+
+	/** Check whether a subset is cached. Note that the subset may be evicted at any time,
+	 * so a subsequent call to {@link #get(MD5, SubsetSelection, ByteArrayFileCacheManager)}
+	 * may still return null.
+	 * @param md5 the MD5 of the data from which the subset was extracted.
+	 * @param subset the subset selection.
+	 * @return true if the subset is cached.
+	 */
+	public boolean contains(final MD5 md5, final SubsetSelection subset) {
+		final SubsetKey key = new SubsetKey(requireNonNull(md5, "md5"),
+				requireNonNull(subset, "subset"));
+		return cache.contains(key);
+	}
+
+	/** Get a cached subset.
+	 * @param md5 the MD5 of the data from which the subset was extracted.
+	 * @param subset the subset selection.
+	 * @param bafcMan the manager from which the returned cache will be created.
+	 * @return the subset data, or null if the subset is not cached.
+	 * @throws FileCacheIOException if an IO error occurs.
+	 * @throws FileCacheLimitExceededException if the subset would exceed the limits of the
+	 * manager.
+	 */
+	public ByteArrayFileCache get(
+			final MD5 md5,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager bafcMan)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		final SubsetKey key = new SubsetKey(requireNonNull(md5, "md5"),
+				requireNonNull(subset, "subset"));
+		return cache.get(key, requireNonNull(bafcMan, "bafcMan"));
+	}
+
+	/** Cache a subset. If the subset is too large for either tier, nothing is cached. Errors
+	 * caching the data are logged rather than thrown, since caching is an optimization.
+	 * @param md5 the MD5 of the data from which the subset was extracted.
+	 * @param subset the subset selection.
+	 * @param data the subset data. The data is copied and is not altered or destroyed.
+	 */
+	public void put(
+			final MD5 md5,
+			final SubsetSelection subset,
+			final ByteArrayFileCache data) {
+		final SubsetKey key = new SubsetKey(requireNonNull(md5, "md5"),
+				requireNonNull(subset, "subset"));
+		requireNonNull(data, "data");
+		try {
+			cache.put(key, data);
+		} catch (IOException | RuntimeException e) {
+			LoggerFactory.getLogger(getClass()).error(String.format(
+					"Failed to cache subset %s of %s: %s", subset, md5.getMD5(),
+					e.getMessage()), e);
+		}
+	}
+
+	/** Get the amount of subset data cached in memory.
+	 * @return the size of the memory cache in bytes.
+	 */
+	public long getMemoryCacheSize() {
+		return cache.getMemoryCacheSize();
+	}
+
+	/** Get the amount of subset data cached on disk.
+	 * @return the size of the disk cache in bytes.
+	 */
+	public long getDiskCacheSize() {
+		return cache.getDiskCacheSize();
+	}
+}
@@ -0,0 +1,269 @@
+package us.kbase.workspace.database.mongo;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+/** A cache of serialized data that stores the data in memory and, optionally, on local disk.
+ * The cache is intended to be shared between requests, and the cached data for a key is
+ * expected to never change.
+ *
+ * Each cache hit produces a new {@link ByteArrayFileCache} from the provided
+ * {@link ByteArrayFileCacheManager}, so the per request memory and disk limits apply to cached
+ * data exactly as they do to data from any other source.
+ *
+ * Each tier evicts the least recently used entries when full. Entries larger than a quarter of
+ * a tier's capacity are not stored in that tier.
+ * @param <K> the type of the keys for the cached data.
+ */
+public class TieredDataCache<K> {
+
+	private static final int TIER_FRACTION = 4;
+
+	private final String name;
+	private final Cache<K, CachedData> memCache;
+	private final long maxMemEntrySize;
+	private final Cache<K, CachedData> diskCache;
+	private final long maxDiskEntrySize;
+	private final File cacheDir;
+
+	private static class CachedData {
+
+		private final byte[] data;
+		private final File file;
+		private final long size;
+		private final boolean sorted;
+		private final boolean trustedJson;
+
+		private CachedData(final byte[] data, final boolean sorted, final boolean trustedJson) {
+			this.data = data;
+			this.file = null;
+			this.size = data.length;
+			this.sorted = sorted;
+			this.trustedJson = trustedJson;
+		}
+
+		private CachedData(
+				final File file,
+				final long size,
+				final boolean sorted,
+				final boolean trustedJson) {
+			this.data = null;
+			this.file = file;
+			this.size = size;
+			this.sorted = sorted;
+			this.trustedJson = trustedJson;
+		}
+	}
+
+	private static final Weigher<Object, CachedData> WEIGHER = new Weigher<Object, CachedData>() {
+
+		@Override
+		public int weigh(final Object key, final CachedData value) {
+			// max object size is 1GB, so this cast is safe
+			return (int) Math.min(Integer.MAX_VALUE, value.size);
+		}
+	};
+
+	/** Create the cache.
+	 * @param name the name of the cache, for example "blob". Used in error messages and
+	 * cache file names.
+	 * @param maxMemoryUsage the maximum amount of data, in bytes, to cache in memory. 0
+	 * disables the memory cache.
+	 * @param maxDiskUsage the maximum amount of data, in bytes, to cache on disk. 0
+	 * disables the disk cache.
+	 * @param cacheDir the directory in which to store cached files. Any files already in the
+	 * directory will be deleted. May be null if the disk cache is disabled.
+	 */
+	public TieredDataCache(
+			final String name,
+			final long maxMemoryUsage,
+			final long maxDiskUsage,
+			final File cacheDir) {
+		this.name = requireNonNull(name, "name");
+		if (name.trim().isEmpty()) {
+			throw new IllegalArgumentException("name cannot be empty");
+		}
+		if (maxMemoryUsage < 0) {
+			throw new IllegalArgumentException("maxMemoryUsage must be at least 0");
+		}
+		if (maxDiskUsage < 0) {
+			throw new IllegalArgumentException("maxDiskUsage must be at least 0");
+		}
+		maxMemEntrySize = maxMemoryUsage / TIER_FRACTION;
+		memCache = CacheBuilder.newBuilder()
+				.maximumWeight(maxMemoryUsage)
+				.weigher(WEIGHER)
+				.build();
+		maxDiskEntrySize = maxDiskUsage / TIER_FRACTION;
+		if (maxDiskUsage > 0) {
+			this.cacheDir = requireNonNull(cacheDir, "cacheDir");
+			initCacheDir(cacheDir);
+			diskCache = CacheBuilder.newBuilder()
+					.maximumWeight(maxDiskUsage)
+					.weigher(WEIGHER)
+					.removalListener(new RemovalListener<K, CachedData>() {
+
+						@Override
+						public void onRemoval(
+								final RemovalNotification<K, CachedData> notification) {
+							// on unix, any readers with the file open can finish reading
+							notification.getValue().file.delete();
+						}
+					})
+					.build();
+		} else {
+			this.cacheDir = null;
+			diskCache = null;
+		}
+	}
+
+	private void initCacheDir(final File cacheDir) {
+		if (cacheDir.exists()) {
+			if (!cacheDir.isDirectory()) {
+				throw new IllegalArgumentException(String.format(
+						"%s%s cache location must be a directory: %s",
+						name.substring(0, 1).toUpperCase(), name.substring(1), cacheDir));
+			}
+			// the cache index is in memory only, so any files left are from a previous run
+			for (final File f: cacheDir.listFiles()) {
+				f.delete();
+			}
+		} else if (!cacheDir.mkdirs()) {
+			throw new IllegalArgumentException(String.format(
+					"Could not create %s cache directory: %s", name, cacheDir));
+		}
+	}
+
+	/** Check whether data is cached. Note that the data may be evicted at any time, so a
+	 * subsequent call to {@link #get(Object, ByteArrayFileCacheManager)} may still return null.
+	 * @param key the key for the data.
+	 * @return true if the data is cached.
+	 */
+	public boolean contains(final K key) {
+		requireNonNull(key, "key");
+		return memCache.getIfPresent(key) != null ||
+				(diskCache != null && diskCache.getIfPresent(key) != null);
+	}
+
+	/** Get cached data.
+	 * @param key the key for the data.
+	 * @param bafcMan the manager from which the returned cache will be created.
+	 * @return the data, or null if the data is not cached.
+	 * @throws FileCacheIOException if an IO error occurs.
+	 * @throws FileCacheLimitExceededException if the data would exceed the limits of the
+	 * manager.
+	 */
+	public ByteArrayFileCache get(final K key, final ByteArrayFileCacheManager bafcMan)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		requireNonNull(key, "key");
+		requireNonNull(bafcMan, "bafcMan");
+		final CachedData mem = memCache.getIfPresent(key);
+		if (mem != null) {
+			return createBAFC(bafcMan, new ByteArrayInputStream(mem.data), mem);
+		}
+		final CachedData disk = diskCache == null ? null : diskCache.getIfPresent(key);
+		if (disk != null) {
+			final InputStream is;
+			try {
+				is = new FileInputStream(disk.file);
+			} catch (FileNotFoundException e) {
+				return null; // evicted between the lookup and opening the file
+			}
+			return createBAFC(bafcMan, is, disk);
+		}
+		return null;
+	}
+
+	private ByteArrayFileCache createBAFC(
+			final ByteArrayFileCacheManager bafcMan,
+			final InputStream data,
+			final CachedData cached)
+			throws FileCacheIOException, FileCacheLimitExceededException {
+		try (final InputStream is = data) {
+			return bafcMan.createBAFC(is, cached.trustedJson, cached.sorted);
+		} catch (IOException e) {
+			throw new FileCacheIOException(e.getLocalizedMessage(), e);
+		}
+	}
+
+	/** Cache data. If the data is too large for either tier, nothing is cached.
+	 * @param key the key for the data.
+	 * @param data the data. The data is copied and is not altered or destroyed.
+	 * @throws IOException if the data could not be copied into the cache.
+	 */
+	public void put(final K key, final ByteArrayFileCache data) throws IOException {
+		requireNonNull(key, "key");
+		requireNonNull(data, "data");
+		if (data.getSize() <= maxMemEntrySize) {
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream((int) data.getSize());
+			data.transferTo(Channels.newChannel(bos));
+			memCache.put(key, new CachedData(
+					bos.toByteArray(), data.isSorted(), data.containsTrustedJson()));
+		} else if (data.getSize() <= maxDiskEntrySize) {
+			final File f = File.createTempFile(name + ".", ".json", cacheDir);
+			try (final FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+				// file to file, so the data doesn't need to pass through the heap
+				data.transferTo(fc);
+			} catch (IOException | RuntimeException e) {
+				f.delete();
+				throw e;
+			}
+			diskCache.put(key, new CachedData(
+					f, data.getSize(), data.isSorted(), data.containsTrustedJson()));
+		}
+	}
+
+	/** Remove data from the cache.
+	 * @param key the key for the data.
+	 */
+	public void invalidate(final K key) {
+		requireNonNull(key, "key");
+		memCache.invalidate(key);
+		if (diskCache != null) {
+			diskCache.invalidate(key);
+		}
+	}
+
+	/** Get the amount of data cached in memory.
+	 * @return the size of the memory cache in bytes.
+	 */
+	public long getMemoryCacheSize() {
+		return getSize(memCache);
+	}
+
+	/** Get the amount of data cached on disk.
+	 * @return the size of the disk cache in bytes.
+	 */
+	public long getDiskCacheSize() {
+		return diskCache == null ? 0 : getSize(diskCache);
+	}
+
+	private long getSize(final Cache<K, CachedData> cache) {
+		long size = 0;
+		for (final CachedData d: cache.asMap().values()) {
+			size += d.size;
+		}
+		return size;
+	}
+}
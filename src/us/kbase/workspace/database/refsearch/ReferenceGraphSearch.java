@@ -1,31 +1,56 @@
 package us.kbase.workspace.database.refsearch;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import us.kbase.workspace.database.Reference;
 
 /** Searches a reference graph from a set of target references to find references that meet search
  * termination criteria, and returns the path from each found object to its respective target
  * object.
+ *
+ * The search proceeds one level of the search trees at a time. For each level, the references
+ * adjacent to the level are retrieved, and then the adjacent references that are new to each
+ * tree are checked against the termination criteria. The queries may be split into chunks, which
+ * are run concurrently if an executor is provided. In that case, the adjacent references
+ * for the next level are also retrieved, speculatively, while the termination criteria are
+ * checked for the current level.
+ *
+ * Each search tree completes as soon as the termination checks required to determine its path
+ * are complete rather than at the end of the level, and queries for references that are only
+ * required by completed trees are cancelled if they have not yet started. Only the
+ * references adjacent to references the search actually requires count towards the maximum
+ * search size, so the paths found and the point at which the maximum search size is exceeded
+ * are the same whether or not queries are chunked or run concurrently.
  * @author gaprice@lbl.gov
  *
  */
 public class ReferenceGraphSearch {
-	
+
 	private final int maximumReferenceSearchCount;
 	private final Map<Reference, List<Reference>> paths = new HashMap<>();
 	private final ReferenceGraphTopologyProvider refProvider;
 	private final boolean throwExceptionOnFail;
-	
+	private final ExecutorService executor;
+	private final int queryChunkSize;
+
 	/** Construct and perform a search in a reference graph from a set of target
 	 * references to references that meet the search termination criteria as provided by the
-	 * reference graph topology provider.
+	 * reference graph topology provider. The search is run serially in the calling thread and
+	 * the queries to the provider are not chunked.
 	 * @param startingRefs the references from where the search starts. The search will proceed
 	 * through the reference graph until a reference is found that meets the termination criteria
 	 * or the search is exhausted.
@@ -37,11 +62,11 @@ public class ReferenceGraphSearch {
 	 * and throw an exception containing the reference for which the search failed. Otherwise in
 	 * case a) the search proceeds as normal for the remainder of the starting references and in
 	 * case b) the searches that have not yet completed are terminated. The paths for any completed
-	 * searches will still be accessible. 
+	 * searches will still be accessible.
 	 * @throws ReferenceSearchMaximumSizeExceededException if the maximum search size is reached.
 	 * @throws ReferenceSearchFailedException if the reference search completed without meeting its
 	 * termination criteria.
-	 * @throws ReferenceProviderException if the reference provider threw and exception. 
+	 * @throws ReferenceProviderException if the reference provider threw and exception.
 	 */
 	public ReferenceGraphSearch(
 			final Set<Reference> startingRefs,
@@ -50,6 +75,43 @@ public class ReferenceGraphSearch {
 			final boolean throwExceptionOnFail)
 			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
 				ReferenceProviderException {
+		this(startingRefs, refProvider, maximumSearchSize, throwExceptionOnFail, null,
+				Integer.MAX_VALUE);
+	}
+
+	/** Construct and perform a search in a reference graph from a set of target
+	 * references to references that meet the search termination criteria as provided by the
+	 * reference graph topology provider.
+	 * @param startingRefs the references from where the search starts. The search will proceed
+	 * through the reference graph until a reference is found that meets the termination criteria
+	 * or the search is exhausted.
+	 * @param refProvider provides access to the reference graph topology and termination criteria.
+	 * The provider must be thread safe if an executor is provided.
+	 * @param maximumSearchSize the maximum number of references to search through. If the search
+	 * exceeds this size an exception is thrown or the search immediately ends.
+	 * @param throwExceptionOnFail if a) a search ends without finding a reference that terminates
+	 * the search or b) the maximum search size is exceeded, immediately clear all data
+	 * and throw an exception containing the reference for which the search failed. Otherwise in
+	 * case a) the search proceeds as normal for the remainder of the starting references and in
+	 * case b) the searches that have not yet completed are terminated. The paths for any completed
+	 * searches will still be accessible.
+	 * @param executor the executor with which to run queries to the provider concurrently, or
+	 * null to run the queries serially in the calling thread.
+	 * @param queryChunkSize the maximum number of references to send to the provider per query.
+	 * @throws ReferenceSearchMaximumSizeExceededException if the maximum search size is reached.
+	 * @throws ReferenceSearchFailedException if the reference search completed without meeting its
+	 * termination criteria.
+	 * @throws ReferenceProviderException if the reference provider threw and exception.
+	 */
+	public ReferenceGraphSearch(
+			final Set<Reference> startingRefs,
+			final ReferenceGraphTopologyProvider refProvider,
+			final int maximumSearchSize,
+			final boolean throwExceptionOnFail,
+			final ExecutorService executor,
+			final int queryChunkSize)
+			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
+				ReferenceProviderException {
 		if (startingRefs == null || startingRefs.isEmpty()) {
 			throw new IllegalArgumentException("startingRefs cannot be null or empty");
 		}
@@ -59,12 +121,17 @@ public class ReferenceGraphSearch {
 		if (maximumSearchSize < 1) {
 			throw new IllegalArgumentException("maximumSearchSize must be > 0");
 		}
+		if (queryChunkSize < 1) {
+			throw new IllegalArgumentException("queryChunkSize must be > 0");
+		}
 		this.refProvider = refProvider;
 		this.throwExceptionOnFail = throwExceptionOnFail;
 		maximumReferenceSearchCount = maximumSearchSize;
+		this.executor = executor;
+		this.queryChunkSize = queryChunkSize;
 		searchObjectDAG(startingRefs);
 	}
-	
+
 	private void searchObjectDAG(
 			final Set<Reference> startingRefs)
 			throws ReferenceSearchFailedException, ReferenceSearchMaximumSizeExceededException,
@@ -73,35 +140,323 @@ public class ReferenceGraphSearch {
 		if (refCountExceeded(refcount)) {
 			return;
 		}
-		Set<Reference> query = new HashSet<>();
-		final List<ReferenceSearchTree> trees = new LinkedList<>();
+		List<ReferenceSearchTree> trees = new LinkedList<>();
 		for (final Reference r: startingRefs) {
 			trees.add(new ReferenceSearchTree(r));
-			query.add(r);
 		}
+		Set<Reference> query = startingRefs;
+		Map<Reference, Set<Reference>> adjacent = getAssociatedReferences(chunk(query));
 		while (!trees.isEmpty()) {
-			final Map<Reference, Map<Reference, Boolean>> res =
-					refProvider.getAssociatedReferences(query);
-			query = null;
-			for (final Map<Reference, Boolean> r: res.values()) {
-				refcount += r.size();
+			// count the same references whether or not the level was retrieved speculatively
+			for (final Reference r: query) {
+				final Set<Reference> adj = adjacent.get(r);
+				refcount += adj == null ? 0 : adj.size();
 			}
 			if (refCountExceeded(refcount)) {
 				return;
 			}
-			query = new HashSet<>();
-			final Iterator<ReferenceSearchTree> treeiter = trees.iterator();
-			while (treeiter.hasNext()) {
-				final ReferenceSearchTree tree = treeiter.next();
-				query.addAll(tree.updateTree(res));
-				if (tree.isComplete()) {
-					treeiter.remove();
-					if (tree.isPathFound()) {
-						paths.put(tree.getRoot(), tree.getPath());
-					} else if (throwExceptionOnFail) { // otherwise do nothing
-						throw new ReferenceSearchFailedException(tree.getRoot());
+			final SearchLevel level = new SearchLevel(trees, adjacent);
+			trees = level.search();
+			query = level.getNextQuery();
+			adjacent = trees.isEmpty() ? null : level.getNextAdjacentReferences();
+		}
+	}
+
+	private class SearchLevel {
+
+		private final List<ReferenceSearchTree> trees;
+		private final Map<Reference, Set<Reference>> adjacent;
+		private final Map<ReferenceSearchTree, List<Reference>> newLeaves = new HashMap<>();
+		// the number of new leaves checked for each unresolved tree
+		private final Map<ReferenceSearchTree, Integer> checked = new HashMap<>();
+		private final List<Set<Reference>> chunks;
+		private final Map<Reference, Integer> refToChunk = new HashMap<>();
+		private final List<List<ReferenceSearchTree>> chunkToTrees = new ArrayList<>();
+		private final boolean[] chunkComplete;
+		// the number of incomplete trees that require each chunk
+		private final int[] chunkUsers;
+		private final Set<Reference> terminal = new HashSet<>();
+		private final Set<Reference> nextQuery = new HashSet<>();
+		private final List<Future<Set<Reference>>> terminalQueries = new ArrayList<>();
+		private final List<Future<Map<Reference, Set<Reference>>>> nextLevelQueries =
+				new ArrayList<>();
+
+		private SearchLevel(
+				final List<ReferenceSearchTree> trees,
+				final Map<Reference, Set<Reference>> adjacent) {
+			this.trees = trees;
+			this.adjacent = adjacent;
+			// order the candidates by tree so each tree's early candidates are checked first
+			final Set<Reference> candidates = new LinkedHashSet<>();
+			for (final ReferenceSearchTree tree: trees) {
+				final List<Reference> leaves = new ArrayList<>(tree.getNewLeaves(adjacent));
+				newLeaves.put(tree, leaves);
+				checked.put(tree, 0);
+				candidates.addAll(leaves);
+			}
+			chunks = chunk(candidates);
+			for (int i = 0; i < chunks.size(); i++) {
+				chunkToTrees.add(new LinkedList<>());
+				for (final Reference r: chunks.get(i)) {
+					refToChunk.put(r, i);
+				}
+			}
+			chunkComplete = new boolean[chunks.size()];
+			chunkUsers = new int[chunks.size()];
+			for (final ReferenceSearchTree tree: trees) {
+				final Set<Integer> treeChunks = new HashSet<>();
+				for (final Reference r: newLeaves.get(tree)) {
+					treeChunks.add(refToChunk.get(r));
+				}
+				for (final int i: treeChunks) {
+					chunkToTrees.get(i).add(tree);
+					chunkUsers[i]++;
+				}
+			}
+		}
+
+		/* Returns the trees that are not complete after processing this level. */
+		private List<ReferenceSearchTree> search()
+				throws ReferenceSearchFailedException, ReferenceProviderException {
+			boolean success = false;
+			try {
+				// trees with no new leaves have failed and require no queries
+				for (final ReferenceSearchTree tree: trees) {
+					if (newLeaves.get(tree).isEmpty()) {
+						resolve(tree);
 					}
 				}
+				if (executor == null) {
+					checkTerminalReferencesSerially();
+				} else {
+					checkTerminalReferencesConcurrently();
+				}
+				success = true;
+			} finally {
+				if (!success) {
+					cancelAll();
+				}
+			}
+			final List<ReferenceSearchTree> incomplete = new LinkedList<>();
+			for (final ReferenceSearchTree tree: trees) {
+				if (!tree.isComplete()) {
+					incomplete.add(tree);
+				}
+			}
+			return incomplete;
+		}
+
+		private void checkTerminalReferencesSerially()
+				throws ReferenceSearchFailedException, ReferenceProviderException {
+			for (int i = 0; i < chunks.size() && !checked.isEmpty(); i++) {
+				// skip chunks only required by trees that found a path
+				if (chunkUsers[i] > 0) {
+					terminal.addAll(refProvider.getTerminalReferences(chunks.get(i)));
+					chunkComplete(i);
+				}
+			}
+		}
+
+		private void checkTerminalReferencesConcurrently()
+				throws ReferenceSearchFailedException, ReferenceProviderException {
+			if (checked.isEmpty()) {
+				return;
+			}
+			final CompletionService<Set<Reference>> cs =
+					new ExecutorCompletionService<>(executor);
+			final Map<Future<Set<Reference>>, Integer> futureToChunk = new HashMap<>();
+			// the termination checks gate progress, so submit them first
+			for (final Set<Reference> chunk: chunks) {
+				final Future<Set<Reference>> f = cs.submit(
+						() -> refProvider.getTerminalReferences(chunk));
+				futureToChunk.put(f, terminalQueries.size());
+				terminalQueries.add(f);
+			}
+			for (final Set<Reference> chunk: chunks) {
+				nextLevelQueries.add(executor.submit(
+						() -> refProvider.getAssociatedReferences(chunk)));
+			}
+			while (!checked.isEmpty()) {
+				final Future<Set<Reference>> f = takeUninterruptibly(cs);
+				if (!f.isCancelled()) {
+					terminal.addAll(getResult(f));
+					chunkComplete(futureToChunk.get(f));
+				}
+			}
+		}
+
+		private void chunkComplete(final int chunk) throws ReferenceSearchFailedException {
+			chunkComplete[chunk] = true;
+			for (final ReferenceSearchTree tree: chunkToTrees.get(chunk)) {
+				if (checked.containsKey(tree)) {
+					advance(tree);
+				}
+			}
+		}
+
+		/* Checks the tree's new leaves in order until reaching a leaf whose termination check
+		 * is incomplete. If a terminal leaf or the end of the leaves is reached the outcome of
+		 * the tree update is known.
+		 */
+		private void advance(final ReferenceSearchTree tree) throws ReferenceSearchFailedException {
+			final List<Reference> leaves = newLeaves.get(tree);
+			int pos = checked.get(tree);
+			while (pos < leaves.size() && chunkComplete[refToChunk.get(leaves.get(pos))]) {
+				if (terminal.contains(leaves.get(pos))) {
+					resolve(tree);
+					return;
+				}
+				pos++;
+			}
+			checked.put(tree, pos);
+			if (pos == leaves.size()) {
+				resolve(tree);
+			}
+		}
+
+		private void resolve(final ReferenceSearchTree tree) throws ReferenceSearchFailedException {
+			checked.remove(tree);
+			nextQuery.addAll(tree.updateTree(adjacent, terminal));
+			if (tree.isComplete()) {
+				if (tree.isPathFound()) {
+					paths.put(tree.getRoot(), tree.getPath());
+				} else if (throwExceptionOnFail) { // otherwise do nothing
+					throw new ReferenceSearchFailedException(tree.getRoot());
+				}
+				release(tree);
+			}
+		}
+
+		private void release(final ReferenceSearchTree tree) {
+			final Set<Integer> treeChunks = new HashSet<>();
+			for (final Reference r: newLeaves.get(tree)) {
+				treeChunks.add(refToChunk.get(r));
+			}
+			for (final int i: treeChunks) {
+				chunkUsers[i]--;
+				if (chunkUsers[i] < 1) {
+					// running queries are allowed to finish
+					if (i < terminalQueries.size()) {
+						terminalQueries.get(i).cancel(false);
+					}
+					if (i < nextLevelQueries.size()) {
+						nextLevelQueries.get(i).cancel(false);
+					}
+				}
+			}
+		}
+
+		private void cancelAll() {
+			for (final Future<?> f: terminalQueries) {
+				f.cancel(false);
+			}
+			for (final Future<?> f: nextLevelQueries) {
+				f.cancel(false);
+			}
+		}
+
+		private Set<Reference> getNextQuery() {
+			return nextQuery;
+		}
+
+		private Map<Reference, Set<Reference>> getNextAdjacentReferences()
+				throws ReferenceProviderException {
+			if (nextLevelQueries.isEmpty()) {
+				return getAssociatedReferences(chunk(nextQuery));
+			}
+			boolean success = false;
+			try {
+				final Map<Reference, Set<Reference>> ret = new HashMap<>();
+				for (int i = 0; i < chunks.size(); i++) {
+					// chunks required by the remaining trees are never cancelled
+					if (chunkUsers[i] > 0) {
+						ret.putAll(getResult(nextLevelQueries.get(i)));
+					}
+				}
+				success = true;
+				return ret;
+			} finally {
+				if (!success) {
+					cancelAll();
+				}
+			}
+		}
+	}
+
+	private List<Set<Reference>> chunk(final Set<Reference> refs) {
+		final List<Set<Reference>> chunks = new ArrayList<>();
+		Set<Reference> chunk = null;
+		for (final Reference r: refs) {
+			if (chunk == null || chunk.size() >= queryChunkSize) {
+				chunk = new HashSet<>();
+				chunks.add(chunk);
+			}
+			chunk.add(r);
+		}
+		return chunks;
+	}
+
+	private Map<Reference, Set<Reference>> getAssociatedReferences(
+			final List<Set<Reference>> chunks)
+			throws ReferenceProviderException {
+		final Map<Reference, Set<Reference>> ret = new HashMap<>();
+		if (executor == null || chunks.size() < 2) {
+			for (final Set<Reference> chunk: chunks) {
+				ret.putAll(refProvider.getAssociatedReferences(chunk));
+			}
+			return ret;
+		}
+		final List<Future<Map<Reference, Set<Reference>>>> futures = new ArrayList<>();
+		boolean success = false;
+		try {
+			for (final Set<Reference> chunk: chunks) {
+				futures.add(executor.submit(() -> refProvider.getAssociatedReferences(chunk)));
+			}
+			for (final Future<Map<Reference, Set<Reference>>> f: futures) {
+				ret.putAll(getResult(f));
+			}
+			success = true;
+			return ret;
+		} finally {
+			if (!success) {
+				for (final Future<?> f: futures) {
+					f.cancel(false);
+				}
+			}
+		}
+	}
+
+	private static <T> T getResult(final Future<T> future) throws ReferenceProviderException {
+		try {
+			return Uninterruptibles.getUninterruptibly(future);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof ReferenceProviderException) {
+				throw (ReferenceProviderException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause.getMessage(), cause);
+		}
+	}
+
+	private static <T> Future<T> takeUninterruptibly(final CompletionService<T> cs) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return cs.take();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
@@ -119,7 +474,7 @@ public class ReferenceGraphSearch {
 			return false;
 		}
 	}
-	
+
 	/** Determine if a search succeeded for a particular source reference. If throwExceptionOnFail
 	 * is set to true in the constructor, this method always returns true.
 	 * @param ref the ref to check for success.
@@ -128,7 +483,7 @@ public class ReferenceGraphSearch {
 	public boolean isPathFound(final Reference ref) {
 		return paths.containsKey(ref);
 	}
-	
+
 	/** Get the path found for a particular source reference.
 	 * @param ref the reference for which the path should be returned.
 	 * @return the path from a search terminating reference to the source reference, inclusive.
@@ -6,10 +6,15 @@ import java.util.Set;
 import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.refsearch.ReferenceProviderException;
 
-/** Provides information necessary for searching the reference graph. For a set of references, 
+/** Provides information necessary for searching the reference graph. For a set of references,
  * provides the references adjacent (incoming or outgoing, depending on the search direction) to
- * those references in the reference graph. Furthermore, for each adjacent reference, provides
- * whether said reference should terminate the search.
+ * those references in the reference graph. Furthermore, for any set of references, provides
+ * which of said references should terminate the search.
+ *
+ * The two operations are separate so that a search may determine which references terminate
+ * the search concurrently with retrieving the references adjacent to the same references.
+ * If the provider is used with a search that runs queries concurrently, the provider must be
+ * thread safe.
  * @author gaprice@lbl.gov
  *
  */
@@ -17,15 +22,22 @@ public interface ReferenceGraphTopologyProvider {
 
 	/** Given a set of references, returns the set of references in the graph associated with those
 	 * references. The references may be the incoming or outgoing references to
-	 * or from the target references, depending on which way the search should proceed. Each
-	 * reference is further associated with a boolean which indicates whether the reference should
-	 * terminate the search for any search trees in which it exists.
+	 * or from the target references, depending on which way the search should proceed.
 	 * @param sourceRefs the references for which associated references should be found.
 	 * @return a mapping from each source reference to the references associated with the source
-	 * reference. Each of the referring references are mapped to a boolean indicating the search
-	 * should terminate when reaching that reference.
+	 * reference.
+	 * @throws ReferenceProviderException if the references could not be retrieved.
 	 */
-	public Map<Reference, Map<Reference, Boolean>> getAssociatedReferences(
+	public Map<Reference, Set<Reference>> getAssociatedReferences(
 			Set<Reference> sourceRefs)
 					throws ReferenceProviderException;
+
+	/** Given a set of references, returns the references that should terminate the search for
+	 * any search trees in which they exist.
+	 * @param refs the references to check.
+	 * @return the subset of the references that terminate the search.
+	 * @throws ReferenceProviderException if the termination criteria could not be checked.
+	 */
+	public Set<Reference> getTerminalReferences(Set<Reference> refs)
+			throws ReferenceProviderException;
 }
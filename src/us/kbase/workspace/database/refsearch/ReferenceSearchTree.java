@@ -3,10 +3,13 @@ package us.kbase.workspace.database.refsearch;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 import us.kbase.workspace.database.Reference;
 
@@ -52,6 +55,30 @@ public class ReferenceSearchTree {
 	 * @throws IllegalStateException if the search is already complete.
 	 */
 	public Set<Reference> updateTree(final Map<Reference, Map<Reference, Boolean>> newrefs) {
+		return updateTree(r -> newrefs.containsKey(r) ? newrefs.get(r).keySet() : null,
+				(r, newleaf) -> newrefs.get(r).get(newleaf));
+	}
+	
+	/** Update the search tree with a new set of leaves. Identical to
+	 * {@link #updateTree(Map)} other than that whether a reference terminates the search is
+	 * provided separately from the adjacent references.
+	 * @param adjacent a mapping of references to the references adjacent to them in the
+	 * reference graph.
+	 * @param terminal references that should terminate the search. This set must contain
+	 * any terminal references returned by {@link #getNewLeaves(Map)} for the same input, and
+	 * may contain other references.
+	 * @return the leaves that were added to the tree.
+	 * @throws IllegalStateException if the search is already complete.
+	 */
+	public Set<Reference> updateTree(
+			final Map<Reference, Set<Reference>> adjacent,
+			final Set<Reference> terminal) {
+		return updateTree(r -> adjacent.get(r), (r, newleaf) -> terminal.contains(newleaf));
+	}
+	
+	private Set<Reference> updateTree(
+			final Function<Reference, Set<Reference>> adjacent,
+			final BiPredicate<Reference, Reference> terminal) {
 		if (complete) {
 			throw new IllegalStateException("Search is complete");
 		}
@@ -59,11 +86,12 @@ public class ReferenceSearchTree {
 		final Set<Reference> retrefs = new HashSet<>();
 		for (final ReferenceTreeNode leaf: leaves) {
 			final Reference r = leaf.getReference();
-			if (newrefs.containsKey(r)) {
-				for (final Reference newleaf: newrefs.get(r).keySet()) {
+			final Set<Reference> adj = adjacent.apply(r);
+			if (adj != null) {
+				for (final Reference newleaf: adj) {
 					// if newleaf already seen, an <= length path exists in the tree
 					if (!tree.contains(newleaf)) {
-						if (newrefs.get(r).get(newleaf)) { //search is done
+						if (terminal.test(r, newleaf)) { //search is done
 							generatePath(leaf, newleaf);
 							completeSearch();
 							return new HashSet<>();
@@ -81,7 +109,39 @@ public class ReferenceSearchTree {
 		}
 		return retrefs;
 	}
-
+	
+	/** Get the references that would be considered as new leaves by
+	 * {@link #updateTree(Map, Set)} given a mapping of references to adjacent references - e.g.
+	 * the references adjacent to the tree's current leaves that are not already in the tree.
+	 * The tree is not altered.
+	 * 
+	 * The references are returned in the order in which {@link #updateTree(Map, Set)} checks
+	 * whether they terminate the search, given the same mapping. Therefore, if a reference is
+	 * known to terminate the search and all the references preceding it are known not to,
+	 * the outcome of the update is known regardless of the remaining references.
+	 * @param adjacent a mapping of references to the references adjacent to them in the
+	 * reference graph.
+	 * @return the potential new leaves.
+	 * @throws IllegalStateException if the search is already complete.
+	 */
+	public Set<Reference> getNewLeaves(final Map<Reference, Set<Reference>> adjacent) {
+		if (complete) {
+			throw new IllegalStateException("Search is complete");
+		}
+		final Set<Reference> ret = new LinkedHashSet<>();
+		for (final ReferenceTreeNode leaf: leaves) {
+			final Set<Reference> adj = adjacent.get(leaf.getReference());
+			if (adj != null) {
+				for (final Reference newleaf: adj) {
+					if (!tree.contains(newleaf)) {
+						ret.add(newleaf);
+					}
+				}
+			}
+		}
+		return ret;
+	}
+	
 	private void completeSearch() {
 		complete = true;
 		tree.clear();
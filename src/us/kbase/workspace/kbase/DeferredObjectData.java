@@ -0,0 +1,105 @@
+package us.kbase.workspace.kbase;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.WorkspaceObjectData;
+import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** Object data that is retrieved from the workspace when it is serialized to JSON rather than
+ * when the response containing it is built. The data is destroyed as soon as it has been
+ * written. If the data is trusted JSON and the JSON generator writes to an output stream, the
+ * stored bytes are sent to the stream with
+ * {@link ByteArrayFileCache#transferTo(java.nio.channels.WritableByteChannel)} rather than
+ * being parsed and regenerated.
+ *
+ * The data is retrieved via an {@link ObjectDataPrefetcher}, so when a list of
+ * objects is serialized the data for the following objects is retrieved while the data for
+ * the current object is written, and only the data for a bounded number of objects is held
+ * at a time.
+ *
+ * Since the data is retrieved during serialization, an error retrieving the data occurs after
+ * the response has started and will truncate the response rather than produce a standard
+ * error.
+ */
+public class DeferredObjectData implements JsonSerializable {
+
+	private final ObjectDataPrefetcher prefetcher;
+	private final WorkspaceObjectData object;
+	private final int index;
+
+	/** Create the deferred data.
+	 * @param prefetcher the prefetcher from which the data will be retrieved.
+	 * @param index the index of the object in the prefetcher's list of objects.
+	 */
+	public DeferredObjectData(final ObjectDataPrefetcher prefetcher, final int index) {
+		this.prefetcher = requireNonNull(prefetcher, "prefetcher");
+		this.object = prefetcher.getObject(index);
+		this.index = index;
+	}
+
+	@Override
+	public void serialize(final JsonGenerator gen, final SerializerProvider serializers)
+			throws IOException {
+		final ByteArrayFileCache data;
+		try {
+			data = prefetcher.getData(index);
+		} catch (CorruptWorkspaceDBException | WorkspaceCommunicationException |
+				TypedObjectExtractionException e) {
+			final ObjectInformation info = object.getObjectInfo();
+			throw new IOException(String.format("Error retrieving data for object %s/%s/%s: %s",
+					info.getWorkspaceId(), info.getObjectId(), info.getVersion(),
+					e.getMessage()), e);
+		}
+		try {
+			writeData(gen, data);
+		} finally {
+			data.destroy();
+		}
+	}
+
+	private static void writeData(final JsonGenerator gen, final ByteArrayFileCache data)
+			throws IOException {
+		final Object target = gen.getOutputTarget();
+		if (!data.containsTrustedJson() || !(target instanceof OutputStream)) {
+			// the data must be parsed, or the generator isn't writing bytes to a stream
+			gen.writeObject(data.getUObject());
+			return;
+		}
+		// writing an empty raw value makes the generator write any separator required before
+		// the value and record that a value has been written. The data can then be sent
+		// directly to the generator's target.
+		gen.writeRawValue("");
+		gen.flush();
+		if (target instanceof FileOutputStream) {
+			// file to file transfers don't copy the data through the heap
+			data.transferTo(((FileOutputStream) target).getChannel());
+		} else {
+			// the channel is not closed, as that would close the generator's target
+			data.transferTo(Channels.newChannel((OutputStream) target));
+		}
+	}
+
+	@Override
+	public void serializeWithType(
+			final JsonGenerator gen,
+			final SerializerProvider serializers,
+			final TypeSerializer typeSer)
+			throws IOException {
+		// the data is untyped JSON
+		serialize(gen, serializers);
+	}
+}
@@ -18,10 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
-import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
-import com.mongodb.ServerAddress;
 
 import us.kbase.abstracthandle.AbstractHandleClient;
 import us.kbase.auth.AuthConfig;
@@ -39,17 +36,21 @@ import us.kbase.typedobj.db.TypeDefinitionDB;
 import us.kbase.typedobj.exceptions.TypeStorageException;
 import us.kbase.typedobj.idref.IdReferenceHandlerSetFactoryBuilder;
 import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
 import us.kbase.workspace.database.Types;
 import us.kbase.workspace.database.Workspace;
 import us.kbase.workspace.database.WorkspaceDatabase;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.exceptions.WorkspaceDBException;
 import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore;
 import us.kbase.workspace.database.mongo.GridFSBlobStore;
+import us.kbase.workspace.database.mongo.MongoClientUtils;
 import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
 import us.kbase.workspace.database.mongo.S3BlobStore;
 import us.kbase.workspace.database.mongo.S3ClientWithPresign;
 import us.kbase.workspace.database.mongo.ShockBlobStore;
+import us.kbase.workspace.database.mongo.SubsetCache;
 import us.kbase.workspace.database.mongo.exceptions.BlobStoreCommunicationException;
 import us.kbase.workspace.kbase.KBaseWorkspaceConfig.ListenerConfig;
 import us.kbase.workspace.kbase.ShockIdHandlerFactory.ShockClientCloner;
@@ -58,6 +59,7 @@ import us.kbase.workspace.kbase.admin.AdministratorHandlerException;
 import us.kbase.workspace.kbase.admin.DefaultAdminHandler;
 import us.kbase.workspace.kbase.admin.KBaseAuth2AdminHandler;
 import us.kbase.workspace.kbase.admin.WorkspaceAdministration;
+import us.kbase.workspace.listener.AsynchronousEventListener;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
 import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
@@ -73,6 +75,15 @@ public class InitWorkspaceServer {
 	private static final int ADMIN_CACHE_MAX_SIZE = 100; // seems like more than enough admins
 	private static final int ADMIN_CACHE_EXP_TIME_MS = 5 * 60 * 1000; // cache admin role for 5m
 	
+	private static final long MB = 1024 * 1024;
+	
+	// settings for asynchronous listeners
+	private static final int LISTENER_BATCH_SIZE = 100;
+	private static final long LISTENER_QUEUE_WAIT_MS = 30 * 1000;
+	// not prefixed with ws. so the temp file manager ignores it
+	private static final String BLOB_CACHE_DIR = "blobcache";
+	private static final String SUBSET_CACHE_DIR = "subsetcache";
+	
 	private static int maxUniqueIdCountPerCall = 100000;
 
 	private static int instanceCount = 0;
@@ -185,7 +196,7 @@ public class InitWorkspaceServer {
 			wsdeps = getDependencies(cfg, tfm, auth);
 			ws = new Workspace(
 					wsdeps.mongoWS,
-					new ResourceUsageConfigurationBuilder().build(),
+					getResourceUsageConfiguration(cfg),
 					wsdeps.validator,
 					wsdeps.listeners);
 			ah = getAdminHandler(cfg, ws);
@@ -196,13 +207,14 @@ public class InitWorkspaceServer {
 			return null;
 		}
 		rep.reportInfo(String.format("Initialized %s backend", cfg.getBackendType().name()));
-		Types types = new Types(wsdeps.typeDB);
+		Types types = new Types(wsdeps.typeDB, wsdeps.validator);
 		final IdReferenceHandlerSetFactoryBuilder builder = IdReferenceHandlerSetFactoryBuilder
 				.getBuilder(maxUniqueIdCountPerCall)
 				.withFactory(new HandleIdHandlerFactory(hsc))
 				.withFactory(wsdeps.shockFac.factory)
 				.build();
-		WorkspaceServerMethods wsmeth = new WorkspaceServerMethods(ws, types, builder, auth);
+		WorkspaceServerMethods wsmeth = new WorkspaceServerMethods(
+				ws, types, builder, auth, cfg.streamObjectData());
 		WorkspaceAdministration wsadmin = new WorkspaceAdministration(
 				ws, wsmeth, types, ah,
 				ADMIN_CACHE_MAX_SIZE, ADMIN_CACHE_EXP_TIME_MS);
@@ -263,7 +275,8 @@ public class InitWorkspaceServer {
 		//TODO CODE update to new mongo APIs
 		final DB db = buildMongo(cfg, cfg.getDBname()).getDB(cfg.getDBname());
 		
-		final BlobStore bs = setupBlobStore(db, cfg, auth);
+		final BlobStore bs = setupBlobCache(setupBlobStore(db, cfg, auth), cfg, tfm);
+		final SubsetCache subsetCache = setupSubsetCache(cfg, tfm);
 		
 		// see https://jira.mongodb.org/browse/JAVA-2656
 		final DB typeDB = buildMongo(cfg, cfg.getTypeDBName()).getDB(cfg.getTypeDBName());
@@ -276,7 +289,7 @@ public class InitWorkspaceServer {
 		}
 		deps.validator = new TypedObjectValidator(new LocalTypeProvider(deps.typeDB));
 		try {
-			deps.mongoWS = new MongoWorkspaceDB(db, bs, tfm);
+			deps.mongoWS = new MongoWorkspaceDB(db, bs, tfm, subsetCache);
 		} catch (WorkspaceDBException wde) {
 			throw new WorkspaceInitException(
 					"Error initializing the workspace database: " +
@@ -332,17 +345,9 @@ public class InitWorkspaceServer {
 
 	private static MongoClient buildMongo(final KBaseWorkspaceConfig c, final String dbName)
 			throws WorkspaceInitException {
-		//TODO ZLATER MONGO handle shards & replica sets
 		try {
-			if (c.getMongoUser() != null) {
-				final MongoCredential creds = MongoCredential.createCredential(
-						c.getMongoUser(), dbName, c.getMongoPassword().toCharArray());
-				// unclear if and when it's safe to clear the password
-				return new MongoClient(new ServerAddress(c.getHost()), creds,
-						MongoClientOptions.builder().build());
-			} else {
-				return new MongoClient(new ServerAddress(c.getHost()));
-			}
+			return MongoClientUtils.buildClient(
+					c.getHost(), dbName, c.getMongoUser(), c.getMongoPassword());
 		} catch (MongoException e) {
 			LoggerFactory.getLogger(InitWorkspaceServer.class).error(
 					"Failed to connect to MongoDB: " + e.getMessage(), e);
@@ -356,7 +361,19 @@ public class InitWorkspaceServer {
 		for (final ListenerConfig lc: cfg.getListenerConfigs()) {
 			final WorkspaceEventListenerFactory fac = loadFac(lc.getListenerClass());
 			try {
-				wels.add(fac.configure(lc.getConfig()));
+				final WorkspaceEventListener wel = fac.configure(lc.getConfig());
+				if (cfg.getListenerQueueSize() > 0 && wel.isDurable()) {
+					// queueing the events would lose the listener's durability guarantee
+					LoggerFactory.getLogger(InitWorkspaceServer.class).info(
+							"Listener {} is durable and will receive events synchronously " +
+							"regardless of the listener queue size", lc.getListenerClass());
+					wels.add(wel);
+				} else if (cfg.getListenerQueueSize() > 0) {
+					wels.add(new AsynchronousEventListener(wel, cfg.getListenerQueueSize(),
+							LISTENER_BATCH_SIZE, LISTENER_QUEUE_WAIT_MS));
+				} else {
+					wels.add(wel);
+				}
 			} catch (ListenerInitializationException e) {
 				throw new WorkspaceInitException(String.format(
 						"Error initializing listener %s: %s",
@@ -422,6 +439,77 @@ public class InitWorkspaceServer {
 		}
 	}
 
+	private static ResourceUsageConfiguration getResourceUsageConfiguration(
+			final KBaseWorkspaceConfig cfg) {
+		final ResourceUsageConfigurationBuilder build = new ResourceUsageConfigurationBuilder();
+		if (cfg.getBlobFetchConcurrencyPerCall() > 0) {
+			build.withMaxConcurrentBlobFetchesPerCall(cfg.getBlobFetchConcurrencyPerCall());
+		}
+		if (cfg.getBlobFetchConcurrency() > 0) {
+			build.withMaxConcurrentBlobFetches(cfg.getBlobFetchConcurrency());
+		}
+		if (cfg.getBlobUploadConcurrencyPerCall() > 0) {
+			build.withMaxConcurrentBlobUploadsPerCall(cfg.getBlobUploadConcurrencyPerCall());
+		}
+		if (cfg.getBlobUploadConcurrency() > 0) {
+			build.withMaxConcurrentBlobUploads(cfg.getBlobUploadConcurrency());
+		}
+		if (cfg.getValidationConcurrency() > 0) {
+			build.withMaxConcurrentObjectValidations(cfg.getValidationConcurrency());
+		}
+		build.withMinStructuralIndexSize(cfg.getStructuralIndexMinMB() * MB);
+		build.withMaxIncomingReferenceCacheSize(cfg.getIncomingReferenceCacheSize());
+		if (cfg.getReferenceSearchConcurrency() > 0) {
+			build.withMaxConcurrentReferenceSearchQueries(cfg.getReferenceSearchConcurrency());
+		}
+		build.withMaxReadableWorkspaceCacheSize(cfg.getReadableWorkspaceCacheSize());
+		build.withMaxGlobalReturnedDataMemoryUsage(
+				cfg.getReturnedDataGlobalMemoryMB() * MB);
+		build.withMaxGlobalReturnedDataDiskUsage(cfg.getReturnedDataGlobalDiskMB() * MB);
+		build.withMaxResolvedWorkspaceCacheSize(cfg.getResolvedWorkspaceCacheSize());
+		build.withMaxObjectVersionCacheSize(cfg.getObjectVersionCacheSize());
+		build.withMaxProvenanceCacheSize(cfg.getProvenanceCacheSize());
+		return build.build();
+	}
+	
+	private static BlobStore setupBlobCache(
+			final BlobStore store,
+			final KBaseWorkspaceConfig cfg,
+			final TempFilesManager tfm)
+			throws WorkspaceInitException {
+		if (cfg.getBlobCacheMemoryMB() < 1 && cfg.getBlobCacheDiskMB() < 1) {
+			return store;
+		}
+		try {
+			return new CachingBlobStore(
+					store,
+					cfg.getBlobCacheMemoryMB() * MB,
+					cfg.getBlobCacheDiskMB() * MB,
+					new File(tfm.getTempDir(), BLOB_CACHE_DIR));
+		} catch (IllegalArgumentException e) {
+			throw new WorkspaceInitException("Could not set up the blob cache: " +
+					e.getMessage(), e);
+		}
+	}
+
+	private static SubsetCache setupSubsetCache(
+			final KBaseWorkspaceConfig cfg,
+			final TempFilesManager tfm)
+			throws WorkspaceInitException {
+		if (cfg.getSubsetCacheMemoryMB() < 1 && cfg.getSubsetCacheDiskMB() < 1) {
+			return null;
+		}
+		try {
+			return new SubsetCache(
+					cfg.getSubsetCacheMemoryMB() * MB,
+					cfg.getSubsetCacheDiskMB() * MB,
+					new File(tfm.getTempDir(), SUBSET_CACHE_DIR));
+		} catch (IllegalArgumentException e) {
+			throw new WorkspaceInitException("Could not set up the subset cache: " +
+					e.getMessage(), e);
+		}
+	}
+
 	private static BlobStore setupBlobStore(
 			final DB db,
 			final KBaseWorkspaceConfig cfg,
@@ -453,11 +541,22 @@ public class InitWorkspaceServer {
 		// tested manually
 		if (cfg.getBackendType().equals(BackendType.S3)) {
 			try {
+				final long threshold = cfg.getBackendMultipartThresholdMB() > 0 ?
+						cfg.getBackendMultipartThresholdMB() * MB :
+						S3ClientWithPresign.DEFAULT_MULTIPART_THRESHOLD;
 				final S3ClientWithPresign cli = new S3ClientWithPresign(
 						cfg.getBackendURL(),
 						cfg.getBackendUser(),
 						cfg.getBackendToken(),
-						cfg.getBackendRegion());
+						cfg.getBackendRegion(),
+						threshold,
+						Math.min(threshold, S3ClientWithPresign.DEFAULT_PART_SIZE),
+						cfg.getBackendPartConcurrencyPerObject() > 0 ?
+								cfg.getBackendPartConcurrencyPerObject() :
+								S3ClientWithPresign.DEFAULT_MAX_CONCURRENT_PARTS_PER_OBJECT,
+						cfg.getBackendPartConcurrency() > 0 ?
+								cfg.getBackendPartConcurrency() :
+								S3ClientWithPresign.DEFAULT_MAX_CONCURRENT_PARTS);
 				return new S3BlobStore(
 						db.getCollection(COL_S3_OBJECTS),
 						cli,
@@ -45,6 +45,10 @@ public class KBaseWorkspaceConfig {
 	private static final String BACKEND_URL = "backend-url";
 	private static final String BACKEND_REGION = "backend-region";
 	private static final String BACKEND_CONTAINER = "backend-container";
+	private static final String BACKEND_MULTIPART_THRESHOLD = "backend-multipart-threshold-mb";
+	private static final String BACKEND_PART_CONCURRENCY_PER_OBJECT =
+			"backend-part-concurrency-per-object";
+	private static final String BACKEND_PART_CONCURRENCY = "backend-part-concurrency";
 	//mongo db auth params:
 	private static final String MONGO_USER = "mongodb-user";
 	private static final String MONGO_PWD = "mongodb-pwd";
@@ -80,6 +84,59 @@ public class KBaseWorkspaceConfig {
 	//directory for temp files
 	private static final String TEMP_DIR = "temp-dir";
 	
+	// cross request blob cache sizes
+	private static final String BLOB_CACHE_MEMORY = "blob-cache-memory-mb";
+	private static final String BLOB_CACHE_DISK = "blob-cache-disk-mb";
+	
+	// cross request subset cache sizes
+	private static final String SUBSET_CACHE_MEMORY = "subset-cache-memory-mb";
+	private static final String SUBSET_CACHE_DISK = "subset-cache-disk-mb";
+	
+	// concurrent blob fetch limits
+	private static final String BLOB_FETCH_CONCURRENCY_PER_CALL =
+			"blob-fetch-concurrency-per-call";
+	private static final String BLOB_FETCH_CONCURRENCY = "blob-fetch-concurrency";
+	
+	// concurrent blob upload limits
+	private static final String BLOB_UPLOAD_CONCURRENCY_PER_CALL =
+			"blob-upload-concurrency-per-call";
+	private static final String BLOB_UPLOAD_CONCURRENCY = "blob-upload-concurrency";
+	
+	// concurrent object validation limit
+	private static final String VALIDATION_CONCURRENCY = "validation-concurrency";
+	
+	private static final String STREAM_OBJECT_DATA = "stream-object-data";
+	
+	// minimum object size for building a structural index
+	private static final String STRUCTURAL_INDEX_MIN = "structural-index-min-mb";
+	
+	// maximum number of object versions for which incoming references are cached
+	private static final String INCOMING_REF_CACHE_SIZE = "incoming-reference-cache-size";
+	
+	// concurrent reference search query limit
+	private static final String REF_SEARCH_CONCURRENCY = "reference-search-concurrency";
+	
+	// maximum number of users for which readable workspace IDs are cached
+	private static final String READABLE_WS_CACHE_SIZE = "readable-workspace-cache-size";
+	
+	// limits on returned data across all calls
+	private static final String RETURNED_DATA_MEMORY = "returned-data-global-memory-mb";
+	private static final String RETURNED_DATA_DISK = "returned-data-global-disk-mb";
+	
+	// maximum number of events queued per listener for asynchronous delivery
+	private static final String LISTENER_QUEUE_SIZE = "listener-queue-size";
+	
+	// maximum number of workspaces for which resolved IDs are cached
+	private static final String RESOLVED_WS_CACHE_SIZE = "resolved-workspace-cache-size";
+	
+	// maximum number of object version documents cached
+	private static final String OBJECT_VERSION_CACHE_SIZE = "object-version-cache-size";
+	
+	// maximum number of decoded provenance documents cached
+	private static final String PROVENANCE_CACHE_SIZE = "provenance-cache-size";
+	
+	private static final long MIN_MULTIPART_THRESHOLD_MB = 5;
+	
 	// the auth2 urls are checked when getting the url
 	private static final List<String> REQUIRED_PARAMS = Arrays.asList(
 			HOST, DB, TYPE_DB, TEMP_DIR, BACKEND_TYPE);
@@ -99,7 +156,30 @@ public class KBaseWorkspaceConfig {
 	private final URL backendURL;
 	private final String backendUser;
 	private final String backendToken;
+	private final long backendMultipartThresholdMB;
+	private final int backendPartConcurrencyPerObject;
+	private final int backendPartConcurrency;
 	private final String tempDir;
+	private final long blobCacheMemoryMB;
+	private final long blobCacheDiskMB;
+	private final long subsetCacheMemoryMB;
+	private final long subsetCacheDiskMB;
+	private final int blobFetchConcurrencyPerCall;
+	private final int blobFetchConcurrency;
+	private final int blobUploadConcurrencyPerCall;
+	private final int blobUploadConcurrency;
+	private final int validationConcurrency;
+	private final boolean streamObjectData;
+	private final long structuralIndexMinMB;
+	private final int incomingRefCacheSize;
+	private final int refSearchConcurrency;
+	private final int readableWSCacheSize;
+	private final long returnedDataMemoryMB;
+	private final long returnedDataDiskMB;
+	private final int listenerQueueSize;
+	private final int resolvedWSCacheSize;
+	private final int objectVersionCacheSize;
+	private final int provenanceCacheSize;
 	private final URL bytestreamURL;
 	private final String bytestreamUser;
 	private final String bytestreamToken;
@@ -199,6 +279,33 @@ public class KBaseWorkspaceConfig {
 					DB, TYPE_DB, db));
 		}
 		tempDir = nullIfEmpty(config.get(TEMP_DIR));
+		blobCacheMemoryMB = getNonNegativeLong(config, BLOB_CACHE_MEMORY, paramErrors);
+		blobCacheDiskMB = getNonNegativeLong(config, BLOB_CACHE_DISK, paramErrors);
+		subsetCacheMemoryMB = getNonNegativeLong(config, SUBSET_CACHE_MEMORY, paramErrors);
+		subsetCacheDiskMB = getNonNegativeLong(config, SUBSET_CACHE_DISK, paramErrors);
+		blobFetchConcurrencyPerCall = getNonNegativeInt(
+				config, BLOB_FETCH_CONCURRENCY_PER_CALL, paramErrors);
+		blobFetchConcurrency = getNonNegativeInt(config, BLOB_FETCH_CONCURRENCY, paramErrors);
+		blobUploadConcurrencyPerCall = getNonNegativeInt(
+				config, BLOB_UPLOAD_CONCURRENCY_PER_CALL, paramErrors);
+		blobUploadConcurrency = getNonNegativeInt(config, BLOB_UPLOAD_CONCURRENCY, paramErrors);
+		validationConcurrency = getNonNegativeInt(config, VALIDATION_CONCURRENCY, paramErrors);
+		backendMultipartThresholdMB = getMultipartThreshold(config, paramErrors);
+		backendPartConcurrencyPerObject = getNonNegativeInt(
+				config, BACKEND_PART_CONCURRENCY_PER_OBJECT, paramErrors);
+		backendPartConcurrency = getNonNegativeInt(config, BACKEND_PART_CONCURRENCY, paramErrors);
+		streamObjectData = !nullOrEmpty(config.get(STREAM_OBJECT_DATA));
+		structuralIndexMinMB = getNonNegativeLong(config, STRUCTURAL_INDEX_MIN, paramErrors);
+		incomingRefCacheSize = getNonNegativeInt(config, INCOMING_REF_CACHE_SIZE, paramErrors);
+		refSearchConcurrency = getNonNegativeInt(config, REF_SEARCH_CONCURRENCY, paramErrors);
+		readableWSCacheSize = getNonNegativeInt(config, READABLE_WS_CACHE_SIZE, paramErrors);
+		returnedDataMemoryMB = getNonNegativeLong(config, RETURNED_DATA_MEMORY, paramErrors);
+		returnedDataDiskMB = getNonNegativeLong(config, RETURNED_DATA_DISK, paramErrors);
+		listenerQueueSize = getNonNegativeInt(config, LISTENER_QUEUE_SIZE, paramErrors);
+		resolvedWSCacheSize = getNonNegativeInt(config, RESOLVED_WS_CACHE_SIZE, paramErrors);
+		objectVersionCacheSize = getNonNegativeInt(
+				config, OBJECT_VERSION_CACHE_SIZE, paramErrors);
+		provenanceCacheSize = getNonNegativeInt(config, PROVENANCE_CACHE_SIZE, paramErrors);
 		
 		authURL = getUrl(config, KBASE_AUTH_URL, paramErrors, true);
 		auth2URL = getUrl(config, KBASE_AUTH2_URL, paramErrors, true);
@@ -370,7 +477,17 @@ public class KBaseWorkspaceConfig {
 				Arrays.asList(HOST, DB, TYPE_DB, MONGO_USER, KBASE_AUTH_URL, KBASE_AUTH2_URL,
 						KBASE_AUTH_ADMIN_READ_ONLY_ROLES, KBASE_AUTH_ADMIN_FULL_ROLES,
 						BACKEND_TYPE, BACKEND_URL, BACKEND_USER, BACKEND_REGION,
-						BACKEND_CONTAINER));
+						BACKEND_CONTAINER, BACKEND_MULTIPART_THRESHOLD,
+						BACKEND_PART_CONCURRENCY_PER_OBJECT, BACKEND_PART_CONCURRENCY,
+						BLOB_CACHE_MEMORY, BLOB_CACHE_DISK,
+						SUBSET_CACHE_MEMORY, SUBSET_CACHE_DISK,
+						BLOB_FETCH_CONCURRENCY_PER_CALL, BLOB_FETCH_CONCURRENCY,
+						BLOB_UPLOAD_CONCURRENCY_PER_CALL, BLOB_UPLOAD_CONCURRENCY,
+						VALIDATION_CONCURRENCY, STREAM_OBJECT_DATA, STRUCTURAL_INDEX_MIN,
+						INCOMING_REF_CACHE_SIZE, REF_SEARCH_CONCURRENCY, READABLE_WS_CACHE_SIZE,
+						RETURNED_DATA_MEMORY, RETURNED_DATA_DISK, LISTENER_QUEUE_SIZE,
+						RESOLVED_WS_CACHE_SIZE, OBJECT_VERSION_CACHE_SIZE,
+						PROVENANCE_CACHE_SIZE));
 		if (!ignoreHandleService) {
 			paramSet.addAll(Arrays.asList(HANDLE_SERVICE_URL));
 		}
@@ -413,6 +530,55 @@ public class KBaseWorkspaceConfig {
 		return null;
 	}
 	
+	// optional, defaults to 0
+	private static long getNonNegativeLong(
+			final Map<String, String> wsConfig,
+			final String configKey,
+			final List<String> errors) {
+		final String longStr = wsConfig.get(configKey);
+		if (nullOrEmpty(longStr)) {
+			return 0;
+		}
+		try {
+			final long l = Long.parseLong(longStr.trim());
+			if (l >= 0) {
+				return l;
+			}
+		} catch (NumberFormatException e) {
+			// fall through
+		}
+		errors.add(String.format("Parameter %s must be a non-negative integer: %s",
+				configKey, longStr.trim()));
+		return 0;
+	}
+	
+	// optional, defaults to 0
+	private static int getNonNegativeInt(
+			final Map<String, String> wsConfig,
+			final String configKey,
+			final List<String> errors) {
+		final long l = getNonNegativeLong(wsConfig, configKey, errors);
+		if (l > Integer.MAX_VALUE) {
+			errors.add(String.format("Parameter %s must be no greater than %s",
+					configKey, Integer.MAX_VALUE));
+			return 0;
+		}
+		return (int) l;
+	}
+	
+	// optional, defaults to 0. S3 parts must be at least 5MB
+	private static long getMultipartThreshold(
+			final Map<String, String> wsConfig,
+			final List<String> errors) {
+		final long l = getNonNegativeLong(wsConfig, BACKEND_MULTIPART_THRESHOLD, errors);
+		if (l > 0 && l < MIN_MULTIPART_THRESHOLD_MB) {
+			errors.add(String.format("Parameter %s must be at least %s",
+					BACKEND_MULTIPART_THRESHOLD, MIN_MULTIPART_THRESHOLD_MB));
+			return 0;
+		}
+		return l;
+	}
+	
 	// assume optional for now
 	private static Region getRegion(
 			final Map<String, String> wsConfig,
@@ -476,10 +642,181 @@ public class KBaseWorkspaceConfig {
 	public Region getBackendRegion() {
 		return backendRegion;
 	}
+	
+	/** Get the size of an object above which the object is uploaded to and downloaded from
+	 * the backend in parts. Only applies to the S3 backend.
+	 * @return the threshold in megabytes, or 0 to use the default.
+	 */
+	public long getBackendMultipartThresholdMB() {
+		return backendMultipartThresholdMB;
+	}
+	
+	/** Get the maximum number of parts of a single object that are transferred to or from the
+	 * backend concurrently. Only applies to the S3 backend.
+	 * @return the maximum number of parts, or 0 to use the default.
+	 */
+	public int getBackendPartConcurrencyPerObject() {
+		return backendPartConcurrencyPerObject;
+	}
+	
+	/** Get the maximum number of parts that are transferred to or from the backend
+	 * concurrently across all objects. Only applies to the S3 backend.
+	 * @return the maximum number of parts, or 0 to use the default.
+	 */
+	public int getBackendPartConcurrency() {
+		return backendPartConcurrency;
+	}
 
 	public String getTempDir() {
 		return tempDir;
 	}
+	
+	/** Get the maximum amount of blob data to cache in memory across requests.
+	 * @return the cache size in megabytes, or 0 if the memory cache is disabled.
+	 */
+	public long getBlobCacheMemoryMB() {
+		return blobCacheMemoryMB;
+	}
+	
+	/** Get the maximum amount of blob data to cache on disk across requests.
+	 * @return the cache size in megabytes, or 0 if the disk cache is disabled.
+	 */
+	public long getBlobCacheDiskMB() {
+		return blobCacheDiskMB;
+	}
+	
+	/** Get the maximum amount of object subset data to cache in memory across requests.
+	 * @return the cache size in megabytes, or 0 if the memory cache is disabled.
+	 */
+	public long getSubsetCacheMemoryMB() {
+		return subsetCacheMemoryMB;
+	}
+	
+	/** Get the maximum amount of object subset data to cache on disk across requests.
+	 * @return the cache size in megabytes, or 0 if the disk cache is disabled.
+	 */
+	public long getSubsetCacheDiskMB() {
+		return subsetCacheDiskMB;
+	}
+	
+	/** Get the maximum number of blobs to fetch concurrently per call.
+	 * @return the maximum concurrent fetches per call, or 0 to use the default.
+	 */
+	public int getBlobFetchConcurrencyPerCall() {
+		return blobFetchConcurrencyPerCall;
+	}
+	
+	/** Get the maximum number of blobs to fetch concurrently across all calls.
+	 * @return the maximum concurrent fetches, or 0 to use the default.
+	 */
+	public int getBlobFetchConcurrency() {
+		return blobFetchConcurrency;
+	}
+	
+	/** Get the maximum number of blobs to upload concurrently per call.
+	 * @return the maximum concurrent uploads per call, or 0 to use the default.
+	 */
+	public int getBlobUploadConcurrencyPerCall() {
+		return blobUploadConcurrencyPerCall;
+	}
+	
+	/** Get the maximum number of blobs to upload concurrently across all calls.
+	 * @return the maximum concurrent uploads, or 0 to use the default.
+	 */
+	public int getBlobUploadConcurrency() {
+		return blobUploadConcurrency;
+	}
+	
+	/** Get the maximum number of objects to validate concurrently across all calls.
+	 * @return the maximum concurrent validations, or 0 to use the default.
+	 */
+	public int getValidationConcurrency() {
+		return validationConcurrency;
+	}
+	
+	/** Get whether object data returned from get_objects2 should be retrieved from storage as
+	 * the response is written rather than before the response is written.
+	 * @return true if object data should be streamed.
+	 */
+	public boolean streamObjectData() {
+		return streamObjectData;
+	}
+	
+	/** Get the minimum size of an object, in MB, for which a structural index is built when
+	 * the object is saved.
+	 * @return the minimum object size, or 0 if structural indexes should not be built.
+	 */
+	public long getStructuralIndexMinMB() {
+		return structuralIndexMinMB;
+	}
+	
+	/** Get the maximum number of object versions for which the incoming references are cached
+	 * when searching for reference paths.
+	 * @return the maximum cache size, or 0 if incoming references should not be cached.
+	 */
+	public int getIncomingReferenceCacheSize() {
+		return incomingRefCacheSize;
+	}
+	
+	/** Get the maximum number of database queries to run concurrently when searching for
+	 * reference paths across all calls.
+	 * @return the maximum concurrent queries, or 0 to use the default.
+	 */
+	public int getReferenceSearchConcurrency() {
+		return refSearchConcurrency;
+	}
+	
+	/** Get the maximum number of users for which the IDs of the workspaces the user can read are
+	 * cached when searching for reference paths.
+	 * @return the maximum cache size, or 0 if readable workspace IDs should not be cached.
+	 */
+	public int getReadableWorkspaceCacheSize() {
+		return readableWSCacheSize;
+	}
+	
+	/** Get the maximum memory, in MB, to use for returned data across all calls.
+	 * @return the maximum memory, or 0 for no limit across calls.
+	 */
+	public long getReturnedDataGlobalMemoryMB() {
+		return returnedDataMemoryMB;
+	}
+	
+	/** Get the maximum disk space, in MB, to use for returned data across all calls.
+	 * @return the maximum disk space, or 0 for no limit across calls.
+	 */
+	public long getReturnedDataGlobalDiskMB() {
+		return returnedDataDiskMB;
+	}
+	
+	/** Get the maximum number of events queued for each listener when events are delivered to
+	 * listeners asynchronously.
+	 * @return the maximum queue size, or 0 if events should be delivered synchronously.
+	 */
+	public int getListenerQueueSize() {
+		return listenerQueueSize;
+	}
+	
+	/** Get the maximum number of workspaces for which the resolved workspace ID, name, and
+	 * locked and deleted states are cached.
+	 * @return the maximum cache size, or 0 if resolved workspaces should not be cached.
+	 */
+	public int getResolvedWorkspaceCacheSize() {
+		return resolvedWSCacheSize;
+	}
+	
+	/** Get the maximum number of object version documents that are cached.
+	 * @return the maximum cache size, or 0 if object versions should not be cached.
+	 */
+	public int getObjectVersionCacheSize() {
+		return objectVersionCacheSize;
+	}
+	
+	/** Get the maximum number of decoded provenance documents that are cached.
+	 * @return the maximum cache size, or 0 if provenance should not be cached.
+	 */
+	public int getProvenanceCacheSize() {
+		return provenanceCacheSize;
+	}
 
 	public URL getBytestreamURL() {
 		return bytestreamURL;
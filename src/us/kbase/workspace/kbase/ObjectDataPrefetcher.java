@@ -0,0 +1,178 @@
+package us.kbase.workspace.kbase;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.typedobj.exceptions.TypedObjectExtractionException;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceObjectData;
+import us.kbase.workspace.database.exceptions.CorruptWorkspaceDBException;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+
+/** Retrieves the data for a list of objects, retrieved by
+ * {@link Workspace#getObjectsWithDeferredData(us.kbase.workspace.database.WorkspaceUser,
+ * List, boolean, boolean)}, in list order. While the data for one object is being processed,
+ * the data for the following objects is retrieved concurrently, up to a maximum number of
+ * objects at once. The data is always retrieved via the data manager, and so is subject to
+ * the data manager's memory and disk limits.
+ *
+ * The data for each object may be retrieved only once. {@link #close()} must be called when
+ * the data is no longer needed to destroy any data that was retrieved but never requested.
+ */
+public class ObjectDataPrefetcher {
+
+	private final Workspace ws;
+	private final List<WorkspaceObjectData> objects;
+	private final ByteArrayFileCacheManager dataManager;
+	private final int maxConcurrentRetrievals;
+	private final Map<Integer, Future<ByteArrayFileCache>> retrievals = new HashMap<>();
+	private int next = 0;
+	private boolean closed = false;
+
+	/** Create the prefetcher. No data is retrieved until {@link #getData(int)} is called.
+	 * @param ws the workspace from which the data will be retrieved.
+	 * @param objects the objects. Null entries are allowed and are skipped.
+	 * @param dataManager the data manager for the request.
+	 * @param maxConcurrentRetrievals the maximum number of objects for which data is retrieved
+	 * or held at once, including the object being processed.
+	 */
+	public ObjectDataPrefetcher(
+			final Workspace ws,
+			final List<WorkspaceObjectData> objects,
+			final ByteArrayFileCacheManager dataManager,
+			final int maxConcurrentRetrievals) {
+		this.ws = requireNonNull(ws, "ws");
+		this.objects = requireNonNull(objects, "objects");
+		this.dataManager = requireNonNull(dataManager, "dataManager");
+		if (maxConcurrentRetrievals < 1) {
+			throw new IllegalArgumentException("maxConcurrentRetrievals must be at least 1");
+		}
+		this.maxConcurrentRetrievals = maxConcurrentRetrievals;
+	}
+
+	/** Get an object.
+	 * @param index the index of the object in the list of objects.
+	 * @return the object.
+	 */
+	public WorkspaceObjectData getObject(final int index) {
+		checkIndex(index);
+		return objects.get(index);
+	}
+
+	private void checkIndex(final int index) {
+		if (index < 0 || index >= objects.size() || objects.get(index) == null) {
+			throw new IllegalArgumentException("No object at index " + index);
+		}
+	}
+
+	/** Get the data for an object, waiting for the data to be retrieved if necessary. Starts
+	 * retrieving the data for the following objects.
+	 * @param index the index of the object in the list of objects.
+	 * @return the data. The caller is responsible for destroying the data when it is no longer
+	 * needed.
+	 * @throws CorruptWorkspaceDBException if corrupt data is found in the storage system.
+	 * @throws WorkspaceCommunicationException if a communication error with the storage system
+	 * occurs.
+	 * @throws TypedObjectExtractionException if an error occurred extracting data from a typed
+	 * object.
+	 */
+	public ByteArrayFileCache getData(final int index)
+			throws CorruptWorkspaceDBException, WorkspaceCommunicationException,
+				TypedObjectExtractionException {
+		final Future<ByteArrayFileCache> retrieval;
+		final List<Future<ByteArrayFileCache>> skipped = new LinkedList<>();
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The prefetcher is closed");
+			}
+			checkIndex(index);
+			if (index < next && !retrievals.containsKey(index)) {
+				throw new IllegalArgumentException(
+						"The data for the object at index " + index +
+						" has already been requested");
+			}
+			// the data for any earlier objects that were not requested is not needed
+			for (final Integer i: new HashSet<>(retrievals.keySet())) {
+				if (i < index) {
+					skipped.add(retrievals.remove(i));
+				}
+			}
+			next = Math.max(next, index);
+			startRetrievals();
+			retrieval = retrievals.remove(index);
+		}
+		for (final Future<ByteArrayFileCache> f: skipped) {
+			destroy(f);
+		}
+		try {
+			return Uninterruptibles.getUninterruptibly(retrieval);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof CorruptWorkspaceDBException) {
+				throw (CorruptWorkspaceDBException) cause;
+			} else if (cause instanceof WorkspaceCommunicationException) {
+				throw (WorkspaceCommunicationException) cause;
+			} else if (cause instanceof TypedObjectExtractionException) {
+				throw (TypedObjectExtractionException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException("Unexpected exception retrieving data: " +
+						cause.getMessage(), cause);
+			}
+		}
+	}
+
+	private void startRetrievals() {
+		while (next < objects.size() && retrievals.size() < maxConcurrentRetrievals) {
+			final WorkspaceObjectData o = objects.get(next);
+			if (o != null) {
+				retrievals.put(next, ws.getObjectDataAsync(
+						o, SubsetSelection.EMPTY, dataManager));
+			}
+			next++;
+		}
+	}
+
+	/** Destroy any data that was retrieved but not requested via {@link #getData(int)}, waiting
+	 * for any retrievals in progress to complete. Further calls to {@link #getData(int)} will
+	 * fail.
+	 */
+	public void close() {
+		final Map<Integer, Future<ByteArrayFileCache>> toDestroy;
+		synchronized (this) {
+			closed = true;
+			toDestroy = new HashMap<>(retrievals);
+			retrievals.clear();
+		}
+		for (final Future<ByteArrayFileCache> f: toDestroy.values()) {
+			destroy(f);
+		}
+	}
+
+	private void destroy(final Future<ByteArrayFileCache> retrieval) {
+		if (retrieval.cancel(false)) {
+			return;
+		}
+		try {
+			Uninterruptibles.getUninterruptibly(retrieval).destroy();
+		} catch (ExecutionException | CancellationException | RuntimeException e) {
+			// nothing to destroy, or nothing more we can do
+		}
+	}
+}
@@ -33,6 +33,7 @@ import us.kbase.auth.AuthToken;
 import us.kbase.auth.ConfigurableAuthService;
 import us.kbase.common.service.Tuple11;
 import us.kbase.common.service.Tuple9;
+import us.kbase.common.service.UObject;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.exceptions.NoSuchPrivilegeException;
 import us.kbase.typedobj.exceptions.TypeStorageException;
@@ -62,6 +63,7 @@ import us.kbase.workspace.SetPermissionsParams;
 import us.kbase.workspace.WorkspaceIdentity;
 import us.kbase.workspace.WorkspacePermissions;
 import us.kbase.workspace.database.ListObjectsParameters;
+import us.kbase.workspace.database.ObjIDWithRefPathAndSubset;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectIdentifier;
 import us.kbase.workspace.database.ObjectInformation;
@@ -94,16 +96,42 @@ public class WorkspaceServerMethods {
 	final private Types types;
 	final private ConfigurableAuthService auth;
 	private final IdReferenceHandlerSetFactoryBuilder idFacBuilder;
+	private final boolean streamObjectData;
+	// the prefetcher for the current streamed request on each thread, if any
+	private final ThreadLocal<ObjectDataPrefetcher> prefetcher = new ThreadLocal<>();
 	
 	public WorkspaceServerMethods(
 			final Workspace ws,
 			final Types types,
 			final IdReferenceHandlerSetFactoryBuilder idFacBuilder,
 			final ConfigurableAuthService auth) {
+		this(ws, types, idFacBuilder, auth, false);
+	}
+	
+	/** Create the server methods.
+	 * @param ws the workspace.
+	 * @param types the types handler.
+	 * @param idFacBuilder the ID handler factory builder.
+	 * @param auth the authentication service client.
+	 * @param streamObjectData true to retrieve the data for each object returned from
+	 * {@link #getObjects(GetObjects2Params, WorkspaceUser, boolean, ThreadLocal)} as it is
+	 * serialized rather than retrieving the data for all the objects before serialization.
+	 * The data for the following objects is retrieved concurrently while each object is
+	 * serialized, up to the maximum number of concurrent blob fetches per call.
+	 * Requests that include subsets of objects are not streamed. If true,
+	 * {@link #destroyStreamedData()} must be called after each request.
+	 */
+	public WorkspaceServerMethods(
+			final Workspace ws,
+			final Types types,
+			final IdReferenceHandlerSetFactoryBuilder idFacBuilder,
+			final ConfigurableAuthService auth,
+			final boolean streamObjectData) {
 		this.ws = ws;
 		this.types = types;
 		this.idFacBuilder = idFacBuilder;
 		this.auth = auth;
+		this.streamObjectData = streamObjectData;
 	}
 	
 	public ConfigurableAuthService getAuth() {
@@ -434,11 +462,64 @@ public class WorkspaceServerMethods {
 				processObjectSpecifications(params.getObjects());
 		final boolean noData = longToBoolean(params.getNoData(), false);
 		final boolean ignoreErrors = longToBoolean(params.getIgnoreErrors(), false);
+		if (streamObjectData && !noData && !hasSubsets(loi)) {
+			return getObjectsStreamed(loi, user, ignoreErrors, asAdmin);
+		}
 		final List<WorkspaceObjectData> objects = ws.getObjects(
 				user, loi, noData, ignoreErrors, asAdmin);
 		resourcesToDelete.set(objects);
 		return new GetObjects2Results().withData(translateObjectData(objects, user, true));
 	}
+	
+	// subset path errors are user errors and should be reported normally rather than
+	// truncating a streamed response, so requests with subsets are not streamed
+	private boolean hasSubsets(final List<ObjectIdentifier> loi) {
+		for (final ObjectIdentifier o: loi) {
+			if (o instanceof ObjIDWithRefPathAndSubset &&
+					!((ObjIDWithRefPathAndSubset) o).getSubSet().isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private GetObjects2Results getObjectsStreamed(
+			final List<ObjectIdentifier> loi,
+			final WorkspaceUser user,
+			final boolean ignoreErrors,
+			final boolean asAdmin)
+			throws CorruptWorkspaceDBException, WorkspaceCommunicationException,
+					InaccessibleObjectException, NoSuchReferenceException, NoSuchObjectException,
+					TypedObjectExtractionException, ReferenceSearchMaximumSizeExceededException,
+					JsonParseException, IOException {
+		final List<WorkspaceObjectData> objects = ws.getObjectsWithDeferredData(
+				user, loi, ignoreErrors, asAdmin);
+		final List<ObjectData> ret = translateObjectData(objects, user, true);
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(
+				ws, objects, ws.createDataManager(),
+				ws.getResourceConfig().getMaxConcurrentBlobFetchesPerCall());
+		destroyStreamedData();
+		prefetcher.set(pf);
+		for (int i = 0; i < objects.size(); i++) {
+			if (objects.get(i) != null) {
+				ret.get(i).setData(new UObject(new DeferredObjectData(pf, i)));
+			}
+		}
+		return new GetObjects2Results().withData(ret);
+	}
+	
+	/** Destroy any data retrieved for the streamed response to the most recent
+	 * {@link #getObjects(GetObjects2Params, WorkspaceUser, boolean, ThreadLocal)} call in the
+	 * current thread that was not written to the response, for example because writing the
+	 * response failed. Must be called once the response has been written.
+	 */
+	public void destroyStreamedData() {
+		final ObjectDataPrefetcher pf = prefetcher.get();
+		if (pf != null) {
+			prefetcher.remove();
+			pf.close();
+		}
+	}
 
 	private IdReferencePermissionHandlerSet getPermissionsHandler(final WorkspaceUser user) {
 		final IdReferencePermissionHandlerSet h;
@@ -0,0 +1,361 @@
+package us.kbase.workspace.listener;
+
+import static java.util.Objects.requireNonNull;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.WorkspaceUser;
+
+/** A workspace event listener that delivers events to another listener asynchronously, so that
+ * the latency of the other listener is not added to the latency of workspace operations.
+ *
+ * Events are added to a bounded queue and delivered, in order, by a single dispatch thread.
+ * The dispatch thread removes up to a maximum number of events from the queue at once and, if
+ * the other listener is a {@link BatchingWorkspaceEventListener}, delivers them as a batch.
+ *
+ * If the queue is full, the thread sending an event waits for space in the queue up to a
+ * maximum time, slowing down workspace operations to match the rate at which the other
+ * listener can process events. If the queue is still full, the event is dropped and logged.
+ *
+ * Since events are delivered asynchronously, errors thrown by the other listener are logged
+ * and counted rather than propagated to the thread that sent the event.
+ */
+public class AsynchronousEventListener implements WorkspaceEventListener {
+
+	private static final long POLL_TIME_MS = 100;
+	private static final long CLOSE_TIMEOUT_MS = 10000;
+
+	private final WorkspaceEventListener listener;
+	private final BlockingQueue<Consumer<WorkspaceEventListener>> queue;
+	private final int maxBatchSize;
+	private final long maxQueueWaitTimeMS;
+	private final Thread dispatcher;
+	private volatile boolean closed = false;
+
+	private final AtomicLong delivered = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong failedBatches = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+
+	/** Create the listener and start the dispatch thread.
+	 * @param listener the listener to which events will be delivered.
+	 * @param maxQueueSize the maximum number of events waiting for delivery.
+	 * @param maxBatchSize the maximum number of events to deliver in one batch.
+	 * @param maxQueueWaitTimeMS the maximum time, in milliseconds, a thread sending an event
+	 * will wait for space in the queue before dropping the event.
+	 */
+	public AsynchronousEventListener(
+			final WorkspaceEventListener listener,
+			final int maxQueueSize,
+			final int maxBatchSize,
+			final long maxQueueWaitTimeMS) {
+		this.listener = requireNonNull(listener, "listener");
+		if (maxQueueSize < 1) {
+			throw new IllegalArgumentException("maxQueueSize must be at least 1");
+		}
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		if (maxQueueWaitTimeMS < 0) {
+			throw new IllegalArgumentException("maxQueueWaitTimeMS must be at least 0");
+		}
+		this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+		this.maxBatchSize = maxBatchSize;
+		this.maxQueueWaitTimeMS = maxQueueWaitTimeMS;
+		dispatcher = new Thread(this::dispatch,
+				"listener-dispatch-" + listener.getClass().getSimpleName());
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	private void dispatch() {
+		final List<Consumer<WorkspaceEventListener>> batch = new ArrayList<>(maxBatchSize);
+		while (!closed || !queue.isEmpty()) {
+			try {
+				final Consumer<WorkspaceEventListener> first = queue.poll(
+						POLL_TIME_MS, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatchSize - 1);
+				deliver(batch);
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void deliver(final List<Consumer<WorkspaceEventListener>> batch) {
+		final BatchingWorkspaceEventListener batcher =
+				listener instanceof BatchingWorkspaceEventListener ?
+						(BatchingWorkspaceEventListener) listener : null;
+		if (batcher != null) {
+			batcher.startBatch();
+		}
+		for (final Consumer<WorkspaceEventListener> event: batch) {
+			try {
+				event.accept(listener);
+				delivered.incrementAndGet();
+			} catch (RuntimeException | Error e) {
+				failed.incrementAndGet();
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Event listener %s failed to process an event: %s",
+						listener.getClass().getName(), e.getMessage()), e);
+			}
+		}
+		if (batcher != null) {
+			try {
+				batcher.endBatch();
+			} catch (RuntimeException | Error e) {
+				failedBatches.incrementAndGet();
+				LoggerFactory.getLogger(getClass()).error(String.format(
+						"Event listener %s failed to process a batch of %s events: %s",
+						listener.getClass().getName(), batch.size(), e.getMessage()), e);
+			}
+		}
+	}
+
+	private void send(final Consumer<WorkspaceEventListener> event) {
+		if (closed) {
+			drop("the listener is closed");
+			return;
+		}
+		if (queue.offer(event)) {
+			return;
+		}
+		waits.incrementAndGet();
+		try {
+			if (!queue.offer(event, maxQueueWaitTimeMS, TimeUnit.MILLISECONDS)) {
+				drop("the event queue is full");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			drop("the thread was interrupted");
+		}
+	}
+
+	private void drop(final String reason) {
+		dropped.incrementAndGet();
+		LoggerFactory.getLogger(getClass()).error(String.format(
+				"Dropped event for listener %s because %s",
+				listener.getClass().getName(), reason));
+	}
+
+	/** Stop accepting events and wait for the events in the queue to be delivered. Events sent
+	 * after this method is called are dropped.
+	 * @param timeoutMS the maximum time to wait, in milliseconds. If the events have not been
+	 * delivered in this time, the dispatch thread is interrupted and any remaining events are
+	 * not delivered.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public void close(final long timeoutMS) throws InterruptedException {
+		closed = true;
+		dispatcher.join(timeoutMS);
+		if (dispatcher.isAlive()) {
+			dispatcher.interrupt();
+		}
+	}
+
+	/** Stop accepting events, wait up to 10 seconds for the events in the queue to be
+	 * delivered, and close the wrapped listener.
+	 */
+	@Override
+	public void close() {
+		try {
+			close(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		listener.close();
+	}
+
+	/** Get the number of events waiting for delivery.
+	 * @return the queue size.
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	/** Get the number of events successfully passed to the listener. If the listener is a
+	 * {@link BatchingWorkspaceEventListener}, the processing of the events may still have
+	 * failed when the batch ended - see {@link #getFailedBatchCount()}.
+	 * @return the number of delivered events.
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/** Get the number of events for which the listener threw an error.
+	 * @return the number of failed events.
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** Get the number of batches for which the listener threw an error when the batch ended.
+	 * @return the number of failed batches.
+	 */
+	public long getFailedBatchCount() {
+		return failedBatches.get();
+	}
+
+	/** Get the number of events that were dropped because the queue was full or the listener
+	 * was closed.
+	 * @return the number of dropped events.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/** Get the number of times a thread sending an event had to wait for space in the queue.
+	 * @return the number of waits.
+	 */
+	public long getQueueWaitCount() {
+		return waits.get();
+	}
+
+	@Override
+	public void createWorkspace(final WorkspaceUser user, final long id, final Instant time) {
+		send(l -> l.createWorkspace(user, id, time));
+	}
+
+	@Override
+	public void cloneWorkspace(
+			final WorkspaceUser user,
+			final long id,
+			final boolean isPublic,
+			final Instant time) {
+		send(l -> l.cloneWorkspace(user, id, isPublic, time));
+	}
+
+	@Override
+	public void setWorkspaceMetadata(final WorkspaceUser user, final long id, final Instant time) {
+		send(l -> l.setWorkspaceMetadata(user, id, time));
+	}
+
+	@Override
+	public void lockWorkspace(final WorkspaceUser user, final long id, final Instant time) {
+		send(l -> l.lockWorkspace(user, id, time));
+	}
+
+	@Override
+	public void renameWorkspace(
+			final WorkspaceUser user,
+			final long id,
+			final String newname,
+			final Instant time) {
+		send(l -> l.renameWorkspace(user, id, newname, time));
+	}
+
+	@Override
+	public void setGlobalPermission(
+			final WorkspaceUser user,
+			final long id,
+			final Permission permission,
+			final Instant time) {
+		send(l -> l.setGlobalPermission(user, id, permission, time));
+	}
+
+	@Override
+	public void setPermissions(
+			final WorkspaceUser user,
+			final long id,
+			final Permission permission,
+			final List<WorkspaceUser> users,
+			final Instant time) {
+		// the list may be modified by the caller before the event is delivered
+		final List<WorkspaceUser> usersCopy = new ArrayList<>(users);
+		send(l -> l.setPermissions(user, id, permission, usersCopy, time));
+	}
+
+	@Override
+	public void setWorkspaceDescription(
+			final WorkspaceUser user,
+			final long id,
+			final Instant time) {
+		send(l -> l.setWorkspaceDescription(user, id, time));
+	}
+
+	@Override
+	public void setWorkspaceOwner(
+			final WorkspaceUser user,
+			final long id,
+			final WorkspaceUser newUser,
+			final Optional<String> newName,
+			final Instant time) {
+		send(l -> l.setWorkspaceOwner(user, id, newUser, newName, time));
+	}
+
+	@Override
+	public void setWorkspaceDeleted(
+			final WorkspaceUser user,
+			final long id,
+			final boolean delete,
+			final long maxObjectID,
+			final Instant time) {
+		send(l -> l.setWorkspaceDeleted(user, id, delete, maxObjectID, time));
+	}
+
+	@Override
+	public void renameObject(
+			final WorkspaceUser user,
+			final long workspaceId,
+			final long objectId,
+			final String newName,
+			final Instant time) {
+		send(l -> l.renameObject(user, workspaceId, objectId, newName, time));
+	}
+
+	@Override
+	public void revertObject(final ObjectInformation object, final boolean isPublic) {
+		send(l -> l.revertObject(object, isPublic));
+	}
+
+	@Override
+	public void setObjectDeleted(
+			final WorkspaceUser user,
+			final long workspaceId,
+			final long objectId,
+			final boolean delete,
+			final Instant time) {
+		send(l -> l.setObjectDeleted(user, workspaceId, objectId, delete, time));
+	}
+
+	@Override
+	public void copyObject(final ObjectInformation object, final boolean isPublic) {
+		send(l -> l.copyObject(object, isPublic));
+	}
+
+	@Override
+	public void copyObject(
+			final WorkspaceUser user,
+			final long workspaceId,
+			final long objectId,
+			final int latestVersion,
+			final Instant time,
+			final boolean isPublic) {
+		send(l -> l.copyObject(user, workspaceId, objectId, latestVersion, time, isPublic));
+	}
+
+	@Override
+	public void saveObject(final ObjectInformation object, final boolean isPublic) {
+		send(l -> l.saveObject(object, isPublic));
+	}
+}
@@ -0,0 +1,24 @@
+package us.kbase.workspace.listener;
+
+/** A workspace event listener that can process events more efficiently when it is sent
+ * several events at once, for example by sending all the events to a remote service before
+ * waiting for the service to acknowledge any of them.
+ *
+ * Batches are delimited by calls to {@link #startBatch()} and {@link #endBatch()} in the same
+ * thread. Events received by a thread outside of a batch must be fully processed before the
+ * event method returns, as for any other listener.
+ * @see AsynchronousEventListener
+ */
+public interface BatchingWorkspaceEventListener extends WorkspaceEventListener {
+
+	/** Start a batch of events in the current thread. Until {@link #endBatch()} is called, the
+	 * listener may return from event methods before the events are fully processed.
+	 */
+	void startBatch();
+
+	/** End a batch of events in the current thread, completing the processing of all the
+	 * events received since {@link #startBatch()} was called.
+	 * @throws RuntimeException if processing any of the events in the batch failed.
+	 */
+	void endBatch();
+}
@@ -172,4 +172,22 @@ public interface WorkspaceEventListener {
 	 * @param isPublic true if the object is in a public workspace, false otherwise.
 	 */
 	void saveObject(ObjectInformation object, boolean isPublic);
+	
+	/** Check whether the listener durably records each event before the event method returns,
+	 * for example in a persistent outbox. Durable listeners are never sent events
+	 * asynchronously, since events waiting in an in-memory queue may be dropped or lost.
+	 * The default implementation returns false.
+	 * @return true if the listener is durable.
+	 */
+	default boolean isDurable() {
+		return false;
+	}
+	
+	/** Release any resources, such as connections and threads, held by the listener. Called
+	 * when the workspace server shuts down; no further events will be sent to the listener.
+	 * The default implementation does nothing.
+	 */
+	default void close() {
+		// nothing to do
+	}
 }
@@ -1,4 +1,4 @@
-/** Interfaces for workspace event listeners.
+/** Interfaces and utilities for workspace event listeners.
  * @author gaprice@lbl.gov
  *
  */
@@ -0,0 +1,278 @@
+package us.kbase.workspace.modules;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/** A durable outbox for Kafka messages stored in a MongoDB collection.
+ *
+ * Messages are added to the outbox with a single MongoDB insert, and so adding a message does
+ * not wait for Kafka. A relay, running in a background thread once {@link #start()} is called,
+ * removes messages from the outbox in batches, sends each batch to Kafka, and deletes the
+ * messages from the outbox once Kafka has acknowledged them. Messages that are not
+ * acknowledged remain in the outbox and are retried, and messages left in the outbox when the
+ * server stops are sent when the outbox is next started. Delivery is therefore at least once;
+ * a message may be sent more than once if the server stops between sending a message and
+ * deleting it from the outbox.
+ *
+ * Messages are sent in the order they were added to the outbox, except that a message that
+ * fails to send may be sent after later messages that succeeded.
+ *
+ * Each relay claims the messages it is sending for a limited time, and so more than one server
+ * may share an outbox.
+ */
+public class KafkaEventOutbox {
+
+	/** The name of the MongoDB collection where the outbox is stored. */
+	public static final String COLLECTION = "kafkaOutbox";
+
+	private static final String ID = "_id";
+	private static final String TOPIC = "topic";
+	private static final String MESSAGE = "msg";
+	private static final String CLAIM = "claim";
+	private static final String OWNER = "owner";
+
+	// the time a relay has to send a batch before other relays may claim the messages
+	private static final long CLAIM_TIME_MS = 5 * 60 * 1000;
+	private static final long SEND_TIMEOUT_MS = 35000;
+
+	private final DBCollection col;
+	private final KafkaProducer<String, Map<String, Object>> client;
+	private final int maxBatchSize;
+	private final long pollIntervalMS;
+	private final String relayID = UUID.randomUUID().toString();
+	// all fields below are guarded by this
+	private Thread relayThread = null;
+	private boolean closed = false;
+	// true if a message has been added since the relay last checked the outbox
+	private boolean added = false;
+
+	/** Create the outbox. The relay does not start until {@link #start()} is called.
+	 * @param db the MongoDB database in which to store the outbox.
+	 * @param client the Kafka client to which to send messages.
+	 * @param maxBatchSize the maximum number of messages to send to Kafka in one batch.
+	 * @param pollIntervalMS the time, in milliseconds, the relay waits between checks of the
+	 * outbox when it is empty.
+	 */
+	public KafkaEventOutbox(
+			final DB db,
+			final KafkaProducer<String, Map<String, Object>> client,
+			final int maxBatchSize,
+			final long pollIntervalMS) {
+		requireNonNull(db, "db");
+		this.client = requireNonNull(client, "client");
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		if (pollIntervalMS < 1) {
+			throw new IllegalArgumentException("pollIntervalMS must be at least 1");
+		}
+		this.maxBatchSize = maxBatchSize;
+		this.pollIntervalMS = pollIntervalMS;
+		col = db.getCollection(COLLECTION);
+		col.createIndex(new BasicDBObject(CLAIM, 1));
+	}
+
+	/** Add a message to the outbox.
+	 * @param topic the Kafka topic to which the message will be sent.
+	 * @param message the message.
+	 * @throws RuntimeException if the message could not be saved.
+	 */
+	public void add(final String topic, final Map<String, Object> message) {
+		requireNonNull(topic, "topic");
+		requireNonNull(message, "message");
+		final DBObject dobj = new BasicDBObject(TOPIC, topic)
+				.append(MESSAGE, new BasicDBObject(message))
+				.append(CLAIM, null)
+				.append(OWNER, null);
+		try {
+			col.insert(dobj);
+		} catch (MongoException e) {
+			throw new RuntimeException("Failed saving notification to the Kafka outbox: " +
+					e.getMessage(), e);
+		}
+		synchronized (this) {
+			added = true;
+			notifyAll();
+		}
+	}
+
+	/** Get the number of messages in the outbox, including messages that are being sent.
+	 * @return the number of messages.
+	 */
+	public long size() {
+		return col.count();
+	}
+
+	/** Start the relay thread. Has no effect if the relay is already started.
+	 * @throws IllegalStateException if the outbox is closed.
+	 */
+	public synchronized void start() {
+		if (closed) {
+			throw new IllegalStateException("The outbox is closed");
+		}
+		if (relayThread == null) {
+			relayThread = new Thread(this::runRelay, "kafka-outbox-relay");
+			relayThread.setDaemon(true);
+			relayThread.start();
+		}
+	}
+
+	/** Stop the relay thread, waiting for the current batch to be sent. Messages remaining in
+	 * the outbox are sent when an outbox on the same collection is next started.
+	 * @param timeoutMS the maximum time to wait, in milliseconds. If the relay has not stopped
+	 * in this time, it is interrupted.
+	 * @throws InterruptedException if the thread is interrupted while waiting.
+	 */
+	public void close(final long timeoutMS) throws InterruptedException {
+		final Thread t;
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+			t = relayThread;
+		}
+		if (t != null) {
+			t.join(timeoutMS);
+			if (t.isAlive()) {
+				t.interrupt();
+			}
+		}
+	}
+
+	private void runRelay() {
+		while (true) {
+			synchronized (this) {
+				added = false;
+			}
+			int sent = 0;
+			try {
+				sent = relay();
+			} catch (RuntimeException e) {
+				LoggerFactory.getLogger(getClass()).error(
+						"Error relaying notifications to Kafka: " + e.getMessage(), e);
+			}
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				if (sent < maxBatchSize && !added) {
+					try {
+						wait(pollIntervalMS);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+	}
+
+	/** Send one batch of messages from the outbox to Kafka and delete the messages that Kafka
+	 * acknowledges. This method is called repeatedly by the relay thread and is exposed for
+	 * testing purposes.
+	 * @return the number of messages successfully sent.
+	 */
+	public int relay() {
+		final Date now = new Date();
+		final List<Object> ids = new LinkedList<>();
+		for (final DBObject dobj: col.find(unclaimed(now), new BasicDBObject(ID, 1))
+				.sort(new BasicDBObject(ID, 1)).limit(maxBatchSize)) {
+			ids.add(dobj.get(ID));
+		}
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		// another relay may have claimed some of the messages since the find
+		final Date claimEnd = new Date(now.getTime() + CLAIM_TIME_MS);
+		final DBObject query = unclaimed(now).append(ID, new BasicDBObject("$in", ids));
+		col.update(query, new BasicDBObject("$set",
+				new BasicDBObject(CLAIM, claimEnd).append(OWNER, relayID)), false, true);
+		final List<DBObject> claimed = col.find(
+				new BasicDBObject(ID, new BasicDBObject("$in", ids))
+						.append(CLAIM, claimEnd).append(OWNER, relayID))
+				.sort(new BasicDBObject(ID, 1)).toArray();
+
+		// send everything before waiting so the producer can batch the messages
+		final List<Future<RecordMetadata>> results = new LinkedList<>();
+		for (final DBObject dobj: claimed) {
+			results.add(client.send(new ProducerRecord<>(
+					(String) dobj.get(TOPIC), toMessage((DBObject) dobj.get(MESSAGE)))));
+		}
+		final long deadline = System.currentTimeMillis() + SEND_TIMEOUT_MS;
+		final List<Object> sent = new LinkedList<>();
+		final List<Object> failed = new LinkedList<>();
+		for (int i = 0; i < claimed.size(); i++) {
+			final Object id = claimed.get(i).get(ID);
+			if (waitForSend(results.get(i), Math.max(0, deadline - System.currentTimeMillis()))) {
+				sent.add(id);
+			} else {
+				failed.add(id);
+			}
+		}
+		if (!sent.isEmpty()) {
+			col.remove(new BasicDBObject(ID, new BasicDBObject("$in", sent)));
+		}
+		if (!failed.isEmpty()) {
+			// release the claim so the messages are retried immediately
+			col.update(new BasicDBObject(ID, new BasicDBObject("$in", failed))
+					.append(OWNER, relayID),
+					new BasicDBObject("$set", new BasicDBObject(CLAIM, null).append(OWNER, null)),
+					false, true);
+		}
+		return sent.size();
+	}
+
+	private BasicDBObject unclaimed(final Date now) {
+		return new BasicDBObject("$or", Arrays.asList(
+				new BasicDBObject(CLAIM, null),
+				new BasicDBObject(CLAIM, new BasicDBObject("$lt", now))));
+	}
+
+	private Map<String, Object> toMessage(final DBObject dobj) {
+		final Map<String, Object> message = new HashMap<>();
+		for (final String key: dobj.keySet()) {
+			message.put(key, dobj.get(key));
+		}
+		return message;
+	}
+
+	private boolean waitForSend(final Future<RecordMetadata> res, final long timeoutMS) {
+		try {
+			res.get(timeoutMS, TimeUnit.MILLISECONDS);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logSendFailure(e);
+		} catch (TimeoutException e) {
+			logSendFailure(e);
+		} catch (ExecutionException e) {
+			logSendFailure(e.getCause());
+		}
+		return false;
+	}
+
+	private void logSendFailure(final Throwable e) {
+		LoggerFactory.getLogger(getClass()).error(
+				"Failed sending notification to Kafka, will retry: " + e.getMessage(), e);
+	}
+}
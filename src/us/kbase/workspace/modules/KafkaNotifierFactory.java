@@ -6,6 +6,7 @@ import static us.kbase.workspace.database.Util.checkString;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -22,15 +23,20 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
 
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.MongoClientUtils;
 import us.kbase.workspace.kbase.KBasePermissions;
+import us.kbase.workspace.listener.BatchingWorkspaceEventListener;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
 import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
@@ -66,6 +72,21 @@ import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
  * to Kafka returns, and if a write fails, an exception is thrown in the thread that called
  * the listener.
  * 
+ * The listener is a {@link BatchingWorkspaceEventListener}. Within a batch, events are sent
+ * to Kafka without waiting, and the listener waits for all the writes to complete when
+ * the batch ends.
+ * 
+ * Optionally, events may be written to a durable outbox in MongoDB rather than sent directly
+ * to Kafka - see {@link KafkaEventOutbox}. In this case the calling thread only waits for the
+ * MongoDB write, a background thread sends the events to Kafka, and events are not lost if
+ * Kafka is unavailable. With an outbox the listener is durable - see
+ * {@link WorkspaceEventListener#isDurable()}. The outbox is enabled by the optional
+ * configuration arguments:
+ * outbox.mongohost - the MongoDB host for the outbox.
+ * outbox.mongodatabase - the MongoDB database for the outbox.
+ * outbox.mongouser - the MongoDB user, if any.
+ * outbox.mongopwd - the MongoDB password, if any.
+ * 
  * @author gaprice@lbl.gov
  *
  */
@@ -82,6 +103,8 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 		 * If this turns out to be a bad plan, we may need to relax those requirements.
 		 * 
 		 * To improve reliability further, we'd need persistent storage of unsent messages.
+		 * The outbox provides that storage, at the cost of the user not being notified if
+		 * the send fails.
 		 */
 		
 		private static final String KAFKA = "Kafka";
@@ -89,6 +112,13 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 		// may want to split events into different topics
 		private static final String TOPIC = "topic";
 		private static final String KAFKA_WS_TOPIC = KAFKA + " " + TOPIC;
+		private static final String OUTBOX_MONGO_HOST = "outbox.mongohost";
+		private static final String OUTBOX_MONGO_DB = "outbox.mongodatabase";
+		private static final String OUTBOX_MONGO_USER = "outbox.mongouser";
+		private static final String OUTBOX_MONGO_PWD = "outbox.mongopwd";
+		private static final int OUTBOX_BATCH_SIZE = 500;
+		private static final long OUTBOX_POLL_INTERVAL_MS = 1000;
+		private static final long CLOSE_TIMEOUT_MS = 10000;
 		
 		/** The event type sent by the
 		 * {@link WorkspaceEventListener#saveObject(ObjectInformation, boolean)},
@@ -164,10 +194,59 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 		kcfg.put("acks", "all");
 		kcfg.put("enable.idempotence", true);
 		kcfg.put("delivery.timeout.ms", 30000);
-		return new KafkaNotifier(
-				topic,
-				bootstrapServers,
-				new KafkaProducer<>(kcfg, new StringSerializer(), new MapSerializer()));
+		final String outboxHost = cfg.get(OUTBOX_MONGO_HOST);
+		if (outboxHost == null || outboxHost.trim().isEmpty()) {
+			return new KafkaNotifier(
+					topic,
+					bootstrapServers,
+					new KafkaProducer<>(kcfg, new StringSerializer(), new MapSerializer()));
+		}
+		// the relay sends many messages at once, so let the producer batch them
+		kcfg.put("linger.ms", 20);
+		kcfg.put("batch.size", 256 * 1024);
+		final String mongoDatabase = cfg.get(OUTBOX_MONGO_DB);
+		final MongoClient mc = getOutboxClient(outboxHost, mongoDatabase, cfg);
+		final KafkaEventOutbox outbox;
+		final KafkaNotifier notifier;
+		try {
+			final KafkaProducer<String, Map<String, Object>> client =
+					new KafkaProducer<>(kcfg, new StringSerializer(), new MapSerializer());
+			outbox = new KafkaEventOutbox(mc.getDB(mongoDatabase), client, OUTBOX_BATCH_SIZE,
+					OUTBOX_POLL_INTERVAL_MS);
+			// the notifier owns the mongo client from here on and closes it in close()
+			notifier = new KafkaNotifier(topic, bootstrapServers, client, outbox, mc);
+		} catch (ListenerInitializationException | RuntimeException e) {
+			mc.close();
+			throw e;
+		}
+		outbox.start();
+		LoggerFactory.getLogger(getClass()).info("Started Kafka outbox relay. " +
+				"mongohost={} mongodatabase={}", outboxHost, mongoDatabase);
+		return notifier;
+	}
+	
+	private MongoClient getOutboxClient(
+			final String mongoHost,
+			final String mongoDatabase,
+			final Map<String, String> cfg)
+			throws ListenerInitializationException {
+		checkString(mongoDatabase, KAFKA + " " + OUTBOX_MONGO_DB);
+		String mongoUser = cfg.get(OUTBOX_MONGO_USER);
+		if (mongoUser == null || mongoUser.trim().isEmpty()) {
+			mongoUser = null;
+		}
+		final String mongoPwd = cfg.get(OUTBOX_MONGO_PWD);
+		if (mongoUser != null && (mongoPwd == null || mongoPwd.trim().isEmpty())) {
+			throw new ListenerInitializationException(String.format(
+					"%s %s is required if %s is provided",
+					KAFKA, OUTBOX_MONGO_PWD, OUTBOX_MONGO_USER));
+		}
+		try {
+			return MongoClientUtils.buildClient(mongoHost, mongoDatabase, mongoUser, mongoPwd);
+		} catch (MongoException e) {
+			throw new ListenerInitializationException(
+					"Failed to connect to the Kafka outbox MongoDB: " + e.getMessage(), e);
+		}
 	}
 
 	/** A Kafka JSON serializer for arbitrary maps. Requires no configuration. The topic
@@ -203,10 +282,17 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 		}
 	}
 	
-	private static class KafkaNotifier implements WorkspaceEventListener {
+	private static class KafkaNotifier implements BatchingWorkspaceEventListener {
 		
 		private final String topic;
 		private final KafkaProducer<String, Map<String, Object>> client;
+		// null if events are sent directly to Kafka
+		private final KafkaEventOutbox outbox;
+		// the client for the outbox database, or null if there is no outbox or the client is
+		// not owned by the notifier
+		private final MongoClient outboxClient;
+		// the results of sends in the current batch, or null if the thread isn't in a batch
+		private final ThreadLocal<List<Future<RecordMetadata>>> batch = new ThreadLocal<>();
 		
 		// constructor is here to allow for unit tests
 		private KafkaNotifier(
@@ -214,6 +300,27 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 				final String bootstrapServers,
 				final KafkaProducer<String, Map<String, Object>> client)
 				throws ListenerInitializationException {
+			this(topic, bootstrapServers, client, null);
+		}
+		
+		private KafkaNotifier(
+				final String topic,
+				final String bootstrapServers,
+				final KafkaProducer<String, Map<String, Object>> client,
+				final KafkaEventOutbox outbox)
+				throws ListenerInitializationException {
+			this(topic, bootstrapServers, client, outbox, null);
+		}
+		
+		private KafkaNotifier(
+				final String topic,
+				final String bootstrapServers,
+				final KafkaProducer<String, Map<String, Object>> client,
+				final KafkaEventOutbox outbox,
+				final MongoClient outboxClient)
+				throws ListenerInitializationException {
+			this.outbox = outbox;
+			this.outboxClient = outboxClient;
 			this.topic = checkString(topic, KAFKA_WS_TOPIC, 249);
 			final Matcher m = INVALID_TOPIC_CHARS.matcher(this.topic);
 			if (m.find()) {
@@ -234,10 +341,77 @@ public class KafkaNotifierFactory implements WorkspaceEventListenerFactory {
 			}
 		}
 		
+		@Override
+		public void startBatch() {
+			batch.set(new LinkedList<>());
+		}
+		
+		@Override
+		public void endBatch() {
+			final List<Future<RecordMetadata>> sent = batch.get();
+			batch.remove();
+			if (sent == null) {
+				return;
+			}
+			// the sends are all in flight at once, so they share the timeout
+			final long deadline = System.currentTimeMillis() + 35000;
+			RuntimeException failure = null;
+			for (final Future<RecordMetadata> res: sent) {
+				try {
+					waitForSend(res, Math.max(0, deadline - System.currentTimeMillis()));
+				} catch (RuntimeException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+		
+		// the outbox insert completes before the event method returns
+		@Override
+		public boolean isDurable() {
+			return outbox != null;
+		}
+		
+		/* Stops the outbox relay, then closes the outbox database client and the Kafka client.
+		 * Messages the relay doesn't finish sending stay in the outbox and are sent when an
+		 * outbox on the same collection is next started.
+		 */
+		@Override
+		public void close() {
+			if (outbox != null) {
+				try {
+					outbox.close(CLOSE_TIMEOUT_MS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (outboxClient != null) {
+				outboxClient.close();
+			}
+			client.close(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		}
+		
 		private void post(final Map<String, Object> message) {
+			if (outbox != null) {
+				outbox.add(topic, message);
+				return;
+			}
 			final Future<RecordMetadata> res = client.send(new ProducerRecord<>(topic, message));
+			final List<Future<RecordMetadata>> sent = batch.get();
+			if (sent != null) {
+				sent.add(res);
+			} else {
+				waitForSend(res, 35000);
+			}
+		}
+		
+		private void waitForSend(final Future<RecordMetadata> res, final long timeoutMS) {
 			try {
-				res.get(35000, TimeUnit.MILLISECONDS);
+				res.get(timeoutMS, TimeUnit.MILLISECONDS);
 			} catch (InterruptedException e) {
 				throw new RuntimeException("Failed sending notification to Kafka: " +
 						e.getMessage(), e);
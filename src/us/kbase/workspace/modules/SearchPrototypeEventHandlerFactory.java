@@ -11,15 +11,12 @@ import com.google.common.base.Optional;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBObject;
-import com.mongodb.MongoClient;
-import com.mongodb.MongoClientOptions;
-import com.mongodb.MongoCredential;
 import com.mongodb.MongoException;
-import com.mongodb.ServerAddress;
 
 import us.kbase.workspace.database.ObjectInformation;
 import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.MongoClientUtils;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
 import us.kbase.workspace.listener.WorkspaceEventListenerFactory;
@@ -83,15 +80,8 @@ public class SearchPrototypeEventHandlerFactory implements WorkspaceEventListene
 				mongoUser = null;
 			}
 			try {
-				if (mongoUser != null) {
-					final MongoCredential creds = MongoCredential.createCredential(
-							mongoUser, mongoDatabase, mongoPwd.toCharArray());
-					// unclear if and when it's safe to clear the password
-					db = new MongoClient(new ServerAddress(mongoHost), creds,
-							MongoClientOptions.builder().build()).getDB(mongoDatabase);
-				} else {
-					db = new MongoClient(new ServerAddress(mongoHost)).getDB(mongoDatabase);
-				}
+				db = MongoClientUtils.buildClient(mongoHost, mongoDatabase, mongoUser, mongoPwd)
+						.getDB(mongoDatabase);
 			} catch (MongoException e) {
 				throw new ListenerInitializationException(
 						"Failed to connect to MongoDB: " + e.getMessage(), e);
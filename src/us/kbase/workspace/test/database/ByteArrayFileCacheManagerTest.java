@@ -0,0 +1,281 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ChannelWriter;
+import us.kbase.workspace.database.ReturnedDataGovernor;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+public class ByteArrayFileCacheManagerTest {
+
+	private static final String DATA = "\"input here\""; // 12 bytes
+
+	private Path tempDir;
+	private TempFilesManager tfm;
+
+	@Before
+	public void before() throws Exception {
+		tempDir = Files.createTempDirectory("ByteArrayFileCacheManagerTest");
+		tfm = new TempFilesManager(tempDir.toFile());
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	private ByteArrayFileCache bafc(final ByteArrayFileCacheManager bafcMan) throws Exception {
+		return bafcMan.createBAFC(new ByteArrayInputStream(
+				DATA.getBytes(StandardCharsets.UTF_8)), true, true);
+	}
+
+	private String transfer(final ByteArrayFileCache bafc) throws Exception {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		bafc.transferTo(Channels.newChannel(bos));
+		return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void transferToFromMemory() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache bafc = bafc(bafcMan);
+
+		assertThat("incorrect mem size", bafcMan.getSizeInMem(), is(12));
+		assertThat("incorrect data", transfer(bafc), is(DATA));
+		// can transfer more than once
+		assertThat("incorrect data", transfer(bafc), is(DATA));
+	}
+
+	@Test
+	public void transferToFromFile() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(0, 100, tfm);
+		final ByteArrayFileCache bafc = bafc(bafcMan);
+
+		assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(12L));
+		assertThat("incorrect data", transfer(bafc), is(DATA));
+
+		final Path target = tempDir.resolve("target");
+		try (final FileChannel fc = FileChannel.open(
+				target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+			bafc.transferTo(fc);
+		}
+		assertThat("incorrect data", new String(Files.readAllBytes(target),
+				StandardCharsets.UTF_8), is(DATA));
+	}
+
+	@Test
+	public void transferToFail() throws Exception {
+		final ByteArrayFileCache bafc = bafc(new ByteArrayFileCacheManager(100, 0, null));
+
+		failTransferTo(bafc, new NullPointerException("target"));
+		bafc.destroy();
+		failTransferTo(bafc, new RuntimeException("This ByteArrayFileCache is destroyed"));
+	}
+
+	private void failTransferTo(final ByteArrayFileCache bafc, final Exception expected) {
+		try {
+			bafc.transferTo(expected instanceof NullPointerException ? null :
+				Channels.newChannel(new ByteArrayOutputStream()));
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void createBAFCWithChannelWriter() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 100, tfm);
+		final byte[] data = DATA.getBytes(StandardCharsets.UTF_8);
+
+		// write the second half first to check positional writes work
+		final ByteArrayFileCache bafc = bafcMan.createBAFC(12, fc -> {
+			fc.write(ByteBuffer.wrap(data, 6, 6), 6);
+			fc.write(ByteBuffer.wrap(data, 0, 6), 0);
+		}, true, false);
+
+		assertThat("incorrect data", bafc.getUObject().asClassInstance(String.class),
+				is("input here"));
+		assertThat("incorrect sorted", bafc.isSorted(), is(false));
+		assertThat("incorrect trusted", bafc.containsTrustedJson(), is(true));
+		assertThat("incorrect size", bafc.getSize(), is(12L));
+		// always stored on disk
+		assertThat("incorrect mem size", bafcMan.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(12L));
+		assertThat("incorrect data", transfer(bafc), is(DATA));
+	}
+
+	@Test
+	public void createBAFCWithChannelWriterFailBadInput() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 100, tfm);
+
+		failCreateBAFC(bafcMan, -1, fc -> {}, new IllegalArgumentException(
+				"size must be at least 0"));
+		failCreateBAFC(bafcMan, 1, null, new NullPointerException("writer"));
+		failCreateBAFC(bafcMan, 101, fc -> {}, new FileCacheLimitExceededException(
+				"Disk limit exceeded for file cache: 100"));
+	}
+
+	@Test
+	public void createBAFCWithChannelWriterFailWrongSize() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 100, tfm);
+
+		failCreateBAFC(bafcMan, 12, fc -> fc.write(ByteBuffer.wrap(new byte[11]), 0),
+				new FileCacheIOException(
+						"Expected 12 bytes to be written to the file cache, got 11"));
+		assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(0L));
+		assertThat("incorrect files", tempDir.toFile().list().length, is(0));
+	}
+
+	@Test
+	public void createBAFCWithChannelWriterFailWriter() throws Exception {
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 100, tfm);
+
+		failCreateBAFC(bafcMan, 12, fc -> {
+			throw new IllegalStateException("whoops");
+		}, new IllegalStateException("whoops"));
+		assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(0L));
+		assertThat("incorrect files", tempDir.toFile().list().length, is(0));
+	}
+
+	@Test
+	public void governorMemoryLease() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(100, 100, 0);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+				100, 100, tfm, gov);
+		final ByteArrayFileCache bafc1 = bafc(bafcMan);
+		final ByteArrayFileCache bafc2 = bafc(bafcMan);
+
+		assertThat("incorrect mem size", bafcMan.getSizeInMem(), is(24));
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(24L));
+		assertThat("incorrect gov disk", gov.getDiskUsage(), is(0L));
+
+		bafc1.destroy();
+		bafc1.destroy(); // no double release
+		// the manager's limits apply over the lifetime of the manager
+		assertThat("incorrect mem size", bafcMan.getSizeInMem(), is(24));
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(12L));
+		assertThat("incorrect data", transfer(bafc2), is(DATA));
+		bafc2.destroy();
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(0L));
+	}
+
+	@Test
+	public void governorMemoryReleasedOnReadFailure() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(100, 100, 0);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+				100, 100, tfm, gov);
+		// returns the data in one read, then fails
+		final InputStream input = new SequenceInputStream(
+				new ByteArrayInputStream(DATA.getBytes(StandardCharsets.UTF_8)),
+				new InputStream() {
+
+					@Override
+					public int read() throws IOException {
+						throw new IOException("connection reset");
+					}
+				});
+
+		try {
+			bafcMan.createBAFC(input, true, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new FileCacheIOException(
+					"connection reset"));
+		}
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(0L));
+		assertThat("incorrect gov disk", gov.getDiskUsage(), is(0L));
+
+		// the global memory budget is intact
+		bafc(bafcMan);
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(12L));
+	}
+
+	@Test
+	public void governorSpillsToDisk() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(20, 100, 0);
+		final ByteArrayFileCacheManager bafcMan1 = new ByteArrayFileCacheManager(
+				100, 100, tfm, gov);
+		final ByteArrayFileCacheManager bafcMan2 = new ByteArrayFileCacheManager(
+				100, 100, tfm, gov);
+		final ByteArrayFileCache bafc1 = bafc(bafcMan1);
+		// the second manager is under its own memory limit but the global limit is exceeded
+		final ByteArrayFileCache bafc2 = bafc(bafcMan2);
+
+		assertThat("incorrect mem size", bafcMan2.getSizeInMem(), is(0));
+		assertThat("incorrect disk size", bafcMan2.getSizeOnDisk(), is(12L));
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(12L));
+		assertThat("incorrect gov disk", gov.getDiskUsage(), is(12L));
+		assertThat("incorrect data", transfer(bafc2), is(DATA));
+		assertThat("incorrect files", tempDir.toFile().list().length, is(1));
+
+		bafc2.destroy();
+		assertThat("incorrect gov disk", gov.getDiskUsage(), is(0L));
+		assertThat("incorrect files", tempDir.toFile().list().length, is(0));
+		bafc1.destroy();
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(0L));
+
+		// memory is available again
+		bafc(bafcMan2);
+		assertThat("incorrect mem size", bafcMan2.getSizeInMem(), is(12));
+		assertThat("incorrect gov mem", gov.getMemoryUsage(), is(12L));
+	}
+
+	@Test
+	public void governorDiskLimitExceeded() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 20, 0);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+				100, 100, tfm, gov);
+		bafc(bafcMan);
+
+		try {
+			bafc(bafcMan);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new FileCacheLimitExceededException(
+					"Global disk limit exceeded for returned data: 20"));
+		}
+		failCreateBAFC(bafcMan, 12, fc -> {}, new FileCacheLimitExceededException(
+				"Global disk limit exceeded for returned data: 20"));
+		assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(12L));
+		assertThat("incorrect gov disk", gov.getDiskUsage(), is(12L));
+		assertThat("incorrect files", tempDir.toFile().list().length, is(1));
+	}
+
+	private void failCreateBAFC(
+			final ByteArrayFileCacheManager bafcMan,
+			final long size,
+			final ChannelWriter writer,
+			final Exception expected) {
+		try {
+			bafcMan.createBAFC(size, writer, true, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package us.kbase.workspace.test.database;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ReturnedDataGovernor;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
+
+public class ReturnedDataGovernorTest {
+
+	@Test
+	public void construct() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(10, 20, 0);
+
+		assertThat("incorrect max mem", gov.getMaxMemory(), is(10L));
+		assertThat("incorrect max disk", gov.getMaxDisk(), is(20L));
+		assertThat("incorrect mem", gov.getMemoryUsage(), is(0L));
+		assertThat("incorrect disk", gov.getDiskUsage(), is(0L));
+		assertThat("incorrect waiting", gov.getWaitingCount(), is(0));
+		assertThat("incorrect toString", gov.toString(), is(
+				"ReturnedDataGovernor [maxMemory=10, maxDisk=20, memoryUsage=0, diskUsage=0, " +
+				"waiting=0]"));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(-1, 0, 0, new IllegalArgumentException("maxMemory must be at least 0"));
+		failConstruct(0, -1, 0, new IllegalArgumentException("maxDisk must be at least 0"));
+		failConstruct(0, 0, -1, new IllegalArgumentException(
+				"maxWaitTimeInMS must be at least 0"));
+	}
+
+	private void failConstruct(
+			final long maxMemory,
+			final long maxDisk,
+			final long maxWait,
+			final Exception expected) {
+		try {
+			new ReturnedDataGovernor(maxMemory, maxDisk, maxWait);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void memory() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(10, 0, 0);
+
+		assertThat("incorrect reserve", gov.reserveMemory(6), is(true));
+		assertThat("incorrect reserve", gov.reserveMemory(5), is(false));
+		assertThat("incorrect reserve", gov.reserveMemory(4), is(true));
+		assertThat("incorrect reserve", gov.reserveMemory(0), is(true));
+		assertThat("incorrect reserve", gov.reserveMemory(1), is(false));
+		assertThat("incorrect mem", gov.getMemoryUsage(), is(10L));
+
+		gov.releaseMemory(6);
+		assertThat("incorrect mem", gov.getMemoryUsage(), is(4L));
+		assertThat("incorrect reserve", gov.reserveMemory(5), is(true));
+		assertThat("incorrect mem", gov.getMemoryUsage(), is(9L));
+		assertThat("incorrect disk", gov.getDiskUsage(), is(0L));
+	}
+
+	@Test
+	public void disk() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 0);
+
+		gov.reserveDisk(6);
+		gov.reserveDisk(4);
+		failReserveDisk(gov, 1, new FileCacheLimitExceededException(
+				"Global disk limit exceeded for returned data: 10"));
+		assertThat("incorrect disk", gov.getDiskUsage(), is(10L));
+
+		gov.releaseDisk(6);
+		gov.reserveDisk(5);
+		assertThat("incorrect disk", gov.getDiskUsage(), is(9L));
+		assertThat("incorrect mem", gov.getMemoryUsage(), is(0L));
+	}
+
+	@Test
+	public void diskWaitForRelease() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 60000);
+		gov.reserveDisk(8);
+		final ExecutorService exe = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> f = exe.submit(() -> {
+				gov.reserveDisk(5);
+				return null;
+			});
+			waitForWaiters(gov, 1);
+			assertThat("incorrect disk", gov.getDiskUsage(), is(8L));
+
+			gov.releaseDisk(3);
+			f.get();
+			assertThat("incorrect disk", gov.getDiskUsage(), is(10L));
+			assertThat("incorrect waiting", gov.getWaitingCount(), is(0));
+		} finally {
+			exe.shutdownNow();
+		}
+	}
+
+	@Test
+	public void diskWaitForNewLimits() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 60000);
+		gov.reserveDisk(8);
+		final ExecutorService exe = Executors.newSingleThreadExecutor();
+		try {
+			final Future<?> f = exe.submit(() -> {
+				gov.reserveDisk(5);
+				return null;
+			});
+			waitForWaiters(gov, 1);
+
+			gov.setLimits(20, 13);
+			f.get();
+			assertThat("incorrect disk", gov.getDiskUsage(), is(13L));
+			assertThat("incorrect max mem", gov.getMaxMemory(), is(20L));
+			assertThat("incorrect max disk", gov.getMaxDisk(), is(13L));
+		} finally {
+			exe.shutdownNow();
+		}
+	}
+
+	@Test
+	public void diskWaitTimeout() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 100);
+		gov.reserveDisk(8);
+
+		final long start = System.nanoTime();
+		failReserveDisk(gov, 5, new FileCacheLimitExceededException(
+				"Global disk limit exceeded for returned data: 10"));
+		final long elapsedMS = (System.nanoTime() - start) / 1000000;
+		assertThat("waited too short: " + elapsedMS, elapsedMS >= 100, is(true));
+		assertThat("incorrect disk", gov.getDiskUsage(), is(8L));
+		assertThat("incorrect waiting", gov.getWaitingCount(), is(0));
+	}
+
+	@Test
+	public void diskNoWaitForLargerThanLimit() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 60000);
+
+		final long start = System.nanoTime();
+		failReserveDisk(gov, 11, new FileCacheLimitExceededException(
+				"Global disk limit exceeded for returned data: 10"));
+		final long elapsedMS = (System.nanoTime() - start) / 1000000;
+		assertThat("waited too long: " + elapsedMS, elapsedMS < 10000, is(true));
+	}
+
+	@Test
+	public void diskWaitInterrupted() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(0, 10, 60000);
+		gov.reserveDisk(8);
+
+		Thread.currentThread().interrupt();
+		try {
+			failReserveDisk(gov, 5, new FileCacheLimitExceededException(
+					"Interrupted while waiting for disk space for returned data"));
+			assertThat("incorrect interrupt", Thread.currentThread().isInterrupted(), is(true));
+		} finally {
+			Thread.interrupted();
+		}
+		assertThat("incorrect disk", gov.getDiskUsage(), is(8L));
+		assertThat("incorrect waiting", gov.getWaitingCount(), is(0));
+	}
+
+	@Test
+	public void failBadSizes() throws Exception {
+		final ReturnedDataGovernor gov = new ReturnedDataGovernor(10, 10, 0);
+		final Exception expected = new IllegalArgumentException("size must be at least 0");
+
+		try {
+			gov.reserveMemory(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+		try {
+			gov.releaseMemory(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+		failReserveDisk(gov, -1, expected);
+		try {
+			gov.releaseDisk(-1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+		try {
+			gov.setLimits(-1, 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"maxMemory must be at least 0"));
+		}
+	}
+
+	private void failReserveDisk(
+			final ReturnedDataGovernor gov,
+			final long size,
+			final Exception expected) {
+		try {
+			gov.reserveDisk(size);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	private void waitForWaiters(final ReturnedDataGovernor gov, final int count)
+			throws Exception {
+		for (int i = 0; i < 1000 && gov.getWaitingCount() != count; i++) {
+			Thread.sleep(10);
+		}
+		assertThat("incorrect waiting", gov.getWaitingCount(), is(count));
+	}
+}
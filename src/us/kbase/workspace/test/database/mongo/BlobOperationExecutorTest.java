@@ -0,0 +1,250 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.mongo.BlobOperationExecutor;
+import us.kbase.workspace.database.mongo.BlobOperationExecutor.BlobOperation;
+
+public class BlobOperationExecutorTest {
+
+	private static final List<String> KEYS = Arrays.asList("a", "b", "c", "d", "e", "f");
+
+	@Test
+	public void construct() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 6);
+		assertThat("incorrect max", e.getMaxConcurrentOperations(), is(6));
+
+		e.setMaxConcurrentOperations(10);
+		assertThat("incorrect max", e.getMaxConcurrentOperations(), is(10));
+		e.setMaxConcurrentOperations(2);
+		assertThat("incorrect max", e.getMaxConcurrentOperations(), is(2));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(null, 1, new NullPointerException("name"));
+		failConstruct("foo", 0, new IllegalArgumentException(
+				"maxConcurrentOperations must be at least 1"));
+	}
+
+	private void failConstruct(final String name, final int max, final Exception expected) {
+		try {
+			new BlobOperationExecutor(name, max);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void setMaxFail() throws Exception {
+		try {
+			new BlobOperationExecutor("foo", 1).setMaxConcurrentOperations(0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"maxConcurrentOperations must be at least 1"));
+		}
+	}
+
+	@Test
+	public void runSerially() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 4);
+		final Thread caller = Thread.currentThread();
+		final Map<String, String> res = new HashMap<>();
+
+		e.run(KEYS, 1, k -> {
+			assertThat("incorrect thread", Thread.currentThread(), is(caller));
+			return k + k;
+		}, res);
+
+		assertThat("incorrect results", res, is(results()));
+	}
+
+	@Test
+	public void runSingleKeyInCallingThread() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 4);
+		final Thread caller = Thread.currentThread();
+		final Map<String, String> res = new HashMap<>();
+
+		e.run(Arrays.asList("a"), 4, k -> {
+			assertThat("incorrect thread", Thread.currentThread(), is(caller));
+			return k + k;
+		}, res);
+
+		assertThat("incorrect results", res, is(ImmutableMap.of("a", "aa")));
+	}
+
+	@Test
+	public void runConcurrentlyPerCallLimit() throws Exception {
+		runConcurrently(10, 3, 3);
+	}
+
+	@Test
+	public void runConcurrentlyGlobalLimit() throws Exception {
+		runConcurrently(2, 5, 2);
+	}
+
+	private void runConcurrently(
+			final int globalMax,
+			final int perCallMax,
+			final int expectedMaxRunning)
+			throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", globalMax);
+		final Map<String, String> res = new HashMap<>();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		e.run(KEYS, perCallMax, k -> {
+			final int r = running.incrementAndGet();
+			maxRunning.accumulateAndGet(r, Math::max);
+			Thread.sleep(100);
+			running.decrementAndGet();
+			return k + k;
+		}, res);
+
+		assertThat("incorrect results", res, is(results()));
+		assertThat("incorrect max running", maxRunning.get(), is(expectedMaxRunning));
+	}
+
+	@Test
+	public void runFailSerially() throws Exception {
+		runFail(1, ImmutableMap.of("a", "aa", "b", "bb"));
+	}
+
+	@Test
+	public void runFailConcurrently() throws Exception {
+		// c and e both fail, but c is first in order. d is started before e fails, f is not.
+		runFail(3, ImmutableMap.of("a", "aa", "b", "bb", "d", "dd"));
+	}
+
+	private void runFail(final int perCallMax, final Map<String, String> expected)
+			throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 10);
+		final Map<String, String> res = new HashMap<>();
+		final BlobOperation<String, String> op = k -> {
+			if (k.equals("c")) {
+				Thread.sleep(300);
+				throw new IllegalStateException("c failed");
+			}
+			if (k.equals("d")) {
+				Thread.sleep(100); // ensure e fails before d completes
+			}
+			if (k.equals("e")) {
+				throw new IllegalArgumentException("e failed");
+			}
+			return k + k;
+		};
+		try {
+			e.run(KEYS, perCallMax, op, res);
+			fail("expected exception");
+		} catch (ExecutionException got) {
+			TestCommon.assertExceptionCorrect(got.getCause(),
+					new IllegalStateException("c failed"));
+		}
+		assertThat("incorrect results", res, is(expected));
+	}
+
+	@Test
+	public void runFailBadInput() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 10);
+		final Collection<String> k = Collections.emptyList();
+		final BlobOperation<String, String> o = s -> s;
+		final Map<String, String> r = new HashMap<>();
+
+		failRun(e, null, 1, o, r, new NullPointerException("keys"));
+		failRun(e, k, 0, o, r, new IllegalArgumentException(
+				"maxConcurrentOperations must be at least 1"));
+		failRun(e, k, 1, null, r, new NullPointerException("operation"));
+		failRun(e, k, 1, o, null, new NullPointerException("results"));
+	}
+
+	private void failRun(
+			final BlobOperationExecutor e,
+			final Collection<String> keys,
+			final int max,
+			final BlobOperation<String, String> op,
+			final Map<String, String> results,
+			final Exception expected) {
+		try {
+			e.run(keys, max, op, results);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void submit() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 2);
+		final Thread caller = Thread.currentThread();
+
+		final Future<String> f = e.submit("a", k -> {
+			assertThat("incorrect thread", Thread.currentThread() == caller, is(false));
+			return k + k;
+		});
+
+		assertThat("incorrect result", f.get(), is("aa"));
+	}
+
+	@Test
+	public void submitFail() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 2);
+
+		final Future<String> f = e.submit("a", k -> {
+			throw new IllegalStateException("a failed");
+		});
+		try {
+			f.get();
+			fail("expected exception");
+		} catch (ExecutionException got) {
+			TestCommon.assertExceptionCorrect(got.getCause(),
+					new IllegalStateException("a failed"));
+		}
+	}
+
+	@Test
+	public void submitFailBadInput() throws Exception {
+		final BlobOperationExecutor e = new BlobOperationExecutor("foo", 2);
+		failSubmit(e, null, s -> s, new NullPointerException("key"));
+		failSubmit(e, "a", null, new NullPointerException("operation"));
+	}
+
+	private void failSubmit(
+			final BlobOperationExecutor e,
+			final String key,
+			final BlobOperation<String, String> op,
+			final Exception expected) {
+		try {
+			e.submit(key, op);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	private Map<String, String> results() {
+		final Map<String, String> ret = new HashMap<>();
+		for (final String k: KEYS) {
+			ret.put(k, k + k);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,240 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.Restreamable;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.mongo.BlobStore;
+import us.kbase.workspace.database.mongo.CachingBlobStore;
+import us.kbase.workspace.database.mongo.exceptions.NoSuchBlobException;
+
+public class CachingBlobStoreTest {
+
+	private static final MD5 MD5_1 = new MD5("1fc5a11811de5142af444f5d482cd748");
+	private static final String DATA = "\"input here\""; // 12 bytes
+
+	private Path tempDir;
+
+	@Before
+	public void before() throws Exception {
+		tempDir = Files.createTempDirectory("CachingBlobStoreTest");
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	private ByteArrayFileCache bafc(final ByteArrayFileCacheManager bafcMan, final boolean sorted)
+			throws Exception {
+		return bafcMan.createBAFC(new ByteArrayInputStream(DATA.getBytes()), true, sorted);
+	}
+
+	private void assertBAFCCorrect(final ByteArrayFileCache ba, final boolean sorted)
+			throws Exception {
+		assertThat("incorrect data", ba.getUObject().asClassInstance(String.class),
+				is("input here"));
+		assertThat("incorrect sorted", ba.isSorted(), is(sorted));
+		assertThat("incorrect is trusted json", ba.containsTrustedJson(), is(true));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final File f = tempDir.resolve("afile").toFile();
+		f.createNewFile();
+
+		failConstruct(null, 1, 1, tempDir.toFile(), new NullPointerException("store"));
+		failConstruct(bs, -1, 1, tempDir.toFile(),
+				new IllegalArgumentException("maxMemoryUsage must be at least 0"));
+		failConstruct(bs, 1, -1, tempDir.toFile(),
+				new IllegalArgumentException("maxDiskUsage must be at least 0"));
+		failConstruct(bs, 1, 1, null, new NullPointerException("cacheDir"));
+		failConstruct(bs, 1, 1, f, new IllegalArgumentException(
+				"Blob cache location must be a directory: " + f));
+	}
+
+	private void failConstruct(
+			final BlobStore store,
+			final long maxMem,
+			final long maxDisk,
+			final File cacheDir,
+			final Exception expected) {
+		try {
+			new CachingBlobStore(store, maxMem, maxDisk, cacheDir);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void constructClearsCacheDir() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		cacheDir.mkdir();
+		new File(cacheDir, "leftover").createNewFile();
+
+		new CachingBlobStore(mock(BlobStore.class), 0, 100, cacheDir);
+
+		assertThat("incorrect files", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void constructCreatesCacheDir() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").resolve("cache2").toFile();
+
+		new CachingBlobStore(mock(BlobStore.class), 0, 100, cacheDir);
+
+		assertThat("incorrect dir", cacheDir.isDirectory(), is(true));
+	}
+
+	@Test
+	public void delegates() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 100, 0, null);
+		final Restreamable r = mock(Restreamable.class);
+
+		cbs.saveBlob(MD5_1, r, true);
+		verify(bs).saveBlob(MD5_1, r, true);
+
+		final List<DependencyStatus> status = Arrays.asList(
+				new DependencyStatus(true, "fine", "blobs", "1"));
+		when(bs.status()).thenReturn(status);
+		assertThat("incorrect status", cbs.status(), is(status));
+	}
+
+	@Test
+	public void getBlobFromMemory() throws Exception {
+		getBlobFromMemory(true);
+		getBlobFromMemory(false);
+	}
+
+	private void getBlobFromMemory(final boolean sorted) throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		when(bs.getBlob(MD5_1, bafcMan)).thenReturn(bafc(bafcMan, sorted));
+
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), sorted);
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(12L));
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), sorted);
+
+		verify(bs, times(1)).getBlob(MD5_1, bafcMan);
+		// the cached data still counts against the per request limit
+		assertThat("incorrect request mem", bafcMan.getSizeInMem(), is(24));
+	}
+
+	@Test
+	public void getBlobFromDisk() throws Exception {
+		getBlobFromDisk(true);
+		getBlobFromDisk(false);
+	}
+
+	private void getBlobFromDisk(final boolean sorted) throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 0, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		when(bs.getBlob(MD5_1, bafcMan)).thenReturn(bafc(bafcMan, sorted));
+
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), sorted);
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", cbs.getDiskCacheSize(), is(12L));
+		assertThat("incorrect file count", cacheDir.list().length, is(1));
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), sorted);
+
+		verify(bs, times(1)).getBlob(MD5_1, bafcMan);
+	}
+
+	@Test
+	public void getBlobTooLargeToCache() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		// max cacheable blob size is 11 for both tiers
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 47, 47, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		when(bs.getBlob(MD5_1, bafcMan)).thenReturn(bafc(bafcMan, true), bafc(bafcMan, true));
+
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), true);
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), true);
+
+		verify(bs, times(2)).getBlob(MD5_1, bafcMan);
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", cbs.getDiskCacheSize(), is(0L));
+		assertThat("incorrect file count", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void removeBlob() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 48, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		when(bs.getBlob(MD5_1, bafcMan)).thenReturn(bafc(bafcMan, true), bafc(bafcMan, true));
+
+		cbs.getBlob(MD5_1, bafcMan);
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(12L));
+
+		cbs.removeBlob(MD5_1);
+		verify(bs).removeBlob(MD5_1);
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(0L));
+
+		assertBAFCCorrect(cbs.getBlob(MD5_1, bafcMan), true);
+		verify(bs, times(2)).getBlob(MD5_1, bafcMan);
+	}
+
+	@Test
+	public void getBlobFailBadInput() throws Exception {
+		final CachingBlobStore cbs = new CachingBlobStore(mock(BlobStore.class), 48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		getBlobFail(cbs, null, bafcMan, new NullPointerException("md5"));
+		getBlobFail(cbs, MD5_1, null, new NullPointerException("bafcMan"));
+	}
+
+	@Test
+	public void getBlobFailNoBlob() throws Exception {
+		final BlobStore bs = mock(BlobStore.class);
+		final CachingBlobStore cbs = new CachingBlobStore(bs, 48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		when(bs.getBlob(MD5_1, bafcMan)).thenThrow(new NoSuchBlobException("no blob"));
+
+		getBlobFail(cbs, MD5_1, bafcMan, new NoSuchBlobException("no blob"));
+		assertThat("incorrect mem size", cbs.getMemoryCacheSize(), is(0L));
+	}
+
+	private void getBlobFail(
+			final CachingBlobStore cbs,
+			final MD5 md5,
+			final ByteArrayFileCacheManager bafcMan,
+			final Exception expected) {
+		try {
+			cbs.getBlob(md5, bafcMan);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.mongo.IncomingReferenceCache;
+import us.kbase.workspace.database.mongo.IncomingReferenceCache.IncomingReferenceProvider;
+
+public class IncomingReferenceCacheTest {
+
+	private static final Reference R1 = new Reference("1/1/1");
+	private static final Reference R2 = new Reference("1/2/1");
+	private static final Reference R3 = new Reference("2/1/3");
+	private static final Reference R4 = new Reference("3/1/1");
+	private static final Reference R5 = new Reference("3/2/1");
+
+	private static final Set<Reference> MT = Collections.emptySet();
+
+	private class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		public FakeTicker advance(final long milliseconds) {
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+			return this;
+		}
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, 1, new FakeTicker(),
+				new IllegalArgumentException("maxCacheSize must be at least 1"));
+		failConstruct(1, 0, 1, new FakeTicker(),
+				new IllegalArgumentException("cacheTimeInMS must be at least 1"));
+		failConstruct(1, 1, 0, new FakeTicker(),
+				new IllegalArgumentException("negativeCacheTimeInMS must be at least 1"));
+		failConstruct(1, 1, 1, null, new NullPointerException("ticker"));
+	}
+
+	private void failConstruct(
+			final int size,
+			final int time,
+			final int negtime,
+			final Ticker ticker,
+			final Exception expected) {
+		try {
+			new IncomingReferenceCache(size, time, negtime, ticker);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void getAndCache() throws Exception {
+		final IncomingReferenceProvider prov = mock(IncomingReferenceProvider.class);
+		final IncomingReferenceCache c = new IncomingReferenceCache(
+				100, 10000, 1000, new FakeTicker());
+
+		// R3 is missing from the provider results, which is treated as no references
+		when(prov.getIncomingReferences(ImmutableSet.of(R1, R2, R3))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4, R5), R2, MT));
+
+		final Map<Reference, Set<Reference>> expected = ImmutableMap.of(
+				R1, ImmutableSet.of(R4, R5), R2, MT, R3, MT);
+		assertThat("incorrect refs", c.getIncomingReferences(
+				ImmutableSet.of(R1, R2, R3), prov), is(expected));
+		assertThat("incorrect size", c.size(), is(1L));
+		assertThat("incorrect neg size", c.negativeSize(), is(2L));
+
+		// only the uncached version is requested from the provider
+		when(prov.getIncomingReferences(ImmutableSet.of(R4))).thenReturn(ImmutableMap.of(
+				R4, ImmutableSet.of(R5)));
+
+		assertThat("incorrect refs", c.getIncomingReferences(
+				ImmutableSet.of(R1, R2, R3, R4), prov), is(ImmutableMap.of(
+						R1, ImmutableSet.of(R4, R5), R2, MT, R3, MT, R4, ImmutableSet.of(R5))));
+		assertThat("incorrect refs", c.getIncomingReferences(
+				ImmutableSet.of(R2, R4), prov), is(ImmutableMap.of(
+						R2, MT, R4, ImmutableSet.of(R5))));
+
+		verify(prov).getIncomingReferences(ImmutableSet.of(R1, R2, R3));
+		verify(prov).getIncomingReferences(ImmutableSet.of(R4));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void expire() throws Exception {
+		final IncomingReferenceProvider prov = mock(IncomingReferenceProvider.class);
+		final FakeTicker ticker = new FakeTicker();
+		final IncomingReferenceCache c = new IncomingReferenceCache(100, 10000, 1000, ticker);
+
+		when(prov.getIncomingReferences(ImmutableSet.of(R1, R2))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4), R2, MT));
+		when(prov.getIncomingReferences(ImmutableSet.of(R2))).thenReturn(ImmutableMap.of(
+				R2, ImmutableSet.of(R5)));
+		when(prov.getIncomingReferences(ImmutableSet.of(R1))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4, R5)));
+
+		c.getIncomingReferences(ImmutableSet.of(R1, R2), prov);
+
+		// the negative entry expires first
+		ticker.advance(1001);
+		assertThat("incorrect refs", c.getIncomingReferences(ImmutableSet.of(R1, R2), prov),
+				is(ImmutableMap.of(R1, ImmutableSet.of(R4), R2, ImmutableSet.of(R5))));
+
+		ticker.advance(9000);
+		assertThat("incorrect refs", c.getIncomingReferences(ImmutableSet.of(R1, R2), prov),
+				is(ImmutableMap.of(R1, ImmutableSet.of(R4, R5), R2, ImmutableSet.of(R5))));
+
+		verify(prov).getIncomingReferences(ImmutableSet.of(R1, R2));
+		verify(prov).getIncomingReferences(ImmutableSet.of(R2));
+		verify(prov).getIncomingReferences(ImmutableSet.of(R1));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void invalidate() throws Exception {
+		final IncomingReferenceProvider prov = mock(IncomingReferenceProvider.class);
+		final IncomingReferenceCache c = new IncomingReferenceCache(
+				100, 10000, 1000, new FakeTicker());
+
+		when(prov.getIncomingReferences(ImmutableSet.of(R1, R2, R3))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4), R2, MT, R3, MT));
+		when(prov.getIncomingReferences(ImmutableSet.of(R1, R2))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4, R5), R2, ImmutableSet.of(R5)));
+
+		c.getIncomingReferences(ImmutableSet.of(R1, R2, R3), prov);
+		c.invalidate(ImmutableSet.of(R1, R2, R5));
+
+		assertThat("incorrect size", c.size(), is(0L));
+		assertThat("incorrect neg size", c.negativeSize(), is(1L));
+		assertThat("incorrect refs", c.getIncomingReferences(
+				ImmutableSet.of(R1, R2, R3), prov), is(ImmutableMap.of(
+						R1, ImmutableSet.of(R4, R5), R2, ImmutableSet.of(R5), R3, MT)));
+
+		verify(prov).getIncomingReferences(ImmutableSet.of(R1, R2, R3));
+		verify(prov).getIncomingReferences(ImmutableSet.of(R1, R2));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void invalidateDuringLoad() throws Exception {
+		final IncomingReferenceCache c = new IncomingReferenceCache(
+				100, 10000, 1000, new FakeTicker());
+
+		// simulates a save completing while the provider queries the database
+		final Map<Reference, Set<Reference>> refs = c.getIncomingReferences(
+				ImmutableSet.of(R1, R2), new IncomingReferenceProvider() {
+
+					@Override
+					public Map<Reference, Set<Reference>> getIncomingReferences(
+							final Set<Reference> toLoad) {
+						c.invalidate(ImmutableSet.of(R1));
+						return ImmutableMap.of(R1, ImmutableSet.of(R4), R2, MT);
+					}
+				});
+
+		assertThat("incorrect refs", refs, is(ImmutableMap.of(R1, ImmutableSet.of(R4), R2, MT)));
+		assertThat("incorrect size", c.size(), is(0L));
+		assertThat("incorrect neg size", c.negativeSize(), is(0L));
+	}
+
+	@Test
+	public void returnedSetsAreImmutable() throws Exception {
+		final IncomingReferenceProvider prov = mock(IncomingReferenceProvider.class);
+		final IncomingReferenceCache c = new IncomingReferenceCache(
+				100, 10000, 1000, new FakeTicker());
+
+		when(prov.getIncomingReferences(ImmutableSet.of(R1, R2))).thenReturn(ImmutableMap.of(
+				R1, ImmutableSet.of(R4), R2, MT));
+
+		final Map<Reference, Set<Reference>> refs = c.getIncomingReferences(
+				ImmutableSet.of(R1, R2), prov);
+		for (final Reference r: refs.keySet()) {
+			try {
+				refs.get(r).add(R5);
+				fail("expected exception");
+			} catch (UnsupportedOperationException e) {
+				// pass
+			}
+		}
+	}
+
+	@Test
+	public void failBadInput() throws Exception {
+		final IncomingReferenceProvider prov = mock(IncomingReferenceProvider.class);
+		final IncomingReferenceCache c = new IncomingReferenceCache(
+				100, 10000, 1000, new FakeTicker());
+
+		failGet(c, null, prov, new NullPointerException("refs"));
+		failGet(c, ImmutableSet.of(R1), null, new NullPointerException("provider"));
+
+		try {
+			c.invalidate(null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("refs"));
+		}
+	}
+
+	private void failGet(
+			final IncomingReferenceCache c,
+			final Set<Reference> refs,
+			final IncomingReferenceProvider prov,
+			final Exception expected) {
+		try {
+			c.getIncomingReferences(refs, prov);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
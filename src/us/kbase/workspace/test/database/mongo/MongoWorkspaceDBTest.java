@@ -3,15 +3,26 @@ package us.kbase.workspace.test.database.mongo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static us.kbase.common.test.TestCommon.set;
 
+import java.io.ByteArrayInputStream;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.bson.types.ObjectId;
 import org.junit.AfterClass;
@@ -19,6 +30,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
@@ -31,23 +43,36 @@ import us.kbase.common.test.controllers.mongo.MongoController;
 import us.kbase.typedobj.core.AbsoluteTypeDefId;
 import us.kbase.typedobj.core.ExtractedMetadata;
 import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.StructuralIndex;
 import us.kbase.typedobj.core.SubsetSelection;
 import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.typedobj.core.TypeDefId;
 import us.kbase.typedobj.core.TypeDefName;
 import us.kbase.typedobj.core.ValidatedTypedObject;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ObjectIDNoWSNoVer;
 import us.kbase.workspace.database.ObjectIDResolvedWS;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
 import us.kbase.workspace.database.Provenance;
 import us.kbase.workspace.database.Provenance.ProvenanceAction;
+import us.kbase.workspace.database.Reference;
+import us.kbase.workspace.database.ResolvedSaveObject;
 import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.TypeAndReference;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.WorkspaceInformation;
 import us.kbase.workspace.database.WorkspaceObjectData;
 import us.kbase.workspace.database.WorkspaceSaveObject;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.database.exceptions.DeletedObjectException;
+import us.kbase.workspace.database.exceptions.NoSuchWorkspaceException;
 import us.kbase.workspace.database.mongo.BlobStore;
 import us.kbase.workspace.database.mongo.Fields;
 import us.kbase.workspace.database.mongo.MongoWorkspaceDB;
+import us.kbase.workspace.database.mongo.SubsetCache;
 
 //TODO TEST start moving a bunch of the tests from Workspace test to here, and use mocks in workspace test.
 
@@ -210,4 +235,792 @@ public class MongoWorkspaceDBTest {
 		assertThat("incorrect data", wod.getSerializedData(), nullValue());
 		assertThat("incorrect ext ids", wod.getExtractedIds(), is(Collections.emptyMap()));
 	}
+	
+	@Test
+	public void saveAndGetObjectsWithSharedData() throws Exception {
+		// check that identical data is only saved and fetched once per call
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		
+		db.createWorkspace(new WorkspaceUser("u"), "ws", false, null, new WorkspaceUserMetadata());
+		
+		final Provenance p = new Provenance(new WorkspaceUser("u"), new Date(10000));
+		p.setWorkspaceID(1L);
+		
+		final MD5 md5 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(md5);
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		final List<ResolvedSaveObject> objs = new LinkedList<>();
+		for (final String name: Arrays.asList("obj1", "obj2", "obj3")) {
+			objs.add(new WorkspaceSaveObject(
+					new ObjectIDNoWSNoVer(name),
+					new UObject(ImmutableMap.of("foo", "bar")),
+					new TypeDefId("Mod.Type", "5.1"),
+					null,
+					p,
+					false)
+					.resolve(
+							vto,
+							set(),
+							Collections.emptyList(),
+							Collections.emptyMap()));
+		}
+		final List<ObjectInformation> info = db.saveObjects(new WorkspaceUser("u"), wsid, objs);
+		
+		assertThat("incorrect object ids", info.stream().map(i -> i.getObjectId())
+				.collect(Collectors.toList()), is(Arrays.asList(1L, 2L, 3L)));
+		verify(bs, times(1)).saveBlob(md5, vto, true);
+		
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+				100, 100, tfm);
+		when(bs.getBlob(md5, bafcMan)).thenReturn(bafcMan.createBAFC(
+				new ByteArrayInputStream("{\"foo\":\"bar\"}".getBytes()), true, true));
+		
+		final Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> res =
+				db.getObjects(
+						ImmutableMap.of(
+								new ObjectIDResolvedWS(wsid, 1), set(SubsetSelection.EMPTY),
+								new ObjectIDResolvedWS(wsid, 2), set(SubsetSelection.EMPTY),
+								new ObjectIDResolvedWS(wsid, 3), set(SubsetSelection.EMPTY)),
+						bafcMan,
+						0,
+						true,
+						false,
+						true);
+		
+		verify(bs, times(1)).getBlob(md5, bafcMan);
+		for (long i = 1; i < 4; i++) {
+			final WorkspaceObjectData wod = res.get(new ObjectIDResolvedWS(wsid, i))
+					.get(SubsetSelection.EMPTY);
+			assertThat("incorrect data", wod.getSerializedData().getAsJsonNode().toString(),
+					is("{\"foo\":\"bar\"}"));
+		}
+	}
+	
+	@Test
+	public void getObjectsWithSubsetCache() throws Exception {
+		// check that a cached subset is returned without fetching the data
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm,
+				new SubsetCache(1000, 0, null));
+		
+		db.createWorkspace(new WorkspaceUser("u"), "ws", false, null, new WorkspaceUserMetadata());
+		
+		final MD5 md5 = new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(md5);
+		when(vto.getRelabeledSize()).thenReturn(21L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveObject(db, wsid, "obj1", vto);
+		
+		final SubsetSelection subset = new SubsetSelection(Arrays.asList("/foo"));
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+					100, 100, tfm);
+			when(bs.getBlob(md5, bafcMan)).thenReturn(bafcMan.createBAFC(
+					new ByteArrayInputStream("{\"baz\":1,\"foo\":\"bar\"}".getBytes()),
+					true, true));
+			
+			final Map<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> res =
+					db.getObjects(
+							ImmutableMap.of(new ObjectIDResolvedWS(wsid, 1), set(subset)),
+							bafcMan,
+							0,
+							true,
+							false,
+							true);
+			
+			final WorkspaceObjectData wod = res.get(new ObjectIDResolvedWS(wsid, 1))
+					.get(subset);
+			assertThat("incorrect data", wod.getSerializedData().getAsJsonNode().toString(),
+					is("{\"foo\":\"bar\"}"));
+			assertThat("incorrect sorted", wod.getSerializedData().isSorted(), is(true));
+		}
+		verify(bs, times(1)).getBlob(any(MD5.class), any(ByteArrayFileCacheManager.class));
+	}
+	
+	@Test
+	public void getObjectTypeMixedVersions() throws Exception {
+		// check that version queries batched by workspace and version return the correct data
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		db.createWorkspace(u, "ws2", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		final ResolvedWorkspaceID wsid2 = new ResolvedWorkspaceID(2, "ws2", false, false);
+		// ws: obj1 has 3 versions, obj2 1 version, obj3 2 versions. ws2: obj1 has 2 versions
+		for (final String name: Arrays.asList("obj1", "obj2", "obj3", "obj1", "obj3", "obj1")) {
+			saveObject(db, wsid, name, vto);
+		}
+		for (int i = 0; i < 2; i++) {
+			saveObject(db, wsid2, "obj1", vto);
+		}
+		
+		final Map<ObjectIDResolvedWS, TypeAndReference> res = db.getObjectType(set(
+				new ObjectIDResolvedWS(wsid, 1, 1),
+				new ObjectIDResolvedWS(wsid, 1, 3),
+				new ObjectIDResolvedWS(wsid, 2, 1),
+				new ObjectIDResolvedWS(wsid, 3, 1),
+				new ObjectIDResolvedWS(wsid, 3),
+				new ObjectIDResolvedWS(wsid, 3, 4),
+				new ObjectIDResolvedWS(wsid2, 1, 1),
+				new ObjectIDResolvedWS(wsid2, 1)),
+				true);
+		
+		final Map<ObjectIDResolvedWS, Reference> refs = new HashMap<>();
+		for (final Entry<ObjectIDResolvedWS, TypeAndReference> e: res.entrySet()) {
+			assertThat("incorrect type", e.getValue().getType(),
+					is(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1)));
+			refs.put(e.getKey(), e.getValue().getReference());
+		}
+		final Map<ObjectIDResolvedWS, Reference> expected = new HashMap<>();
+		expected.put(new ObjectIDResolvedWS(wsid, 1, 1), new Reference(1, 1, 1));
+		expected.put(new ObjectIDResolvedWS(wsid, 1, 3), new Reference(1, 1, 3));
+		expected.put(new ObjectIDResolvedWS(wsid, 2, 1), new Reference(1, 2, 1));
+		expected.put(new ObjectIDResolvedWS(wsid, 3, 1), new Reference(1, 3, 1));
+		expected.put(new ObjectIDResolvedWS(wsid, 3), new Reference(1, 3, 2));
+		expected.put(new ObjectIDResolvedWS(wsid2, 1, 1), new Reference(2, 1, 1));
+		expected.put(new ObjectIDResolvedWS(wsid2, 1), new Reference(2, 1, 2));
+		assertThat("incorrect refs", refs, is(expected));
+	}
+	
+	@Test
+	public void saveObjectsMixedNewAndExisting() throws Exception {
+		// check that saving new objects, new versions of existing objects, and repeated names in
+		// one call assigns the correct ids and versions and sets up the object documents
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveObject(db, wsid, "obj1", vto);
+		
+		final List<ObjectInformation> res = db.saveObjects(u, wsid, Arrays.asList(
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj2"), false, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj1"), false, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj2"), true, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj3"), true, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer(1), true, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj2"), false, vto)));
+		
+		final List<String> got = res.stream().map(oi -> String.format("%s %s %s",
+				oi.getObjectId(), oi.getObjectName(), oi.getVersion()))
+				.collect(Collectors.toList());
+		assertThat("incorrect object info", got, is(Arrays.asList(
+				"2 obj2 1", "1 obj1 2", "2 obj2 2", "3 obj3 1", "1 obj1 3", "2 obj2 3")));
+		for (final ObjectInformation oi: res) {
+			assertThat("incorrect date", oi.getSavedDate(), is(res.get(0).getSavedDate()));
+		}
+		
+		final Map<Long, String> objs = new HashMap<>();
+		for (final DBObject o: MONGO_DB.getCollection("workspaceObjects")
+				.find(new BasicDBObject(Fields.OBJ_WS_ID, 1L)).toArray()) {
+			objs.put((Long) o.get(Fields.OBJ_ID), String.format("%s %s %s %s %s",
+					o.get(Fields.OBJ_NAME), o.get(Fields.OBJ_VCNT), o.get(Fields.OBJ_REFCOUNTS),
+					o.get(Fields.OBJ_HIDE), o.get(Fields.OBJ_DEL)));
+		}
+		final Map<Long, String> expected = new HashMap<>();
+		expected.put(1L, "obj1 3 [0, 0, 0] true false");
+		expected.put(2L, "obj2 3 [0, 0, 0] false false");
+		expected.put(3L, "obj3 1 [0] true false");
+		assertThat("incorrect objects", objs, is(expected));
+		
+		final List<String> vers = MONGO_DB.getCollection("workspaceObjVersions")
+				.find(new BasicDBObject(Fields.VER_WS_ID, 1L))
+				.sort(new BasicDBObject(Fields.VER_ID, 1).append(Fields.VER_VER, 1))
+				.toArray().stream()
+				.map(v -> v.get(Fields.VER_ID) + "/" + v.get(Fields.VER_VER))
+				.collect(Collectors.toList());
+		assertThat("incorrect versions", vers, is(Arrays.asList(
+				"1/1", "1/2", "1/3", "2/1", "2/2", "2/3", "3/1")));
+	}
+	
+	@Test
+	public void saveObjectsWithStructuralIndex() throws Exception {
+		// check that saving data at least the minimum index size stores an index of the data
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMinStructuralIndexSize(10).build());
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		final byte[] data = "{\"a\":\"foo\",\"b\":[1,2]}".getBytes();
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn((long) data.length);
+		when(vto.getSize()).thenReturn((long) data.length);
+		when(vto.getInputStream()).thenAnswer(inv -> new ByteArrayInputStream(data));
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveObject(db, wsid, "obj1", vto);
+		// the index is only built once for the same data
+		saveObject(db, wsid, "obj2", vto);
+		verify(vto, times(1)).getInputStream();
+		
+		final List<DBObject> idxs = MONGO_DB.getCollection("structuralIndexes")
+				.find().toArray();
+		assertThat("incorrect index count", idxs.size(), is(1));
+		assertThat("incorrect chksum", idxs.get(0).get(Fields.STRUCT_IDX_CHKSUM),
+				is("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		final StructuralIndex idx = StructuralIndex.fromBytes(
+				(byte[]) idxs.get(0).get(Fields.STRUCT_IDX_DATA));
+		assertThat("incorrect size", idx.getSize(), is((long) data.length));
+		assertThat("incorrect fields", idx.getFieldNames(), is(set("a", "b")));
+		assertThat("incorrect b start", idx.getField("b").getStart(), is(15L));
+		assertThat("incorrect b end", idx.getField("b").getEnd(), is(20L));
+	}
+	
+	@Test
+	public void saveObjectsWithStructuralIndexFailure() throws Exception {
+		// check that failing to build the index doesn't fail the save
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMinStructuralIndexSize(10).build());
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(20L);
+		when(vto.getSize()).thenReturn(20L);
+		when(vto.getInputStream()).thenThrow(new IllegalStateException("oh dear"));
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveObject(db, wsid, "obj1", vto);
+		
+		final ObjectIDResolvedWS o1 = new ObjectIDResolvedWS(wsid, 1, 1);
+		assertThat("incorrect info", objInfoToString(
+				db.getObjectInformation(set(o1), false, true, false, true)),
+				is(ImmutableMap.of(o1, "1 obj1 1 Mod.Type-5.1")));
+		assertThat("incorrect index count",
+				MONGO_DB.getCollection("structuralIndexes").count(), is(0L));
+	}
+	
+	@Test
+	public void cloneWorkspaceObjectsAndVersions() throws Exception {
+		// check that cloned objects and versions, which are written in bulk, are correct
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		db.saveObjects(u, wsid, Arrays.asList(
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj1"), false, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj2"), true, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj1"), false, vto),
+				toSaveObject(wsid, new ObjectIDNoWSNoVer("obj3"), false, vto)));
+		
+		final WorkspaceInformation info = db.cloneWorkspace(new WorkspaceUser("u2"), wsid, "ws2",
+				false, null, new WorkspaceUserMetadata(), set(new ObjectIDNoWSNoVer("obj3")));
+		assertThat("incorrect id", info.getId(), is(2L));
+		assertThat("incorrect max id", info.getMaximumObjectID(), is(2L));
+		
+		final Map<Long, String> objs = new HashMap<>();
+		for (final DBObject o: MONGO_DB.getCollection("workspaceObjects")
+				.find(new BasicDBObject(Fields.OBJ_WS_ID, 2L)).toArray()) {
+			objs.put((Long) o.get(Fields.OBJ_ID), String.format("%s %s %s %s %s",
+					o.get(Fields.OBJ_NAME), o.get(Fields.OBJ_VCNT), o.get(Fields.OBJ_REFCOUNTS),
+					o.get(Fields.OBJ_HIDE), o.get(Fields.OBJ_DEL)));
+		}
+		final Map<Long, String> expected = new HashMap<>();
+		expected.put(1L, "obj1 2 [0, 0] false false");
+		expected.put(2L, "obj2 1 [0] true false");
+		assertThat("incorrect objects", objs, is(expected));
+		
+		final List<String> vers = MONGO_DB.getCollection("workspaceObjVersions")
+				.find(new BasicDBObject(Fields.VER_WS_ID, 2L))
+				.sort(new BasicDBObject(Fields.VER_ID, 1).append(Fields.VER_VER, 1))
+				.toArray().stream()
+				.map(v -> String.format("%s/%s %s %s", v.get(Fields.VER_ID),
+						v.get(Fields.VER_VER), v.get(Fields.VER_COPIED),
+						v.get(Fields.VER_SAVEDBY)))
+				.collect(Collectors.toList());
+		assertThat("incorrect versions", vers, is(Arrays.asList(
+				"1/1 1/1/1 u2", "1/2 1/1/2 u2", "2/1 1/2/1 u2")));
+	}
+	
+	@Test
+	public void incomingReferenceCacheInvalidatedOnSave() throws Exception {
+		// check that saving an object that refers to a cached version invalidates the cache
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMaxIncomingReferenceCacheSize(100).build());
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		final Reference r1 = new Reference("1/1/1");
+		saveObject(db, wsid, "obj1", vto);
+		
+		assertThat("incorrect refs", db.getObjectIncomingReferences(set(r1)).get(r1)
+				.getReferenceSet(), is(set()));
+		
+		db.saveObjects(u, wsid, Arrays.asList(toSaveObject(
+				wsid, new ObjectIDNoWSNoVer("obj2"), false, vto, set(r1))));
+		
+		assertThat("incorrect refs", db.getObjectIncomingReferences(set(r1)).get(r1)
+				.getReferenceSet(), is(set(new Reference("1/2/1"))));
+	}
+	
+	@Test
+	public void readableWorkspaceIDs() throws Exception {
+		readableWorkspaceIDs(0);
+	}
+	
+	@Test
+	public void readableWorkspaceIDsCached() throws Exception {
+		final MongoWorkspaceDB db = readableWorkspaceIDs(100);
+		
+		// changes made directly in the database, e.g. by another server, are not visible
+		MONGO_DB.getCollection("workspaceACLs").remove(new BasicDBObject());
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(new WorkspaceUser("u1")),
+				is(set(1L, 3L)));
+	}
+	
+	private MongoWorkspaceDB readableWorkspaceIDs(final int cacheSize) throws Exception {
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(
+				MONGO_DB, mock(BlobStore.class), mock(TempFilesManager.class));
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMaxReadableWorkspaceCacheSize(cacheSize).build());
+		
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		final WorkspaceUser u2 = new WorkspaceUser("u2");
+		db.createWorkspace(u1, "ws1", false, null, new WorkspaceUserMetadata());
+		db.createWorkspace(u1, "ws2", true, null, new WorkspaceUserMetadata());
+		db.createWorkspace(u2, "ws3", false, null, new WorkspaceUserMetadata());
+		final ResolvedWorkspaceID ws1 = new ResolvedWorkspaceID(1, "ws1", false, false);
+		final ResolvedWorkspaceID ws2 = new ResolvedWorkspaceID(2, "ws2", false, false);
+		final ResolvedWorkspaceID ws3 = new ResolvedWorkspaceID(3, "ws3", false, false);
+		
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 2L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u2), is(set(2L, 3L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(null), is(set(2L)));
+		
+		db.setPermissions(ws3, Arrays.asList(u1), Permission.READ);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 2L, 3L)));
+		
+		db.setGlobalPermission(ws2, Permission.NONE);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 2L, 3L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u2), is(set(3L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(null), is(set()));
+		
+		db.setGlobalPermission(ws1, Permission.READ);
+		// owner permissions can't be changed
+		db.setPermissions(ws3, Arrays.asList(u1, u2), Permission.NONE);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 2L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u2), is(set(1L, 3L)));
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(null), is(set(1L)));
+		
+		db.setWorkspaceDeleted(ws2, true);
+		db.setPermissions(ws3, Arrays.asList(u1), Permission.WRITE);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 3L)));
+		
+		db.setWorkspaceDeleted(ws2, false);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 2L, 3L)));
+		
+		db.setWorkspaceDeleted(ws2, true);
+		assertThat("incorrect ids", db.getReadableWorkspaceIDs(u1), is(set(1L, 3L)));
+		return db;
+	}
+	
+	@Test
+	public void resolveWorkspaces() throws Exception {
+		resolveWorkspaces(0);
+	}
+	
+	@Test
+	public void resolveWorkspacesCached() throws Exception {
+		final MongoWorkspaceDB db = resolveWorkspaces(100);
+		
+		// changes made directly in the database, e.g. by another server, are not visible
+		MONGO_DB.getCollection("workspaces").update(new BasicDBObject(Fields.WS_ID, 2),
+				new BasicDBObject("$set", new BasicDBObject(Fields.WS_NAME, "ws5")));
+		assertThat("incorrect resolve", db.resolveWorkspace(new WorkspaceIdentifier(2)),
+				is(new ResolvedWorkspaceID(2, "ws4", true, false)));
+	}
+	
+	private MongoWorkspaceDB resolveWorkspaces(final int cacheSize) throws Exception {
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(
+				MONGO_DB, mock(BlobStore.class), mock(TempFilesManager.class));
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMaxResolvedWorkspaceCacheSize(cacheSize).build());
+		
+		final WorkspaceUser u1 = new WorkspaceUser("u1");
+		db.createWorkspace(u1, "ws1", false, null, new WorkspaceUserMetadata());
+		db.createWorkspace(u1, "ws2", false, null, new WorkspaceUserMetadata());
+		final WorkspaceIdentifier id1 = new WorkspaceIdentifier(1);
+		final WorkspaceIdentifier id2 = new WorkspaceIdentifier(2);
+		final WorkspaceIdentifier name1 = new WorkspaceIdentifier("ws1");
+		final WorkspaceIdentifier name2 = new WorkspaceIdentifier("ws2");
+		final WorkspaceIdentifier name3 = new WorkspaceIdentifier("ws3");
+		final WorkspaceIdentifier name4 = new WorkspaceIdentifier("ws4");
+		final ResolvedWorkspaceID ws1 = new ResolvedWorkspaceID(1, "ws1", false, false);
+		
+		assertThat("incorrect resolve", db.resolveWorkspaces(set(id1, name2)), is(ImmutableMap.of(
+				id1, ws1, name2, new ResolvedWorkspaceID(2, "ws2", false, false))));
+		
+		db.renameWorkspace(ws1, "ws3");
+		final ResolvedWorkspaceID ws1renamed = new ResolvedWorkspaceID(1, "ws3", false, false);
+		assertThat("incorrect resolve", db.resolveWorkspaces(set(id1, name3)), is(ImmutableMap.of(
+				id1, ws1renamed, name3, ws1renamed)));
+		failResolveWorkspace(db, name1, new NoSuchWorkspaceException(
+				"No workspace with name ws1 exists", name1));
+		
+		db.lockWorkspace(ws1renamed);
+		assertThat("incorrect resolve", db.resolveWorkspace(name3),
+				is(new ResolvedWorkspaceID(1, "ws3", true, false)));
+		
+		db.setWorkspaceDeleted(ws1renamed, true);
+		failResolveWorkspace(db, id1, new NoSuchWorkspaceException(
+				"Workspace 1 is deleted", id1));
+		assertThat("incorrect resolve", db.resolveWorkspace(id1, true),
+				is(new ResolvedWorkspaceID(1, "ws3", true, true)));
+		db.setWorkspaceDeleted(ws1renamed, false);
+		assertThat("incorrect resolve", db.resolveWorkspace(id1),
+				is(new ResolvedWorkspaceID(1, "ws3", true, false)));
+		
+		final ResolvedWorkspaceID ws2 = db.resolveWorkspace(id2);
+		db.setWorkspaceOwner(ws2, u1, new WorkspaceUser("u2"), Optional.of("ws4"));
+		db.lockWorkspace(ws2);
+		assertThat("incorrect resolve", db.resolveWorkspaces(set(id2, name4)), is(ImmutableMap.of(
+				id2, new ResolvedWorkspaceID(2, "ws4", true, false),
+				name4, new ResolvedWorkspaceID(2, "ws4", true, false))));
+		failResolveWorkspace(db, name2, new NoSuchWorkspaceException(
+				"No workspace with name ws2 exists", name2));
+		return db;
+	}
+	
+	private void failResolveWorkspace(
+			final MongoWorkspaceDB db,
+			final WorkspaceIdentifier wsi,
+			final Exception expected) {
+		try {
+			db.resolveWorkspace(wsi);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void saveProvenanceShared() throws Exception {
+		saveProvenanceShared(0);
+	}
+	
+	@Test
+	public void saveProvenanceSharedCached() throws Exception {
+		final MongoWorkspaceDB db = saveProvenanceShared(100);
+		
+		// provenance documents never change, so direct changes to the database aren't visible
+		MONGO_DB.getCollection("provenance").update(
+				new BasicDBObject(Fields.PROV_ACTIONS + "." + Fields.PROV_ACTION_METHOD, "meth1"),
+				new BasicDBObject("$set", new BasicDBObject(
+						Fields.PROV_ACTIONS + ".0." + Fields.PROV_ACTION_METHOD, "meth3")));
+		assertThat("incorrect provenance", getProvenanceDatesAndMethods(db), is(
+				getExpectedProvenanceDatesAndMethods()));
+	}
+	
+	private MongoWorkspaceDB saveProvenanceShared(final int cacheSize) throws Exception {
+		// check that identical provenance is stored once and shared between versions, and
+		// that the per version provenance date is returned whether or not provenance is cached
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMaxProvenanceCacheSize(cacheSize).build());
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		// the method parameter map ordering shouldn't matter
+		db.saveObjects(u, wsid, Arrays.asList(
+				toSaveObject(wsid, "obj1", vto, provenance(
+						new Date(10000), "meth1", ImmutableMap.of("a", 1, "b", 2))),
+				toSaveObject(wsid, "obj2", vto, provenance(
+						new Date(20000), "meth1", ImmutableMap.of("b", 2, "a", 1))),
+				toSaveObject(wsid, "obj3", vto, provenance(
+						new Date(30000), "meth2", ImmutableMap.of("a", 1, "b", 2)))));
+		
+		assertThat("incorrect provenance", getProvenanceDocuments(), is(ImmutableMap.of(
+				"meth1", "2 false true", "meth2", "1 false true")));
+		
+		db.saveObjects(u, wsid, Arrays.asList(toSaveObject(wsid, "obj4", vto, provenance(
+				new Date(40000), "meth1", ImmutableMap.of("a", 1, "b", 2)))));
+		db.copyObject(u, new ObjectIDResolvedWS(wsid, 3), new ObjectIDResolvedWS(wsid, "obj5"));
+		
+		assertThat("incorrect provenance", getProvenanceDocuments(), is(ImmutableMap.of(
+				"meth1", "3 false true", "meth2", "2 false true")));
+		
+		// the second read is served from the cache if provenance is cached
+		assertThat("incorrect provenance", getProvenanceDatesAndMethods(db), is(
+				getExpectedProvenanceDatesAndMethods()));
+		assertThat("incorrect provenance", getProvenanceDatesAndMethods(db), is(
+				getExpectedProvenanceDatesAndMethods()));
+		return db;
+	}
+	
+	private Map<Long, String> getProvenanceDatesAndMethods(final MongoWorkspaceDB db)
+			throws Exception {
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		final Map<ObjectIDResolvedWS, Set<SubsetSelection>> objs = new HashMap<>();
+		for (int i = 1; i < 6; i++) {
+			objs.put(new ObjectIDResolvedWS(wsid, i), set());
+		}
+		final Map<Long, String> provs = new HashMap<>();
+		for (final Entry<ObjectIDResolvedWS, Map<SubsetSelection, WorkspaceObjectData>> e:
+				db.getObjects(objs, null, 0, true, false, true).entrySet()) {
+			final Provenance p = e.getValue().get(SubsetSelection.EMPTY).getProvenance();
+			provs.put(e.getKey().getId(), p.getDate().getTime() + " " +
+					p.getActions().get(0).getMethod());
+		}
+		return provs;
+	}
+	
+	private Map<Long, String> getExpectedProvenanceDatesAndMethods() {
+		final Map<Long, String> expected = new HashMap<>();
+		expected.put(1L, "10000 meth1");
+		expected.put(2L, "20000 meth1");
+		expected.put(3L, "30000 meth2");
+		expected.put(4L, "40000 meth1");
+		expected.put(5L, "30000 meth2");
+		return expected;
+	}
+	
+	private Provenance provenance(
+			final Date date,
+			final String method,
+			final Map<String, Object> params) {
+		final Provenance p = new Provenance(new WorkspaceUser("u"), date);
+		p.setWorkspaceID(1L);
+		p.addAction(new ProvenanceAction().withMethod(method)
+				.withMethodParameters(Arrays.asList(params)));
+		return p;
+	}
+	
+	private ResolvedSaveObject toSaveObject(
+			final ResolvedWorkspaceID wsid,
+			final String name,
+			final ValidatedTypedObject vto,
+			final Provenance p) {
+		return new WorkspaceSaveObject(
+				new ObjectIDNoWSNoVer(name),
+				new UObject(ImmutableMap.of("foo", "bar")),
+				new TypeDefId("Mod.Type", "5.1"),
+				null,
+				p,
+				false)
+				.resolve(vto, set(), Collections.emptyList(), Collections.emptyMap());
+	}
+	
+	// method -> reference count, whether the date is present, and whether the hash is present
+	private Map<String, String> getProvenanceDocuments() {
+		final Map<String, String> ret = new HashMap<>();
+		for (final DBObject p: MONGO_DB.getCollection("provenance").find()) {
+			@SuppressWarnings("unchecked")
+			final List<Map<String, Object>> actions = (List<Map<String, Object>>) p.get(
+					Fields.PROV_ACTIONS);
+			ret.put((String) actions.get(0).get(Fields.PROV_ACTION_METHOD), String.format(
+					"%s %s %s", p.get(Fields.PROV_REFCOUNT), p.containsField(Fields.PROV_DATE),
+					p.containsField(Fields.PROV_HASH)));
+		}
+		return ret;
+	}
+	
+	@Test
+	public void getObjectInformation() throws Exception {
+		getObjectInformation(0);
+	}
+	
+	@Test
+	public void getObjectInformationVersionCached() throws Exception {
+		final MongoWorkspaceDB db = getObjectInformation(100);
+		
+		// version documents never change, so direct changes to the database aren't visible
+		MONGO_DB.getCollection("workspaceObjVersions").update(
+				new BasicDBObject(Fields.VER_WS_ID, 1L).append(Fields.VER_ID, 1L)
+						.append(Fields.VER_VER, 1),
+				new BasicDBObject("$set", new BasicDBObject(Fields.VER_TYPE, "Mod.Other-1.0")));
+		final ObjectIDResolvedWS o1 = new ObjectIDResolvedWS(
+				new ResolvedWorkspaceID(1, "ws", false, false), 1, 1);
+		assertThat("incorrect info", objInfoToString(
+				db.getObjectInformation(set(o1), false, false, true, true)),
+				is(ImmutableMap.of(o1, "1 obj2 1 Mod.Type-5.1")));
+	}
+	
+	private MongoWorkspaceDB getObjectInformation(final int cacheSize) throws Exception {
+		// check that object renames and deletions are visible whether or not versions are
+		// cached
+		final BlobStore bs = mock(BlobStore.class);
+		final TempFilesManager tfm = mock(TempFilesManager.class);
+		final ValidatedTypedObject vto = mock(ValidatedTypedObject.class);
+		
+		final MongoWorkspaceDB db = new MongoWorkspaceDB(MONGO_DB, bs, tfm);
+		db.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder()
+				.withMaxObjectVersionCacheSize(cacheSize).build());
+		
+		final WorkspaceUser u = new WorkspaceUser("u");
+		db.createWorkspace(u, "ws", false, null, new WorkspaceUserMetadata());
+		
+		when(vto.getValidationTypeDefId())
+				.thenReturn(new AbsoluteTypeDefId(new TypeDefName("Mod.Type"), 5, 1));
+		when(vto.extractMetadata(16000)).thenReturn(new ExtractedMetadata(Collections.emptyMap()));
+		when(vto.getMD5()).thenReturn(new MD5("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa"));
+		when(vto.getRelabeledSize()).thenReturn(13L);
+		
+		final ResolvedWorkspaceID wsid = new ResolvedWorkspaceID(1, "ws", false, false);
+		saveObject(db, wsid, "obj1", vto);
+		final ObjectIDResolvedWS o1 = new ObjectIDResolvedWS(wsid, 1, 1);
+		final ObjectIDResolvedWS name1 = new ObjectIDResolvedWS(wsid, "obj1");
+		
+		assertThat("incorrect info", objInfoToString(
+				db.getObjectInformation(set(o1, name1), false, true, false, true)),
+				is(ImmutableMap.of(o1, "1 obj1 1 Mod.Type-5.1", name1, "1 obj1 1 Mod.Type-5.1")));
+		
+		saveObject(db, wsid, "obj1", vto);
+		db.renameObject(new ObjectIDResolvedWS(wsid, 1), "obj2");
+		final ObjectIDResolvedWS name2 = new ObjectIDResolvedWS(wsid, "obj2");
+		assertThat("incorrect info", objInfoToString(
+				db.getObjectInformation(set(o1, name2), false, true, false, true)),
+				is(ImmutableMap.of(o1, "1 obj2 1 Mod.Type-5.1", name2, "1 obj2 2 Mod.Type-5.1")));
+		assertThat("incorrect info", db.getObjectInformation(
+				set(name1), false, true, false, false), is(Collections.emptyMap()));
+		
+		db.setObjectsDeleted(set(new ObjectIDResolvedWS(wsid, 1)), true);
+		assertThat("incorrect info", db.getObjectInformation(
+				set(o1), false, false, false, false), is(Collections.emptyMap()));
+		try {
+			db.getObjectInformation(set(o1), false, true, false, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new DeletedObjectException(
+					"Object 1 (name obj2) in workspace 1 (name ws) has been deleted", o1));
+		}
+		return db;
+	}
+	
+	private Map<ObjectIDResolvedWS, String> objInfoToString(
+			final Map<ObjectIDResolvedWS, ObjectInformation> info) {
+		return info.entrySet().stream().collect(Collectors.toMap(e -> e.getKey(),
+				e -> String.format("%s %s %s %s", e.getValue().getObjectId(),
+						e.getValue().getObjectName(), e.getValue().getVersion(),
+						e.getValue().getTypeString())));
+	}
+	
+	private ResolvedSaveObject toSaveObject(
+			final ResolvedWorkspaceID wsid,
+			final ObjectIDNoWSNoVer id,
+			final boolean hidden,
+			final ValidatedTypedObject vto) {
+		return toSaveObject(wsid, id, hidden, vto, set());
+	}
+	
+	private ResolvedSaveObject toSaveObject(
+			final ResolvedWorkspaceID wsid,
+			final ObjectIDNoWSNoVer id,
+			final boolean hidden,
+			final ValidatedTypedObject vto,
+			final Set<Reference> refs) {
+		final Provenance p = new Provenance(new WorkspaceUser("u"), new Date(10000));
+		p.setWorkspaceID(wsid.getID());
+		return new WorkspaceSaveObject(
+				id,
+				new UObject(ImmutableMap.of("foo", "bar")),
+				new TypeDefId("Mod.Type", "5.1"),
+				null,
+				p,
+				hidden)
+				.resolve(vto, refs, Collections.emptyList(), Collections.emptyMap());
+	}
+	
+	private void saveObject(
+			final MongoWorkspaceDB db,
+			final ResolvedWorkspaceID wsid,
+			final String name,
+			final ValidatedTypedObject vto)
+			throws Exception {
+		db.saveObjects(new WorkspaceUser("u"), wsid, Arrays.asList(
+				toSaveObject(wsid, new ObjectIDNoWSNoVer(name), false, vto)));
+	}
 }
@@ -0,0 +1,155 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ResolvedObjectID;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.mongo.ObjectVersionCache;
+import us.kbase.workspace.database.mongo.ObjectVersionCache.ObjectVersionProvider;
+
+public class ObjectVersionCacheTest {
+
+	private static final ResolvedWorkspaceID WS = new ResolvedWorkspaceID(1, "ws", false, false);
+	private static final ResolvedObjectID O1 = new ResolvedObjectID(WS, 1, 1, "o1", false);
+	private static final ResolvedObjectID O2 = new ResolvedObjectID(WS, 1, 2, "o1", false);
+	private static final ResolvedObjectID O3 = new ResolvedObjectID(WS, 2, 1, "o2", false);
+
+	private static Map<String, Object> ver(final long id, final int ver, final String type) {
+		return ImmutableMap.of("ws", 1L, "id", id, "ver", ver, "type", type, "chksum", "abc");
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		try {
+			new ObjectVersionCache(0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"maxCacheSize must be at least 1"));
+		}
+	}
+
+	@Test
+	public void getAndCache() throws Exception {
+		final ObjectVersionProvider prov = mock(ObjectVersionProvider.class);
+		final ObjectVersionCache c = new ObjectVersionCache(100);
+		final ResolvedObjectID missing = new ResolvedObjectID(WS, 1, 3, "o1", false);
+
+		when(prov.getVersions(ImmutableSet.of(O1, O2, missing))).thenReturn(
+				ImmutableMap.of(O1, ver(1, 1, "T.t-1.0"), O2, ver(1, 2, "T.t-2.0")));
+		when(prov.getVersions(ImmutableSet.of(O3, missing))).thenReturn(
+				ImmutableMap.of(O3, ver(2, 1, "T.t-3.0")));
+
+		assertThat("incorrect versions", c.getVersions(
+				ImmutableSet.of(O1, O2, missing), ImmutableSet.of("type"), prov),
+				is(ImmutableMap.of(
+						O1, ImmutableMap.of("id", 1L, "ver", 1, "type", "T.t-1.0"),
+						O2, ImmutableMap.of("id", 1L, "ver", 2, "type", "T.t-2.0"))));
+		assertThat("incorrect size", c.size(), is(2L));
+
+		// different fields are served from the cached document
+		assertThat("incorrect versions", c.getVersions(
+				ImmutableSet.of(O1, O3, missing), ImmutableSet.of("chksum", "meta"), prov),
+				is(ImmutableMap.of(
+						O1, ImmutableMap.of("id", 1L, "ver", 1, "chksum", "abc"),
+						O3, ImmutableMap.of("id", 2L, "ver", 1, "chksum", "abc"))));
+		assertThat("incorrect size", c.size(), is(3L));
+
+		verify(prov).getVersions(ImmutableSet.of(O1, O2, missing));
+		verify(prov).getVersions(ImmutableSet.of(O3, missing));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void objectStateIgnored() throws Exception {
+		// the cache key is the version, not the object name or deleted state
+		final ObjectVersionProvider prov = mock(ObjectVersionProvider.class);
+		final ObjectVersionCache c = new ObjectVersionCache(100);
+		final ResolvedObjectID renamed = new ResolvedObjectID(WS, 1, 1, "o3", true);
+
+		when(prov.getVersions(ImmutableSet.of(O1))).thenReturn(
+				ImmutableMap.of(O1, ver(1, 1, "T.t-1.0")));
+
+		c.getVersions(ImmutableSet.of(O1), Collections.emptySet(), prov);
+		assertThat("incorrect versions", c.getVersions(
+				ImmutableSet.of(renamed), ImmutableSet.of("type"), prov),
+				is(ImmutableMap.of(
+						renamed, ImmutableMap.of("id", 1L, "ver", 1, "type", "T.t-1.0"))));
+
+		verify(prov).getVersions(ImmutableSet.of(O1));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void returnedDocumentsAreCopies() throws Exception {
+		final ObjectVersionProvider prov = mock(ObjectVersionProvider.class);
+		final ObjectVersionCache c = new ObjectVersionCache(100);
+		final Map<String, Object> loaded = new HashMap<>(ver(1, 1, "T.t-1.0"));
+
+		when(prov.getVersions(ImmutableSet.of(O1))).thenReturn(ImmutableMap.of(O1, loaded));
+
+		c.getVersions(ImmutableSet.of(O1), ImmutableSet.of("type"), prov).get(O1)
+				.put("type", "Other.t-1.0");
+		loaded.put("type", "Other.t-2.0");
+
+		assertThat("incorrect versions", c.getVersions(
+				ImmutableSet.of(O1), ImmutableSet.of("type"), prov),
+				is(ImmutableMap.of(O1, ImmutableMap.of("id", 1L, "ver", 1, "type", "T.t-1.0"))));
+	}
+
+	@Test
+	public void evict() throws Exception {
+		final ObjectVersionProvider prov = mock(ObjectVersionProvider.class);
+		final ObjectVersionCache c = new ObjectVersionCache(1);
+
+		when(prov.getVersions(ImmutableSet.of(O1, O2))).thenReturn(
+				ImmutableMap.of(O1, ver(1, 1, "T.t-1.0"), O2, ver(1, 2, "T.t-2.0")));
+
+		c.getVersions(ImmutableSet.of(O1, O2), ImmutableSet.of("type"), prov);
+		assertThat("incorrect size", c.size(), is(1L));
+	}
+
+	@Test
+	public void getVersionsFail() throws Exception {
+		final ObjectVersionCache c = new ObjectVersionCache(100);
+		final ObjectVersionProvider prov = mock(ObjectVersionProvider.class);
+		final Set<String> f = Collections.emptySet();
+
+		failGetVersions(c, null, f, prov, new NullPointerException("objectIDs"));
+		failGetVersions(c, ImmutableSet.of(O1), null, prov, new NullPointerException("fields"));
+		failGetVersions(c, ImmutableSet.of(O1), f, null, new NullPointerException("provider"));
+		failGetVersions(c, Collections.singleton(null), f, prov,
+				new NullPointerException("null item in objectIDs"));
+	}
+
+	private void failGetVersions(
+			final ObjectVersionCache c,
+			final Set<ResolvedObjectID> ids,
+			final Set<String> fields,
+			final ObjectVersionProvider prov,
+			final Exception expected) {
+		try {
+			c.getVersions(ids, fields, prov);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package us.kbase.workspace.test.database.mongo;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.common.test.controllers.mongo.MongoController;
+import us.kbase.workspace.database.mongo.Fields;
+
+/** Compares querying object versions with one query per object, as the workspace did
+ * previously, against the batched queries now issued by QueryMethods, where objects in the
+ * same workspace with the same requested version are queried together with $in.
+ *
+ * Arguments are the number of workspaces (default 10), objects per workspace
+ * (default 20000), versions per object (default 3), objects per lookup (default 2000) and
+ * the number of runs (default 5). Requires the test Mongo configuration used by the unit
+ * tests.
+ */
+public class ProfileVersionQueries {
+
+	private static final String COLLECTION = "workspaceObjVersions";
+	private static final int BATCH_SIZE = 1000;
+
+	public static void main(final String[] args) throws Exception {
+		final int workspaces = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		final int objects = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		final int versions = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		final int lookup = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+		final int runs = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+		TestCommon.stfuLoggers();
+		final MongoController mongo = new MongoController(TestCommon.getMongoExe(),
+				Paths.get(TestCommon.getTempDir()),
+				TestCommon.useWiredTigerEngine());
+		try {
+			final MongoClient mc = new MongoClient("localhost:" + mongo.getServerPort());
+			final DB db = mc.getDB("ProfileVersionQueries");
+			final DBCollection col = db.getCollection(COLLECTION);
+			col.createIndex(new BasicDBObject(Fields.VER_WS_ID, 1)
+					.append(Fields.VER_ID, 1).append(Fields.VER_VER, 1),
+					new BasicDBObject("unique", 1));
+			populate(col, workspaces, objects, versions);
+			System.out.println(String.format(
+					"Collection has %s versions. Looking up %s objects per run.",
+					col.count(), lookup));
+
+			final Random rand = new Random(42);
+			for (int i = 0; i < runs; i++) {
+				// ws -> obj id -> version
+				final Map<Long, Map<Long, Integer>> ids = new HashMap<>();
+				for (int j = 0; j < lookup; j++) {
+					final long ws = rand.nextInt(workspaces) + 1;
+					if (!ids.containsKey(ws)) {
+						ids.put(ws, new HashMap<>());
+					}
+					ids.get(ws).put(rand.nextInt(objects) + 1L, rand.nextInt(versions) + 1);
+				}
+				long start = System.nanoTime();
+				final int perObject = queryPerObject(col, ids);
+				final long perObjectMS = (System.nanoTime() - start) / 1000000;
+				start = System.nanoTime();
+				final int batched = queryBatched(col, ids);
+				final long batchedMS = (System.nanoTime() - start) / 1000000;
+				System.out.println(String.format(
+						"per object: %s versions in %s ms, batched: %s versions in %s ms",
+						perObject, perObjectMS, batched, batchedMS));
+			}
+		} finally {
+			mongo.destroy(true);
+		}
+	}
+
+	private static void populate(
+			final DBCollection col,
+			final int workspaces,
+			final int objects,
+			final int versions) {
+		for (long ws = 1; ws <= workspaces; ws++) {
+			final List<DBObject> docs = new ArrayList<>();
+			for (long id = 1; id <= objects; id++) {
+				for (int ver = 1; ver <= versions; ver++) {
+					docs.add(new BasicDBObject(Fields.VER_WS_ID, ws)
+							.append(Fields.VER_ID, id)
+							.append(Fields.VER_VER, ver)
+							.append(Fields.VER_TYPE, "Mod.Type-1.0")
+							.append(Fields.VER_SIZE, 1000L));
+				}
+				if (docs.size() >= 10000) {
+					col.insert(docs);
+					docs.clear();
+				}
+			}
+			if (!docs.isEmpty()) {
+				col.insert(docs);
+			}
+		}
+	}
+
+	private static int queryPerObject(
+			final DBCollection col,
+			final Map<Long, Map<Long, Integer>> ids) {
+		int count = 0;
+		for (final Long ws: ids.keySet()) {
+			for (final Long id: ids.get(ws).keySet()) {
+				count += col.find(new BasicDBObject(Fields.VER_VER, ids.get(ws).get(id))
+						.append(Fields.VER_ID, id)
+						.append(Fields.VER_WS_ID, ws)).toArray().size();
+			}
+		}
+		return count;
+	}
+
+	private static int queryBatched(
+			final DBCollection col,
+			final Map<Long, Map<Long, Integer>> ids) {
+		int count = 0;
+		for (final Long ws: ids.keySet()) {
+			final Map<Integer, List<Long>> byVersion = new HashMap<>();
+			for (final Long id: ids.get(ws).keySet()) {
+				final Integer ver = ids.get(ws).get(id);
+				if (!byVersion.containsKey(ver)) {
+					byVersion.put(ver, new ArrayList<>());
+				}
+				byVersion.get(ver).add(id);
+			}
+			for (final Integer ver: byVersion.keySet()) {
+				for (final List<Long> batch: Lists.partition(byVersion.get(ver), BATCH_SIZE)) {
+					count += col.find(new BasicDBObject(Fields.VER_WS_ID, ws)
+							.append(Fields.VER_ID, new BasicDBObject("$in", batch))
+							.append(Fields.VER_VER, ver)).toArray().size();
+				}
+			}
+		}
+		return count;
+	}
+}
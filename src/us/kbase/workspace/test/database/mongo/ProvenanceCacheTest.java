@@ -0,0 +1,108 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.ProvenanceCache;
+import us.kbase.workspace.database.mongo.ProvenanceCache.ProvenanceProvider;
+
+public class ProvenanceCacheTest {
+
+	private static final ObjectId ID1 = new ObjectId("5c0eb0a6e4b0a3d1e5e6f001");
+	private static final ObjectId ID2 = new ObjectId("5c0eb0a6e4b0a3d1e5e6f002");
+	private static final ObjectId ID3 = new ObjectId("5c0eb0a6e4b0a3d1e5e6f003");
+	private static final Provenance P1 = new Provenance(new WorkspaceUser("u1"), new Date(1));
+	private static final Provenance P2 = new Provenance(new WorkspaceUser("u2"), new Date(2));
+
+	@Test
+	public void constructFail() throws Exception {
+		try {
+			new ProvenanceCache(0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+					"maxCacheSize must be at least 1"));
+		}
+	}
+
+	@Test
+	public void getAndCache() throws Exception {
+		final ProvenanceProvider prov = mock(ProvenanceProvider.class);
+		final ProvenanceCache c = new ProvenanceCache(100);
+
+		when(prov.getProvenance(ImmutableSet.of(ID1, ID3))).thenReturn(ImmutableMap.of(ID1, P1));
+		when(prov.getProvenance(ImmutableSet.of(ID2, ID3))).thenReturn(ImmutableMap.of(ID2, P2));
+
+		assertThat("incorrect provenance", c.getProvenance(ImmutableSet.of(ID1, ID3), prov),
+				is(ImmutableMap.of(ID1, P1)));
+		assertThat("incorrect size", c.size(), is(1L));
+
+		// missing provenance is not cached
+		assertThat("incorrect provenance", c.getProvenance(
+				ImmutableSet.of(ID1, ID2, ID3), prov), is(ImmutableMap.of(ID1, P1, ID2, P2)));
+		assertThat("incorrect size", c.size(), is(2L));
+
+		// the decoded provenance is shared, not copied
+		assertThat("incorrect provenance", c.getProvenance(ImmutableSet.of(ID2), prov).get(ID2),
+				sameInstance(P2));
+
+		verify(prov).getProvenance(ImmutableSet.of(ID1, ID3));
+		verify(prov).getProvenance(ImmutableSet.of(ID2, ID3));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void evict() throws Exception {
+		final ProvenanceProvider prov = mock(ProvenanceProvider.class);
+		final ProvenanceCache c = new ProvenanceCache(1);
+
+		when(prov.getProvenance(ImmutableSet.of(ID1, ID2))).thenReturn(
+				ImmutableMap.of(ID1, P1, ID2, P2));
+
+		c.getProvenance(ImmutableSet.of(ID1, ID2), prov);
+		assertThat("incorrect size", c.size(), is(1L));
+	}
+
+	@Test
+	public void getProvenanceFail() throws Exception {
+		final ProvenanceCache c = new ProvenanceCache(100);
+		final ProvenanceProvider prov = mock(ProvenanceProvider.class);
+
+		failGetProvenance(c, null, prov, new NullPointerException("provenanceIDs"));
+		failGetProvenance(c, ImmutableSet.of(ID1), null, new NullPointerException("provider"));
+		failGetProvenance(c, Collections.singleton(null), prov,
+				new NullPointerException("null item in provenanceIDs"));
+	}
+
+	private void failGetProvenance(
+			final ProvenanceCache c,
+			final Set<ObjectId> ids,
+			final ProvenanceProvider prov,
+			final Exception expected) {
+		try {
+			c.getProvenance(ids, prov);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
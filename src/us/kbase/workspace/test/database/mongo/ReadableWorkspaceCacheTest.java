@@ -0,0 +1,300 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.mongo.ReadableWorkspaceCache;
+import us.kbase.workspace.database.mongo.ReadableWorkspaceCache.ReadableWorkspaceProvider;
+
+public class ReadableWorkspaceCacheTest {
+
+	private static final WorkspaceUser U1 = new WorkspaceUser("u1");
+	private static final WorkspaceUser U2 = new WorkspaceUser("u2");
+
+	private class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		public FakeTicker advance(final long milliseconds) {
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+			return this;
+		}
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, new FakeTicker(),
+				new IllegalArgumentException("maxCacheSize must be at least 1"));
+		failConstruct(1, 0, new FakeTicker(),
+				new IllegalArgumentException("cacheTimeInMS must be at least 1"));
+		failConstruct(1, 1, null, new NullPointerException("ticker"));
+	}
+
+	private void failConstruct(
+			final int size,
+			final int time,
+			final Ticker ticker,
+			final Exception expected) {
+		try {
+			new ReadableWorkspaceCache(size, time, ticker);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void getAndCache() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(7L, 1L, 3L));
+		when(prov.getReadableWorkspaces(U2)).thenReturn(ImmutableSet.of());
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(3L, 2L));
+
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 2L, 3L, 7L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 2L, 3L, 7L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U2, prov),
+				is(ImmutableSet.of(2L, 3L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(null, prov),
+				is(ImmutableSet.of(2L, 3L)));
+		assertThat("incorrect size", c.size(), is(2L));
+
+		verify(prov).getReadableWorkspaces(U1);
+		verify(prov).getReadableWorkspaces(U2);
+		verify(prov).getGloballyReadableWorkspaces();
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void setOperations() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(4L, 1L, 3L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(5L, 3L, 2L));
+
+		final Set<Long> ids = c.getReadableWorkspaces(U1, prov);
+		assertThat("incorrect size", ids.size(), is(5));
+		assertThat("incorrect empty", ids.isEmpty(), is(false));
+		assertThat("incorrect contains", ids.contains(3L), is(true));
+		assertThat("incorrect contains", ids.contains(6L), is(false));
+		assertThat("incorrect contains", ids.contains(3), is(false));
+		final List<Long> iterated = new ArrayList<>();
+		for (final Long id: ids) {
+			iterated.add(id);
+		}
+		assertThat("incorrect order", iterated, is(Arrays.asList(1L, 2L, 3L, 4L, 5L)));
+
+		try {
+			ids.add(6L);
+			fail("expected exception");
+		} catch (UnsupportedOperationException e) {
+			// pass
+		}
+
+		when(prov.getReadableWorkspaces(U2)).thenReturn(ImmutableSet.of());
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of());
+		final ReadableWorkspaceCache c2 = new ReadableWorkspaceCache(
+				100, 10000, new FakeTicker());
+		final Set<Long> mt = c2.getReadableWorkspaces(U2, prov);
+		assertThat("incorrect size", mt.size(), is(0));
+		assertThat("incorrect empty", mt.isEmpty(), is(true));
+		assertThat("incorrect iterator", mt.iterator().hasNext(), is(false));
+	}
+
+	@Test
+	public void updatePermissions() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(1L, 3L));
+		when(prov.getReadableWorkspaces(U2)).thenReturn(ImmutableSet.of(4L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(2L));
+
+		final Set<Long> orig = c.getReadableWorkspaces(U1, prov);
+
+		// U2 is not in the cache
+		c.setPermission(5L, Arrays.asList(U1, U2), true);
+		c.setPermission(3L, Arrays.asList(U1), false);
+		c.setPermission(1L, Arrays.asList(U1), true); // already present
+		c.setPermission(6L, Arrays.asList(U1), false); // not present
+		c.setGloballyReadable(4L, true);
+		c.setGloballyReadable(2L, false);
+
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 4L, 5L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U2, prov),
+				is(ImmutableSet.of(4L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(null, prov),
+				is(ImmutableSet.of(4L)));
+		// previously returned sets are unaffected
+		assertThat("incorrect ids", orig, is(ImmutableSet.of(1L, 2L, 3L)));
+
+		verify(prov).getReadableWorkspaces(U1);
+		verify(prov).getReadableWorkspaces(U2);
+		verify(prov).getGloballyReadableWorkspaces();
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void setDeleted() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(1L, 3L));
+		when(prov.getReadableWorkspaces(U2)).thenReturn(ImmutableSet.of(3L, 4L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(2L, 3L));
+
+		c.getReadableWorkspaces(U1, prov);
+		c.getReadableWorkspaces(U2, prov);
+
+		c.setDeleted(3L, true);
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 2L)));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U2, prov),
+				is(ImmutableSet.of(2L, 4L)));
+
+		// undeleting empties the cache
+		c.setDeleted(3L, false);
+		assertThat("incorrect size", c.size(), is(0L));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 2L, 3L)));
+
+		verify(prov, times(2)).getReadableWorkspaces(U1);
+		verify(prov).getReadableWorkspaces(U2);
+		verify(prov, times(2)).getGloballyReadableWorkspaces();
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void invalidateAll() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(1L))
+				.thenReturn(ImmutableSet.of(3L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(2L))
+				.thenReturn(ImmutableSet.of(4L));
+
+		c.getReadableWorkspaces(U1, prov);
+		c.invalidateAll();
+		assertThat("incorrect size", c.size(), is(0L));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(3L, 4L)));
+	}
+
+	@Test
+	public void expire() throws Exception {
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		final FakeTicker ticker = new FakeTicker();
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, ticker);
+
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(1L))
+				.thenReturn(ImmutableSet.of(3L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(2L))
+				.thenReturn(ImmutableSet.of(4L));
+
+		c.getReadableWorkspaces(U1, prov);
+		ticker.advance(9999);
+		// updates don't extend the expiry time
+		c.setPermission(5L, Arrays.asList(U1), true);
+		c.setGloballyReadable(6L, true);
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(1L, 2L, 5L, 6L)));
+
+		ticker.advance(1);
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(3L, 4L)));
+
+		verify(prov, times(2)).getReadableWorkspaces(U1);
+		verify(prov, times(2)).getGloballyReadableWorkspaces();
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void updateDuringLoad() throws Exception {
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		// simulates a permission change completing while the provider queries the database
+		final Set<Long> ids = c.getReadableWorkspaces(U1, new ReadableWorkspaceProvider() {
+
+			@Override
+			public Set<Long> getReadableWorkspaces(final WorkspaceUser user) {
+				c.setPermission(2L, Arrays.asList(U2), true);
+				return ImmutableSet.of(1L);
+			}
+
+			@Override
+			public Set<Long> getGloballyReadableWorkspaces() {
+				c.setGloballyReadable(3L, true);
+				return ImmutableSet.of(4L);
+			}
+		});
+
+		assertThat("incorrect ids", ids, is(ImmutableSet.of(1L, 4L)));
+		assertThat("incorrect size", c.size(), is(0L));
+
+		final ReadableWorkspaceProvider prov = mock(ReadableWorkspaceProvider.class);
+		when(prov.getReadableWorkspaces(U1)).thenReturn(ImmutableSet.of(5L));
+		when(prov.getGloballyReadableWorkspaces()).thenReturn(ImmutableSet.of(6L));
+		assertThat("incorrect ids", c.getReadableWorkspaces(U1, prov),
+				is(ImmutableSet.of(5L, 6L)));
+	}
+
+	@Test
+	public void failBadInput() throws Exception {
+		final ReadableWorkspaceCache c = new ReadableWorkspaceCache(100, 10000, new FakeTicker());
+
+		try {
+			c.getReadableWorkspaces(U1, null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("provider"));
+		}
+		failSetPermission(c, null, new NullPointerException("users"));
+		failSetPermission(c, Arrays.asList(U1, null), new NullPointerException("user"));
+		failSetPermission(c, Collections.singletonList(null), new NullPointerException("user"));
+	}
+
+	private void failSetPermission(
+			final ReadableWorkspaceCache c,
+			final Collection<WorkspaceUser> users,
+			final Exception expected) {
+		try {
+			c.setPermission(1L, users, true);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
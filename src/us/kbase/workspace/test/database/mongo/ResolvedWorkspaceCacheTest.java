@@ -0,0 +1,235 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.WorkspaceIdentifier;
+import us.kbase.workspace.database.mongo.ResolvedWorkspaceCache;
+import us.kbase.workspace.database.mongo.ResolvedWorkspaceCache.ResolvedWorkspaceProvider;
+
+public class ResolvedWorkspaceCacheTest {
+
+	private static final WorkspaceIdentifier ID1 = new WorkspaceIdentifier(1);
+	private static final WorkspaceIdentifier ID2 = new WorkspaceIdentifier(2);
+	private static final WorkspaceIdentifier NAME1 = new WorkspaceIdentifier("ws1");
+	private static final WorkspaceIdentifier NAME2 = new WorkspaceIdentifier("ws2");
+	private static final ResolvedWorkspaceID WS1 = new ResolvedWorkspaceID(1, "ws1", false, false);
+	private static final ResolvedWorkspaceID WS2 = new ResolvedWorkspaceID(2, "ws2", true, true);
+
+	private class FakeTicker extends Ticker {
+
+		private final AtomicLong nanos = new AtomicLong();
+
+		public FakeTicker advance(final long milliseconds) {
+			nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+			return this;
+		}
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		failConstruct(0, 1, new FakeTicker(),
+				new IllegalArgumentException("maxCacheSize must be at least 1"));
+		failConstruct(1, 0, new FakeTicker(),
+				new IllegalArgumentException("cacheTimeInMS must be at least 1"));
+		failConstruct(1, 1, null, new NullPointerException("ticker"));
+	}
+
+	private void failConstruct(
+			final int size,
+			final int time,
+			final Ticker ticker,
+			final Exception expected) {
+		try {
+			new ResolvedWorkspaceCache(size, time, ticker);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void resolveAndCache() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.resolveWorkspaces(ImmutableSet.of(ID1, NAME2, new WorkspaceIdentifier(3))))
+				.thenReturn(ImmutableMap.of(ID1, WS1, NAME2, WS2));
+
+		assertThat("incorrect resolve", c.resolveWorkspaces(
+				ImmutableSet.of(ID1, NAME2, new WorkspaceIdentifier(3)), prov),
+				is(ImmutableMap.of(ID1, WS1, NAME2, WS2)));
+		assertThat("incorrect size", c.size(), is(2L));
+
+		// cached by both name and id
+		assertThat("incorrect resolve", c.resolveWorkspaces(
+				ImmutableSet.of(ID1, ID2, NAME1, NAME2), prov),
+				is(ImmutableMap.of(ID1, WS1, ID2, WS2, NAME1, WS1, NAME2, WS2)));
+
+		verify(prov).resolveWorkspaces(
+				ImmutableSet.of(ID1, NAME2, new WorkspaceIdentifier(3)));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void partialHit() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.resolveWorkspaces(set(ID1))).thenReturn(ImmutableMap.of(ID1, WS1));
+		when(prov.resolveWorkspaces(set(NAME2))).thenReturn(ImmutableMap.of(NAME2, WS2));
+
+		c.resolveWorkspaces(set(ID1), prov);
+		assertThat("incorrect resolve", c.resolveWorkspaces(ImmutableSet.of(ID1, NAME2), prov),
+				is(ImmutableMap.of(ID1, WS1, NAME2, WS2)));
+
+		verify(prov).resolveWorkspaces(set(ID1));
+		verify(prov).resolveWorkspaces(set(NAME2));
+		verifyNoMoreInteractions(prov);
+	}
+
+	@Test
+	public void missingNotCached() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.resolveWorkspaces(set(NAME1))).thenReturn(Collections.emptyMap(),
+				ImmutableMap.of(NAME1, WS1));
+
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(NAME1), prov),
+				is(Collections.emptyMap()));
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(NAME1), prov),
+				is(ImmutableMap.of(NAME1, WS1)));
+		assertThat("incorrect size", c.size(), is(1L));
+	}
+
+	@Test
+	public void invalidate() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+		final ResolvedWorkspaceID locked = new ResolvedWorkspaceID(1, "ws1", true, false);
+
+		when(prov.resolveWorkspaces(ImmutableSet.of(ID1, NAME2))).thenReturn(
+				ImmutableMap.of(ID1, WS1, NAME2, WS2));
+		when(prov.resolveWorkspaces(set(NAME1))).thenReturn(ImmutableMap.of(NAME1, locked));
+
+		c.resolveWorkspaces(ImmutableSet.of(ID1, NAME2), prov);
+		c.invalidate(1);
+		assertThat("incorrect size", c.size(), is(1L));
+
+		// the name lookup must not return the invalidated workspace
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(NAME1), prov),
+				is(ImmutableMap.of(NAME1, locked)));
+		assertThat("incorrect resolve", c.resolveWorkspaces(ImmutableSet.of(ID1, NAME2), prov),
+				is(ImmutableMap.of(ID1, locked, NAME2, WS2)));
+
+		c.invalidateAll();
+		assertThat("incorrect size", c.size(), is(0L));
+	}
+
+	@Test
+	public void rename() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+		final ResolvedWorkspaceID renamed = new ResolvedWorkspaceID(1, "ws3", false, false);
+		final WorkspaceIdentifier name3 = new WorkspaceIdentifier("ws3");
+
+		when(prov.resolveWorkspaces(set(NAME1))).thenReturn(ImmutableMap.of(NAME1, WS1),
+				Collections.emptyMap());
+		when(prov.resolveWorkspaces(set(name3))).thenReturn(ImmutableMap.of(name3, renamed));
+
+		c.resolveWorkspaces(set(NAME1), prov);
+		c.invalidate(1);
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(name3), prov),
+				is(ImmutableMap.of(name3, renamed)));
+
+		// the old name is still cached, but now refers to a workspace with a different name
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(NAME1), prov),
+				is(Collections.emptyMap()));
+	}
+
+	@Test
+	public void expire() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final FakeTicker ticker = new FakeTicker();
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, ticker);
+
+		when(prov.resolveWorkspaces(set(ID1))).thenReturn(ImmutableMap.of(ID1, WS1));
+
+		c.resolveWorkspaces(set(ID1), prov);
+		ticker.advance(9999);
+		c.resolveWorkspaces(set(ID1), prov);
+		verify(prov).resolveWorkspaces(set(ID1));
+
+		ticker.advance(1);
+		c.resolveWorkspaces(set(ID1), prov);
+		verify(prov, times(2)).resolveWorkspaces(set(ID1));
+	}
+
+	@Test
+	public void invalidateDuringLoad() throws Exception {
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+
+		when(prov.resolveWorkspaces(set(ID1))).thenAnswer(inv -> {
+			c.invalidate(1); // e.g. the workspace is locked while the query is running
+			return ImmutableMap.of(ID1, WS1);
+		});
+
+		assertThat("incorrect resolve", c.resolveWorkspaces(set(ID1), prov),
+				is(ImmutableMap.of(ID1, WS1)));
+		assertThat("incorrect size", c.size(), is(0L));
+	}
+
+	@Test
+	public void resolveFail() throws Exception {
+		final ResolvedWorkspaceCache c = new ResolvedWorkspaceCache(100, 10000, new FakeTicker());
+		final ResolvedWorkspaceProvider prov = mock(ResolvedWorkspaceProvider.class);
+
+		failResolve(c, null, prov, new NullPointerException("wsis"));
+		failResolve(c, set(ID1), null, new NullPointerException("provider"));
+		failResolve(c, Collections.singleton(null), prov,
+				new NullPointerException("null item in wsis"));
+	}
+
+	private void failResolve(
+			final ResolvedWorkspaceCache c,
+			final Set<WorkspaceIdentifier> wsis,
+			final ResolvedWorkspaceProvider prov,
+			final Exception expected) {
+		try {
+			c.resolveWorkspaces(wsis, prov);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	private static Set<WorkspaceIdentifier> set(final WorkspaceIdentifier wsi) {
+		return ImmutableSet.of(wsi);
+	}
+}
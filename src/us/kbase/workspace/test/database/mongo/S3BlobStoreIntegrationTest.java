@@ -13,7 +13,9 @@ import java.net.URL;
 import java.nio.file.Paths;
 import java.util.List;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -128,6 +130,60 @@ public class S3BlobStoreIntegrationTest {
 		}
 	}
 	
+	@Test
+	public void constructClientFailBadMultipartSizes() throws Exception {
+		final URL u = new URL("http://localhost:45678");
+		final Region r = Region.of("us-west-1");
+		final long min = 5 * 1024 * 1024;
+		
+		constructClientFail(u, r, min - 1, min, new IllegalArgumentException(
+				"multipartThreshold must be at least 5242880"));
+		constructClientFail(u, r, min, min - 1, new IllegalArgumentException(
+				"partSize must be at least 5242880"));
+	}
+	
+	private void constructClientFail(
+			final URL host,
+			final Region region,
+			final long multipartThreshold,
+			final long partSize,
+			final Exception expected) {
+		try {
+			new S3ClientWithPresign(host, "k", "s", region, multipartThreshold, partSize);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	@Test
+	public void constructClientFailBadPartConcurrency() throws Exception {
+		final URL u = new URL("http://localhost:45678");
+		final Region r = Region.of("us-west-1");
+		final long min = 5 * 1024 * 1024;
+		
+		constructClientFail(u, r, min, 0, 1, new IllegalArgumentException(
+				"maxConcurrentPartsPerObject must be at least 1"));
+		constructClientFail(u, r, min, 1, 0, new IllegalArgumentException(
+				"maxConcurrentParts must be at least 1"));
+	}
+	
+	private void constructClientFail(
+			final URL host,
+			final Region region,
+			final long partSize,
+			final int maxConcurrentPartsPerObject,
+			final int maxConcurrentParts,
+			final Exception expected) {
+		try {
+			new S3ClientWithPresign(host, "k", "s", region, partSize, partSize,
+					maxConcurrentPartsPerObject, maxConcurrentParts);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
 	@Test
 	public void uploadPresignFailBadInput() throws Exception {
 		final PutObjectRequest p = PutObjectRequest.builder().bucket("b").key("k").build();
@@ -198,6 +254,32 @@ public class S3BlobStoreIntegrationTest {
 		failGetBlob(md1);
 	}
 	
+	@Test
+	public void saveAndGetBlobMultipart() throws Exception {
+		final long partSize = 5 * 1024 * 1024;
+		final S3ClientWithPresign cli = new S3ClientWithPresign(
+				new URL("http://localhost:" + minio.getServerPort()),
+				"s3keyhere", "sooporsekrit", Region.of("us-west-1"), partSize, partSize);
+		final S3BlobStore bs = new S3BlobStore(mongo.getCollection(COLLECTION), cli, BUCKET);
+		
+		// 3 parts, the last of which is smaller than the part size. Both the upload and the
+		// download are split into parts.
+		final String data = "\"" + StringUtils.repeat("a", (int) (partSize * 2.5)) + "\"";
+		final MD5 md5 = new MD5(DigestUtils.md5Hex(data));
+		assertThat("incorrect multipart", cli.isMultipartUpload(data.length()), is(true));
+		assertThat("incorrect multipart", cli.isMultipartDownload(data.length()), is(true));
+		bs.saveBlob(md5, new StringRestreamable(data), true);
+		
+		final ByteArrayFileCache d = bs.getBlob(md5,
+				new ByteArrayFileCacheManager(16000000, 2000000000L, tfm));
+		assertThat("incorrect sorted", d.isSorted(), is(true));
+		assertThat("Didn't get same data back from store",
+				DigestUtils.md5Hex(d.getInputStream()), is(md5.getMD5()));
+		
+		bs.removeBlob(md5);
+		failGetBlob(md5);
+	}
+	
 	@Test
 	public void getNonExistantBlob() throws Exception {
 		failGetBlob(new MD5(A32));
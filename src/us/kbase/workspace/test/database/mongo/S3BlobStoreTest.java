@@ -17,9 +17,12 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.UUID;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -48,9 +51,12 @@ import us.kbase.common.test.TestCommon;
 import us.kbase.common.test.TestCommon.LogEvent;
 import us.kbase.typedobj.core.MD5;
 import us.kbase.typedobj.core.Restreamable;
+import us.kbase.typedobj.core.TempFilesManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager;
 import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
 import us.kbase.workspace.database.DependencyStatus;
+import us.kbase.workspace.database.exceptions.FileCacheIOException;
+import us.kbase.workspace.database.exceptions.FileCacheLimitExceededException;
 import us.kbase.workspace.database.mongo.S3BlobStore;
 import us.kbase.workspace.database.mongo.S3BlobStore.UUIDGen;
 import us.kbase.workspace.database.mongo.S3ClientWithPresign;
@@ -418,6 +424,96 @@ public class S3BlobStoreTest {
 				"Could not write to the mongo database"));
 	}
 	
+	@Test
+	public void saveBlobMultipart() throws Exception {
+		final S3ClientWithPresign cli = mock(S3ClientWithPresign.class);
+		final S3Client s3cli = mock(S3Client.class);
+		final DBCollection col = mock(DBCollection.class);
+		final UUIDGen uuidGen = mock(UUIDGen.class);
+		when(cli.getClient()).thenReturn(s3cli);
+		
+		final S3BlobStore s3 = new S3BlobStore(col, cli, "foo", uuidGen);
+		final Restreamable r = new TestRestreamable("yay");
+		
+		when(col.findOne(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")))
+			.thenReturn(null);
+		when(uuidGen.randomUUID()).thenReturn(UUID.fromString(
+				"68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9"));
+		when(cli.isMultipartUpload(3)).thenReturn(true);
+		when(cli.presignAndPutObjectMultipart(
+				"foo", "68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9", r))
+				.thenReturn("2e1bc3b9e7b1ac82b7cf8c1a7a3b6d7c-3");
+		when(s3cli.headObject(HeadObjectRequest.builder().bucket("foo").key(
+				"68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9").build())).thenReturn(
+				HeadObjectResponse.builder()
+						.eTag("\"2e1bc3b9e7b1ac82b7cf8c1a7a3b6d7c-3\"").build());
+		
+		s3.saveBlob(new MD5("1fc5a11811de5142af444f5d482cd748"), r, true);
+		
+		verify(cli, never()).presignAndPutObject(any(), any());
+		verify(col).update(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748"),
+				new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")
+						.append("key", "68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9")
+						.append("sorted", true),
+				true, false);
+	}
+	
+	@Test
+	public void saveBlobMultipartFailOnUpload() throws Exception {
+		final S3ClientWithPresign cli = mock(S3ClientWithPresign.class);
+		final S3Client s3cli = mock(S3Client.class);
+		final DBCollection col = mock(DBCollection.class);
+		final UUIDGen uuidGen = mock(UUIDGen.class);
+		when(cli.getClient()).thenReturn(s3cli);
+		
+		final S3BlobStore s = new S3BlobStore(col, cli, "foo", uuidGen);
+		final MD5 m = new MD5("1fc5a11811de5142af444f5d482cd748");
+		final Restreamable r = new TestRestreamable("f");
+		
+		when(col.findOne(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")))
+				.thenReturn(null);
+		when(uuidGen.randomUUID()).thenReturn(UUID.fromString(
+				"68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9"));
+		when(cli.isMultipartUpload(1)).thenReturn(true);
+		when(cli.presignAndPutObjectMultipart(
+				"foo", "68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9", r))
+				.thenThrow(new IOException("Failed to upload part 2 after 3 attempts: oops"));
+		
+		saveBlobFail(s, m, r, new BlobStoreCommunicationException(
+				"S3 error: Failed to upload part 2 after 3 attempts: oops"));
+	}
+	
+	@Test
+	public void saveBlobMultipartFailBadETag() throws Exception {
+		final S3ClientWithPresign cli = mock(S3ClientWithPresign.class);
+		final S3Client s3cli = mock(S3Client.class);
+		final DBCollection col = mock(DBCollection.class);
+		final UUIDGen uuidGen = mock(UUIDGen.class);
+		when(cli.getClient()).thenReturn(s3cli);
+		
+		final S3BlobStore s = new S3BlobStore(col, cli, "foo", uuidGen);
+		final MD5 m = new MD5("1fc5a11811de5142af444f5d482cd748");
+		final Restreamable r = new TestRestreamable("f");
+		
+		when(col.findOne(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")))
+				.thenReturn(null);
+		when(uuidGen.randomUUID()).thenReturn(UUID.fromString(
+				"68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9"));
+		when(cli.isMultipartUpload(1)).thenReturn(true);
+		when(cli.presignAndPutObjectMultipart(
+				"foo", "68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9", r))
+				.thenReturn("2e1bc3b9e7b1ac82b7cf8c1a7a3b6d7c-3");
+		// a whole object MD5 is not the same as a multipart ETag
+		when(s3cli.headObject(HeadObjectRequest.builder().bucket("foo").key(
+				"68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9").build())).thenReturn(
+				HeadObjectResponse.builder()
+						.eTag("\"1fc5a11811de5142af444f5d482cd748\"").build());
+		
+		saveBlobFail(s, m, r, new BlobStoreCommunicationException(
+				"S3 upload corrupted, MD5s don't match"));
+		verify(col, never()).update(any(), any(), anyBoolean(), anyBoolean());
+	}
+	
 	private void saveBlobFail(
 			final S3BlobStore s3,
 			final MD5 md5,
@@ -468,6 +564,128 @@ public class S3BlobStoreTest {
 		assertThat("incorrect is trusted json", ba.containsTrustedJson(), is(true));
 	}
 	
+	@Test
+	public void getBlobInRanges() throws Exception {
+		final Path tempDir = Files.createTempDirectory("S3BlobStoreTest");
+		try {
+			final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+					30, 40, new TempFilesManager(tempDir.toFile()));
+			final ByteArrayFileCache ba = getBlobInRanges(bafcMan, "e\"", null);
+			
+			assertThat("incorrect data", ba.getUObject().asClassInstance(String.class),
+					is("input here"));
+			assertThat("incorrect sorted", ba.isSorted(), is(true));
+			assertThat("incorrect is trusted json", ba.containsTrustedJson(), is(true));
+			assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(12L));
+			assertThat("incorrect mem size", bafcMan.getSizeInMem(), is(0));
+			ba.destroy();
+		} finally {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+	
+	@Test
+	public void getBlobInRangesFailShortRange() throws Exception {
+		final Path tempDir = Files.createTempDirectory("S3BlobStoreTest");
+		try {
+			final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+					30, 40, new TempFilesManager(tempDir.toFile()));
+			
+			getBlobInRangesFail(bafcMan, "e", null,
+					new FileCacheIOException("S3 object data ended 1 bytes early"));
+			assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(0L));
+			assertThat("incorrect files", tempDir.toFile().list().length, is(0));
+		} finally {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+	
+	@Test
+	public void getBlobInRangesFailSdkException() throws Exception {
+		final Path tempDir = Files.createTempDirectory("S3BlobStoreTest");
+		try {
+			final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(
+					30, 40, new TempFilesManager(tempDir.toFile()));
+			
+			getBlobInRangesFail(bafcMan, "e\"",
+					SdkException.builder().message("range? what range?").build(),
+					new BlobStoreCommunicationException(
+							"Error getting S3 object: range? what range?"));
+			assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(0L));
+			assertThat("incorrect files", tempDir.toFile().list().length, is(0));
+		} finally {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+	
+	@Test
+	public void getBlobInRangesFailDiskLimit() throws Exception {
+		// ranged downloads always go to disk, even if the data would fit in memory
+		getBlobInRangesFail(new ByteArrayFileCacheManager(30, 11, null), "e\"", null,
+				new FileCacheLimitExceededException("Disk limit exceeded for file cache: 11"));
+	}
+	
+	private void getBlobInRangesFail(
+			final ByteArrayFileCacheManager bafcMan,
+			final String lastRange,
+			final SdkException lastRangeException,
+			final Exception expected) {
+		try {
+			getBlobInRanges(bafcMan, lastRange, lastRangeException);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+	
+	private ByteArrayFileCache getBlobInRanges(
+			final ByteArrayFileCacheManager bafcMan,
+			final String lastRange,
+			final SdkException lastRangeException)
+			throws Exception {
+		final S3ClientWithPresign cli = mock(S3ClientWithPresign.class);
+		final S3Client s3cli = mock(S3Client.class);
+		final DBCollection col = mock(DBCollection.class);
+		when(cli.getClient()).thenReturn(s3cli);
+		
+		final S3BlobStore s = new S3BlobStore(col, cli, "foo");
+		final MD5 m = new MD5("1fc5a11811de5142af444f5d482cd748");
+		final String key = "68/47/1b/68471ba8-c6b3-4ab7-9fc1-3c9ff304d6d9";
+		
+		when(col.findOne(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")))
+				.thenReturn(new BasicDBObject("chksum", "1fc5a11811de5142af444f5d482cd748")
+						.append("key", key)
+						.append("sorted", true));
+		when(cli.isMultipartDownload(12)).thenReturn(true);
+		when(cli.getPartSize()).thenReturn(5L);
+		when(cli.getMaxConcurrentParts()).thenReturn(4);
+		when(cli.getMaxConcurrentPartsPerObject()).thenReturn(2);
+		
+		// the first range is read from the stream for the entire object
+		when(s3cli.getObject(GetObjectRequest.builder().bucket("foo").key(key).build()))
+			.thenReturn(getObjectResponse("\"input here\"", 12L));
+		when(s3cli.getObject(GetObjectRequest.builder().bucket("foo").key(key)
+				.range("bytes=5-9").build()))
+			.thenReturn(getObjectResponse("t her", 5L));
+		final GetObjectRequest last = GetObjectRequest.builder().bucket("foo").key(key)
+				.range("bytes=10-11").build();
+		if (lastRangeException == null) {
+			when(s3cli.getObject(last)).thenReturn(getObjectResponse(lastRange, 2L));
+		} else {
+			when(s3cli.getObject(last)).thenThrow(lastRangeException);
+		}
+		
+		return s.getBlob(m, bafcMan);
+	}
+	
+	private ResponseInputStream<GetObjectResponse> getObjectResponse(
+			final String data,
+			final long size) {
+		return new ResponseInputStream<GetObjectResponse>(
+				GetObjectResponse.builder().contentLength(size).build(),
+				AbortableInputStream.create(new ByteArrayInputStream(data.getBytes())));
+	}
+	
 	@Test
 	public void getBlobFailBadInput() throws Exception {
 		final S3ClientWithPresign cli = mock(S3ClientWithPresign.class);
@@ -0,0 +1,230 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.MD5;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.SubsetCache;
+
+public class SubsetCacheTest {
+
+	private static final MD5 MD5_1 = new MD5("1fc5a11811de5142af444f5d482cd748");
+	private static final MD5 MD5_2 = new MD5("2fc5a11811de5142af444f5d482cd748");
+	private static final String DATA = "\"input here\""; // 12 bytes
+	private static final SubsetSelection SUBSET = new SubsetSelection(
+			Arrays.asList("/a", "/b/c"));
+
+	private Path tempDir;
+
+	@Before
+	public void before() throws Exception {
+		tempDir = Files.createTempDirectory("SubsetCacheTest");
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	private ByteArrayFileCache bafc(
+			final ByteArrayFileCacheManager bafcMan,
+			final boolean trusted,
+			final boolean sorted)
+			throws Exception {
+		return bafcMan.createBAFC(new ByteArrayInputStream(DATA.getBytes()), trusted, sorted);
+	}
+
+	private void assertBAFCCorrect(
+			final ByteArrayFileCache ba,
+			final boolean trusted,
+			final boolean sorted)
+			throws Exception {
+		assertThat("incorrect data", ba.getUObject().asClassInstance(String.class),
+				is("input here"));
+		assertThat("incorrect sorted", ba.isSorted(), is(sorted));
+		assertThat("incorrect is trusted json", ba.containsTrustedJson(), is(trusted));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final File f = tempDir.resolve("afile").toFile();
+		f.createNewFile();
+
+		failConstruct(-1, 1, tempDir.toFile(),
+				new IllegalArgumentException("maxMemoryUsage must be at least 0"));
+		failConstruct(1, -1, tempDir.toFile(),
+				new IllegalArgumentException("maxDiskUsage must be at least 0"));
+		failConstruct(1, 1, null, new NullPointerException("cacheDir"));
+		failConstruct(1, 1, f, new IllegalArgumentException(
+				"Subset cache location must be a directory: " + f));
+	}
+
+	private void failConstruct(
+			final long maxMem,
+			final long maxDisk,
+			final File cacheDir,
+			final Exception expected) {
+		try {
+			new SubsetCache(maxMem, maxDisk, cacheDir);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void constructClearsCacheDir() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		cacheDir.mkdir();
+		new File(cacheDir, "leftover").createNewFile();
+
+		new SubsetCache(0, 100, cacheDir);
+
+		assertThat("incorrect files", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void getMissing() throws Exception {
+		final SubsetCache sc = new SubsetCache(48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		assertThat("incorrect contains", sc.contains(MD5_1, SUBSET), is(false));
+		assertThat("incorrect get", sc.get(MD5_1, SUBSET, bafcMan), nullValue());
+	}
+
+	@Test
+	public void putAndGetFromMemory() throws Exception {
+		putAndGetFromMemory(true, true);
+		putAndGetFromMemory(true, false);
+		putAndGetFromMemory(false, true);
+	}
+
+	private void putAndGetFromMemory(final boolean trusted, final boolean sorted)
+			throws Exception {
+		final SubsetCache sc = new SubsetCache(48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		final ByteArrayFileCache subset = bafc(bafcMan, trusted, sorted);
+		sc.put(MD5_1, SUBSET, subset);
+		// the cached data is a copy
+		subset.destroy();
+
+		assertThat("incorrect mem size", sc.getMemoryCacheSize(), is(12L));
+		assertThat("incorrect contains", sc.contains(MD5_1, SUBSET), is(true));
+		assertBAFCCorrect(sc.get(MD5_1, SUBSET, bafcMan), trusted, sorted);
+		// the cached data still counts against the per request limit
+		assertThat("incorrect request mem", bafcMan.getSizeInMem(), is(24));
+	}
+
+	@Test
+	public void putAndGetFromDisk() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final SubsetCache sc = new SubsetCache(0, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		sc.put(MD5_1, SUBSET, bafc(bafcMan, true, false));
+
+		assertThat("incorrect mem size", sc.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", sc.getDiskCacheSize(), is(12L));
+		assertThat("incorrect file count", cacheDir.list().length, is(1));
+		assertBAFCCorrect(sc.get(MD5_1, SUBSET, bafcMan), true, false);
+	}
+
+	@Test
+	public void putTooLargeToCache() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		// max cacheable subset size is 11 for both tiers
+		final SubsetCache sc = new SubsetCache(47, 47, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		sc.put(MD5_1, SUBSET, bafc(bafcMan, true, true));
+
+		assertThat("incorrect contains", sc.contains(MD5_1, SUBSET), is(false));
+		assertThat("incorrect mem size", sc.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", sc.getDiskCacheSize(), is(0L));
+		assertThat("incorrect file count", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void selectionMatching() throws Exception {
+		final SubsetCache sc = new SubsetCache(48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		sc.put(MD5_1, SUBSET, bafc(bafcMan, true, true));
+
+		// path order and duplicates don't matter
+		assertThat("incorrect reordered", sc.contains(MD5_1, new SubsetSelection(
+				Arrays.asList("/b/c", "/a", "/b/c"))), is(true));
+		assertThat("incorrect explicit defaults", sc.contains(MD5_1, new SubsetSelection(
+				Arrays.asList("/a", "/b/c"), false, true)), is(true));
+
+		assertThat("incorrect md5", sc.contains(MD5_2, SUBSET), is(false));
+		assertThat("incorrect paths", sc.contains(MD5_1, new SubsetSelection(
+				Arrays.asList("/a"))), is(false));
+		assertThat("incorrect strict maps", sc.contains(MD5_1, new SubsetSelection(
+				Arrays.asList("/a", "/b/c"), true, true)), is(false));
+		assertThat("incorrect strict arrays", sc.contains(MD5_1, new SubsetSelection(
+				Arrays.asList("/a", "/b/c"), false, false)), is(false));
+		assertThat("incorrect get", sc.get(MD5_2, SUBSET, bafcMan), nullValue());
+	}
+
+	@Test
+	public void failBadInput() throws Exception {
+		final SubsetCache sc = new SubsetCache(48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache data = bafc(bafcMan, true, true);
+
+		getFail(sc, null, SUBSET, bafcMan, new NullPointerException("md5"));
+		getFail(sc, MD5_1, null, bafcMan, new NullPointerException("subset"));
+		getFail(sc, MD5_1, SUBSET, null, new NullPointerException("bafcMan"));
+
+		putFail(sc, null, SUBSET, data, new NullPointerException("md5"));
+		putFail(sc, MD5_1, null, data, new NullPointerException("subset"));
+		putFail(sc, MD5_1, SUBSET, null, new NullPointerException("data"));
+	}
+
+	private void getFail(
+			final SubsetCache sc,
+			final MD5 md5,
+			final SubsetSelection subset,
+			final ByteArrayFileCacheManager bafcMan,
+			final Exception expected) {
+		try {
+			sc.get(md5, subset, bafcMan);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	private void putFail(
+			final SubsetCache sc,
+			final MD5 md5,
+			final SubsetSelection subset,
+			final ByteArrayFileCache data,
+			final Exception expected) {
+		try {
+			sc.put(md5, subset, data);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+package us.kbase.workspace.test.database.mongo;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.mongo.TieredDataCache;
+
+public class TieredDataCacheTest {
+
+	private static final String DATA = "\"input here\""; // 12 bytes
+
+	private Path tempDir;
+
+	@Before
+	public void before() throws Exception {
+		tempDir = Files.createTempDirectory("TieredDataCacheTest");
+	}
+
+	@After
+	public void after() throws Exception {
+		FileUtils.deleteDirectory(tempDir.toFile());
+	}
+
+	private ByteArrayFileCache bafc(
+			final ByteArrayFileCacheManager bafcMan,
+			final boolean trusted,
+			final boolean sorted)
+			throws Exception {
+		return bafcMan.createBAFC(new ByteArrayInputStream(DATA.getBytes()), trusted, sorted);
+	}
+
+	private void assertBAFCCorrect(
+			final ByteArrayFileCache ba,
+			final boolean trusted,
+			final boolean sorted)
+			throws Exception {
+		assertThat("incorrect data", ba.getUObject().asClassInstance(String.class),
+				is("input here"));
+		assertThat("incorrect sorted", ba.isSorted(), is(sorted));
+		assertThat("incorrect is trusted json", ba.containsTrustedJson(), is(trusted));
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final File f = tempDir.resolve("afile").toFile();
+		f.createNewFile();
+		final File d = tempDir.toFile();
+
+		failConstruct(null, 1, 1, d, new NullPointerException("name"));
+		failConstruct("  \t ", 1, 1, d, new IllegalArgumentException("name cannot be empty"));
+		failConstruct("thing", -1, 1, d,
+				new IllegalArgumentException("maxMemoryUsage must be at least 0"));
+		failConstruct("thing", 1, -1, d,
+				new IllegalArgumentException("maxDiskUsage must be at least 0"));
+		failConstruct("thing", 1, 1, null, new NullPointerException("cacheDir"));
+		failConstruct("thing", 1, 1, f, new IllegalArgumentException(
+				"Thing cache location must be a directory: " + f));
+	}
+
+	private void failConstruct(
+			final String name,
+			final long maxMem,
+			final long maxDisk,
+			final File cacheDir,
+			final Exception expected) {
+		try {
+			new TieredDataCache<String>(name, maxMem, maxDisk, cacheDir);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void constructClearsAndCreatesCacheDir() throws Exception {
+		final Path cacheDir = tempDir.resolve("cache");
+		Files.createDirectories(cacheDir);
+		Files.write(cacheDir.resolve("leftover"), "foo".getBytes());
+
+		new TieredDataCache<String>("thing", 0, 100, cacheDir.toFile());
+		assertThat("cache dir not cleared", cacheDir.toFile().list().length, is(0));
+
+		final Path newDir = tempDir.resolve("new").resolve("cache");
+		new TieredDataCache<String>("thing", 0, 100, newDir.toFile());
+		assertThat("cache dir not created", Files.isDirectory(newDir), is(true));
+
+		// disk cache disabled, no directory required
+		new TieredDataCache<String>("thing", 100, 0, null);
+	}
+
+	@Test
+	public void memoryCache() throws Exception {
+		final TieredDataCache<String> c = new TieredDataCache<>(
+				"thing", 48, 100, tempDir.resolve("cache").toFile());
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		assertThat("incorrect contains", c.contains("k"), is(false));
+		assertThat("incorrect get", c.get("k", bafcMan), nullValue());
+
+		final ByteArrayFileCache data = bafc(bafcMan, false, true);
+		c.put("k", data);
+		assertBAFCCorrect(data, false, true); // not altered or destroyed
+
+		assertThat("incorrect contains", c.contains("k"), is(true));
+		assertThat("incorrect contains", c.contains("k2"), is(false));
+		assertBAFCCorrect(c.get("k", bafcMan), false, true);
+		assertThat("incorrect mem size", c.getMemoryCacheSize(), is(12L));
+		assertThat("incorrect disk size", c.getDiskCacheSize(), is(0L));
+		assertThat("incorrect file count",
+				tempDir.resolve("cache").toFile().list().length, is(0));
+	}
+
+	@Test
+	public void diskCache() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final TieredDataCache<String> c = new TieredDataCache<>("thing", 47, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		c.put("k", bafc(bafcMan, true, false));
+
+		assertThat("incorrect contains", c.contains("k"), is(true));
+		assertBAFCCorrect(c.get("k", bafcMan), true, false);
+		assertThat("incorrect mem size", c.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", c.getDiskCacheSize(), is(12L));
+		assertThat("incorrect file count", cacheDir.list().length, is(1));
+		assertThat("incorrect file name", cacheDir.list()[0].startsWith("thing."), is(true));
+	}
+
+	@Test
+	public void tooLargeToCache() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final TieredDataCache<String> c = new TieredDataCache<>("thing", 47, 47, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		c.put("k", bafc(bafcMan, true, true));
+
+		assertThat("incorrect contains", c.contains("k"), is(false));
+		assertThat("incorrect get", c.get("k", bafcMan), nullValue());
+		assertThat("incorrect mem size", c.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", c.getDiskCacheSize(), is(0L));
+		assertThat("incorrect file count", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void invalidate() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final TieredDataCache<String> mem = new TieredDataCache<>("thing", 48, 0, null);
+		final TieredDataCache<String> disk = new TieredDataCache<>("thing", 0, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		mem.put("k", bafc(bafcMan, true, true));
+		disk.put("k", bafc(bafcMan, true, true));
+		mem.invalidate("k");
+		disk.invalidate("k");
+
+		assertThat("incorrect contains", mem.contains("k"), is(false));
+		assertThat("incorrect contains", disk.contains("k"), is(false));
+		assertThat("incorrect mem size", mem.getMemoryCacheSize(), is(0L));
+		assertThat("incorrect disk size", disk.getDiskCacheSize(), is(0L));
+		assertThat("file not deleted", cacheDir.list().length, is(0));
+	}
+
+	@Test
+	public void evictionDeletesFiles() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		// room for 2 entries on disk
+		final TieredDataCache<String> c = new TieredDataCache<>("thing", 0, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		c.put("k1", bafc(bafcMan, true, true));
+		c.put("k2", bafc(bafcMan, true, true));
+		c.put("k3", bafc(bafcMan, true, true));
+		c.put("k4", bafc(bafcMan, true, true));
+		c.put("k5", bafc(bafcMan, true, true));
+
+		assertThat("incorrect disk size", c.getDiskCacheSize() <= 48, is(true));
+		assertThat("incorrect file count", (long) cacheDir.list().length,
+				is(c.getDiskCacheSize() / 12));
+		assertThat("incorrect contains", c.contains("k5"), is(true));
+	}
+
+	@Test
+	public void getFromDeletedFileReturnsNull() throws Exception {
+		final File cacheDir = tempDir.resolve("cache").toFile();
+		final TieredDataCache<String> c = new TieredDataCache<>("thing", 0, 48, cacheDir);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+
+		c.put("k", bafc(bafcMan, true, true));
+		cacheDir.listFiles()[0].delete();
+
+		assertThat("incorrect get", c.get("k", bafcMan), nullValue());
+	}
+
+	@Test
+	public void failNulls() throws Exception {
+		final TieredDataCache<String> c = new TieredDataCache<>("thing", 48, 0, null);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache data = bafc(bafcMan, true, true);
+
+		failNull(() -> c.contains(null), "key");
+		failNull(() -> c.get(null, bafcMan), "key");
+		failNull(() -> c.get("k", null), "bafcMan");
+		failNull(() -> c.put(null, data), "key");
+		failNull(() -> c.put("k", null), "data");
+		failNull(() -> c.invalidate(null), "key");
+	}
+
+	private interface Call {
+		void call() throws Exception;
+	}
+
+	private void failNull(final Call call, final String message) {
+		try {
+			call.call();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException(message));
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package us.kbase.workspace.test.kbase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.kbase.common.service.UObject;
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.TempFilesManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.UncheckedUserMetadata;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceObjectData;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+import us.kbase.workspace.kbase.DeferredObjectData;
+import us.kbase.workspace.kbase.ObjectDataPrefetcher;
+
+public class DeferredObjectDataTest {
+
+	private static final String DATA = "{\"a\":[1,2,3],\"b\":\"c\"}";
+
+	private static final WorkspaceObjectData OBJ = new WorkspaceObjectData(
+			new ObjectInformation(
+					3L, "whee", "a type", new Date(40000), 5, new WorkspaceUser("bar"),
+					new ResolvedWorkspaceID(24, "ws", false, false), "chksum",
+					DATA.length(), new UncheckedUserMetadata(Collections.emptyMap())),
+			new Provenance(new WorkspaceUser("bar")),
+			Collections.emptyList(),
+			null,
+			null);
+
+	private static final List<WorkspaceObjectData> OBJS = Arrays.asList(null, OBJ);
+
+	@Test
+	public void constructFail() throws Exception {
+		final ObjectDataPrefetcher pf = mock(ObjectDataPrefetcher.class);
+		when(pf.getObject(0)).thenThrow(new IllegalArgumentException("No object at index 0"));
+
+		failConstruct(null, 1, new NullPointerException("prefetcher"));
+		failConstruct(pf, 0, new IllegalArgumentException("No object at index 0"));
+	}
+
+	private void failConstruct(
+			final ObjectDataPrefetcher prefetcher,
+			final int index,
+			final Exception expected) {
+		try {
+			new DeferredObjectData(prefetcher, index);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void constructDoesNotRetrieveData() throws Exception {
+		final ObjectDataPrefetcher pf = mock(ObjectDataPrefetcher.class);
+		when(pf.getObject(1)).thenReturn(OBJ);
+
+		new DeferredObjectData(pf, 1);
+
+		verify(pf).getObject(1);
+		verify(pf, never()).getData(1);
+	}
+
+	@Test
+	public void serialize() throws Exception {
+		final ObjectDataPrefetcher pf = mock(ObjectDataPrefetcher.class);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache bafc = bafcMan.createBAFC(new ByteArrayInputStream(
+				DATA.getBytes(StandardCharsets.UTF_8)), true, true);
+		when(pf.getObject(1)).thenReturn(OBJ);
+		when(pf.getData(1)).thenReturn(bafc);
+
+		final String json = new ObjectMapper().writeValueAsString(Collections.singletonMap(
+				"data", new UObject(new DeferredObjectData(pf, 1))));
+
+		assertThat("incorrect json", json, is("{\"data\":" + DATA + "}"));
+		try {
+			bafc.getUObject();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new RuntimeException(
+					"This ByteArrayFileCache is destroyed"));
+		}
+	}
+
+	private Map<String, Object> deferredData(
+			final ByteArrayFileCacheManager bafcMan,
+			final boolean trusted)
+			throws Exception {
+		final ObjectDataPrefetcher pf = mock(ObjectDataPrefetcher.class);
+		when(pf.getObject(1)).thenReturn(OBJ);
+		when(pf.getData(1)).thenReturn(bafcMan.createBAFC(new ByteArrayInputStream(
+				DATA.getBytes(StandardCharsets.UTF_8)), trusted, true));
+		// check that separators are written correctly before and after the data
+		final Map<String, Object> ret = new LinkedHashMap<>();
+		ret.put("before", 1);
+		ret.put("data", new UObject(new DeferredObjectData(pf, 1)));
+		ret.put("after", Arrays.asList("a", "b"));
+		return ret;
+	}
+
+	private static final String EXPECTED_JSON =
+			"{\"before\":1,\"data\":" + DATA + ",\"after\":[\"a\",\"b\"]}";
+
+	@Test
+	public void serializeToStream() throws Exception {
+		for (final boolean trusted: Arrays.asList(true, false)) {
+			final ByteArrayFileCacheManager bafcMan =
+					new ByteArrayFileCacheManager(100, 0, null);
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+			new ObjectMapper().writeValue(bos, deferredData(bafcMan, trusted));
+
+			assertThat("incorrect json", new String(bos.toByteArray(), StandardCharsets.UTF_8),
+					is(EXPECTED_JSON));
+		}
+	}
+
+	@Test
+	public void serializeFileToFile() throws Exception {
+		final Path tempDir = Files.createTempDirectory("DeferredObjectDataTest");
+		try {
+			final TempFilesManager tfm = new TempFilesManager(tempDir.resolve("temp").toFile());
+			final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(0, 100, tfm);
+			final Path target = tempDir.resolve("target");
+			try (final OutputStream os = new FileOutputStream(target.toFile())) {
+				new ObjectMapper().writeValue(os, deferredData(bafcMan, true));
+			}
+
+			assertThat("incorrect json", new String(Files.readAllBytes(target),
+					StandardCharsets.UTF_8), is(EXPECTED_JSON));
+			assertThat("incorrect disk size", bafcMan.getSizeOnDisk(), is(21L));
+			assertThat("temp file not deleted", tfm.isEmpty(), is(true));
+		} finally {
+			FileUtils.deleteDirectory(tempDir.toFile());
+		}
+	}
+
+	@Test
+	public void serializeFail() throws Exception {
+		final ObjectDataPrefetcher pf = mock(ObjectDataPrefetcher.class);
+		final WorkspaceCommunicationException err =
+				new WorkspaceCommunicationException("oh poop");
+		when(pf.getObject(1)).thenReturn(OBJ);
+		when(pf.getData(1)).thenThrow(err);
+
+		final JsonGenerator gen = new ObjectMapper().getFactory()
+				.createGenerator(new StringWriter());
+		try {
+			new DeferredObjectData(pf, 1).serialize(gen, null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IOException(
+					"Error retrieving data for object 24/3/5: oh poop"));
+			assertThat("incorrect cause", got.getCause(), is((Throwable) err));
+		}
+		verify(pf).getData(1);
+	}
+
+	@Test
+	public void constructWithPrefetcherDoesNotRetrieveData() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager bafcMan = new ByteArrayFileCacheManager(100, 0, null);
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, bafcMan, 2);
+
+		new DeferredObjectData(pf, 1);
+
+		verifyZeroInteractions(ws);
+	}
+}
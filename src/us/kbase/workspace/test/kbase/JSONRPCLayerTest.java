@@ -75,6 +75,9 @@ import us.kbase.workspace.SubAction;
 import us.kbase.workspace.WorkspaceClient;
 import us.kbase.workspace.WorkspaceIdentity;
 import us.kbase.workspace.WorkspacePermissions;
+import us.kbase.workspace.WorkspaceServer;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder;
+import us.kbase.workspace.database.ResourceUsageConfigurationBuilder.ResourceUsageConfiguration;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -2847,6 +2850,143 @@ public class JSONRPCLayerTest extends JSONRPCLayerTester {
 		assertThat("correct returned names", got, is(exp));
 	}
 
+	private List<ObjectSaveData> saveStreamingTestObjects(final String workspace)
+			throws Exception {
+		// with the 24 byte per request memory limit for returned data, the larger objects
+		// are written to temporary files partway through the response
+		final List<ObjectSaveData> objs = new LinkedList<>();
+		for (int i = 1; i <= 6; i++) {
+			objs.add(new ObjectSaveData().withName("o" + i).withType(SAFE_TYPE)
+					.withData(new UObject(ImmutableMap.of(
+							"thing", i % 2 == 0 ? TEXT256 : "s" + i))));
+		}
+		CLIENT1.saveObjects(new SaveObjectsParams().withWorkspace(workspace).withObjects(objs));
+		return objs;
+	}
+	
+	private void checkStreamedGetObjects(final GetObjects2Params params) throws Exception {
+		final JsonNode expected = MAPPER.valueToTree(CLIENT1.getObjects2(params));
+		final JsonNode got = MAPPER.valueToTree(CLIENT_STREAM1.getObjects2(params));
+		assertThat("streamed response differs", got, is(expected));
+	}
+	
+	private void failStreamedGetObjects(final GetObjects2Params params, final String expected)
+			throws Exception {
+		for (final WorkspaceClient cli: Arrays.asList(CLIENT1, CLIENT_STREAM1)) {
+			try {
+				cli.getObjects2(params);
+				fail("got objects with bad params");
+			} catch (ServerException se) {
+				assertThat("correct excep message", se.getLocalizedMessage(), is(expected));
+			}
+		}
+	}
+	
+	@Test
+	public void getObjectsStreamed() throws Exception {
+		final long wsid = CLIENT1.createWorkspace(new CreateWorkspaceParams()
+				.withWorkspace("stream")).getE1();
+		saveStreamingTestObjects("stream");
+		
+		final List<ObjectSpecification> objs = Arrays.asList(
+				new ObjectSpecification().withRef("stream/o1"),
+				new ObjectSpecification().withRef("stream/2"),
+				new ObjectSpecification().withRef(wsid + "/3/1"),
+				new ObjectSpecification().withRef("stream/o2"), // requested twice
+				new ObjectSpecification().withWorkspace("stream").withName("o4"),
+				new ObjectSpecification().withRef("stream/o5"),
+				new ObjectSpecification().withRef("stream/o6"));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs).withNoData(1L));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs.subList(1, 2)));
+		checkStreamedGetObjects(new GetObjects2Params()
+				.withObjects(new LinkedList<ObjectSpecification>()));
+	}
+	
+	@Test
+	public void getObjectsStreamedIgnoreErrors() throws Exception {
+		CLIENT1.createWorkspace(new CreateWorkspaceParams().withWorkspace("stream"));
+		saveStreamingTestObjects("stream");
+		
+		final List<ObjectSpecification> objs = Arrays.asList(
+				new ObjectSpecification().withRef("stream/o7"),
+				new ObjectSpecification().withRef("stream/o1"),
+				new ObjectSpecification().withRef("stream/2"),
+				new ObjectSpecification().withRef("nostream/1"),
+				new ObjectSpecification().withRef("stream/o3"),
+				new ObjectSpecification().withRef("stream/o4/2"),
+				new ObjectSpecification().withRef("stream/o6"));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs).withIgnoreErrors(1L));
+		
+		failStreamedGetObjects(new GetObjects2Params().withObjects(objs),
+				"No object with name o7 exists in workspace 1 (name stream)");
+	}
+	
+	@Test
+	public void getObjectsStreamedWithSubsets() throws Exception {
+		CLIENT1.createWorkspace(new CreateWorkspaceParams().withWorkspace("stream"));
+		saveStreamingTestObjects("stream");
+		
+		// requests with subsets are never streamed, but the results must be the same
+		// regardless of the server setting
+		final List<ObjectSpecification> objs = Arrays.asList(
+				new ObjectSpecification().withRef("stream/o1"),
+				new ObjectSpecification().withRef("stream/o2")
+						.withIncluded(Arrays.asList("/thing")),
+				new ObjectSpecification().withRef("stream/o3")
+						.withIncluded(Arrays.asList("/nothing")).withStrictMaps(0L),
+				new ObjectSpecification().withRef("stream/o4"));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs));
+		checkStreamedGetObjects(new GetObjects2Params().withObjects(objs)
+				.withIgnoreErrors(1L));
+		
+		failStreamedGetObjects(new GetObjects2Params().withObjects(Arrays.asList(
+				new ObjectSpecification().withRef("stream/o1"),
+				new ObjectSpecification().withRef("stream/o2")
+						.withIncluded(Arrays.asList("/nothing")).withStrictMaps(1L))),
+				"Invalid selection: data does not contain a field or key named 'nothing', " +
+				"at: /nothing");
+	}
+	
+	@Test
+	public void getObjectsStreamedDataLimit() throws Exception {
+		CLIENT1.createWorkspace(new CreateWorkspaceParams().withWorkspace("stream"));
+		saveStreamingTestObjects("stream");
+		// objects 1, 3, and 5 are 14 bytes, 2, 4, and 6 are 268 bytes
+		final List<ObjectSpecification> objs = Arrays.asList(
+				new ObjectSpecification().withRef("stream/o1"),
+				new ObjectSpecification().withRef("stream/o2"),
+				new ObjectSpecification().withRef("stream/o3"),
+				new ObjectSpecification().withRef("stream/o2"), // requested twice
+				new ObjectSpecification().withRef("stream/o4"));
+		
+		final List<WorkspaceServer> servers = Arrays.asList(SERVER1, SERVER_STREAM);
+		final List<ResourceUsageConfiguration> oldcfgs = new LinkedList<>();
+		for (final WorkspaceServer s: servers) {
+			oldcfgs.add(s.getWorkspaceResourceUsageConfig());
+		}
+		try {
+			for (final WorkspaceServer s: servers) {
+				s.setResourceUsageConfiguration(new ResourceUsageConfigurationBuilder(
+						s.getWorkspaceResourceUsageConfig())
+						.withMaxReturnedDataSize(564)
+						.withMaxConcurrentBlobFetchesPerCall(2)
+						.build());
+			}
+			checkStreamedGetObjects(new GetObjects2Params().withObjects(objs));
+			
+			failStreamedGetObjects(new GetObjects2Params().withObjects(Arrays.asList(
+					objs.get(0), objs.get(1), objs.get(2), objs.get(4),
+					new ObjectSpecification().withRef("stream/o5"))),
+					"Too much data requested from the workspace at once; data requested " +
+					"including potential subsets is 578B which exceeds maximum of 564.");
+		} finally {
+			for (int i = 0; i < servers.size(); i++) {
+				servers.get(i).setResourceUsageConfiguration(oldcfgs.get(i));
+			}
+		}
+	}
+	
 	@Test
 	public void getObjectSubset() throws Exception {
 		/* note most tests are performed at the same time as getObjects, so
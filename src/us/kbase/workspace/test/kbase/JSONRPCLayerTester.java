@@ -113,6 +113,9 @@ public class JSONRPCLayerTester {
 	protected static WorkspaceServer SERVER2 = null;
 	protected static WorkspaceClient CLIENT_FOR_SRV2 = null;  // This client connects to SERVER2
 	protected static WorkspaceClient CLIENT_NO_AUTH = null;
+	// this server shares SERVER1's databases but streams object data in get_objects2 responses
+	protected static WorkspaceServer SERVER_STREAM = null;
+	protected static WorkspaceClient CLIENT_STREAM1 = null;
 	
 	protected static WorkspaceServer SERVER_AUTH_ADMINS = null;
 	protected static WorkspaceClient CLIENT_AA1 = null;
@@ -238,7 +241,7 @@ public class JSONRPCLayerTester {
 		AUTH_USER2 = auth.getUserFromToken(t2);
 
 		SERVER_AUTH_ADMINS = startupWorkspaceServer(
-				mongohost, DB_WS_NAME_AUTH2_ADMINS, DB_TYPE_NAME_AUTH2_ADMINS, true);
+				mongohost, DB_WS_NAME_AUTH2_ADMINS, DB_TYPE_NAME_AUTH2_ADMINS, true, false);
 		int port2 = SERVER_AUTH_ADMINS.getServerPort();
 		System.out.println("Started auth roles test server on port " + port2);
 		final URL wsurl2 = new URL("http://localhost:" + port2);
@@ -250,6 +253,14 @@ public class JSONRPCLayerTester {
 		CLIENT_AA2.setIsInsecureHttpConnectionAllowed(true);
 		CLIENT_AA3.setIsInsecureHttpConnectionAllowed(true);
 		
+		SERVER_STREAM = startupWorkspaceServer(
+				mongohost, DB_WS_NAME_1, DB_TYPE_NAME_1, false, true);
+		System.out.println("Started streaming test server on port " +
+				SERVER_STREAM.getServerPort());
+		CLIENT_STREAM1 = new WorkspaceClient(
+				new URL("http://localhost:" + SERVER_STREAM.getServerPort()), t1);
+		CLIENT_STREAM1.setIsInsecureHttpConnectionAllowed(true);
+		
 		SERVER2 = startupWorkspaceServer(mongohost, DB_WS_NAME_2, DB_TYPE_NAME_2);
 		CLIENT_FOR_SRV2 = new WorkspaceClient(new URL("http://localhost:" + 
 					SERVER2.getServerPort()), t2);
@@ -377,14 +388,15 @@ public class JSONRPCLayerTester {
 			final String db,
 			final String typedb)
 			throws Exception {
-		return startupWorkspaceServer(mongohost, db, typedb, false);
+		return startupWorkspaceServer(mongohost, db, typedb, false, false);
 	}
 	
 	private static WorkspaceServer startupWorkspaceServer(
 			final String mongohost,
 			final String db,
 			final String typedb,
-			final boolean authAdminRoles)
+			final boolean authAdminRoles,
+			final boolean streamObjectData)
 			throws Exception {
 		
 		//write the server config file:
@@ -416,6 +428,9 @@ public class JSONRPCLayerTester {
 		ws.add("temp-dir", Paths.get(TestCommon.getTempDir())
 				.resolve("tempForJSONRPCLayerTester"));
 		ws.add("ignore-handle-service", "true");
+		if (streamObjectData) {
+			ws.add("stream-object-data", "true");
+		}
 		ini.store(iniFile);
 		iniFile.deleteOnExit();
 		
@@ -455,6 +470,11 @@ public class JSONRPCLayerTester {
 			SERVER_AUTH_ADMINS.stopServer();
 			System.out.println("Done");
 		}
+		if (SERVER_STREAM != null) {
+			System.out.print("Killing streaming server... ");
+			SERVER_STREAM.stopServer();
+			System.out.println("Done");
+		}
 		if (SERVER2 != null) {
 			System.out.print("Killing server 2... ");
 			SERVER2.stopServer();
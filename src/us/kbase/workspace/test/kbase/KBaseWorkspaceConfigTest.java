@@ -122,6 +122,31 @@ public class KBaseWorkspaceConfigTest {
 		assertThat("incorrect backend user", kwc.getBackendUser(), nullValue());
 		assertThat("incorrect backend container", kwc.getBackendContainer(), nullValue());
 		assertThat("incorrect backend region", kwc.getBackendRegion(), nullValue());
+		assertThat("incorrect blob cache mem", kwc.getBlobCacheMemoryMB(), is(0L));
+		assertThat("incorrect blob cache disk", kwc.getBlobCacheDiskMB(), is(0L));
+		assertThat("incorrect subset cache mem", kwc.getSubsetCacheMemoryMB(), is(0L));
+		assertThat("incorrect subset cache disk", kwc.getSubsetCacheDiskMB(), is(0L));
+		assertThat("incorrect blob fetch per call", kwc.getBlobFetchConcurrencyPerCall(),
+				is(0));
+		assertThat("incorrect blob fetch", kwc.getBlobFetchConcurrency(), is(0));
+		assertThat("incorrect blob upload per call", kwc.getBlobUploadConcurrencyPerCall(),
+				is(0));
+		assertThat("incorrect blob upload", kwc.getBlobUploadConcurrency(), is(0));
+		assertThat("incorrect multipart", kwc.getBackendMultipartThresholdMB(), is(0L));
+		assertThat("incorrect part per obj", kwc.getBackendPartConcurrencyPerObject(), is(0));
+		assertThat("incorrect part", kwc.getBackendPartConcurrency(), is(0));
+		assertThat("incorrect validation", kwc.getValidationConcurrency(), is(0));
+		assertThat("incorrect stream data", kwc.streamObjectData(), is(false));
+		assertThat("incorrect struct index", kwc.getStructuralIndexMinMB(), is(0L));
+		assertThat("incorrect ref cache", kwc.getIncomingReferenceCacheSize(), is(0));
+		assertThat("incorrect ref search", kwc.getReferenceSearchConcurrency(), is(0));
+		assertThat("incorrect ws cache", kwc.getReadableWorkspaceCacheSize(), is(0));
+		assertThat("incorrect ret mem", kwc.getReturnedDataGlobalMemoryMB(), is(0L));
+		assertThat("incorrect ret disk", kwc.getReturnedDataGlobalDiskMB(), is(0L));
+		assertThat("incorrect listener queue", kwc.getListenerQueueSize(), is(0));
+		assertThat("incorrect resolved cache", kwc.getResolvedWorkspaceCacheSize(), is(0));
+		assertThat("incorrect version cache", kwc.getObjectVersionCacheSize(), is(0));
+		assertThat("incorrect prov cache", kwc.getProvenanceCacheSize(), is(0));
 		assertThat("incorrect db", kwc.getDBname(), is("somedb"));
 		assertThat("incorrect errors", kwc.getErrors(), is(MT));
 		assertThat("incorrect srvc token", kwc.getHandleServiceToken(), nullValue());
@@ -251,6 +276,29 @@ public class KBaseWorkspaceConfigTest {
 				.with("backend-token", "    token token token    ")
 				.with("backend-container", "   mahbukkit   ")
 				.with("backend-region", "   a-lovely-region   ")
+				.with("backend-multipart-threshold-mb", "   64   ")
+				.with("backend-part-concurrency-per-object", "   6   ")
+				.with("backend-part-concurrency", "   80   ")
+				.with("blob-cache-memory-mb", "   512   ")
+				.with("blob-cache-disk-mb", "   2048   ")
+				.with("subset-cache-memory-mb", "   256   ")
+				.with("subset-cache-disk-mb", "   1024   ")
+				.with("blob-fetch-concurrency-per-call", "   20   ")
+				.with("blob-fetch-concurrency", "   100   ")
+				.with("blob-upload-concurrency-per-call", "   30   ")
+				.with("blob-upload-concurrency", "   60   ")
+				.with("validation-concurrency", "   8   ")
+				.with("stream-object-data", "   true   ")
+				.with("structural-index-min-mb", "   100   ")
+				.with("incoming-reference-cache-size", "   10000   ")
+				.with("reference-search-concurrency", "   4   ")
+				.with("readable-workspace-cache-size", "   500   ")
+				.with("returned-data-global-memory-mb", "   2000   ")
+				.with("returned-data-global-disk-mb", "   50000   ")
+				.with("listener-queue-size", "   10000   ")
+				.with("resolved-workspace-cache-size", "   20000   ")
+				.with("object-version-cache-size", "   100000   ")
+				.with("provenance-cache-size", "   5000   ")
 				.with("handle-manager-token", "    hmtoken    ")
 				.with("handle-manager-url", "    " + CI_SERV + "handle_mngr     ")
 				.with("handle-service-url", "     " + CI_SERV + "handle_service    ")
@@ -279,6 +327,29 @@ public class KBaseWorkspaceConfigTest {
 				"backend-user=someuser\n" + 
 				"backend-region=a-lovely-region\n" +
 				"backend-container=mahbukkit\n" +
+				"backend-multipart-threshold-mb=64\n" +
+				"backend-part-concurrency-per-object=6\n" +
+				"backend-part-concurrency=80\n" +
+				"blob-cache-memory-mb=512\n" +
+				"blob-cache-disk-mb=2048\n" +
+				"subset-cache-memory-mb=256\n" +
+				"subset-cache-disk-mb=1024\n" +
+				"blob-fetch-concurrency-per-call=20\n" +
+				"blob-fetch-concurrency=100\n" +
+				"blob-upload-concurrency-per-call=30\n" +
+				"blob-upload-concurrency=60\n" +
+				"validation-concurrency=8\n" +
+				"stream-object-data=true\n" +
+				"structural-index-min-mb=100\n" +
+				"incoming-reference-cache-size=10000\n" +
+				"reference-search-concurrency=4\n" +
+				"readable-workspace-cache-size=500\n" +
+				"returned-data-global-memory-mb=2000\n" +
+				"returned-data-global-disk-mb=50000\n" +
+				"listener-queue-size=10000\n" +
+				"resolved-workspace-cache-size=20000\n" +
+				"object-version-cache-size=100000\n" +
+				"provenance-cache-size=5000\n" +
 				"handle-service-url=" + CI_SERV + "handle_service\n" +
 				"bytestream-url=" + CI_SERV + "shock-api2\n" +
 				"bytestream-user=otheruser\n" +
@@ -300,6 +371,31 @@ public class KBaseWorkspaceConfigTest {
 		assertThat("incorrect backend container", kwc.getBackendContainer(), is("mahbukkit"));
 		assertThat("incorrect backend region", kwc.getBackendRegion(),
 				is(Region.of("a-lovely-region")));
+		assertThat("incorrect blob cache mem", kwc.getBlobCacheMemoryMB(), is(512L));
+		assertThat("incorrect blob cache disk", kwc.getBlobCacheDiskMB(), is(2048L));
+		assertThat("incorrect subset cache mem", kwc.getSubsetCacheMemoryMB(), is(256L));
+		assertThat("incorrect subset cache disk", kwc.getSubsetCacheDiskMB(), is(1024L));
+		assertThat("incorrect blob fetch per call", kwc.getBlobFetchConcurrencyPerCall(),
+				is(20));
+		assertThat("incorrect blob fetch", kwc.getBlobFetchConcurrency(), is(100));
+		assertThat("incorrect blob upload per call", kwc.getBlobUploadConcurrencyPerCall(),
+				is(30));
+		assertThat("incorrect blob upload", kwc.getBlobUploadConcurrency(), is(60));
+		assertThat("incorrect multipart", kwc.getBackendMultipartThresholdMB(), is(64L));
+		assertThat("incorrect part per obj", kwc.getBackendPartConcurrencyPerObject(), is(6));
+		assertThat("incorrect part", kwc.getBackendPartConcurrency(), is(80));
+		assertThat("incorrect validation", kwc.getValidationConcurrency(), is(8));
+		assertThat("incorrect stream data", kwc.streamObjectData(), is(true));
+		assertThat("incorrect struct index", kwc.getStructuralIndexMinMB(), is(100L));
+		assertThat("incorrect ref cache", kwc.getIncomingReferenceCacheSize(), is(10000));
+		assertThat("incorrect ref search", kwc.getReferenceSearchConcurrency(), is(4));
+		assertThat("incorrect ws cache", kwc.getReadableWorkspaceCacheSize(), is(500));
+		assertThat("incorrect ret mem", kwc.getReturnedDataGlobalMemoryMB(), is(2000L));
+		assertThat("incorrect ret disk", kwc.getReturnedDataGlobalDiskMB(), is(50000L));
+		assertThat("incorrect listener queue", kwc.getListenerQueueSize(), is(10000));
+		assertThat("incorrect resolved cache", kwc.getResolvedWorkspaceCacheSize(), is(20000));
+		assertThat("incorrect version cache", kwc.getObjectVersionCacheSize(), is(100000));
+		assertThat("incorrect prov cache", kwc.getProvenanceCacheSize(), is(5000));
 		assertThat("incorrect db", kwc.getDBname(), is("somedb"));
 		assertThat("incorrect errors", kwc.getErrors(), is(MT));
 		assertThat("incorrect srvc token", kwc.getHandleServiceToken(), is("hmtoken"));
@@ -938,4 +1034,361 @@ public class KBaseWorkspaceConfigTest {
 		assertThat("incorrect has err", kwc.hasErrors(), is(true));
 		assertThat("incorrect ignore hs", kwc.ignoreHandleService(), is(true));
 	}
+	
+	@Test
+	public void configFailBadBlobCacheSizes() throws Exception {
+		configFailBadBlobCacheSizes("foo", "-1", "foo", "-1");
+		configFailBadBlobCacheSizes("   1.5   ", "  10MB  ", "1.5", "10MB");
+	}
+	
+	private void configFailBadBlobCacheSizes(
+			final String mem,
+			final String disk,
+			final String memErr,
+			final String diskErr)
+			throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("blob-cache-memory-mb", mem)
+				.with("blob-cache-disk-mb", disk)
+				.build();
+		
+		final String err = "Parameter %s must be a non-negative integer: %s";
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				String.format(err, "blob-cache-memory-mb", memErr),
+				String.format(err, "blob-cache-disk-mb", diskErr))));
+		assertThat("incorrect blob cache mem", kwc.getBlobCacheMemoryMB(), is(0L));
+		assertThat("incorrect blob cache disk", kwc.getBlobCacheDiskMB(), is(0L));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadSubsetCacheSizes() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("subset-cache-memory-mb", "  -1  ")
+				.with("subset-cache-disk-mb", "   1.5   ")
+				.build();
+		
+		final String err = "Parameter %s must be a non-negative integer: %s";
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				String.format(err, "subset-cache-memory-mb", "-1"),
+				String.format(err, "subset-cache-disk-mb", "1.5"))));
+		assertThat("incorrect subset cache mem", kwc.getSubsetCacheMemoryMB(), is(0L));
+		assertThat("incorrect subset cache disk", kwc.getSubsetCacheDiskMB(), is(0L));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadBlobConcurrency() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("blob-fetch-concurrency-per-call", "  -3  ")
+				.with("blob-fetch-concurrency", "2147483648")
+				.with("blob-upload-concurrency-per-call", "  two  ")
+				.with("blob-upload-concurrency", "  -2147483649  ")
+				.with("validation-concurrency", "  -1  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter blob-fetch-concurrency-per-call must be a non-negative integer: -3",
+				"Parameter blob-fetch-concurrency must be no greater than 2147483647",
+				"Parameter blob-upload-concurrency-per-call must be a non-negative integer: two",
+				"Parameter blob-upload-concurrency must be a non-negative integer: " +
+						"-2147483649",
+				"Parameter validation-concurrency must be a non-negative integer: -1")));
+		assertThat("incorrect blob fetch per call", kwc.getBlobFetchConcurrencyPerCall(),
+				is(0));
+		assertThat("incorrect blob fetch", kwc.getBlobFetchConcurrency(), is(0));
+		assertThat("incorrect blob upload per call", kwc.getBlobUploadConcurrencyPerCall(),
+				is(0));
+		assertThat("incorrect blob upload", kwc.getBlobUploadConcurrency(), is(0));
+		assertThat("incorrect validation", kwc.getValidationConcurrency(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadBackendPartConcurrency() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("backend-part-concurrency-per-object", "  -1  ")
+				.with("backend-part-concurrency", "  lots  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter backend-part-concurrency-per-object must be a non-negative " +
+						"integer: -1",
+				"Parameter backend-part-concurrency must be a non-negative integer: lots")));
+		assertThat("incorrect part per obj", kwc.getBackendPartConcurrencyPerObject(), is(0));
+		assertThat("incorrect part", kwc.getBackendPartConcurrency(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadStructuralIndexMin() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("structural-index-min-mb", "  -1  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter structural-index-min-mb must be a non-negative integer: -1")));
+		assertThat("incorrect struct index", kwc.getStructuralIndexMinMB(), is(0L));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadIncomingReferenceCacheSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("incoming-reference-cache-size", "  foo  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter incoming-reference-cache-size must be a non-negative integer: foo")));
+		assertThat("incorrect ref cache", kwc.getIncomingReferenceCacheSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadReferenceSearchConcurrency() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("reference-search-concurrency", "  -2  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter reference-search-concurrency must be a non-negative integer: -2")));
+		assertThat("incorrect ref search", kwc.getReferenceSearchConcurrency(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadReadableWorkspaceCacheSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("readable-workspace-cache-size", "  1.5  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter readable-workspace-cache-size must be a non-negative integer: 1.5")));
+		assertThat("incorrect ws cache", kwc.getReadableWorkspaceCacheSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadReturnedDataGlobalLimits() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("returned-data-global-memory-mb", "  -1  ")
+				.with("returned-data-global-disk-mb", "  foo  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter returned-data-global-memory-mb must be a non-negative integer: -1",
+				"Parameter returned-data-global-disk-mb must be a non-negative integer: foo")));
+		assertThat("incorrect ret mem", kwc.getReturnedDataGlobalMemoryMB(), is(0L));
+		assertThat("incorrect ret disk", kwc.getReturnedDataGlobalDiskMB(), is(0L));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadListenerQueueSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("listener-queue-size", "  -10  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter listener-queue-size must be a non-negative integer: -10")));
+		assertThat("incorrect listener queue", kwc.getListenerQueueSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadResolvedWorkspaceCacheSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("resolved-workspace-cache-size", "  big  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter resolved-workspace-cache-size must be a non-negative integer: big")));
+		assertThat("incorrect resolved cache", kwc.getResolvedWorkspaceCacheSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadObjectVersionCacheSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("object-version-cache-size", "  -1  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter object-version-cache-size must be a non-negative integer: -1")));
+		assertThat("incorrect version cache", kwc.getObjectVersionCacheSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadProvenanceCacheSize() throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("backend-type", "GridFS")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("ignore-handle-service", "foo")
+				.with("provenance-cache-size", "  -1  ")
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(
+				"Parameter provenance-cache-size must be a non-negative integer: -1")));
+		assertThat("incorrect prov cache", kwc.getProvenanceCacheSize(), is(0));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
+	
+	@Test
+	public void configFailBadMultipartThreshold() throws Exception {
+		configFailBadMultipartThreshold("  4  ",
+				"Parameter backend-multipart-threshold-mb must be at least 5");
+		configFailBadMultipartThreshold("  -5  ",
+				"Parameter backend-multipart-threshold-mb must be a non-negative integer: -5");
+	}
+	
+	private void configFailBadMultipartThreshold(final String threshold, final String err)
+			throws Exception {
+		final Map<String, String> cfg = MapBuilder.<String, String>newHashMap()
+				.with("mongodb-host", "somehost")
+				.with("mongodb-database", "somedb")
+				.with("mongodb-type-database", "typedb")
+				.with("temp-dir", "temp")
+				.with("auth-service-url", AUTH_LEGACY_URL)
+				.with("auth2-service-url", CI_SERV + "auth")
+				.with("backend-type", "GridFS")
+				.with("ignore-handle-service", "foo")
+				.with("backend-multipart-threshold-mb", threshold)
+				.build();
+		
+		final KBaseWorkspaceConfig kwc = new KBaseWorkspaceConfig(cfg);
+		
+		assertThat("incorrect errors", kwc.getErrors(), is(Arrays.asList(err)));
+		assertThat("incorrect multipart", kwc.getBackendMultipartThresholdMB(), is(0L));
+		assertThat("incorrect has err", kwc.hasErrors(), is(true));
+	}
 }
@@ -0,0 +1,266 @@
+package us.kbase.workspace.test.kbase;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.typedobj.core.SubsetSelection;
+import us.kbase.workspace.database.ByteArrayFileCacheManager;
+import us.kbase.workspace.database.ByteArrayFileCacheManager.ByteArrayFileCache;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Provenance;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.UncheckedUserMetadata;
+import us.kbase.workspace.database.Workspace;
+import us.kbase.workspace.database.WorkspaceObjectData;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.exceptions.WorkspaceCommunicationException;
+import us.kbase.workspace.kbase.ObjectDataPrefetcher;
+
+public class ObjectDataPrefetcherTest {
+
+	private static final WorkspaceObjectData O0 = obj(0);
+	private static final WorkspaceObjectData O2 = obj(2);
+	private static final WorkspaceObjectData O3 = obj(3);
+	private static final WorkspaceObjectData O4 = obj(4);
+	private static final List<WorkspaceObjectData> OBJS = Arrays.asList(O0, null, O2, O3, O4);
+	private static final SubsetSelection E = SubsetSelection.EMPTY;
+
+	private static WorkspaceObjectData obj(final int id) {
+		return new WorkspaceObjectData(
+				new ObjectInformation(
+						id, "o" + id, "a type", new Date(40000), 1, new WorkspaceUser("bar"),
+						new ResolvedWorkspaceID(24, "ws", false, false), "chksum",
+						2, new UncheckedUserMetadata(Collections.emptyMap())),
+				new Provenance(new WorkspaceUser("bar")),
+				Collections.emptyList(),
+				null,
+				null);
+	}
+
+	private static ByteArrayFileCache data(final ByteArrayFileCacheManager bafcMan)
+			throws Exception {
+		return bafcMan.createBAFC(new ByteArrayInputStream(
+				"{}".getBytes(StandardCharsets.UTF_8)), true, true);
+	}
+
+	private static CompletableFuture<ByteArrayFileCache> done(final ByteArrayFileCache data) {
+		return CompletableFuture.completedFuture(data);
+	}
+
+	private static void assertDestroyed(final ByteArrayFileCache data, final boolean destroyed)
+			throws Exception {
+		try {
+			data.getUObject();
+			assertThat("data not destroyed", destroyed, is(false));
+		} catch (RuntimeException got) {
+			assertThat("data destroyed", destroyed, is(true));
+			TestCommon.assertExceptionCorrect(got, new RuntimeException(
+					"This ByteArrayFileCache is destroyed"));
+		}
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+
+		failConstruct(null, OBJS, b, 1, new NullPointerException("ws"));
+		failConstruct(ws, null, b, 1, new NullPointerException("objects"));
+		failConstruct(ws, OBJS, null, 1, new NullPointerException("dataManager"));
+		failConstruct(ws, OBJS, b, 0, new IllegalArgumentException(
+				"maxConcurrentRetrievals must be at least 1"));
+	}
+
+	private void failConstruct(
+			final Workspace ws,
+			final List<WorkspaceObjectData> objects,
+			final ByteArrayFileCacheManager dataManager,
+			final int max,
+			final Exception expected) {
+		try {
+			new ObjectDataPrefetcher(ws, objects, dataManager, max);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void getObject() throws Exception {
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(mock(Workspace.class), OBJS,
+				new ByteArrayFileCacheManager(100, 0, null), 1);
+
+		assertThat("incorrect object", pf.getObject(3), is(O3));
+		for (final int i: Arrays.asList(-1, 1, 5)) {
+			try {
+				pf.getObject(i);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got, new IllegalArgumentException(
+						"No object at index " + i));
+			}
+		}
+	}
+
+	@Test
+	public void getDataPrefetches() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache d0 = data(b);
+		final ByteArrayFileCache d2 = data(b);
+		final ByteArrayFileCache d3 = data(b);
+		final ByteArrayFileCache d4 = data(b);
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(done(d0));
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(done(d2));
+		when(ws.getObjectDataAsync(O3, E, b)).thenReturn(done(d3));
+		when(ws.getObjectDataAsync(O4, E, b)).thenReturn(done(d4));
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 2);
+
+		// the null object is skipped and doesn't count against the limit
+		assertThat("incorrect data", pf.getData(0), is(d0));
+		verify(ws).getObjectDataAsync(O0, E, b);
+		verify(ws).getObjectDataAsync(O2, E, b);
+		verifyNoMoreInteractions(ws);
+
+		assertThat("incorrect data", pf.getData(2), is(d2));
+		verify(ws).getObjectDataAsync(O3, E, b);
+		verifyNoMoreInteractions(ws);
+
+		assertThat("incorrect data", pf.getData(3), is(d3));
+		verify(ws).getObjectDataAsync(O4, E, b);
+		verifyNoMoreInteractions(ws);
+
+		assertThat("incorrect data", pf.getData(4), is(d4));
+		verifyNoMoreInteractions(ws);
+
+		// the caller is responsible for destroying the returned data
+		pf.close();
+		for (final ByteArrayFileCache d: Arrays.asList(d0, d2, d3, d4)) {
+			assertDestroyed(d, false);
+		}
+	}
+
+	@Test
+	public void getDataSerially() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache d0 = data(b);
+		final ByteArrayFileCache d2 = data(b);
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(done(d0));
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(done(d2));
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 1);
+
+		assertThat("incorrect data", pf.getData(0), is(d0));
+		verify(ws).getObjectDataAsync(O0, E, b);
+		verifyNoMoreInteractions(ws);
+
+		assertThat("incorrect data", pf.getData(2), is(d2));
+		verify(ws).getObjectDataAsync(O2, E, b);
+		verifyNoMoreInteractions(ws);
+	}
+
+	@Test
+	public void getDataSkipsUnrequestedObjects() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache d0 = data(b);
+		final ByteArrayFileCache d2 = data(b);
+		final ByteArrayFileCache d3 = data(b);
+		final ByteArrayFileCache d4 = data(b);
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(done(d0));
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(done(d2));
+		when(ws.getObjectDataAsync(O3, E, b)).thenReturn(done(d3));
+		when(ws.getObjectDataAsync(O4, E, b)).thenReturn(done(d4));
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 2);
+
+		assertThat("incorrect data", pf.getData(0), is(d0));
+		assertThat("incorrect data", pf.getData(4), is(d4));
+
+		assertDestroyed(d2, true);
+		verify(ws, never()).getObjectDataAsync(O3, E, b);
+	}
+
+	@Test
+	public void closeDestroysUnrequestedData() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		final ByteArrayFileCache d0 = data(b);
+		final ByteArrayFileCache d2 = data(b);
+		final ByteArrayFileCache d3 = data(b);
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(done(d0));
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(done(d2));
+		when(ws.getObjectDataAsync(O3, E, b)).thenReturn(done(d3));
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 3);
+
+		pf.getData(0);
+		pf.close();
+
+		assertDestroyed(d0, false);
+		assertDestroyed(d2, true);
+		assertDestroyed(d3, true);
+
+		failGetData(pf, 2, new IllegalStateException("The prefetcher is closed"));
+	}
+
+	@Test
+	public void getDataFailBadIndex() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(done(data(b)));
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(done(data(b)));
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 1);
+
+		failGetData(pf, -1, new IllegalArgumentException("No object at index -1"));
+		failGetData(pf, 1, new IllegalArgumentException("No object at index 1"));
+		failGetData(pf, 5, new IllegalArgumentException("No object at index 5"));
+
+		pf.getData(0);
+		failGetData(pf, 0, new IllegalArgumentException(
+				"The data for the object at index 0 has already been requested"));
+	}
+
+	@Test
+	public void getDataFailRetrieval() throws Exception {
+		final Workspace ws = mock(Workspace.class);
+		final ByteArrayFileCacheManager b = new ByteArrayFileCacheManager(100, 0, null);
+		final CompletableFuture<ByteArrayFileCache> f0 = new CompletableFuture<>();
+		f0.completeExceptionally(new WorkspaceCommunicationException("oh poop"));
+		final CompletableFuture<ByteArrayFileCache> f2 = new CompletableFuture<>();
+		f2.completeExceptionally(new IllegalArgumentException("Too much data"));
+		when(ws.getObjectDataAsync(O0, E, b)).thenReturn(f0);
+		when(ws.getObjectDataAsync(O2, E, b)).thenReturn(f2);
+		final ObjectDataPrefetcher pf = new ObjectDataPrefetcher(ws, OBJS, b, 2);
+
+		failGetData(pf, 0, new WorkspaceCommunicationException("oh poop"));
+		failGetData(pf, 2, new IllegalArgumentException("Too much data"));
+	}
+
+	private void failGetData(
+			final ObjectDataPrefetcher pf,
+			final int index,
+			final Exception expected) {
+		try {
+			pf.getData(index);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package us.kbase.workspace.test.listener;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.google.common.base.Optional;
+
+import us.kbase.common.test.TestCommon;
+import us.kbase.workspace.database.ObjectInformation;
+import us.kbase.workspace.database.Permission;
+import us.kbase.workspace.database.ResolvedWorkspaceID;
+import us.kbase.workspace.database.UncheckedUserMetadata;
+import us.kbase.workspace.database.WorkspaceUser;
+import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.listener.AsynchronousEventListener;
+import us.kbase.workspace.listener.BatchingWorkspaceEventListener;
+import us.kbase.workspace.listener.WorkspaceEventListener;
+
+public class AsynchronousEventListenerTest {
+
+	private static final WorkspaceUser U1 = new WorkspaceUser("u1");
+	private static final WorkspaceUser U2 = new WorkspaceUser("u2");
+	private static final Instant T = Instant.ofEpochMilli(10000);
+
+	@Test
+	public void constructFail() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		failConstruct(null, 1, 1, 0, new NullPointerException("listener"));
+		failConstruct(l, 0, 1, 0, new IllegalArgumentException(
+				"maxQueueSize must be at least 1"));
+		failConstruct(l, 1, 0, 0, new IllegalArgumentException(
+				"maxBatchSize must be at least 1"));
+		failConstruct(l, 1, 1, -1, new IllegalArgumentException(
+				"maxQueueWaitTimeMS must be at least 0"));
+	}
+
+	private void failConstruct(
+			final WorkspaceEventListener listener,
+			final int queueSize,
+			final int batchSize,
+			final long waitTime,
+			final Exception expected) {
+		try {
+			new AsynchronousEventListener(listener, queueSize, batchSize, waitTime);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void allEvents() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 100, 10, 0);
+		final ObjectInformation oi = new ObjectInformation(3L, "foo", "Foo.Bar-2.1",
+				new Date(10000), 1, U1, new ResolvedWorkspaceID(2L, "ws", false, false),
+				"chksum", 12L, new UncheckedUserMetadata((WorkspaceUserMetadata) null));
+		final List<WorkspaceUser> users = new ArrayList<>(Arrays.asList(U1, U2));
+
+		al.createWorkspace(U1, 1, T);
+		al.cloneWorkspace(U1, 2, true, T);
+		al.setWorkspaceMetadata(U1, 3, T);
+		al.lockWorkspace(U1, 4, T);
+		al.renameWorkspace(U1, 5, "foo", T);
+		al.setGlobalPermission(U1, 6, Permission.READ, T);
+		al.setPermissions(null, 7, Permission.WRITE, users, T);
+		users.clear(); // the event should not be affected
+		al.setWorkspaceDescription(U1, 8, T);
+		al.setWorkspaceOwner(U1, 9, U2, Optional.of("bar"), T);
+		al.setWorkspaceDeleted(U1, 10, true, 42, T);
+		al.renameObject(U1, 11, 1, "baz", T);
+		al.revertObject(oi, true);
+		al.setObjectDeleted(U1, 12, 2, false, T);
+		al.copyObject(oi, false);
+		al.copyObject(U1, 13, 3, 4, T, true);
+		al.saveObject(oi, true);
+		al.close(10000);
+
+		final InOrder o = inOrder(l);
+		o.verify(l).createWorkspace(U1, 1, T);
+		o.verify(l).cloneWorkspace(U1, 2, true, T);
+		o.verify(l).setWorkspaceMetadata(U1, 3, T);
+		o.verify(l).lockWorkspace(U1, 4, T);
+		o.verify(l).renameWorkspace(U1, 5, "foo", T);
+		o.verify(l).setGlobalPermission(U1, 6, Permission.READ, T);
+		o.verify(l).setPermissions(null, 7, Permission.WRITE, Arrays.asList(U1, U2), T);
+		o.verify(l).setWorkspaceDescription(U1, 8, T);
+		o.verify(l).setWorkspaceOwner(U1, 9, U2, Optional.of("bar"), T);
+		o.verify(l).setWorkspaceDeleted(U1, 10, true, 42, T);
+		o.verify(l).renameObject(U1, 11, 1, "baz", T);
+		o.verify(l).revertObject(oi, true);
+		o.verify(l).setObjectDeleted(U1, 12, 2, false, T);
+		o.verify(l).copyObject(oi, false);
+		o.verify(l).copyObject(U1, 13, 3, 4, T, true);
+		o.verify(l).saveObject(oi, true);
+		verifyNoMoreInteractions(l);
+
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(16L));
+		assertThat("incorrect failed", al.getFailedCount(), is(0L));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(0L));
+		assertThat("incorrect waits", al.getQueueWaitCount(), is(0L));
+		assertThat("incorrect queue", al.getQueueSize(), is(0));
+	}
+
+	/* Blocks the dispatch thread when the listener receives the createWorkspace event for
+	 * workspace 1 until release is counted down.
+	 */
+	private static class Blocker {
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private Blocker(final WorkspaceEventListener l) {
+			doAnswer(inv -> {
+				entered.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				return null;
+			}).when(l).createWorkspace(U1, 1, T);
+		}
+
+		private void awaitBlocked() throws Exception {
+			assertThat("dispatch thread not blocked", entered.await(10, TimeUnit.SECONDS),
+					is(true));
+		}
+	}
+
+	@Test
+	public void batches() throws Exception {
+		final BatchingWorkspaceEventListener l = mock(BatchingWorkspaceEventListener.class);
+		final Blocker b = new Blocker(l);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 10, 3, 0);
+
+		al.createWorkspace(U1, 1, T);
+		b.awaitBlocked();
+		for (int i = 2; i < 7; i++) {
+			al.createWorkspace(U1, i, T);
+		}
+		assertThat("incorrect queue", al.getQueueSize(), is(5));
+		b.release.countDown();
+		al.close(10000);
+
+		final InOrder o = inOrder(l);
+		o.verify(l).startBatch();
+		o.verify(l).createWorkspace(U1, 1, T);
+		o.verify(l).endBatch();
+		o.verify(l).startBatch();
+		o.verify(l).createWorkspace(U1, 2, T);
+		o.verify(l).createWorkspace(U1, 3, T);
+		o.verify(l).createWorkspace(U1, 4, T);
+		o.verify(l).endBatch();
+		o.verify(l).startBatch();
+		o.verify(l).createWorkspace(U1, 5, T);
+		o.verify(l).createWorkspace(U1, 6, T);
+		o.verify(l).endBatch();
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(6L));
+	}
+
+	@Test
+	public void listenerFailures() throws Exception {
+		final BatchingWorkspaceEventListener l = mock(BatchingWorkspaceEventListener.class);
+		final Blocker b = new Blocker(l);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 10, 10, 0);
+		doThrow(new IllegalStateException("whoops")).when(l).lockWorkspace(U1, 2, T);
+		doThrow(new RuntimeException("batch fail")).doNothing().when(l).endBatch();
+
+		al.createWorkspace(U1, 1, T);
+		b.awaitBlocked();
+		al.lockWorkspace(U1, 2, T);
+		al.lockWorkspace(U1, 3, T);
+		b.release.countDown();
+		al.close(10000);
+
+		verify(l).lockWorkspace(U1, 3, T);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(2L));
+		assertThat("incorrect failed", al.getFailedCount(), is(1L));
+		assertThat("incorrect failed batches", al.getFailedBatchCount(), is(1L));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(0L));
+	}
+
+	@Test
+	public void queueFull() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final Blocker b = new Blocker(l);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 1, 10, 50);
+
+		al.createWorkspace(U1, 1, T);
+		b.awaitBlocked();
+		al.createWorkspace(U1, 2, T);
+		final long start = System.nanoTime();
+		al.createWorkspace(U1, 3, T); // waits and is dropped
+		final long elapsedMS = (System.nanoTime() - start) / 1000000;
+		assertThat("waited too short: " + elapsedMS, elapsedMS >= 50, is(true));
+		assertThat("incorrect waits", al.getQueueWaitCount(), is(1L));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(1L));
+		b.release.countDown();
+		al.close(10000);
+
+		verify(l).createWorkspace(U1, 2, T);
+		verify(l, never()).createWorkspace(U1, 3, T);
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(2L));
+	}
+
+	@Test
+	public void queueWaitForSpace() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final Blocker b = new Blocker(l);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 1, 10, 10000);
+
+		al.createWorkspace(U1, 1, T);
+		b.awaitBlocked();
+		al.createWorkspace(U1, 2, T);
+		final Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				// continue
+			}
+			b.release.countDown();
+		});
+		releaser.start();
+		al.createWorkspace(U1, 3, T); // waits until the dispatch thread takes event 2
+		releaser.join();
+		al.close(10000);
+
+		verify(l).createWorkspace(U1, 3, T);
+		assertThat("incorrect waits", al.getQueueWaitCount(), is(1L));
+		assertThat("incorrect dropped", al.getDroppedCount(), is(0L));
+		assertThat("incorrect delivered", al.getDeliveredCount(), is(3L));
+	}
+
+	@Test
+	public void closed() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 10, 10, 0);
+		al.close(10000);
+
+		al.createWorkspace(U1, 1, T);
+
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect dropped", al.getDroppedCount(), is(1L));
+		assertThat("incorrect queue", al.getQueueSize(), is(0));
+	}
+
+	@Test
+	public void closeListener() throws Exception {
+		final WorkspaceEventListener l = mock(WorkspaceEventListener.class);
+		final AsynchronousEventListener al = new AsynchronousEventListener(l, 10, 10, 0);
+		al.createWorkspace(U1, 1, T);
+
+		al.close();
+		al.createWorkspace(U1, 2, T);
+
+		final InOrder inOrder = inOrder(l);
+		inOrder.verify(l).createWorkspace(U1, 1, T);
+		inOrder.verify(l).close();
+		verifyNoMoreInteractions(l);
+		assertThat("incorrect dropped", al.getDroppedCount(), is(1L));
+	}
+}
@@ -0,0 +1,316 @@
+package us.kbase.workspace.test.modules;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+
+import us.kbase.common.test.MapBuilder;
+import us.kbase.common.test.TestCommon;
+import us.kbase.common.test.controllers.mongo.MongoController;
+import us.kbase.workspace.modules.KafkaEventOutbox;
+
+public class KafkaEventOutboxTest {
+
+	private static MongoController mongo;
+	private static MongoClient mc;
+	private static DB db;
+
+	private static final Map<String, Object> MSG1 = MapBuilder.<String, Object>newHashMap()
+			.with("user", "user1")
+			.with("wsid", 22L)
+			.with("objid", 3L)
+			.with("ver", 4)
+			.with("evtype", "NEW_VERSION")
+			.with("objtype", "Foo.Bar-1.0")
+			.with("time", 40000L)
+			.with("perm", null)
+			.with("permusers", Collections.emptyList())
+			.build();
+	private static final Map<String, Object> MSG2 = MapBuilder.<String, Object>newHashMap()
+			.with("user", null)
+			.with("wsid", 23L)
+			.with("objid", null)
+			.with("ver", null)
+			.with("evtype", "SET_PERMISSION")
+			.with("objtype", null)
+			.with("time", 50000L)
+			.with("perm", "r")
+			.with("permusers", Arrays.asList("user2", "user3"))
+			.build();
+	private static final Map<String, Object> MSG3 = MapBuilder.<String, Object>newHashMap()
+			.with("user", "user4")
+			.with("wsid", 24L)
+			.with("time", 60000L)
+			.build();
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		mongo = new MongoController(TestCommon.getMongoExe(),
+				Paths.get(TestCommon.getTempDir()),
+				TestCommon.useWiredTigerEngine());
+		System.out.println("Using Mongo temp dir " + mongo.getTempDir());
+		TestCommon.stfuLoggers();
+		mc = new MongoClient("localhost:" + mongo.getServerPort());
+		db = mc.getDB("KafkaEventOutboxTest");
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		if (mc != null) {
+			mc.close();
+		}
+		if (mongo != null) {
+			mongo.destroy(TestCommon.getDeleteTempFiles());
+		}
+	}
+
+	@Before
+	public void clearDB() throws Exception {
+		TestCommon.destroyDB(db);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static KafkaProducer<String, Map<String, Object>> getClient() {
+		return mock(KafkaProducer.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Future<RecordMetadata> getFuture() {
+		return mock(Future.class);
+	}
+
+	private static ProducerRecord<String, Map<String, Object>> rec(
+			final String topic,
+			final Map<String, Object> msg) {
+		return new ProducerRecord<>(topic, msg);
+	}
+
+	@Test
+	public void constructFail() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		failConstruct(null, client, 1, 1, new NullPointerException("db"));
+		failConstruct(db, null, 1, 1, new NullPointerException("client"));
+		failConstruct(db, client, 0, 1, new IllegalArgumentException(
+				"maxBatchSize must be at least 1"));
+		failConstruct(db, client, 1, 0, new IllegalArgumentException(
+				"pollIntervalMS must be at least 1"));
+	}
+
+	private void failConstruct(
+			final DB db,
+			final KafkaProducer<String, Map<String, Object>> client,
+			final int batchSize,
+			final long pollInterval,
+			final Exception expected) {
+		try {
+			new KafkaEventOutbox(db, client, batchSize, pollInterval);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, expected);
+		}
+	}
+
+	@Test
+	public void addFail() throws Exception {
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, getClient(), 1, 1);
+		try {
+			ob.add(null, MSG1);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("topic"));
+		}
+		try {
+			ob.add("t", null);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new NullPointerException("message"));
+		}
+	}
+
+	@Test
+	public void relay() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		when(client.send(any())).thenReturn(fut);
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, client, 10, 1);
+
+		assertThat("incorrect relayed", ob.relay(), is(0));
+
+		ob.add("topic1", MSG1);
+		ob.add("topic2", MSG2);
+		ob.add("topic1", MSG3);
+		verify(client, never()).send(any());
+		assertThat("incorrect size", ob.size(), is(3L));
+
+		assertThat("incorrect relayed", ob.relay(), is(3));
+
+		final InOrder o = inOrder(client);
+		o.verify(client).send(rec("topic1", MSG1));
+		o.verify(client).send(rec("topic2", MSG2));
+		o.verify(client).send(rec("topic1", MSG3));
+		verify(fut, times(3)).get(anyLong(), any());
+		assertThat("incorrect size", ob.size(), is(0L));
+
+		assertThat("incorrect relayed", ob.relay(), is(0));
+		verify(client, times(3)).send(any());
+	}
+
+	@Test
+	public void relayBatches() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		when(client.send(any())).thenReturn(fut);
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, client, 2, 1);
+
+		ob.add("topic1", MSG1);
+		ob.add("topic1", MSG2);
+		ob.add("topic1", MSG3);
+
+		assertThat("incorrect relayed", ob.relay(), is(2));
+		verify(client).send(rec("topic1", MSG1));
+		verify(client).send(rec("topic1", MSG2));
+		verify(client, never()).send(rec("topic1", MSG3));
+		assertThat("incorrect size", ob.size(), is(1L));
+
+		assertThat("incorrect relayed", ob.relay(), is(1));
+		verify(client).send(rec("topic1", MSG3));
+		assertThat("incorrect size", ob.size(), is(0L));
+	}
+
+	@Test
+	public void relayFailureRetried() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		final Future<RecordMetadata> failfut = getFuture();
+		when(failfut.get(anyLong(), any())).thenThrow(
+				new ExecutionException(new KafkaException("well poop")));
+		when(client.send(rec("topic1", MSG1))).thenReturn(fut);
+		when(client.send(rec("topic1", MSG2))).thenReturn(failfut, fut);
+		when(client.send(rec("topic1", MSG3))).thenReturn(fut);
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, client, 10, 1);
+
+		ob.add("topic1", MSG1);
+		ob.add("topic1", MSG2);
+		ob.add("topic1", MSG3);
+
+		assertThat("incorrect relayed", ob.relay(), is(2));
+		assertThat("incorrect size", ob.size(), is(1L));
+
+		assertThat("incorrect relayed", ob.relay(), is(1));
+		verify(client).send(rec("topic1", MSG1));
+		verify(client, times(2)).send(rec("topic1", MSG2));
+		verify(client).send(rec("topic1", MSG3));
+		assertThat("incorrect size", ob.size(), is(0L));
+	}
+
+	@Test
+	public void relayAfterRestart() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		when(client.send(any())).thenReturn(fut);
+		final KafkaEventOutbox ob1 = new KafkaEventOutbox(db, client, 10, 1);
+		ob1.add("topic1", MSG1);
+		ob1.add("topic1", MSG2);
+
+		// simulates a server restart before the relay ran
+		final KafkaEventOutbox ob2 = new KafkaEventOutbox(db, client, 10, 1);
+		assertThat("incorrect size", ob2.size(), is(2L));
+		assertThat("incorrect relayed", ob2.relay(), is(2));
+
+		final InOrder o = inOrder(client);
+		o.verify(client).send(rec("topic1", MSG1));
+		o.verify(client).send(rec("topic1", MSG2));
+		assertThat("incorrect size", ob1.size(), is(0L));
+	}
+
+	@Test
+	public void relaySkipsClaimedMessages() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		when(client.send(any())).thenReturn(fut);
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, client, 10, 1);
+		ob.add("topic1", MSG1);
+		ob.add("topic1", MSG2);
+
+		// simulate another relay claiming the first message
+		final BasicDBObject first = (BasicDBObject) db.getCollection(KafkaEventOutbox.COLLECTION)
+				.find().sort(new BasicDBObject("_id", 1)).limit(1).next();
+		setClaim(first.get("_id"), new Date(System.currentTimeMillis() + 60000));
+
+		assertThat("incorrect relayed", ob.relay(), is(1));
+		verify(client, never()).send(rec("topic1", MSG1));
+		verify(client).send(rec("topic1", MSG2));
+
+		// the other relay's claim expires
+		setClaim(first.get("_id"), new Date(System.currentTimeMillis() - 1));
+
+		assertThat("incorrect relayed", ob.relay(), is(1));
+		verify(client).send(rec("topic1", MSG1));
+		assertThat("incorrect size", ob.size(), is(0L));
+	}
+
+	private void setClaim(final Object id, final Date claim) {
+		db.getCollection(KafkaEventOutbox.COLLECTION).update(new BasicDBObject("_id", id),
+				new BasicDBObject("$set", new BasicDBObject("claim", claim)
+						.append("owner", "someotherrelay")));
+	}
+
+	@Test
+	public void relayThread() throws Exception {
+		final KafkaProducer<String, Map<String, Object>> client = getClient();
+		final Future<RecordMetadata> fut = getFuture();
+		when(client.send(any())).thenReturn(fut);
+		final KafkaEventOutbox ob = new KafkaEventOutbox(db, client, 10, 60000);
+		ob.start();
+		ob.start(); // noop
+		try {
+			// the relay should be woken by the add rather than waiting for the poll interval
+			ob.add("topic1", MSG1);
+			for (int i = 0; i < 1000 && ob.size() != 0; i++) {
+				Thread.sleep(10);
+			}
+			assertThat("incorrect size", ob.size(), is(0L));
+			verify(client).send(rec("topic1", MSG1));
+		} finally {
+			ob.close(10000);
+		}
+
+		try {
+			ob.start();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new IllegalStateException(
+					"The outbox is closed"));
+		}
+	}
+}
@@ -3,8 +3,14 @@ package us.kbase.workspace.test.modules;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
@@ -26,9 +32,11 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.KafkaException;
 import org.junit.Test;
+import org.mockito.InOrder;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.mongodb.MongoClient;
 
 import us.kbase.common.test.MapBuilder;
 import us.kbase.common.test.TestCommon;
@@ -38,8 +46,10 @@ import us.kbase.workspace.database.ResolvedWorkspaceID;
 import us.kbase.workspace.database.UncheckedUserMetadata;
 import us.kbase.workspace.database.WorkspaceUser;
 import us.kbase.workspace.database.WorkspaceUserMetadata;
+import us.kbase.workspace.listener.BatchingWorkspaceEventListener;
 import us.kbase.workspace.listener.ListenerInitializationException;
 import us.kbase.workspace.listener.WorkspaceEventListener;
+import us.kbase.workspace.modules.KafkaEventOutbox;
 import us.kbase.workspace.modules.KafkaNotifierFactory;
 
 public class KafkaNotifierFactoryTest {
@@ -66,6 +76,19 @@ public class KafkaNotifierFactoryTest {
 		return notis;
 	}
 	
+	private static WorkspaceEventListener getKafkaNotifier(
+			final String topic,
+			final String bootstrapServers,
+			final KafkaProducer<String, Map<String, Object>> client,
+			final KafkaEventOutbox outbox)
+			throws Exception {
+		final Class<?> inner = KafkaNotifierFactory.class.getDeclaredClasses()[0];
+		final Constructor<?> con = inner.getDeclaredConstructor(
+				String.class, String.class, KafkaProducer.class, KafkaEventOutbox.class);
+		con.setAccessible(true);
+		return (WorkspaceEventListener) con.newInstance(topic, bootstrapServers, client, outbox);
+	}
+	
 	private static final class TestMocks {
 		private KafkaProducer<String, Map<String, Object>> client;
 		private WorkspaceEventListener listener;
@@ -769,6 +792,96 @@ public class KafkaNotifierFactoryTest {
 		}
 	}
 	
+	private static Map<String, Object> wsEvent(final String user, final long wsid) {
+		return MapBuilder.<String, Object>newHashMap()
+				.with("user", user)
+				.with("wsid", wsid)
+				.with("objid", null)
+				.with("ver", null)
+				.with("evtype", "WORKSPACE_STATE_CHANGE")
+				.with("objtype", null)
+				.with("time", 40000L)
+				.with("perm", null)
+				.with("permusers", Collections.emptyList())
+				.build();
+	}
+	
+	@Test
+	public void batch() throws Exception {
+		final TestMocks mocks = initTestMocks("mytopic", "localhost:9081");
+		final BatchingWorkspaceEventListener bl = (BatchingWorkspaceEventListener) mocks.listener;
+		
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut1 = mock(Future.class);
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut2 = mock(Future.class);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user1", 22L)))).thenReturn(fut1);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user2", 23L)))).thenReturn(fut2);
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut3 = mock(Future.class);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user3", 24L)))).thenReturn(fut3);
+		
+		bl.startBatch();
+		bl.createWorkspace(new WorkspaceUser("user1"), 22L, Instant.ofEpochMilli(40000));
+		bl.lockWorkspace(new WorkspaceUser("user2"), 23L, Instant.ofEpochMilli(40000));
+		
+		// no waiting until the batch ends
+		verifyZeroInteractions(fut1, fut2);
+		
+		bl.endBatch();
+		
+		verify(fut1).get(anyLong(), eq(TimeUnit.MILLISECONDS));
+		verify(fut2).get(anyLong(), eq(TimeUnit.MILLISECONDS));
+		
+		// outside a batch each event waits
+		bl.createWorkspace(new WorkspaceUser("user3"), 24L, Instant.ofEpochMilli(40000));
+		verify(fut3).get(35000, TimeUnit.MILLISECONDS);
+		
+		// ending a batch that wasn't started does nothing
+		bl.endBatch();
+	}
+	
+	@Test
+	public void batchFail() throws Exception {
+		final TestMocks mocks = initTestMocks("mytopic", "localhost:9081");
+		final BatchingWorkspaceEventListener bl = (BatchingWorkspaceEventListener) mocks.listener;
+		
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut1 = mock(Future.class);
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut2 = mock(Future.class);
+		@SuppressWarnings("unchecked")
+		final Future<RecordMetadata> fut3 = mock(Future.class);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user1", 22L)))).thenReturn(fut1);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user2", 23L)))).thenReturn(fut2);
+		when(mocks.client.send(new ProducerRecord<String, Map<String,Object>>("mytopic",
+				wsEvent("user3", 24L)))).thenReturn(fut3);
+		when(fut1.get(anyLong(), eq(TimeUnit.MILLISECONDS))).thenThrow(
+				new ExecutionException("not this one", new IllegalStateException("this one")));
+		when(fut2.get(anyLong(), eq(TimeUnit.MILLISECONDS))).thenThrow(
+				new TimeoutException("time up"));
+		
+		bl.startBatch();
+		bl.createWorkspace(new WorkspaceUser("user1"), 22L, Instant.ofEpochMilli(40000));
+		bl.createWorkspace(new WorkspaceUser("user2"), 23L, Instant.ofEpochMilli(40000));
+		bl.createWorkspace(new WorkspaceUser("user3"), 24L, Instant.ofEpochMilli(40000));
+		
+		try {
+			bl.endBatch();
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got, new RuntimeException(
+					"Failed sending notification to Kafka: this one"));
+		}
+		// all the sends are checked regardless of failures
+		verify(fut2).get(anyLong(), eq(TimeUnit.MILLISECONDS));
+		verify(fut3).get(anyLong(), eq(TimeUnit.MILLISECONDS));
+	}
 
 	/* Kafka notifier constructor fail tests */
 	
@@ -826,6 +939,64 @@ public class KafkaNotifierFactoryTest {
 		verify(client).close(0, TimeUnit.MILLISECONDS);
 	}
 	
+	@Test
+	public void outbox() throws Exception {
+		@SuppressWarnings("unchecked")
+		final KafkaProducer<String, Map<String, Object>> client = mock(KafkaProducer.class);
+		final KafkaEventOutbox outbox = mock(KafkaEventOutbox.class);
+		final BatchingWorkspaceEventListener bl = (BatchingWorkspaceEventListener)
+				getKafkaNotifier("mytopic", "localhost:9081", client, outbox);
+		
+		bl.createWorkspace(new WorkspaceUser("user1"), 22L, Instant.ofEpochMilli(40000));
+		bl.startBatch();
+		bl.createWorkspace(new WorkspaceUser("user2"), 23L, Instant.ofEpochMilli(40000));
+		bl.endBatch();
+		
+		verify(client).partitionsFor("mytopic");
+		verify(outbox).add("mytopic", wsEvent("user1", 22L));
+		verify(outbox).add("mytopic", wsEvent("user2", 23L));
+		verify(client, never()).send(any());
+		assertThat("incorrect durable", bl.isDurable(), is(true));
+	}
+	
+	@Test
+	public void notDurableWithoutOutbox() throws Exception {
+		final TestMocks mocks = initTestMocks("mytopic", "localhost:9081");
+		
+		assertThat("incorrect durable", mocks.listener.isDurable(), is(false));
+	}
+	
+	@Test
+	public void close() throws Exception {
+		final TestMocks mocks = initTestMocks("mytopic", "localhost:9081");
+		
+		mocks.listener.close();
+		
+		verify(mocks.client).close(10000, TimeUnit.MILLISECONDS);
+	}
+	
+	@Test
+	public void closeWithOutbox() throws Exception {
+		@SuppressWarnings("unchecked")
+		final KafkaProducer<String, Map<String, Object>> client = mock(KafkaProducer.class);
+		final KafkaEventOutbox outbox = mock(KafkaEventOutbox.class);
+		final MongoClient mc = mock(MongoClient.class);
+		final Class<?> inner = KafkaNotifierFactory.class.getDeclaredClasses()[0];
+		final Constructor<?> con = inner.getDeclaredConstructor(String.class, String.class,
+				KafkaProducer.class, KafkaEventOutbox.class, MongoClient.class);
+		con.setAccessible(true);
+		final WorkspaceEventListener notis = (WorkspaceEventListener) con.newInstance(
+				"mytopic", "localhost:9081", client, outbox, mc);
+		
+		notis.close();
+		
+		// the relay must stop before the clients it uses are closed
+		final InOrder inOrder = inOrder(outbox, mc, client);
+		inOrder.verify(outbox).close(10000);
+		inOrder.verify(mc).close();
+		inOrder.verify(client).close(10000, TimeUnit.MILLISECONDS);
+	}
+	
 	@Test
 	public void mapSerializer() throws Exception {
 		final KafkaNotifierFactory.MapSerializer mapSerializer =
@@ -888,6 +1059,22 @@ public class KafkaNotifierFactoryTest {
 				"Kafka bootstrap.servers cannot be null or whitespace only"));
 	}
 	
+	@Test
+	public void getNotifierFailBadOutboxConfig() throws Exception {
+		final Map<String, String> c = new HashMap<>();
+		c.put("bootstrap.servers", "localhost:9081");
+		c.put("outbox.mongohost", "localhost:27017");
+		getNotifierFail(c, new IllegalArgumentException(
+				"Kafka outbox.mongodatabase cannot be null or whitespace only"));
+		c.put("outbox.mongodatabase", "   \t      ");
+		getNotifierFail(c, new IllegalArgumentException(
+				"Kafka outbox.mongodatabase cannot be null or whitespace only"));
+		c.put("outbox.mongodatabase", "ws");
+		c.put("outbox.mongouser", "user");
+		getNotifierFail(c, new ListenerInitializationException(
+				"Kafka outbox.mongopwd is required if outbox.mongouser is provided"));
+	}
+	
 	private void getNotifierFail(final Map<String, String> config, final Exception expected) {
 		try {
 			new KafkaNotifierFactory().configure(config);
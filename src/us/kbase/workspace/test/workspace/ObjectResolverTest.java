@@ -515,10 +515,7 @@ public class ObjectResolverTest {
 		final Reference pathendref = new Reference("4/1/1");
 		final ObjectIDResolvedWS pathendresfinal = new ObjectIDResolvedWS(rwsi2, 1, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi2.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -559,10 +556,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -601,10 +595,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -647,10 +638,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi2.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -689,10 +677,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi2.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -737,9 +722,7 @@ public class ObjectResolverTest {
 		final Reference pathendref = new Reference("4/1/1");
 		final ObjectIDResolvedWS pathendresfinal = new ObjectIDResolvedWS(rwsi2, 1, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -778,10 +761,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi2.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -821,10 +801,7 @@ public class ObjectResolverTest {
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		final Reference pathendref = new Reference("4/1/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi2, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi2.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -877,10 +854,7 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -932,9 +906,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath);
 		
@@ -954,9 +926,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
 				.withIgnoreInaccessible(true).resolve();
@@ -993,10 +963,7 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsireadable, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsireadable.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1053,10 +1020,7 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsireadable, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsireadable.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1118,10 +1082,7 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1181,10 +1142,7 @@ public class ObjectResolverTest {
 		final Reference garbageref2 = new Reference("64/5/1");
 		final Reference garbageref3 = new Reference("67/13/1");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1241,10 +1199,7 @@ public class ObjectResolverTest {
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1276,10 +1231,7 @@ public class ObjectResolverTest {
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1313,10 +1265,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath);
@@ -1341,10 +1290,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1386,9 +1332,7 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1460,9 +1404,7 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1531,9 +1473,7 @@ public class ObjectResolverTest {
 		final Reference garbageref3 = new Reference("67/13/1");
 		
 		//set up
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set());
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1598,10 +1538,7 @@ public class ObjectResolverTest {
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1634,10 +1571,7 @@ public class ObjectResolverTest {
 		
 		final ObjectIDResolvedWS pathendresws = new ObjectIDResolvedWS(rwsi2, "objfoo2");
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(ImmutableMap.of(wsi2, rwsi2));
 		when(wsdb.getPermissions(user, set(rwsi2))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
@@ -1671,10 +1605,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final ObjectResolver or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1704,10 +1635,7 @@ public class ObjectResolverTest {
 		final ObjectIdentifier pathend = new ObjectIdentifier(wsi2, "objfoo2");
 		final ObjectIDWithRefPath objpath = new ObjectIDWithRefPath(pathend);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi1, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi1.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi2), true)).thenReturn(Collections.emptyMap());
 		
 		final Builder or = ObjectResolver.getBuilder(wsdb, user).withObject(objpath)
@@ -1739,10 +1667,7 @@ public class ObjectResolverTest {
 		final Reference topref = new Reference("3/27/1");
 		final ObjectIDResolvedWS objres = new ObjectIDResolvedWS(rwsi, 24, 1);
 		
-		when(wsdb.getPermissions(user, Permission.READ, false)).thenReturn(
-				PermissionSet.getBuilder(user, new AllUsers('*'))
-				.withWorkspace(rwsi, Permission.READ, Permission.NONE)
-				.build());
+		when(wsdb.getReadableWorkspaceIDs(user)).thenReturn(set(rwsi.getID()));
 		when(wsdb.resolveWorkspaces(set(wsi), true)).thenReturn(ImmutableMap.of(wsi, rwsi));
 		when(wsdb.getPermissions(user, set(rwsi))).thenReturn(
 				PermissionSet.getBuilder(user, new AllUsers('*'))
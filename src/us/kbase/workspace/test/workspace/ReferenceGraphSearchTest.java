@@ -4,12 +4,20 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import com.google.common.collect.Sets;
@@ -19,32 +27,79 @@ import us.kbase.workspace.database.Reference;
 import us.kbase.workspace.database.refsearch.ReferenceGraphSearch;
 import us.kbase.workspace.database.refsearch.ReferenceGraphTopologyProvider;
 import us.kbase.workspace.database.refsearch.ReferenceProviderException;
+import us.kbase.workspace.database.refsearch.ReferenceSearchMaximumSizeExceededException;
 
 public class ReferenceGraphSearchTest {
 
 	//TODO TEST finish adding unit tests for this class. What isn't covered here is currently covered by WorkspaceTest, but these tests should eventually provide full coverage.
-	
+
 	private static class TestReferenceGraphTopologyProvider implements
 			ReferenceGraphTopologyProvider {
 
-		private final List<Map<Reference, Map<Reference, Boolean>>> responses;
-		private int responseCount = 0;
+		private final Map<Reference, Set<Reference>> graph;
+		private final Set<Reference> terminal;
+		private final List<Set<Reference>> associatedQueries =
+				Collections.synchronizedList(new ArrayList<>());
+		private final List<Set<Reference>> terminalQueries =
+				Collections.synchronizedList(new ArrayList<>());
 
+		/* graph maps each reference to its incoming references. The iteration order of the
+		 * incoming references is maintained.
+		 */
 		public TestReferenceGraphTopologyProvider(
-				final List<Map<Reference, Map<Reference, Boolean>>> responses) {
-			this.responses = responses;
+				final Map<Reference, Set<Reference>> graph,
+				final Set<Reference> terminal) {
+			this.graph = graph;
+			this.terminal = terminal;
 		}
-		
+
 		@Override
-		public Map<Reference, Map<Reference, Boolean>> getAssociatedReferences(
+		public Map<Reference, Set<Reference>> getAssociatedReferences(
 				final Set<Reference> sourceRefs)
 				throws ReferenceProviderException {
-			final Map<Reference, Map<Reference, Boolean>> resp = responses.get(responseCount);
-			responseCount++;
+			associatedQueries.add(sourceRefs);
+			final Map<Reference, Set<Reference>> resp = new HashMap<>();
+			for (final Reference r: sourceRefs) {
+				resp.put(r, graph.containsKey(r) ?
+						graph.get(r) : new HashSet<Reference>());
+			}
 			return resp;
 		}
+
+		@Override
+		public Set<Reference> getTerminalReferences(final Set<Reference> refs)
+				throws ReferenceProviderException {
+			terminalQueries.add(refs);
+			return new HashSet<>(Sets.intersection(refs, terminal));
+		}
+	}
+
+	private static class GraphBuilder {
+
+		private final Map<Reference, Set<Reference>> graph = new HashMap<>();
+
+		private GraphBuilder with(final Reference ref, final Reference... incoming) {
+			graph.put(ref, new LinkedHashSet<>(Arrays.asList(incoming)));
+			return this;
+		}
+
+		private Map<Reference, Set<Reference>> build() {
+			return graph;
+		}
+	}
+
+	private ExecutorService executor;
+
+	@Before
+	public void before() {
+		executor = Executors.newFixedThreadPool(4);
 	}
-	
+
+	@After
+	public void after() {
+		executor.shutdownNow();
+	}
+
 	private void failCreate(
 			final Set<Reference> startingRefs,
 			final ReferenceGraphTopologyProvider refProvider,
@@ -57,49 +112,226 @@ public class ReferenceGraphSearchTest {
 			TestCommon.assertExceptionCorrect(got, exp);
 		}
 	}
-	
+
 	@Test
 	public void failConstructNullRefs() throws Exception {
-		failCreate(null, new TestReferenceGraphTopologyProvider(null), 1,
+		failCreate(null, new TestReferenceGraphTopologyProvider(null, null), 1,
 				new IllegalArgumentException("startingRefs cannot be null or empty"));
 	}
-	
+
 	@Test
 	public void failConstructEmptyRefs() throws Exception {
-		failCreate(Sets.<Reference>newHashSet(), new TestReferenceGraphTopologyProvider(null), 1,
+		failCreate(Sets.<Reference>newHashSet(),
+				new TestReferenceGraphTopologyProvider(null, null), 1,
 				new IllegalArgumentException("startingRefs cannot be null or empty"));
 	}
-	
+
 	@Test
 	public void failConstructNullProvider() throws Exception {
 		failCreate(Sets.newHashSet(new Reference(1, 1, 1)), null, 1,
 				new NullPointerException("refProvider"));
 	}
-	
+
 	@Test
 	public void failConstructMaxSearchSize() throws Exception {
 		failCreate(Sets.newHashSet(new Reference(1, 1, 1)),
-				new TestReferenceGraphTopologyProvider(null), 0,
+				new TestReferenceGraphTopologyProvider(null, null), 0,
 				new IllegalArgumentException("maximumSearchSize must be > 0"));
 	}
-	
+
+	@Test
+	public void failConstructChunkSize() throws Exception {
+		try {
+			new ReferenceGraphSearch(Sets.newHashSet(new Reference(1, 1, 1)),
+					new TestReferenceGraphTopologyProvider(null, null), 1, false, null, 0);
+			fail("expected exception");
+		} catch (Exception got) {
+			TestCommon.assertExceptionCorrect(got,
+					new IllegalArgumentException("queryChunkSize must be > 0"));
+		}
+	}
+
 	@Test
 	public void failSearch() throws Exception {
 		final Reference root = new Reference(1, 1, 1);
-		final List<Map<Reference, Map<Reference, Boolean>>> responses = new LinkedList<>();
-		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
-		responses.add(new HashMap<Reference, Map<Reference, Boolean>>());
-		responses.get(0).put(root, new HashMap<Reference, Boolean>());
-		responses.get(0).get(root).put(new Reference(2, 1, 1), false);
-		final ReferenceGraphSearch graph = new ReferenceGraphSearch(Sets.newHashSet(root),
-				new TestReferenceGraphTopologyProvider(responses), 5, false);
-		
-		assertThat("impossible path found", graph.isPathFound(root), is(false));
+		final Map<Reference, Set<Reference>> graph = new GraphBuilder()
+				.with(root, new Reference(2, 1, 1))
+				.build();
+		final ReferenceGraphSearch graphSearch = new ReferenceGraphSearch(Sets.newHashSet(root),
+				new TestReferenceGraphTopologyProvider(graph, Collections.emptySet()), 5, false);
+
+		assertThat("impossible path found", graphSearch.isPathFound(root), is(false));
 		try {
-			graph.getPath(root);
+			graphSearch.getPath(root);
 			fail("Got bad path");
 		} catch (IllegalStateException e) {
 			assertThat("incorrect exception message", e.getMessage(), is("No path for ref 1/1/1"));
 		}
 	}
+
+	@Test
+	public void searchSeriallyAndConcurrently() throws Exception {
+		final Reference root = new Reference(1, 1, 1);
+		final Reference a = new Reference(2, 1, 1);
+		final Reference b = new Reference(2, 2, 1);
+		final Reference c = new Reference(3, 1, 1);
+		final Reference d = new Reference(3, 2, 1);
+		final Reference e = new Reference(4, 1, 1);
+		final Reference deadroot = new Reference(5, 1, 1);
+		final Map<Reference, Set<Reference>> graph = new GraphBuilder()
+				.with(root, a, b)
+				.with(a, c)
+				.with(b, d)
+				.with(c, e)
+				.with(deadroot, new Reference(6, 1, 1))
+				.build();
+		final Set<Reference> terminal = Sets.newHashSet(d, e);
+
+		for (final ExecutorService ex: Arrays.asList(null, executor)) {
+			for (final int chunkSize: Arrays.asList(1, 2, 1000)) {
+				final ReferenceGraphSearch search = new ReferenceGraphSearch(
+						Sets.newHashSet(root, deadroot),
+						new TestReferenceGraphTopologyProvider(graph, terminal), 100, false,
+						ex, chunkSize);
+				final String msg = String.format(" executor %s chunk %s", ex, chunkSize);
+				assertThat("incorrect path" + msg, search.getPath(root),
+						is(Arrays.asList(d, b, root)));
+				assertThat("incorrect dead path" + msg, search.isPathFound(deadroot),
+						is(false));
+			}
+		}
+	}
+
+	@Test
+	public void chunkQueries() throws Exception {
+		final Set<Reference> roots = new HashSet<>();
+		final GraphBuilder gb = new GraphBuilder();
+		for (int i = 1; i < 6; i++) {
+			final Reference r = new Reference(1, i, 1);
+			roots.add(r);
+			gb.with(r, new Reference(2, i, 1), new Reference(2, i, 2));
+		}
+
+		for (final ExecutorService ex: Arrays.asList(null, executor)) {
+			final TestReferenceGraphTopologyProvider prov = new TestReferenceGraphTopologyProvider(
+					gb.build(), Collections.emptySet());
+			final ReferenceGraphSearch search = new ReferenceGraphSearch(
+					roots, prov, 100, false, ex, 2);
+
+			for (final Reference r: roots) {
+				assertThat("incorrect path found", search.isPathFound(r), is(false));
+			}
+			final Set<Reference> assocRefs = new HashSet<>();
+			for (final Set<Reference> q: prov.associatedQueries) {
+				assertThat("query too large", q.size() <= 2, is(true));
+				assertThat("duplicate query", Collections.disjoint(assocRefs, q), is(true));
+				assocRefs.addAll(q);
+			}
+			final Set<Reference> termRefs = new HashSet<>();
+			for (final Set<Reference> q: prov.terminalQueries) {
+				assertThat("query too large", q.size() <= 2, is(true));
+				termRefs.addAll(q);
+			}
+			final Set<Reference> level1 = new HashSet<>();
+			for (final Reference r: roots) {
+				level1.addAll(gb.build().get(r));
+			}
+			assertThat("incorrect terminal refs", termRefs, is(level1));
+			assertThat("incorrect associated refs", assocRefs, is(Sets.union(roots, level1)));
+		}
+	}
+
+	@Test
+	public void terminateTreeEarly() throws Exception {
+		// once a terminal reference is found, the remaining references at that level for the
+		// tree are not checked
+		final Reference root = new Reference(1, 1, 1);
+		final Reference a = new Reference(2, 1, 1);
+		final Reference b = new Reference(2, 2, 1);
+		final Reference c = new Reference(2, 3, 1);
+		final Map<Reference, Set<Reference>> graph = new GraphBuilder()
+				.with(root, a, b, c)
+				.build();
+		final TestReferenceGraphTopologyProvider prov = new TestReferenceGraphTopologyProvider(
+				graph, Sets.newHashSet(a, c));
+
+		final ReferenceGraphSearch search = new ReferenceGraphSearch(
+				Sets.newHashSet(root), prov, 100, true, null, 1);
+
+		assertThat("incorrect path", search.getPath(root), is(Arrays.asList(a, root)));
+		assertThat("incorrect terminal queries", prov.terminalQueries,
+				is(Arrays.asList(Sets.newHashSet(a))));
+		assertThat("incorrect associated queries", prov.associatedQueries,
+				is(Arrays.asList(Sets.newHashSet(root))));
+	}
+
+	@Test
+	public void maximumSearchSizeExcludesUnneededReferences() throws Exception {
+		/* r1's tree completes on the first level, and so the many references to x, which
+		 * may be retrieved speculatively, are never required by the search.
+		 */
+		final Reference r1 = new Reference(1, 1, 1);
+		final Reference r2 = new Reference(1, 2, 1);
+		final Reference x = new Reference(2, 1, 1);
+		final Reference y = new Reference(2, 2, 1);
+		final Reference z = new Reference(3, 1, 1);
+		final GraphBuilder gb = new GraphBuilder()
+				.with(r1, x)
+				.with(r2, y)
+				.with(y, z);
+		final Reference[] xrefs = new Reference[10];
+		for (int i = 0; i < xrefs.length; i++) {
+			xrefs[i] = new Reference(4, i + 1, 1);
+		}
+		gb.with(x, xrefs);
+		final Set<Reference> terminal = Sets.newHashSet(x, z);
+
+		for (final ExecutorService ex: Arrays.asList(null, executor)) {
+			// 2 starting refs + x + y + z
+			final ReferenceGraphSearch search = new ReferenceGraphSearch(
+					Sets.newHashSet(r1, r2),
+					new TestReferenceGraphTopologyProvider(gb.build(), terminal),
+					5, true, ex, 1);
+			assertThat("incorrect path", search.getPath(r1), is(Arrays.asList(x, r1)));
+			assertThat("incorrect path", search.getPath(r2), is(Arrays.asList(z, y, r2)));
+
+			try {
+				new ReferenceGraphSearch(Sets.newHashSet(r1, r2),
+						new TestReferenceGraphTopologyProvider(gb.build(), terminal),
+						4, true, ex, 1);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got,
+						new ReferenceSearchMaximumSizeExceededException(
+								"Reached reference search limit"));
+			}
+		}
+	}
+
+	@Test
+	public void providerException() throws Exception {
+		final Reference root = new Reference(1, 1, 1);
+		final Map<Reference, Set<Reference>> graph = new GraphBuilder()
+				.with(root, new Reference(2, 1, 1), new Reference(2, 2, 1))
+				.build();
+		final ReferenceGraphTopologyProvider prov = new TestReferenceGraphTopologyProvider(
+				graph, Collections.emptySet()) {
+
+			@Override
+			public Set<Reference> getTerminalReferences(final Set<Reference> refs)
+					throws ReferenceProviderException {
+				throw new ReferenceProviderException("oh no", new IllegalStateException());
+			}
+		};
+
+		for (final ExecutorService ex: Arrays.asList(null, executor)) {
+			try {
+				new ReferenceGraphSearch(Sets.newHashSet(root), prov, 100, true, ex, 1);
+				fail("expected exception");
+			} catch (Exception got) {
+				TestCommon.assertExceptionCorrect(got,
+						new ReferenceProviderException("oh no", new IllegalStateException()));
+			}
+		}
+	}
 }
@@ -4,8 +4,11 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -157,6 +160,76 @@ public class ReferenceSearchTreeTest {
 		}
 	}
 	
+	@Test
+	public void searchWithTerminalSet() throws Exception {
+		final Reference root = new Reference(2, 5, 4);
+		final ReferenceSearchTree tree = new ReferenceSearchTree(root);
+		final Reference r1 = new Reference(1, 1, 1);
+		final Reference r2 = new Reference(2, 2, 2);
+		final Reference r12 = new Reference(1, 2, 1);
+		final Reference r22 = new Reference(2, 2, 1);
+		
+		final Map<Reference, Set<Reference>> adj = new HashMap<>();
+		adj.put(root, Sets.newHashSet(r1, r2));
+		// the terminal set may contain references not in the tree
+		assertThat("incorrect returned references", tree.updateTree(adj,
+				Sets.newHashSet(new Reference(7, 7, 7))),
+				is((Set<Reference>) Sets.newHashSet(r1, r2)));
+		assertThat("early complete", tree.isComplete(), is(false));
+		
+		adj.clear();
+		adj.put(r1, Sets.newHashSet(r12, root)); // root is already in the tree
+		adj.put(r2, Sets.newHashSet(r22));
+		assertThat("incorrect returned references", tree.updateTree(adj,
+				Sets.newHashSet(r22, root)), is((Set<Reference>) Sets.<Reference>newHashSet()));
+		assertThat("incomplete search", tree.isComplete(), is(true));
+		assertThat("path not found", tree.isPathFound(), is(true));
+		assertThat("incorrect path", tree.getPath(), is(Arrays.asList(r22, r2, root)));
+		
+		failUpdateTreeOnCompletedSearch(tree);
+	}
+	
+	@Test
+	public void getNewLeaves() throws Exception {
+		final Reference root = new Reference(2, 5, 4);
+		final ReferenceSearchTree tree = new ReferenceSearchTree(root);
+		final Reference r1 = new Reference(1, 1, 1);
+		final Reference r2 = new Reference(2, 2, 2);
+		final Reference r12 = new Reference(1, 2, 1);
+		final Reference r13 = new Reference(1, 3, 1);
+		final Reference r22 = new Reference(2, 2, 1);
+		
+		final Map<Reference, Set<Reference>> adj = new HashMap<>();
+		adj.put(root, new LinkedHashSet<>(Arrays.asList(r1, r2)));
+		adj.put(r13, Sets.newHashSet(r22)); // not a leaf
+		assertThat("incorrect new leaves", new ArrayList<>(tree.getNewLeaves(adj)),
+				is(Arrays.asList(r1, r2)));
+		tree.updateTree(adj, Sets.<Reference>newHashSet());
+		
+		adj.clear();
+		adj.put(r1, new LinkedHashSet<>(Arrays.asList(r13, root, r12)));
+		adj.put(r2, new LinkedHashSet<>(Arrays.asList(r22, r12)));
+		
+		// the order of the leaves must match the order in which updateTree checks them
+		final List<Reference> expected = Arrays.asList(r13, r12, r22);
+		assertThat("incorrect new leaves", new ArrayList<>(tree.getNewLeaves(adj)), is(expected));
+		// tree is unaltered
+		assertThat("incorrect new leaves", new ArrayList<>(tree.getNewLeaves(adj)), is(expected));
+		assertThat("early complete", tree.isComplete(), is(false));
+		
+		// the 2nd and 3rd leaves terminate the search; the 2nd is checked first
+		tree.updateTree(adj, Sets.newHashSet(r12, r22));
+		assertThat("incomplete search", tree.isComplete(), is(true));
+		assertThat("incorrect path", tree.getPath(), is(Arrays.asList(r12, r1, root)));
+		
+		try {
+			tree.getNewLeaves(adj);
+			fail("got new leaves after search complete");
+		} catch (IllegalStateException e) {
+			assertThat("incorrect exception message", e.getMessage(), is("Search is complete"));
+		}
+	}
+	
 	@Test
 	public void cycle() throws Exception {
 		// this also effectively tests diamond patterns in directed graphs
@@ -1187,5 +1187,22 @@ public class WorkspaceListenerTest {
 		verify(l2).saveObject(oi1, true);
 		verify(l2).saveObject(oi2, true);
 	}
+	
+	@Test
+	public void closeListeners() throws Exception {
+		final WorkspaceDatabase db = mock(WorkspaceDatabase.class);
+		final TypedObjectValidator tv = mock(TypedObjectValidator.class);
+		final ResourceUsageConfiguration cfg = new ResourceUsageConfigurationBuilder().build();
+		final WorkspaceEventListener l1 = mock(WorkspaceEventListener.class);
+		final WorkspaceEventListener l2 = mock(WorkspaceEventListener.class);
+		
+		final Workspace ws = new Workspace(db, cfg, tv, Arrays.asList(l1, l2));
+		// a failure to close one listener doesn't prevent closing the others
+		doThrow(new IllegalStateException("oh poop")).when(l1).close();
+		
+		ws.closeListeners();
+		
+		verify(l1).close();
+		verify(l2).close();
+	}
 }
-